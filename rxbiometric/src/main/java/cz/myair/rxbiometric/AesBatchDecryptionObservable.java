@@ -0,0 +1,292 @@
+/*
+ * Copyright 2017 Marvin Ramin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.myair.rxbiometric;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.biometric.BiometricPrompt;
+
+import java.io.ByteArrayOutputStream;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+
+import cz.myair.rxbiometric.data.BiometricBatchDecryptionResult;
+import cz.myair.rxbiometric.data.BiometricResult;
+import io.reactivex.Observable;
+import io.reactivex.ObservableEmitter;
+
+/**
+ * Decrypts multiple values with a single biometric authentication. The values must be
+ * previously encrypted by a {@link AesEncryptionObservable} or
+ * {@link AesBatchEncryptionObservable} with the same key.
+ * <p/>
+ * A keystore key that requires user authentication can only be used for a single cipher
+ * operation per authentication. The ciphertexts of all values are therefore decrypted in one CBC
+ * operation, which is initialized with the IV of the first value. As CBC decryption of a block
+ * only depends on the previous ciphertext block, the first block of every following value is
+ * corrected by its own IV afterwards. Padding is removed per value, so that a corrupt value
+ * results in an error for that value only. The padding of the last value is verified by the
+ * cipher as well, an invalid one fails the whole batch like a wrong key.
+ */
+class AesBatchDecryptionObservable extends BiometricDialogObservable<BiometricBatchDecryptionResult> {
+
+	private final AesCipherProvider cipherProvider;
+	private final List<String> encryptedStrings;
+	private final EncodingProvider encodingProvider;
+
+	private List<Entry> entries;
+
+	/**
+	 * Creates a new AesBatchDecryptionObservable that will listen to biometric authentication
+	 * to decrypt the given values.
+	 *
+	 * @param activityOrFragment    activity or fragment wrapper
+	 * @param biometricDialogBundle bundle containing dialog texts
+	 * @param keyName               keyName to use for the decryption
+	 * @param encrypted             values to decrypt
+	 * @return Observable emitting a {@link BiometricBatchDecryptionResult} for every value
+	 */
+	static Observable<BiometricBatchDecryptionResult> create(ActivityOrFragment activityOrFragment,
+															 BiometricDialogBundle biometricDialogBundle,
+															 String keyName,
+															 Collection<String> encrypted,
+															 boolean keyInvalidatedByBiometricEnrollment,
+															 int authenticationValidityDurationSeconds,
+															 RxBiometricLogger logger) {
+		if (encrypted == null || encrypted.isEmpty()) {
+			return Observable.error(new IllegalArgumentException("Values to be decrypted are empty. Can only decrypt at least one value"));
+		}
+		try {
+			return Observable.create(new AesBatchDecryptionObservable(
+					activityOrFragment,
+					biometricDialogBundle,
+					new AesCipherProvider(activityOrFragment.getContext(), keyName, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger),
+					encrypted,
+					new Base64Provider()));
+		} catch (Exception e) {
+			return Observable.error(e);
+		}
+	}
+
+	private AesBatchDecryptionObservable(ActivityOrFragment activityOrFragment,
+										 BiometricDialogBundle biometricDialogBundle,
+										 AesCipherProvider cipherProvider,
+										 Collection<String> encrypted,
+										 EncodingProvider encodingProvider) {
+		super(activityOrFragment, biometricDialogBundle);
+		this.cipherProvider = cipherProvider;
+		encryptedStrings = new ArrayList<>(encrypted);
+		this.encodingProvider = encodingProvider;
+	}
+
+	@Nullable
+	@Override
+	protected BiometricPrompt.CryptoObject initCryptoObject(ObservableEmitter<BiometricBatchDecryptionResult> subscriber) throws Exception {
+		entries = parse(encryptedStrings, encodingProvider);
+		byte[] iv = firstIv(entries);
+		if (iv == null) {
+			// Nothing that could be decrypted, no need to authenticate
+			emitResults(subscriber, entries);
+			return null;
+		}
+		Cipher cipher = cipherProvider.getCipherForDecryption(iv);
+		return new BiometricPrompt.CryptoObject(cipher);
+	}
+
+	@Override
+	protected void onAuthenticationSucceeded(ObservableEmitter<BiometricBatchDecryptionResult> emitter, BiometricPrompt.CryptoObject cryptoObject) {
+		try {
+			Cipher cipher = cryptoObject.getCipher();
+			decryptAll(cipher, entries);
+			emitResults(emitter, entries);
+		} catch (Exception e) {
+			emitter.onError(cipherProvider.mapCipherFinalOperationException(e));
+		}
+	}
+
+	@Override
+	protected void onAuthenticationFailed(ObservableEmitter<BiometricBatchDecryptionResult> emitter) {
+		emitter.onNext(new BiometricBatchDecryptionResult(BiometricResult.FAILED, null, null, null));
+	}
+
+	@Override
+	protected boolean isCryptoObjectRequired() {
+		return true;
+	}
+
+	@Override
+	protected boolean isTimeBound() {
+		return cipherProvider.isTimeBound();
+	}
+
+	private static void emitResults(ObservableEmitter<BiometricBatchDecryptionResult> emitter, List<Entry> entries) {
+		for (Entry entry : entries) {
+			emitter.onNext(new BiometricBatchDecryptionResult(BiometricResult.AUTHENTICATED, entry.encrypted, entry.decrypted, entry.error));
+		}
+		emitter.onComplete();
+	}
+
+	/**
+	 * Parses the given values. Values that cannot be parsed are marked with an error.
+	 */
+	@VisibleForTesting
+	static List<Entry> parse(List<String> encrypted, EncodingProvider encodingProvider) {
+		List<Entry> entries = new ArrayList<>(encrypted.size());
+		for (String value : encrypted) {
+			Entry entry = new Entry(value);
+			try {
+				CryptoData cryptoData = CryptoData.fromString(encodingProvider, value);
+				entry.iv = cryptoData.getIv();
+				entry.message = cryptoData.getMessage();
+			} catch (Exception e) {
+				entry.error = e;
+			}
+			entries.add(entry);
+		}
+		return entries;
+	}
+
+	@Nullable
+	private static byte[] firstIv(List<Entry> entries) {
+		for (Entry entry : entries) {
+			if (entry.error == null) {
+				return entry.iv;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Decrypts all parsed entries with a single operation of the given CBC cipher, which must be
+	 * initialized with the IV of the first entry without an error.
+	 * <p/>
+	 * Ciphers may hold back any amount of output until {@link Cipher#doFinal()}, so only the
+	 * output of the whole operation is used. Its last block is a copy of the last block of the
+	 * last value preceded by the block it is chained to, so that it decrypts to the padded end
+	 * of that value and the cipher removes a valid padding.
+	 *
+	 * @param cipher  cipher initialized for decryption with PKCS7 padding
+	 * @param entries parsed entries, receive their decrypted value or an error
+	 */
+	@VisibleForTesting
+	static void decryptAll(Cipher cipher, List<Entry> entries) throws GeneralSecurityException {
+		int blockSize = cipher.getBlockSize();
+		List<Entry> valid = new ArrayList<>(entries.size());
+		ByteArrayOutputStream ciphertext = new ByteArrayOutputStream();
+		for (Entry entry : entries) {
+			if (entry.error != null) {
+				continue;
+			}
+			if (entry.message.length == 0 || entry.message.length % blockSize != 0 || entry.iv.length != blockSize) {
+				entry.error = new IllegalBlockSizeException("Invalid length of encrypted value or its IV");
+				continue;
+			}
+			valid.add(entry);
+			ciphertext.write(entry.message, 0, entry.message.length);
+		}
+		if (valid.isEmpty()) {
+			return;
+		}
+
+		// Decrypts to a block of garbage followed by the padded last block of the last value
+		Entry last = valid.get(valid.size() - 1);
+		int lastLength = last.message.length;
+		if (lastLength > blockSize) {
+			ciphertext.write(last.message, lastLength - 2 * blockSize, blockSize);
+		} else {
+			ciphertext.write(last.iv, 0, blockSize);
+		}
+		ciphertext.write(last.message, lastLength - blockSize, blockSize);
+
+		ByteArrayOutputStream plaintext = new ByteArrayOutputStream();
+		byte[] output = cipher.update(ciphertext.toByteArray());
+		if (output != null) {
+			plaintext.write(output, 0, output.length);
+			Arrays.fill(output, (byte) 0); // clear the cleartext
+		}
+		output = cipher.doFinal();
+		plaintext.write(output, 0, output.length);
+		Arrays.fill(output, (byte) 0); // clear the cleartext
+
+		byte[] plaintextBytes = plaintext.toByteArray();
+		if (plaintextBytes.length < ciphertext.size() - 2 * blockSize) {
+			Arrays.fill(plaintextBytes, (byte) 0); // clear the cleartext
+			throw new IllegalBlockSizeException("Cipher did not return the decrypted values");
+		}
+		int offset = 0;
+		byte[] previousBlock = null;
+		for (Entry entry : valid) {
+			int length = entry.message.length;
+			byte[] decrypted = Arrays.copyOfRange(plaintextBytes, offset, offset + length);
+			if (previousBlock != null) {
+				// The block was chained to the previous ciphertext block instead of to its own IV
+				for (int i = 0; i < blockSize; i++) {
+					decrypted[i] ^= previousBlock[i] ^ entry.iv[i];
+				}
+			}
+			try {
+				entry.decrypted = ConversionUtils.toChars(unpad(decrypted, blockSize));
+			} catch (BadPaddingException e) {
+				entry.error = e;
+			}
+			Arrays.fill(decrypted, (byte) 0); // clear the cleartext
+
+			previousBlock = Arrays.copyOfRange(entry.message, length - blockSize, length);
+			offset += length;
+		}
+		Arrays.fill(plaintextBytes, (byte) 0); // clear the cleartext
+	}
+
+	/**
+	 * Removes and verifies PKCS7 padding.
+	 */
+	private static byte[] unpad(byte[] bytes, int blockSize) throws BadPaddingException {
+		int padding = bytes[bytes.length - 1] & 0xFF;
+		if (padding == 0 || padding > blockSize) {
+			throw new BadPaddingException("Invalid padding of decrypted value");
+		}
+		for (int i = bytes.length - padding; i < bytes.length; i++) {
+			if ((bytes[i] & 0xFF) != padding) {
+				throw new BadPaddingException("Invalid padding of decrypted value");
+			}
+		}
+		return Arrays.copyOf(bytes, bytes.length - padding);
+	}
+
+	/**
+	 * A single value of the batch
+	 */
+	@VisibleForTesting
+	static class Entry {
+		final String encrypted;
+		byte[] iv;
+		byte[] message;
+		char[] decrypted;
+		Exception error;
+
+		Entry(String encrypted) {
+			this.encrypted = encrypted;
+		}
+	}
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2017 Marvin Ramin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.myair.rxbiometric;
+
+import android.annotation.SuppressLint;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.biometric.BiometricPrompt;
+
+import java.io.ByteArrayOutputStream;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+
+import cz.myair.rxbiometric.data.BiometricBatchEncryptionResult;
+import cz.myair.rxbiometric.data.BiometricResult;
+import io.reactivex.Observable;
+import io.reactivex.ObservableEmitter;
+
+/**
+ * Encrypts multiple values with a single biometric authentication.
+ * <p/>
+ * A keystore key that requires user authentication can only be used for a single cipher
+ * operation per authentication. All values are therefore encrypted in one CBC operation: every
+ * value is padded to the block size on its own and the resulting ciphertext is split up again
+ * per value. The last ciphertext block of a value is the IV of the next value, which makes every
+ * value decryptable on its own by {@link AesDecryptionObservable}.
+ */
+@SuppressLint("NewApi")
+// SDK check happens in {@link BiometricObservable#subscribe}
+class AesBatchEncryptionObservable extends BiometricDialogObservable<BiometricBatchEncryptionResult> {
+
+	private final Map<String, char[]> toEncrypt;
+	private final EncodingProvider encodingProvider;
+	private final AesCipherProvider cipherProvider;
+
+	/**
+	 * Creates a new AesBatchEncryptionObservable that will listen to biometric authentication
+	 * to encrypt the given values.
+	 *
+	 * @param activityOrFragment    activity or fragment wrapper
+	 * @param biometricDialogBundle bundle containing dialog texts
+	 * @param keyName               name of the key in the keystore
+	 * @param toEncrypt             values to encrypt by their name
+	 * @return Observable {@link BiometricBatchEncryptionResult}
+	 */
+	static Observable<BiometricBatchEncryptionResult> create(ActivityOrFragment activityOrFragment,
+															 BiometricDialogBundle biometricDialogBundle,
+															 String keyName,
+															 Map<String, char[]> toEncrypt,
+															 boolean keyInvalidatedByBiometricEnrollment,
+															 int authenticationValidityDurationSeconds,
+															 RxBiometricLogger logger) {
+		if (toEncrypt == null || toEncrypt.isEmpty()) {
+			return Observable.error(new IllegalArgumentException("Values to be encrypted are empty. Can only encrypt at least one value"));
+		}
+		if (toEncrypt.containsValue(null)) {
+			return Observable.error(new IllegalArgumentException("A value to be encrypted is null. Can only encrypt valid strings"));
+		}
+		try {
+			return Observable.create(new AesBatchEncryptionObservable(
+					activityOrFragment,
+					biometricDialogBundle,
+					new AesCipherProvider(activityOrFragment.getContext(), keyName, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger),
+					toEncrypt,
+					new Base64Provider()));
+		} catch (Exception e) {
+			return Observable.error(e);
+		}
+	}
+
+	private AesBatchEncryptionObservable(ActivityOrFragment activityOrFragment,
+										 BiometricDialogBundle biometricDialogBundle,
+										 AesCipherProvider cipherProvider,
+										 Map<String, char[]> toEncrypt,
+										 EncodingProvider encodingProvider) {
+		super(activityOrFragment, biometricDialogBundle);
+		this.cipherProvider = cipherProvider;
+		this.toEncrypt = toEncrypt;
+		this.encodingProvider = encodingProvider;
+	}
+
+	@Nullable
+	@Override
+	protected BiometricPrompt.CryptoObject initCryptoObject(ObservableEmitter<BiometricBatchEncryptionResult> emitter) throws Exception {
+		Cipher cipher = cipherProvider.getCipherForEncryption();
+		return new BiometricPrompt.CryptoObject(cipher);
+	}
+
+	@Override
+	protected void onAuthenticationSucceeded(ObservableEmitter<BiometricBatchEncryptionResult> emitter, BiometricPrompt.CryptoObject cryptoObject) {
+		try {
+			Cipher cipher = cryptoObject.getCipher();
+			Map<String, String> encrypted = encryptAll(cipher, toEncrypt, encodingProvider);
+
+			emitter.onNext(new BiometricBatchEncryptionResult(BiometricResult.AUTHENTICATED, encrypted));
+			emitter.onComplete();
+		} catch (Exception e) {
+			emitter.onError(cipherProvider.mapCipherFinalOperationException(e));
+		}
+	}
+
+	@Override
+	protected void onAuthenticationFailed(ObservableEmitter<BiometricBatchEncryptionResult> emitter) {
+		emitter.onNext(new BiometricBatchEncryptionResult(BiometricResult.FAILED, null));
+	}
+
+	@Override
+	protected boolean isCryptoObjectRequired() {
+		return true;
+	}
+
+	@Override
+	protected boolean isTimeBound() {
+		return cipherProvider.isTimeBound();
+	}
+
+	/**
+	 * Encrypts all values with a single operation of the given CBC cipher.
+	 *
+	 * @param cipher           cipher initialized for encryption with PKCS7 padding
+	 * @param toEncrypt        values to encrypt by their name
+	 * @param encodingProvider encoding for the resulting {@link CryptoData}
+	 * @return encrypted {@link CryptoData} strings by the name of each value
+	 */
+	@VisibleForTesting
+	static Map<String, String> encryptAll(Cipher cipher, Map<String, char[]> toEncrypt, EncodingProvider encodingProvider) throws GeneralSecurityException {
+		int blockSize = cipher.getBlockSize();
+		byte[] iv = cipher.getIV();
+
+		List<String> names = new ArrayList<>(toEncrypt.keySet());
+		int[] lengths = new int[names.size()];
+		ByteArrayOutputStream ciphertext = new ByteArrayOutputStream();
+		for (int i = 0; i < names.size(); i++) {
+			byte[] padded = pad(ConversionUtils.toBytes(toEncrypt.get(names.get(i))), blockSize);
+			lengths[i] = padded.length;
+
+			byte[] output = cipher.update(padded);
+			if (output != null) {
+				ciphertext.write(output, 0, output.length);
+			}
+			Arrays.fill(padded, (byte) 0); // clear the cleartext
+		}
+		// Completes the operation, the trailing padding block is not part of any value
+		byte[] output = cipher.doFinal();
+		ciphertext.write(output, 0, output.length);
+
+		byte[] ciphertextBytes = ciphertext.toByteArray();
+		Map<String, String> encrypted = new LinkedHashMap<>();
+		int offset = 0;
+		for (int i = 0; i < names.size(); i++) {
+			byte[] message = Arrays.copyOfRange(ciphertextBytes, offset, offset + lengths[i]);
+			encrypted.put(names.get(i), CryptoData.fromBytes(encodingProvider, message, iv).toString());
+
+			iv = Arrays.copyOfRange(message, message.length - blockSize, message.length);
+			offset += lengths[i];
+		}
+		return encrypted;
+	}
+
+	/**
+	 * Applies PKCS7 padding, always adding between 1 and blockSize bytes.
+	 */
+	private static byte[] pad(byte[] bytes, int blockSize) {
+		int padding = blockSize - bytes.length % blockSize;
+		byte[] padded = Arrays.copyOf(bytes, bytes.length + padding);
+		Arrays.fill(padded, bytes.length, padded.length, (byte) padding);
+		Arrays.fill(bytes, (byte) 0); // clear the cleartext
+		return padded;
+	}
+}
@@ -25,6 +25,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import java.io.IOException;
+import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.KeyStoreException;
@@ -32,6 +33,7 @@ import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.UnrecoverableKeyException;
 import java.security.cert.CertificateException;
+import java.security.spec.AlgorithmParameterSpec;
 
 import javax.crypto.Cipher;
 import javax.crypto.KeyGenerator;
@@ -42,28 +44,57 @@ import javax.crypto.spec.IvParameterSpec;
 class AesCipherProvider extends CipherProvider {
 	private static final int AES_KEY_SIZE = 256;
 
-	AesCipherProvider(@NonNull Context context, @Nullable String keyName, boolean keyInvalidatedByBiometricEnrollment, RxBiometricLogger logger) throws CertificateException, NoSuchAlgorithmException, KeyStoreException, IOException {
-		super(context, keyName, keyInvalidatedByBiometricEnrollment, logger);
+	AesCipherProvider(@NonNull Context context, @Nullable String keyName, boolean keyInvalidatedByBiometricEnrollment, int authenticationValidityDurationSeconds, RxBiometricLogger logger) {
+		super(context, keyName, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger);
+	}
+
+	/**
+	 * @return provider for {@link EncryptionMethod#AES} or {@link EncryptionMethod#AES_GCM}
+	 */
+	static AesCipherProvider create(EncryptionMethod encryptionMethod, @NonNull Context context, @Nullable String keyName, boolean keyInvalidatedByBiometricEnrollment, int authenticationValidityDurationSeconds, RxBiometricLogger logger) {
+		if (encryptionMethod == EncryptionMethod.AES_GCM) {
+			return new AesGcmCipherProvider(context, keyName, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger);
+		}
+		return new AesCipherProvider(context, keyName, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger);
 	}
 
 	private SecretKey findOrCreateKey(String keyName) throws NoSuchProviderException, NoSuchAlgorithmException, InvalidAlgorithmParameterException, UnrecoverableKeyException, CertificateException, KeyStoreException, IOException {
 		if (keyExists(keyName)) {
-			return getKey(keyName);
+			SecretKey key = getKey(keyName);
+			if (key != null) {
+				return key;
+			}
+			// Key was removed from the keystore without RxBiometric noticing
+			KeyStoreProvider.onKeyDeleted(keyName);
 		}
-		return createKey(keyName, invalidatedByBiometricEnrollment);
+		return createKey(keyName);
+	}
+
+	private SecretKey getKey(String keyName) throws KeyStoreException, NoSuchAlgorithmException, UnrecoverableKeyException, CertificateException, IOException {
+		return (SecretKey) keyStore().getKey(keyName, null);
 	}
 
-	private SecretKey getKey(String keyName) throws KeyStoreException, NoSuchAlgorithmException, UnrecoverableKeyException {
-		return (SecretKey) keyStore.getKey(keyName, null);
+	@Override
+	Cipher getCipherRequiringAuthentication() throws IOException, GeneralSecurityException {
+		return getCipherForEncryption();
+	}
+
+	@Override
+	boolean prepareKey() throws NoSuchProviderException, NoSuchAlgorithmException, InvalidAlgorithmParameterException, UnrecoverableKeyException, CertificateException, KeyStoreException, IOException {
+		boolean keyCreated = !keyExists(keyName);
+		findOrCreateKey(keyName);
+		return keyCreated;
 	}
 
 	@TargetApi(Build.VERSION_CODES.M)
-	private static SecretKey createKey(String keyName, boolean invalidatedByBiometricEnrollment) throws NoSuchAlgorithmException, NoSuchProviderException, InvalidAlgorithmParameterException {
+	private SecretKey createKey(String keyName) throws NoSuchAlgorithmException, NoSuchProviderException, InvalidAlgorithmParameterException {
 		KeyGenerator keyGenerator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, ANDROID_KEY_STORE);
-		keyGenerator.init(getKeyGenParameterSpecBuilder(keyName, KeyProperties.BLOCK_MODE_CBC, KeyProperties.ENCRYPTION_PADDING_PKCS7, invalidatedByBiometricEnrollment)
+		keyGenerator.init(getKeyGenParameterSpecBuilder(keyName, blockMode(), encryptionPadding(), invalidatedByBiometricEnrollment, authenticationValidityDurationSeconds)
 				.setKeySize(AES_KEY_SIZE)
 				.build());
-		return keyGenerator.generateKey();
+		SecretKey key = keyGenerator.generateKey();
+		KeyStoreProvider.onKeyCreated(keyName);
+		return key;
 	}
 
 	@Override
@@ -78,10 +109,16 @@ class AesCipherProvider extends CipherProvider {
 	 * @param iv initialization vector used during encryption
 	 * @return Initialized cipher for decryption operations in RxBiometric
 	 */
-	Cipher getCipherForDecryption(byte[] iv) throws NoSuchAlgorithmException, InvalidKeyException, UnrecoverableKeyException, KeyStoreException, InvalidAlgorithmParameterException, NoSuchPaddingException {
+	Cipher getCipherForDecryption(byte[] iv) throws NoSuchAlgorithmException, InvalidKeyException, UnrecoverableKeyException, KeyStoreException, InvalidAlgorithmParameterException, NoSuchPaddingException, CertificateException, IOException {
 		Cipher cipher = createCipher();
-		SecretKey key = getKey(keyName);
-		cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(iv));
+		SecretKey key;
+		try {
+			key = getKey(keyName);
+		} catch (KeyStoreException e) {
+			KeyStoreProvider.invalidate();
+			throw e;
+		}
+		cipher.init(Cipher.DECRYPT_MODE, key, parameterSpec(iv));
 		return cipher;
 	}
 
@@ -89,7 +126,32 @@ class AesCipherProvider extends CipherProvider {
 	@TargetApi(Build.VERSION_CODES.M)
 	Cipher createCipher() throws NoSuchPaddingException, NoSuchAlgorithmException {
 		return Cipher.getInstance(KeyProperties.KEY_ALGORITHM_AES + "/"
-				+ KeyProperties.BLOCK_MODE_CBC + "/"
-				+ KeyProperties.ENCRYPTION_PADDING_PKCS7);
+				+ blockMode() + "/"
+				+ encryptionPadding());
+	}
+
+	/**
+	 * @return method the encrypted data of this provider is marked with in its binary form
+	 */
+	EncryptionMethod encryptionMethod() {
+		return EncryptionMethod.AES;
+	}
+
+	@TargetApi(Build.VERSION_CODES.M)
+	String blockMode() {
+		return KeyProperties.BLOCK_MODE_CBC;
+	}
+
+	@TargetApi(Build.VERSION_CODES.M)
+	String encryptionPadding() {
+		return KeyProperties.ENCRYPTION_PADDING_PKCS7;
+	}
+
+	/**
+	 * @param iv initialization vector used during encryption
+	 * @return parameters to initialize a cipher for decryption with
+	 */
+	AlgorithmParameterSpec parameterSpec(byte[] iv) {
+		return new IvParameterSpec(iv);
 	}
 }
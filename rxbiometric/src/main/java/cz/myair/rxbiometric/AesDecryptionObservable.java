@@ -17,8 +17,11 @@
 package cz.myair.rxbiometric;
 
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import androidx.biometric.BiometricPrompt;
 
+import java.nio.ByteBuffer;
+
 import javax.crypto.Cipher;
 
 import cz.myair.rxbiometric.data.BiometricDecryptionResult;
@@ -32,13 +35,18 @@ import io.reactivex.ObservableEmitter;
  * can only be used with fingerprint authentication and uses it once authentication was successful
  * to encrypt the given data.
  * <p/>
- * The date handed in must be previously encrypted by a {@link AesEncryptionObservable}.
+ * The date handed in must be previously encrypted by a {@link AesEncryptionObservable} with the
+ * same {@link EncryptionMethod}.
  */
 class AesDecryptionObservable extends BiometricDialogObservable<BiometricDecryptionResult> {
 
 	private final AesCipherProvider cipherProvider;
 	private final String encryptedString;
+	private final ByteBuffer encryptedBytes;
+	private final byte[] associatedData;
+	private final boolean decryptToBuffer;
 	private final EncodingProvider encodingProvider;
+	private CryptoData cryptoData;
 
 	/**
 	 * Creates a new AesEncryptionObservable that will listen to fingerprint authentication
@@ -48,58 +56,140 @@ class AesDecryptionObservable extends BiometricDialogObservable<BiometricDecrypt
 	 * @param biometricDialogBundle
 	 * @param keyName               keyName to use for the decryption
 	 * @param encrypted             data to encrypt  @return Observable {@link BiometricEncryptionResult}
+	 * @param decryptToBuffer       whether to decrypt into a {@link SecureBuffer} instead of a char[]
 	 * @return Observable result of the decryption
 	 */
 	static Observable<BiometricDecryptionResult> create(ActivityOrFragment activityOrFragment,
 														BiometricDialogBundle biometricDialogBundle,
 														String keyName,
 														String encrypted,
+														boolean decryptToBuffer,
 														boolean keyInvalidatedByBiometricEnrollment,
+														int authenticationValidityDurationSeconds,
 														RxBiometricLogger logger) {
+		return create(activityOrFragment, biometricDialogBundle, EncryptionMethod.AES, keyName, encrypted, null, null, decryptToBuffer, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger);
+	}
+
+	/**
+	 * Same as {@link #create(ActivityOrFragment, BiometricDialogBundle, String, String, boolean, boolean, int, RxBiometricLogger)}
+	 * for data in binary form. A legacy String given as bytes is decrypted as well.
+	 */
+	static Observable<BiometricDecryptionResult> create(ActivityOrFragment activityOrFragment,
+														BiometricDialogBundle biometricDialogBundle,
+														String keyName,
+														ByteBuffer encrypted,
+														boolean decryptToBuffer,
+														boolean keyInvalidatedByBiometricEnrollment,
+														int authenticationValidityDurationSeconds,
+														RxBiometricLogger logger) {
+		return create(activityOrFragment, biometricDialogBundle, EncryptionMethod.AES, keyName, null, encrypted, null, decryptToBuffer, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger);
+	}
+
+	/**
+	 * Creates a new AesDecryptionObservable for {@link EncryptionMethod#AES_GCM} that will listen
+	 * to biometric authentication to decrypt the given data.
+	 *
+	 * @param keyName        keyName to use for the decryption
+	 * @param encrypted      data to decrypt
+	 * @param associatedData data given for encryption, may be {@code null}
+	 */
+	static Observable<BiometricDecryptionResult> createGcm(ActivityOrFragment activityOrFragment,
+														   BiometricDialogBundle biometricDialogBundle,
+														   String keyName,
+														   String encrypted,
+														   byte[] associatedData,
+														   boolean decryptToBuffer,
+														   boolean keyInvalidatedByBiometricEnrollment,
+														   int authenticationValidityDurationSeconds,
+														   RxBiometricLogger logger) {
+		return create(activityOrFragment, biometricDialogBundle, EncryptionMethod.AES_GCM, keyName, encrypted, null, associatedData, decryptToBuffer, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger);
+	}
+
+	/**
+	 * Same as {@link #createGcm(ActivityOrFragment, BiometricDialogBundle, String, String, byte[], boolean, boolean, int, RxBiometricLogger)}
+	 * for data in binary form.
+	 */
+	static Observable<BiometricDecryptionResult> createGcm(ActivityOrFragment activityOrFragment,
+														   BiometricDialogBundle biometricDialogBundle,
+														   String keyName,
+														   ByteBuffer encrypted,
+														   byte[] associatedData,
+														   boolean decryptToBuffer,
+														   boolean keyInvalidatedByBiometricEnrollment,
+														   int authenticationValidityDurationSeconds,
+														   RxBiometricLogger logger) {
+		return create(activityOrFragment, biometricDialogBundle, EncryptionMethod.AES_GCM, keyName, null, encrypted, associatedData, decryptToBuffer, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger);
+	}
+
+	private static Observable<BiometricDecryptionResult> create(ActivityOrFragment activityOrFragment,
+																BiometricDialogBundle biometricDialogBundle,
+																EncryptionMethod encryptionMethod,
+																String keyName,
+																String encryptedString,
+																ByteBuffer encryptedBytes,
+																byte[] associatedData,
+																boolean decryptToBuffer,
+																boolean keyInvalidatedByBiometricEnrollment,
+																int authenticationValidityDurationSeconds,
+																RxBiometricLogger logger) {
 		try {
 			return Observable.create(new AesDecryptionObservable(
 					activityOrFragment,
 					biometricDialogBundle,
-					new AesCipherProvider(activityOrFragment.getContext(), keyName, keyInvalidatedByBiometricEnrollment, logger),
-					encrypted,
+					AesCipherProvider.create(encryptionMethod, activityOrFragment.getContext(), keyName, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger),
+					encryptedString,
+					encryptedBytes,
+					associatedData,
+					decryptToBuffer,
 					new Base64Provider()));
 		} catch (Exception e) {
 			return Observable.error(e);
 		}
 	}
 
-	private AesDecryptionObservable(ActivityOrFragment activityOrFragment,
-									BiometricDialogBundle biometricDialogBundle,
-									AesCipherProvider cipherProvider,
-									String encrypted,
-									EncodingProvider encodingProvider) {
+	@VisibleForTesting
+	AesDecryptionObservable(ActivityOrFragment activityOrFragment,
+							BiometricDialogBundle biometricDialogBundle,
+							AesCipherProvider cipherProvider,
+							String encryptedString,
+							ByteBuffer encryptedBytes,
+							byte[] associatedData,
+							boolean decryptToBuffer,
+							EncodingProvider encodingProvider) {
 		super(activityOrFragment, biometricDialogBundle);
 		this.cipherProvider = cipherProvider;
-		encryptedString = encrypted;
+		this.encryptedString = encryptedString;
+		this.encryptedBytes = encryptedBytes;
+		this.associatedData = associatedData;
+		this.decryptToBuffer = decryptToBuffer;
 		this.encodingProvider = encodingProvider;
 	}
 
 	@Nullable
 	@Override
-	protected BiometricPrompt.CryptoObject initCryptoObject(ObservableEmitter<BiometricDecryptionResult> subscriber) {
-		try {
-			CryptoData cryptoData = CryptoData.fromString(encodingProvider, encryptedString);
-			Cipher cipher = cipherProvider.getCipherForDecryption(cryptoData.getIv());
-			return new BiometricPrompt.CryptoObject(cipher);
-		} catch (Exception e) {
-			subscriber.onError(e);
-			return null;
+	protected BiometricPrompt.CryptoObject initCryptoObject(ObservableEmitter<BiometricDecryptionResult> subscriber) throws Exception {
+		if (cryptoData == null) {
+			// Parsed once, the CryptoObject of a time-bound key is initialized again after the prompt
+			cryptoData = parse();
 		}
+		Cipher cipher = cipherProvider.getCipherForDecryption(cryptoData.getIv());
+		return new BiometricPrompt.CryptoObject(cipher);
 	}
 
 	@Override
-	protected void onAuthenticationSucceeded(ObservableEmitter<BiometricDecryptionResult> emitter, BiometricPrompt.AuthenticationResult result) {
+	protected void onAuthenticationSucceeded(ObservableEmitter<BiometricDecryptionResult> emitter, BiometricPrompt.CryptoObject cryptoObject) {
 		try {
-			CryptoData cryptoData = CryptoData.fromString(encodingProvider, encryptedString);
-			Cipher cipher = result.getCryptoObject().getCipher();
-			byte[] bytes = cipher.doFinal(cryptoData.getMessage());
-
-			emitter.onNext(new BiometricDecryptionResult(BiometricResult.AUTHENTICATED, ConversionUtils.toChars(bytes)));
+			Cipher cipher = cryptoObject.getCipher();
+			if (associatedData != null) {
+				cipher.updateAAD(associatedData);
+			}
+			if (decryptToBuffer) {
+				SecureBuffer decrypted = SecureBuffer.doFinal(cipher, cryptoData.getMessage());
+				emitter.onNext(new BiometricDecryptionResult(BiometricResult.AUTHENTICATED, null, decrypted));
+			} else {
+				byte[] bytes = cipher.doFinal(cryptoData.getMessage());
+				emitter.onNext(new BiometricDecryptionResult(BiometricResult.AUTHENTICATED, ConversionUtils.toChars(bytes)));
+			}
 			emitter.onComplete();
 		} catch (Exception e) {
 			emitter.onError(cipherProvider.mapCipherFinalOperationException(e));
@@ -107,6 +197,19 @@ class AesDecryptionObservable extends BiometricDialogObservable<BiometricDecrypt
 
 	}
 
+	/**
+	 * @return data to decrypt, given in binary or legacy String form
+	 */
+	private CryptoData parse() throws CryptoDataException {
+		if (encryptedBytes == null) {
+			return CryptoData.fromString(encodingProvider, encryptedString);
+		}
+		if (CryptoData.isBinary(encryptedBytes)) {
+			return CryptoData.fromBinary(encodingProvider, encryptedBytes, cipherProvider.encryptionMethod());
+		}
+		return CryptoData.fromString(encodingProvider, CryptoData.toLegacyString(encryptedBytes));
+	}
+
 	@Override
 	protected void onAuthenticationFailed(ObservableEmitter<BiometricDecryptionResult> emitter) {
 		emitter.onNext(new BiometricDecryptionResult(BiometricResult.FAILED, null));
@@ -116,4 +219,9 @@ class AesDecryptionObservable extends BiometricDialogObservable<BiometricDecrypt
 	protected boolean isCryptoObjectRequired() {
 		return true;
 	}
+
+	@Override
+	protected boolean isTimeBound() {
+		return cipherProvider.isTimeBound();
+	}
 }
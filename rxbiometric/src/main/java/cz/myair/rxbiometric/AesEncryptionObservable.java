@@ -22,7 +22,6 @@ import androidx.annotation.Nullable;
 import androidx.biometric.BiometricPrompt;
 
 import javax.crypto.Cipher;
-import javax.crypto.spec.IvParameterSpec;
 
 import cz.myair.rxbiometric.data.BiometricEncryptionResult;
 import cz.myair.rxbiometric.data.BiometricResult;
@@ -32,13 +31,16 @@ import io.reactivex.ObservableEmitter;
 /**
  * Encrypts data with biometric authentication. Initializes a {@link Cipher} for encryption which
  * can only be used with biometric authentication and uses it once authentication was successful
- * to encrypt the given data.
+ * to encrypt the given data. Used for both {@link EncryptionMethod#AES} and
+ * {@link EncryptionMethod#AES_GCM}.
  */
 @SuppressLint("NewApi")
 // SDK check happens in {@link BiometricObservable#subscribe}
 class AesEncryptionObservable extends BiometricDialogObservable<BiometricEncryptionResult> {
 
 	private final char[] toEncrypt;
+	private final SecureBuffer toEncryptBuffer;
+	private final byte[] associatedData;
 	private final EncodingProvider encodingProvider;
 	private final AesCipherProvider cipherProvider;
 
@@ -56,13 +58,81 @@ class AesEncryptionObservable extends BiometricDialogObservable<BiometricEncrypt
 														String keyName,
 														char[] toEncrypt,
 														boolean keyInvalidatedByBiometricEnrollment,
+														int authenticationValidityDurationSeconds,
 														RxBiometricLogger logger) {
+		return create(activityOrFragment, biometricDialogBundle, EncryptionMethod.AES, keyName,
+				toEncrypt, null, null, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger);
+	}
+
+	/**
+	 * Same as {@link #create(ActivityOrFragment, BiometricDialogBundle, String, char[], boolean, int, RxBiometricLogger)}
+	 * for data kept in a {@link SecureBuffer}, which is not wiped by the encryption.
+	 */
+	static Observable<BiometricEncryptionResult> create(ActivityOrFragment activityOrFragment,
+														BiometricDialogBundle biometricDialogBundle,
+														String keyName,
+														SecureBuffer toEncrypt,
+														boolean keyInvalidatedByBiometricEnrollment,
+														int authenticationValidityDurationSeconds,
+														RxBiometricLogger logger) {
+		return create(activityOrFragment, biometricDialogBundle, EncryptionMethod.AES, keyName,
+				null, toEncrypt, null, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger);
+	}
+
+	/**
+	 * Creates a new AesEncryptionObservable for {@link EncryptionMethod#AES_GCM} that will listen
+	 * to biometric authentication to encrypt the given data.
+	 *
+	 * @param keyName        name of the key in the keystore
+	 * @param toEncrypt      data to encrypt
+	 * @param associatedData data authenticated along with the encrypted data, may be {@code null}
+	 */
+	static Observable<BiometricEncryptionResult> createGcm(ActivityOrFragment activityOrFragment,
+														   BiometricDialogBundle biometricDialogBundle,
+														   String keyName,
+														   char[] toEncrypt,
+														   byte[] associatedData,
+														   boolean keyInvalidatedByBiometricEnrollment,
+														   int authenticationValidityDurationSeconds,
+														   RxBiometricLogger logger) {
+		return create(activityOrFragment, biometricDialogBundle, EncryptionMethod.AES_GCM, keyName,
+				toEncrypt, null, associatedData, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger);
+	}
+
+	/**
+	 * Same as {@link #createGcm(ActivityOrFragment, BiometricDialogBundle, String, char[], byte[], boolean, int, RxBiometricLogger)}
+	 * for data kept in a {@link SecureBuffer}, which is not wiped by the encryption.
+	 */
+	static Observable<BiometricEncryptionResult> createGcm(ActivityOrFragment activityOrFragment,
+														   BiometricDialogBundle biometricDialogBundle,
+														   String keyName,
+														   SecureBuffer toEncrypt,
+														   byte[] associatedData,
+														   boolean keyInvalidatedByBiometricEnrollment,
+														   int authenticationValidityDurationSeconds,
+														   RxBiometricLogger logger) {
+		return create(activityOrFragment, biometricDialogBundle, EncryptionMethod.AES_GCM, keyName,
+				null, toEncrypt, associatedData, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger);
+	}
+
+	private static Observable<BiometricEncryptionResult> create(ActivityOrFragment activityOrFragment,
+																BiometricDialogBundle biometricDialogBundle,
+																EncryptionMethod encryptionMethod,
+																String keyName,
+																char[] toEncrypt,
+																SecureBuffer toEncryptBuffer,
+																byte[] associatedData,
+																boolean keyInvalidatedByBiometricEnrollment,
+																int authenticationValidityDurationSeconds,
+																RxBiometricLogger logger) {
 		try {
 			return Observable.create(new AesEncryptionObservable(
 					activityOrFragment,
 					biometricDialogBundle,
-					new AesCipherProvider(activityOrFragment.getContext(), keyName, keyInvalidatedByBiometricEnrollment, logger),
+					AesCipherProvider.create(encryptionMethod, activityOrFragment.getContext(), keyName, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger),
 					toEncrypt,
+					toEncryptBuffer,
+					associatedData,
 					new Base64Provider()));
 		} catch (Exception e) {
 			return Observable.error(e);
@@ -73,40 +143,45 @@ class AesEncryptionObservable extends BiometricDialogObservable<BiometricEncrypt
 									BiometricDialogBundle biometricDialogBundle,
 									AesCipherProvider cipherProvider,
 									char[] toEncrypt,
+									SecureBuffer toEncryptBuffer,
+									byte[] associatedData,
 									EncodingProvider encodingProvider) {
 		super(activityOrFragment, biometricDialogBundle);
 		this.cipherProvider = cipherProvider;
 
-		if (toEncrypt == null) {
+		if (toEncrypt == null && toEncryptBuffer == null) {
 			throw new NullPointerException("String to be encrypted is null. Can only encrypt valid strings");
 		}
 		this.toEncrypt = toEncrypt;
+		this.toEncryptBuffer = toEncryptBuffer;
+		this.associatedData = associatedData;
 		this.encodingProvider = encodingProvider;
 	}
 
 	@Nullable
 	@Override
-	protected BiometricPrompt.CryptoObject initCryptoObject(ObservableEmitter<BiometricEncryptionResult> emitter) {
-		try {
-			Cipher cipher = cipherProvider.getCipherForEncryption();
-			return new BiometricPrompt.CryptoObject(cipher);
-		} catch (Exception e) {
-			emitter.onError(e);
-			return null;
-		}
+	protected BiometricPrompt.CryptoObject initCryptoObject(ObservableEmitter<BiometricEncryptionResult> emitter) throws Exception {
+		Cipher cipher = cipherProvider.getCipherForEncryption();
+		return new BiometricPrompt.CryptoObject(cipher);
 	}
 
 	@Override
-	protected void onAuthenticationSucceeded(ObservableEmitter<BiometricEncryptionResult> emitter, BiometricPrompt.AuthenticationResult result) {
+	protected void onAuthenticationSucceeded(ObservableEmitter<BiometricEncryptionResult> emitter, BiometricPrompt.CryptoObject cryptoObject) {
 		try {
-			Cipher cipher = result.getCryptoObject().getCipher();
-			byte[] encryptedBytes = cipher.doFinal(ConversionUtils.toBytes(toEncrypt));
-			byte[] ivBytes = cipher.getParameters().getParameterSpec(IvParameterSpec.class).getIV();
-
-			String encryptedString = CryptoData.fromBytes(encodingProvider, encryptedBytes, ivBytes).toString();
+			Cipher cipher = cryptoObject.getCipher();
+			if (associatedData != null) {
+				cipher.updateAAD(associatedData);
+			}
+			byte[] encryptedBytes = toEncryptBuffer != null
+					? toEncryptBuffer.doFinal(cipher)
+					: cipher.doFinal(ConversionUtils.toBytes(toEncrypt));
+			byte[] ivBytes = cipher.getIV();
+
+			CryptoData cryptoData = CryptoData.fromBytes(encodingProvider, encryptedBytes, ivBytes);
+			String encryptedString = cryptoData.toString();
 			CryptoData.verifyCryptoDataString(encryptedString);
 
-			emitter.onNext(new BiometricEncryptionResult(BiometricResult.AUTHENTICATED, encryptedString));
+			emitter.onNext(new BiometricEncryptionResult(BiometricResult.AUTHENTICATED, encryptedString, cryptoData.toBinary(cipherProvider.encryptionMethod())));
 			emitter.onComplete();
 		} catch (Exception e) {
 			emitter.onError(cipherProvider.mapCipherFinalOperationException(e));
@@ -122,4 +197,9 @@ class AesEncryptionObservable extends BiometricDialogObservable<BiometricEncrypt
 	protected boolean isCryptoObjectRequired() {
 		return true;
 	}
+
+	@Override
+	protected boolean isTimeBound() {
+		return cipherProvider.isTimeBound();
+	}
 }
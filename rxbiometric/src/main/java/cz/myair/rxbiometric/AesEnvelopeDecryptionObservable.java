@@ -0,0 +1,179 @@
+/*
+ * Copyright 2018 Marvin Ramin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.myair.rxbiometric;
+
+import androidx.annotation.Nullable;
+import androidx.biometric.BiometricPrompt;
+
+import java.nio.ByteBuffer;
+
+import javax.crypto.Cipher;
+
+import cz.myair.rxbiometric.data.BiometricDecryptionResult;
+import cz.myair.rxbiometric.data.BiometricEncryptionResult;
+import cz.myair.rxbiometric.data.BiometricResult;
+import io.reactivex.Observable;
+import io.reactivex.ObservableEmitter;
+
+/**
+ * Decrypts data with biometric authentication using {@link EnvelopeCipher}. Initializes a
+ * {@link Cipher} for decryption which can only be used with biometric authentication and uses it
+ * once authentication was successful to unwrap the data key the given data is decrypted with.
+ * <p/>
+ * The data handed in must be previously encrypted by a {@link AesEnvelopeEncryptionObservable}.
+ */
+class AesEnvelopeDecryptionObservable extends BiometricDialogObservable<BiometricDecryptionResult> {
+
+	private final AesCipherProvider cipherProvider;
+	private final String encryptedString;
+	private final ByteBuffer encryptedBytes;
+	private final boolean decryptToBuffer;
+	private final EncodingProvider encodingProvider;
+	private EnvelopeData envelopeData;
+
+	/**
+	 * Creates a new AesEnvelopeDecryptionObservable that will listen to biometric authentication
+	 * to decrypt the given data.
+	 *
+	 * @param activityOrFragment    activity or fragment wrapper
+	 * @param biometricDialogBundle
+	 * @param keyName               keyName to use for the decryption
+	 * @param encrypted             data to encrypt  @return Observable {@link BiometricEncryptionResult}
+	 * @param decryptToBuffer       whether to decrypt into a {@link SecureBuffer} instead of a char[]
+	 * @return Observable result of the decryption
+	 */
+	static Observable<BiometricDecryptionResult> create(ActivityOrFragment activityOrFragment,
+														BiometricDialogBundle biometricDialogBundle,
+														String keyName,
+														String encrypted,
+														boolean decryptToBuffer,
+														boolean keyInvalidatedByBiometricEnrollment,
+														int authenticationValidityDurationSeconds,
+														RxBiometricLogger logger) {
+		return create(activityOrFragment, biometricDialogBundle, keyName, encrypted, null, decryptToBuffer, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger);
+	}
+
+	/**
+	 * Same as {@link #create(ActivityOrFragment, BiometricDialogBundle, String, String, boolean, boolean, int, RxBiometricLogger)}
+	 * for data in binary form. A legacy String given as bytes is decrypted as well.
+	 */
+	static Observable<BiometricDecryptionResult> create(ActivityOrFragment activityOrFragment,
+														BiometricDialogBundle biometricDialogBundle,
+														String keyName,
+														ByteBuffer encrypted,
+														boolean decryptToBuffer,
+														boolean keyInvalidatedByBiometricEnrollment,
+														int authenticationValidityDurationSeconds,
+														RxBiometricLogger logger) {
+		return create(activityOrFragment, biometricDialogBundle, keyName, null, encrypted, decryptToBuffer, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger);
+	}
+
+	private static Observable<BiometricDecryptionResult> create(ActivityOrFragment activityOrFragment,
+																BiometricDialogBundle biometricDialogBundle,
+																String keyName,
+																String encryptedString,
+																ByteBuffer encryptedBytes,
+																boolean decryptToBuffer,
+																boolean keyInvalidatedByBiometricEnrollment,
+																int authenticationValidityDurationSeconds,
+																RxBiometricLogger logger) {
+		try {
+			return Observable.create(new AesEnvelopeDecryptionObservable(
+					activityOrFragment,
+					biometricDialogBundle,
+					new AesCipherProvider(activityOrFragment.getContext(), keyName, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger),
+					encryptedString,
+					encryptedBytes,
+					decryptToBuffer,
+					new Base64Provider()));
+		} catch (Exception e) {
+			return Observable.error(e);
+		}
+	}
+
+	private AesEnvelopeDecryptionObservable(ActivityOrFragment activityOrFragment,
+											BiometricDialogBundle biometricDialogBundle,
+											AesCipherProvider cipherProvider,
+											String encryptedString,
+											ByteBuffer encryptedBytes,
+											boolean decryptToBuffer,
+											EncodingProvider encodingProvider) {
+		super(activityOrFragment, biometricDialogBundle);
+		this.cipherProvider = cipherProvider;
+		this.encryptedString = encryptedString;
+		this.encryptedBytes = encryptedBytes;
+		this.decryptToBuffer = decryptToBuffer;
+		this.encodingProvider = encodingProvider;
+	}
+
+	@Nullable
+	@Override
+	protected BiometricPrompt.CryptoObject initCryptoObject(ObservableEmitter<BiometricDecryptionResult> subscriber) throws Exception {
+		if (envelopeData == null) {
+			// Parsed once, the CryptoObject of a time-bound key is initialized again after the prompt
+			envelopeData = parse();
+		}
+		Cipher cipher = cipherProvider.getCipherForDecryption(envelopeData.getWrappedKey().getIv());
+		return new BiometricPrompt.CryptoObject(cipher);
+	}
+
+	@Override
+	protected void onAuthenticationSucceeded(ObservableEmitter<BiometricDecryptionResult> emitter, BiometricPrompt.CryptoObject cryptoObject) {
+		try {
+			Cipher cipher = cryptoObject.getCipher();
+			if (decryptToBuffer) {
+				SecureBuffer decrypted = EnvelopeCipher.openToBuffer(cipher, envelopeData);
+				emitter.onNext(new BiometricDecryptionResult(BiometricResult.AUTHENTICATED, null, decrypted));
+			} else {
+				byte[] bytes = EnvelopeCipher.open(cipher, envelopeData);
+				emitter.onNext(new BiometricDecryptionResult(BiometricResult.AUTHENTICATED, ConversionUtils.toChars(bytes)));
+			}
+			emitter.onComplete();
+		} catch (Exception e) {
+			emitter.onError(cipherProvider.mapCipherFinalOperationException(e));
+		}
+
+	}
+
+	/**
+	 * @return data to decrypt, given in binary or legacy String form
+	 */
+	private EnvelopeData parse() throws CryptoDataException {
+		if (encryptedBytes == null) {
+			return EnvelopeData.fromString(encodingProvider, encryptedString);
+		}
+		if (CryptoData.isBinary(encryptedBytes)) {
+			return EnvelopeData.fromBinary(encodingProvider, encryptedBytes);
+		}
+		return EnvelopeData.fromString(encodingProvider, CryptoData.toLegacyString(encryptedBytes));
+	}
+
+	@Override
+	protected void onAuthenticationFailed(ObservableEmitter<BiometricDecryptionResult> emitter) {
+		emitter.onNext(new BiometricDecryptionResult(BiometricResult.FAILED, null));
+	}
+
+	@Override
+	protected boolean isCryptoObjectRequired() {
+		return true;
+	}
+
+	@Override
+	protected boolean isTimeBound() {
+		return cipherProvider.isTimeBound();
+	}
+}
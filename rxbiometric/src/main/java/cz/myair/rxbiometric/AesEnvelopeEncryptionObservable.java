@@ -0,0 +1,152 @@
+/*
+ * Copyright 2018 Marvin Ramin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.myair.rxbiometric;
+
+import android.annotation.SuppressLint;
+
+import androidx.annotation.Nullable;
+import androidx.biometric.BiometricPrompt;
+
+import javax.crypto.Cipher;
+
+import cz.myair.rxbiometric.data.BiometricEncryptionResult;
+import cz.myair.rxbiometric.data.BiometricResult;
+import io.reactivex.Observable;
+import io.reactivex.ObservableEmitter;
+
+/**
+ * Encrypts data with biometric authentication using {@link EnvelopeCipher}. Initializes a
+ * {@link Cipher} for encryption which can only be used with biometric authentication and uses it
+ * once authentication was successful to wrap the data key the given data is encrypted with.
+ */
+@SuppressLint("NewApi")
+// SDK check happens in {@link BiometricObservable#subscribe}
+class AesEnvelopeEncryptionObservable extends BiometricDialogObservable<BiometricEncryptionResult> {
+
+	private final char[] toEncrypt;
+	private final SecureBuffer toEncryptBuffer;
+	private final EncodingProvider encodingProvider;
+	private final AesCipherProvider cipherProvider;
+
+	/**
+	 * Creates a new AesEnvelopeEncryptionObservable that will listen to biometric authentication
+	 * to encrypt the given data.
+	 *
+	 * @param activityOrFragment    activity or fragment wrapper
+	 * @param biometricDialogBundle
+	 * @param keyName               name of the key in the keystore
+	 * @param toEncrypt             data to encrypt  @return Observable {@link BiometricEncryptionResult}
+	 */
+	static Observable<BiometricEncryptionResult> create(ActivityOrFragment activityOrFragment,
+														BiometricDialogBundle biometricDialogBundle,
+														String keyName,
+														char[] toEncrypt,
+														boolean keyInvalidatedByBiometricEnrollment,
+														int authenticationValidityDurationSeconds,
+														RxBiometricLogger logger) {
+		return create(activityOrFragment, biometricDialogBundle, keyName, toEncrypt, null, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger);
+	}
+
+	/**
+	 * Same as {@link #create(ActivityOrFragment, BiometricDialogBundle, String, char[], boolean, int, RxBiometricLogger)}
+	 * for data kept in a {@link SecureBuffer}, which is not wiped by the encryption.
+	 */
+	static Observable<BiometricEncryptionResult> create(ActivityOrFragment activityOrFragment,
+														BiometricDialogBundle biometricDialogBundle,
+														String keyName,
+														SecureBuffer toEncrypt,
+														boolean keyInvalidatedByBiometricEnrollment,
+														int authenticationValidityDurationSeconds,
+														RxBiometricLogger logger) {
+		return create(activityOrFragment, biometricDialogBundle, keyName, null, toEncrypt, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger);
+	}
+
+	private static Observable<BiometricEncryptionResult> create(ActivityOrFragment activityOrFragment,
+																BiometricDialogBundle biometricDialogBundle,
+																String keyName,
+																char[] toEncrypt,
+																SecureBuffer toEncryptBuffer,
+																boolean keyInvalidatedByBiometricEnrollment,
+																int authenticationValidityDurationSeconds,
+																RxBiometricLogger logger) {
+		try {
+			return Observable.create(new AesEnvelopeEncryptionObservable(
+					activityOrFragment,
+					biometricDialogBundle,
+					new AesCipherProvider(activityOrFragment.getContext(), keyName, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger),
+					toEncrypt,
+					toEncryptBuffer,
+					new Base64Provider()));
+		} catch (Exception e) {
+			return Observable.error(e);
+		}
+	}
+
+	private AesEnvelopeEncryptionObservable(ActivityOrFragment activityOrFragment,
+											BiometricDialogBundle biometricDialogBundle,
+											AesCipherProvider cipherProvider,
+											char[] toEncrypt,
+											SecureBuffer toEncryptBuffer,
+											EncodingProvider encodingProvider) {
+		super(activityOrFragment, biometricDialogBundle);
+		this.cipherProvider = cipherProvider;
+
+		if (toEncrypt == null && toEncryptBuffer == null) {
+			throw new NullPointerException("String to be encrypted is null. Can only encrypt valid strings");
+		}
+		this.toEncrypt = toEncrypt;
+		this.toEncryptBuffer = toEncryptBuffer;
+		this.encodingProvider = encodingProvider;
+	}
+
+	@Nullable
+	@Override
+	protected BiometricPrompt.CryptoObject initCryptoObject(ObservableEmitter<BiometricEncryptionResult> emitter) throws Exception {
+		Cipher cipher = cipherProvider.getCipherForEncryption();
+		return new BiometricPrompt.CryptoObject(cipher);
+	}
+
+	@Override
+	protected void onAuthenticationSucceeded(ObservableEmitter<BiometricEncryptionResult> emitter, BiometricPrompt.CryptoObject cryptoObject) {
+		try {
+			Cipher cipher = cryptoObject.getCipher();
+			EnvelopeData envelopeData = toEncryptBuffer != null
+					? EnvelopeCipher.seal(cipher, toEncryptBuffer, encodingProvider)
+					: EnvelopeCipher.seal(cipher, ConversionUtils.toBytes(toEncrypt), encodingProvider);
+
+			emitter.onNext(new BiometricEncryptionResult(BiometricResult.AUTHENTICATED, envelopeData.toString(), envelopeData.toBinary()));
+			emitter.onComplete();
+		} catch (Exception e) {
+			emitter.onError(cipherProvider.mapCipherFinalOperationException(e));
+		}
+	}
+
+	@Override
+	protected void onAuthenticationFailed(ObservableEmitter<BiometricEncryptionResult> emitter) {
+		emitter.onNext(new BiometricEncryptionResult(BiometricResult.FAILED, null));
+	}
+
+	@Override
+	protected boolean isCryptoObjectRequired() {
+		return true;
+	}
+
+	@Override
+	protected boolean isTimeBound() {
+		return cipherProvider.isTimeBound();
+	}
+}
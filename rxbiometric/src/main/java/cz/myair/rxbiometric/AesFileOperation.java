@@ -0,0 +1,213 @@
+/*
+ * Copyright 2018 Marvin Ramin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.myair.rxbiometric;
+
+import android.annotation.SuppressLint;
+
+import androidx.biometric.BiometricPrompt;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+
+import javax.crypto.Cipher;
+
+import cz.myair.rxbiometric.data.BiometricAuthenticationResult;
+import cz.myair.rxbiometric.data.BiometricCryptoObjectDecryptionResult;
+import cz.myair.rxbiometric.data.BiometricResult;
+import io.reactivex.Completable;
+import io.reactivex.Observable;
+import io.reactivex.ObservableSource;
+import io.reactivex.Scheduler;
+import io.reactivex.functions.Function;
+
+/**
+ * Encrypts or decrypts a file with a single biometric authentication using {@link FileCipher}.
+ * The file itself is processed on the given {@link Scheduler} once the keystore key wrapped or
+ * unwrapped the data key of the file.
+ */
+@SuppressLint("NewApi")
+// SDK check happens in {@link BiometricObservable#subscribe}
+abstract class AesFileOperation {
+
+	final ActivityOrFragment activityOrFragment;
+	final BiometricDialogBundle biometricDialogBundle;
+	final AesCipherProvider cipherProvider;
+	final File input;
+	final File output;
+	final Scheduler scheduler;
+
+	/**
+	 * Creates a file operation encrypting the given input, which continues an interrupted
+	 * encryption of the same files.
+	 *
+	 * @param activityOrFragment    activity or fragment wrapper
+	 * @param biometricDialogBundle bundle containing dialog texts
+	 * @param keyName               name of the key in the keystore
+	 * @param input                 file to encrypt
+	 * @param output                encrypted file
+	 * @param scheduler             scheduler the file is encrypted on
+	 */
+	static AesFileOperation encryption(ActivityOrFragment activityOrFragment,
+									   BiometricDialogBundle biometricDialogBundle,
+									   String keyName,
+									   File input,
+									   File output,
+									   Scheduler scheduler,
+									   boolean keyInvalidatedByBiometricEnrollment,
+									   int authenticationValidityDurationSeconds,
+									   RxBiometricLogger logger) {
+		return new Encryption(activityOrFragment, biometricDialogBundle,
+				new AesCipherProvider(activityOrFragment.getContext(), keyName, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger),
+				input, output, scheduler);
+	}
+
+	/**
+	 * Creates a file operation decrypting the given input, which continues an interrupted
+	 * decryption of the same files.
+	 *
+	 * @param activityOrFragment    activity or fragment wrapper
+	 * @param biometricDialogBundle bundle containing dialog texts
+	 * @param keyName               name of the key in the keystore
+	 * @param input                 file previously encrypted by an encryption operation
+	 * @param output                decrypted file
+	 * @param scheduler             scheduler the file is decrypted on
+	 */
+	static AesFileOperation decryption(ActivityOrFragment activityOrFragment,
+									   BiometricDialogBundle biometricDialogBundle,
+									   String keyName,
+									   File input,
+									   File output,
+									   Scheduler scheduler,
+									   boolean keyInvalidatedByBiometricEnrollment,
+									   int authenticationValidityDurationSeconds,
+									   RxBiometricLogger logger) {
+		return new Decryption(activityOrFragment, biometricDialogBundle,
+				new AesCipherProvider(activityOrFragment.getContext(), keyName, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger),
+				input, output, scheduler);
+	}
+
+	private AesFileOperation(ActivityOrFragment activityOrFragment,
+							 BiometricDialogBundle biometricDialogBundle,
+							 AesCipherProvider cipherProvider,
+							 File input,
+							 File output,
+							 Scheduler scheduler) {
+		if (input == null || output == null) {
+			throw new NullPointerException("File to be processed is null. Can only process valid files");
+		}
+		this.activityOrFragment = activityOrFragment;
+		this.biometricDialogBundle = biometricDialogBundle;
+		this.cipherProvider = cipherProvider;
+		this.input = input;
+		this.output = output;
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * @return cipher of the keystore key to unlock with biometric authentication
+	 */
+	abstract Cipher initCipher() throws Exception;
+
+	/**
+	 * @param cipher unlocked cipher returned by {@link #initCipher()}
+	 * @return processing of the file
+	 */
+	abstract Completable process(Cipher cipher) throws Exception;
+
+	/**
+	 * @return Observable {@link BiometricAuthenticationResult} for every authentication attempt.
+	 * Will complete once the whole file was processed or the operation has failed entirely.
+	 */
+	Observable<BiometricAuthenticationResult> toObservable() {
+		return CryptoObjectDecryptionObservable.create(activityOrFragment, biometricDialogBundle, new Callable<BiometricPrompt.CryptoObject>() {
+			@Override
+			public BiometricPrompt.CryptoObject call() throws Exception {
+				return new BiometricPrompt.CryptoObject(initCipher());
+			}
+		}, cipherProvider.isTimeBound()).concatMap(new Function<BiometricCryptoObjectDecryptionResult, ObservableSource<BiometricAuthenticationResult>>() {
+			@Override
+			public ObservableSource<BiometricAuthenticationResult> apply(BiometricCryptoObjectDecryptionResult result) {
+				if (!result.isSuccess()) {
+					return Observable.just(new BiometricAuthenticationResult(result.getResult()));
+				}
+				Completable processing;
+				try {
+					processing = process(result.getCryptoObject().getCipher());
+				} catch (Exception e) {
+					return Observable.error(cipherProvider.mapCipherFinalOperationException(e));
+				}
+				return processing
+						.subscribeOn(scheduler)
+						.andThen(Observable.just(new BiometricAuthenticationResult(BiometricResult.AUTHENTICATED)));
+			}
+		});
+	}
+
+	private static class Encryption extends AesFileOperation {
+
+		private StreamingCipher.Header resumedHeader;
+
+		Encryption(ActivityOrFragment activityOrFragment, BiometricDialogBundle biometricDialogBundle, AesCipherProvider cipherProvider, File input, File output, Scheduler scheduler) {
+			super(activityOrFragment, biometricDialogBundle, cipherProvider, input, output, scheduler);
+		}
+
+		@Override
+		Cipher initCipher() throws Exception {
+			// called again after a time-bound key was unlocked, the output may have changed since
+			resumedHeader = null;
+			if (FileCipher.canResume(input, output)) {
+				// the data key of the interrupted encryption has to be unwrapped again
+				resumedHeader = FileCipher.readHeader(output);
+				return cipherProvider.getCipherForDecryption(resumedHeader.keyIv);
+			}
+			return cipherProvider.getCipherForEncryption();
+		}
+
+		@Override
+		Completable process(Cipher cipher) throws Exception {
+			if (resumedHeader != null) {
+				byte[] dataKey = cipher.doFinal(resumedHeader.wrappedKey);
+				return FileCipher.encrypt(input, output, resumedHeader, dataKey, FileCipher.DEFAULT_CHECKPOINT_INTERVAL);
+			}
+			byte[] dataKey = StreamingCipher.createDataKey();
+			byte[] wrappedKey = cipher.doFinal(dataKey);
+			StreamingCipher.Header header = StreamingCipher.createHeader(wrappedKey, cipher.getIV(), StreamingCipher.DEFAULT_SEGMENT_SIZE);
+			return FileCipher.encrypt(input, output, header, dataKey, FileCipher.DEFAULT_CHECKPOINT_INTERVAL);
+		}
+	}
+
+	private static class Decryption extends AesFileOperation {
+
+		private StreamingCipher.Header header;
+
+		Decryption(ActivityOrFragment activityOrFragment, BiometricDialogBundle biometricDialogBundle, AesCipherProvider cipherProvider, File input, File output, Scheduler scheduler) {
+			super(activityOrFragment, biometricDialogBundle, cipherProvider, input, output, scheduler);
+		}
+
+		@Override
+		Cipher initCipher() throws Exception {
+			header = FileCipher.readHeader(input);
+			return cipherProvider.getCipherForDecryption(header.keyIv);
+		}
+
+		@Override
+		Completable process(Cipher cipher) throws Exception {
+			byte[] dataKey = cipher.doFinal(header.wrappedKey);
+			return FileCipher.decrypt(input, output, header, dataKey, FileCipher.DEFAULT_CHECKPOINT_INTERVAL);
+		}
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2018 Marvin Ramin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.myair.rxbiometric;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.os.Build;
+import android.security.keystore.KeyProperties;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.security.spec.AlgorithmParameterSpec;
+
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Provides ciphers for {@link EncryptionMethod#AES_GCM}. Keys are created with the GCM block mode
+ * and can not be used with {@link EncryptionMethod#AES}, so the default key has its own name.
+ */
+class AesGcmCipherProvider extends AesCipherProvider {
+	static final int GCM_TAG_SIZE = 128;
+	static final String DEFAULT_GCM_KEY_NAME = DEFAULT_KEY_NAME + "_gcm";
+
+	AesGcmCipherProvider(@NonNull Context context, @Nullable String keyName, boolean keyInvalidatedByBiometricEnrollment, int authenticationValidityDurationSeconds, RxBiometricLogger logger) {
+		super(context, keyName, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger);
+	}
+
+	@Override
+	String defaultKeyName() {
+		return DEFAULT_GCM_KEY_NAME;
+	}
+
+	@Override
+	EncryptionMethod encryptionMethod() {
+		return EncryptionMethod.AES_GCM;
+	}
+
+	@Override
+	@TargetApi(Build.VERSION_CODES.M)
+	String blockMode() {
+		return KeyProperties.BLOCK_MODE_GCM;
+	}
+
+	@Override
+	@TargetApi(Build.VERSION_CODES.M)
+	String encryptionPadding() {
+		return KeyProperties.ENCRYPTION_PADDING_NONE;
+	}
+
+	@Override
+	AlgorithmParameterSpec parameterSpec(byte[] iv) {
+		return new GCMParameterSpec(GCM_TAG_SIZE, iv);
+	}
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2018 Marvin Ramin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.myair.rxbiometric;
+
+import android.annotation.SuppressLint;
+
+import androidx.biometric.BiometricPrompt;
+
+import org.reactivestreams.Publisher;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+
+import javax.crypto.Cipher;
+
+import cz.myair.rxbiometric.data.BiometricAuthenticationResult;
+import cz.myair.rxbiometric.data.BiometricCryptoObjectDecryptionResult;
+import cz.myair.rxbiometric.data.BiometricResult;
+import io.reactivex.Flowable;
+import io.reactivex.Observable;
+import io.reactivex.ObservableSource;
+import io.reactivex.functions.Action;
+import io.reactivex.functions.Consumer;
+import io.reactivex.functions.Function;
+import io.reactivex.functions.Predicate;
+
+/**
+ * Encrypts or decrypts a stream with a single biometric authentication using
+ * {@link StreamingCipher}. The keystore key is only used once to wrap or unwrap the data key of
+ * the stream, the stream itself is processed in segments afterwards.
+ */
+@SuppressLint("NewApi")
+// SDK check happens in {@link BiometricObservable#subscribe}
+abstract class AesStreamOperation {
+
+	final ActivityOrFragment activityOrFragment;
+	final BiometricDialogBundle biometricDialogBundle;
+	final AesCipherProvider cipherProvider;
+	final InputStream input;
+
+	/**
+	 * Creates a stream operation encrypting the given input.
+	 *
+	 * @param activityOrFragment    activity or fragment wrapper
+	 * @param biometricDialogBundle bundle containing dialog texts
+	 * @param keyName               name of the key in the keystore
+	 * @param input                 plaintext to encrypt
+	 */
+	static AesStreamOperation encryption(ActivityOrFragment activityOrFragment,
+										 BiometricDialogBundle biometricDialogBundle,
+										 String keyName,
+										 InputStream input,
+										 boolean keyInvalidatedByBiometricEnrollment,
+										 int authenticationValidityDurationSeconds,
+										 RxBiometricLogger logger) {
+		return new Encryption(activityOrFragment, biometricDialogBundle,
+				new AesCipherProvider(activityOrFragment.getContext(), keyName, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger),
+				input);
+	}
+
+	/**
+	 * Creates a stream operation decrypting the given input.
+	 *
+	 * @param activityOrFragment    activity or fragment wrapper
+	 * @param biometricDialogBundle bundle containing dialog texts
+	 * @param keyName               name of the key in the keystore
+	 * @param input                 stream previously encrypted by an encryption operation
+	 */
+	static AesStreamOperation decryption(ActivityOrFragment activityOrFragment,
+										 BiometricDialogBundle biometricDialogBundle,
+										 String keyName,
+										 InputStream input,
+										 boolean keyInvalidatedByBiometricEnrollment,
+										 int authenticationValidityDurationSeconds,
+										 RxBiometricLogger logger) {
+		return new Decryption(activityOrFragment, biometricDialogBundle,
+				new AesCipherProvider(activityOrFragment.getContext(), keyName, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger),
+				input);
+	}
+
+	private AesStreamOperation(ActivityOrFragment activityOrFragment,
+							   BiometricDialogBundle biometricDialogBundle,
+							   AesCipherProvider cipherProvider,
+							   InputStream input) {
+		if (input == null) {
+			throw new NullPointerException("Stream to be processed is null. Can only process valid streams");
+		}
+		this.activityOrFragment = activityOrFragment;
+		this.biometricDialogBundle = biometricDialogBundle;
+		this.cipherProvider = cipherProvider;
+		this.input = input;
+	}
+
+	/**
+	 * May be called a second time after the authentication, see
+	 * {@link BiometricDialogObservable#initCryptoObject(io.reactivex.ObservableEmitter)}.
+	 *
+	 * @return cipher of the keystore key to unlock with biometric authentication
+	 */
+	abstract Cipher initCipher() throws Exception;
+
+	/**
+	 * @param cipher unlocked cipher returned by {@link #initCipher()}
+	 * @return output of the stream
+	 */
+	abstract Flowable<ByteBuffer> process(Cipher cipher) throws Exception;
+
+	/**
+	 * @return output of the stream once the user authenticated. Failed authentication attempts
+	 * are not emitted, the prompt stays open until authentication succeeds or fails entirely.
+	 */
+	Flowable<ByteBuffer> toFlowable() {
+		return authenticate()
+				.filter(new Predicate<BiometricCryptoObjectDecryptionResult>() {
+					@Override
+					public boolean test(BiometricCryptoObjectDecryptionResult result) {
+						return result.isSuccess();
+					}
+				})
+				.firstElement()
+				.flatMapPublisher(new Function<BiometricCryptoObjectDecryptionResult, Publisher<ByteBuffer>>() {
+					@Override
+					public Publisher<ByteBuffer> apply(BiometricCryptoObjectDecryptionResult result) throws Exception {
+						return processUnlocked(result);
+					}
+				})
+				.doFinally(closeInput());
+	}
+
+	/**
+	 * @param output stream to write the output to, is not closed by this operation
+	 * @return Observable {@link BiometricAuthenticationResult} for every authentication attempt.
+	 * Will complete once the whole output was written or the operation has failed entirely.
+	 */
+	Observable<BiometricAuthenticationResult> writeTo(final OutputStream output) {
+		return authenticate()
+				.concatMap(new Function<BiometricCryptoObjectDecryptionResult, ObservableSource<BiometricAuthenticationResult>>() {
+					@Override
+					public ObservableSource<BiometricAuthenticationResult> apply(BiometricCryptoObjectDecryptionResult result) throws Exception {
+						if (!result.isSuccess()) {
+							return Observable.just(new BiometricAuthenticationResult(result.getResult()));
+						}
+						return processUnlocked(result)
+								.doOnNext(new Consumer<ByteBuffer>() {
+									@Override
+									public void accept(ByteBuffer buffer) throws IOException {
+										output.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+									}
+								})
+								.ignoreElements()
+								.andThen(Observable.just(new BiometricAuthenticationResult(BiometricResult.AUTHENTICATED)));
+					}
+				})
+				.doFinally(closeInput());
+	}
+
+	private Observable<BiometricCryptoObjectDecryptionResult> authenticate() {
+		return CryptoObjectDecryptionObservable.create(activityOrFragment, biometricDialogBundle, new Callable<BiometricPrompt.CryptoObject>() {
+			@Override
+			public BiometricPrompt.CryptoObject call() throws Exception {
+				return new BiometricPrompt.CryptoObject(initCipher());
+			}
+		}, cipherProvider.isTimeBound());
+	}
+
+	private Flowable<ByteBuffer> processUnlocked(BiometricCryptoObjectDecryptionResult result) {
+		try {
+			return process(result.getCryptoObject().getCipher());
+		} catch (Exception e) {
+			return Flowable.error(cipherProvider.mapCipherFinalOperationException(e));
+		}
+	}
+
+	private Action closeInput() {
+		return new Action() {
+			@Override
+			public void run() throws IOException {
+				input.close();
+			}
+		};
+	}
+
+	private static class Encryption extends AesStreamOperation {
+
+		Encryption(ActivityOrFragment activityOrFragment, BiometricDialogBundle biometricDialogBundle, AesCipherProvider cipherProvider, InputStream input) {
+			super(activityOrFragment, biometricDialogBundle, cipherProvider, input);
+		}
+
+		@Override
+		Cipher initCipher() throws Exception {
+			return cipherProvider.getCipherForEncryption();
+		}
+
+		@Override
+		Flowable<ByteBuffer> process(Cipher cipher) throws Exception {
+			byte[] dataKey = StreamingCipher.createDataKey();
+			byte[] wrappedKey = cipher.doFinal(dataKey);
+			return StreamingCipher.encrypt(input, dataKey, wrappedKey, cipher.getIV(), StreamingCipher.DEFAULT_SEGMENT_SIZE);
+		}
+	}
+
+	private static class Decryption extends AesStreamOperation {
+
+		/**
+		 * Read once, {@link #initCipher()} is called again once a time-bound key was unlocked
+		 * and the input cannot be rewound.
+		 */
+		private StreamingCipher.Header header;
+
+		Decryption(ActivityOrFragment activityOrFragment, BiometricDialogBundle biometricDialogBundle, AesCipherProvider cipherProvider, InputStream input) {
+			super(activityOrFragment, biometricDialogBundle, cipherProvider, input);
+		}
+
+		@Override
+		Cipher initCipher() throws Exception {
+			if (header == null) {
+				header = StreamingCipher.readHeader(input);
+			}
+			return cipherProvider.getCipherForDecryption(header.keyIv);
+		}
+
+		@Override
+		Flowable<ByteBuffer> process(Cipher cipher) throws Exception {
+			byte[] dataKey = cipher.doFinal(header.wrappedKey);
+			return StreamingCipher.decrypt(input, header, dataKey);
+		}
+	}
+}
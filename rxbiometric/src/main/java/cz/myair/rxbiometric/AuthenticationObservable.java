@@ -54,7 +54,7 @@ class AuthenticationObservable extends BiometricDialogObservable<BiometricAuthen
 	}
 
 	@Override
-	protected void onAuthenticationSucceeded(ObservableEmitter<BiometricAuthenticationResult> emitter, BiometricPrompt.AuthenticationResult result) {
+	protected void onAuthenticationSucceeded(ObservableEmitter<BiometricAuthenticationResult> emitter, BiometricPrompt.CryptoObject cryptoObject) {
 		emitter.onNext(new BiometricAuthenticationResult(BiometricResult.AUTHENTICATED));
 		emitter.onComplete();
 	}
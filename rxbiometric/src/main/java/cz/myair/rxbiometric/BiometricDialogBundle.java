@@ -18,6 +18,8 @@ package cz.myair.rxbiometric;
 
 import androidx.annotation.Nullable;
 
+import java.util.concurrent.Executor;
+
 class BiometricDialogBundle {
 
 	private final int titleText;
@@ -27,17 +29,26 @@ class BiometricDialogBundle {
 	private final Integer descriptionText;
 	private final int negativeButtonText;
 	private final boolean confirmationRequired;
+	private final Executor callbackExecutor;
+	private final int promptPriority;
+	private final PromptQueue promptQueue;
 
 	BiometricDialogBundle(int titleText,
 						  @Nullable Integer subtitleText,
 						  @Nullable Integer descriptionText,
 						  int negativeButtonText,
-						  boolean confirmationRequired) {
+						  boolean confirmationRequired,
+						  Executor callbackExecutor,
+						  int promptPriority,
+						  PromptQueue promptQueue) {
 		this.titleText = titleText;
 		this.subtitleText = subtitleText;
 		this.descriptionText = descriptionText;
 		this.negativeButtonText = negativeButtonText;
 		this.confirmationRequired = confirmationRequired;
+		this.callbackExecutor = callbackExecutor;
+		this.promptPriority = promptPriority;
+		this.promptQueue = promptQueue;
 	}
 
 	public int getTitleText() {
@@ -61,4 +72,16 @@ class BiometricDialogBundle {
 	public boolean isConfirmationRequired() {
 		return confirmationRequired;
 	}
+
+	public Executor getCallbackExecutor() {
+		return callbackExecutor;
+	}
+
+	public int getPromptPriority() {
+		return promptPriority;
+	}
+
+	public PromptQueue getPromptQueue() {
+		return promptQueue;
+	}
 }
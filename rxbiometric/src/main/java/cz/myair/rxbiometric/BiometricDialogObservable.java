@@ -16,16 +16,22 @@
 
 package cz.myair.rxbiometric;
 
+import android.security.keystore.UserNotAuthenticatedException;
+
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.biometric.BiometricManager;
 import androidx.biometric.BiometricPrompt;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
 
 import cz.myair.rxbiometric.data.BiometricAuthenticationException;
 import io.reactivex.Emitter;
 import io.reactivex.ObservableEmitter;
 import io.reactivex.ObservableOnSubscribe;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.functions.Cancellable;
 
 /**
  * Authenticates the user with their fingerprint via a {@link BiometricPrompt}.
@@ -42,73 +48,192 @@ abstract class BiometricDialogObservable<T> implements ObservableOnSubscribe<T>
 
 	@Override
 	public void subscribe(ObservableEmitter<T> emitter) {
-		Executor executor = new Executor() {
-			@Override
-			public void execute(@NonNull Runnable runnable) {
-				runnable.run();
-			}
-		};
+		Executor executor = biometricDialogBundle.getCallbackExecutor();
 
 		String subtitleText = biometricDialogBundle.getSubtitleText() != null ? activityOrFragment.getContext().getString(biometricDialogBundle.getSubtitleText()) : null;
 		String descriptionText = biometricDialogBundle.getDescriptionText() != null ? activityOrFragment.getContext().getString(biometricDialogBundle.getDescriptionText()) : null;
 
-		BiometricPrompt.CryptoObject cryptoObject = initCryptoObject(emitter);
+		BiometricPrompt.CryptoObject cryptoObject;
+		try {
+			cryptoObject = initCryptoObject(emitter);
+		} catch (UserNotAuthenticatedException e) {
+			if (!isTimeBound()) {
+				emitter.onError(e);
+				return;
+			}
+			// Authentication of the time-bound key expired, authenticate without a CryptoObject to unlock it again
+			authenticate(emitter, subtitleText, descriptionText, executor, null);
+			return;
+		} catch (Exception e) {
+			emitter.onError(e);
+			return;
+		}
 		if (cryptoObject == null && isCryptoObjectRequired()) {
 			return;
 		}
-		BiometricPrompt.AuthenticationCallback authenticationCallback = createAuthenticationCallback(emitter);
-		BiometricPrompt.PromptInfo promptInfo = new BiometricPrompt.PromptInfo.Builder()
+		if (cryptoObject != null && isTimeBound()) {
+			// The time-bound key is still unlocked from a previous authentication
+			onAuthenticationSucceeded(emitter, cryptoObject);
+			return;
+		}
+		authenticate(emitter, subtitleText, descriptionText, executor, cryptoObject);
+	}
+
+	private void authenticate(final ObservableEmitter<T> emitter,
+							  String subtitleText,
+							  String descriptionText,
+							  final Executor executor,
+							  @Nullable final BiometricPrompt.CryptoObject cryptoObject) {
+		final PromptCallback<T> authenticationCallback = new PromptCallback<>(this, emitter);
+		BiometricPrompt.PromptInfo.Builder promptInfoBuilder = new BiometricPrompt.PromptInfo.Builder()
 				.setTitle(activityOrFragment.getContext().getString(biometricDialogBundle.getTitleText()))
 				.setSubtitle(subtitleText)
 				.setDescription(descriptionText)
 				.setNegativeButtonText(activityOrFragment.getContext().getString(biometricDialogBundle.getNegativeButtonText()))
-				.setConfirmationRequired(biometricDialogBundle.isConfirmationRequired())
-				.build();
+				.setConfirmationRequired(biometricDialogBundle.isConfirmationRequired());
+		if (isTimeBound()) {
+			// Only strong biometrics unlock keys in the Android KeyStore
+			promptInfoBuilder.setAllowedAuthenticators(BiometricManager.Authenticators.BIOMETRIC_STRONG);
+		}
+		final BiometricPrompt.PromptInfo promptInfo = promptInfoBuilder.build();
 
-		BiometricPrompt biometricPrompt;
+		final AtomicReference<BiometricPrompt> shownPrompt = new AtomicReference<>();
+		// The keystore work above may run on any thread, the prompt has to be shown from the main thread
+		final Runnable showPrompt = new Runnable() {
+			@Override
+			public void run() {
+				if (emitter.isDisposed()) {
+					return;
+				}
+				BiometricPrompt biometricPrompt = createBiometricPrompt(executor, authenticationCallback);
+				shownPrompt.set(biometricPrompt);
+				if (emitter.isDisposed()) {
+					return;
+				}
+				if (cryptoObject == null) {
+					biometricPrompt.authenticate(promptInfo);
+				} else {
+					biometricPrompt.authenticate(promptInfo, cryptoObject);
+				}
+			}
+		};
+		// Only one prompt can be shown at a time, wait for the turn of this operation
+		final Disposable turn = biometricDialogBundle.getPromptQueue().enqueue(biometricDialogBundle.getPromptPriority(), new Runnable() {
+			@Override
+			public void run() {
+				MainThreadExecutor.get().execute(showPrompt);
+			}
+		});
+		emitter.setCancellable(new Cancellable() {
+			@Override
+			public void cancel() {
+				// The prompt keeps its callback beyond the lifecycle of the Activity or Fragment
+				authenticationCallback.release();
+				final BiometricPrompt biometricPrompt = shownPrompt.getAndSet(null);
+				if (biometricPrompt == null) {
+					turn.dispose();
+					return;
+				}
+				MainThreadExecutor.get().execute(new Runnable() {
+					@Override
+					public void run() {
+						biometricPrompt.cancelAuthentication();
+						// Only start the next prompt once this one is gone
+						turn.dispose();
+					}
+				});
+			}
+		});
+	}
+
+	BiometricPrompt createBiometricPrompt(Executor executor, BiometricPrompt.AuthenticationCallback authenticationCallback) {
 		if (activityOrFragment.hasActivity()) {
-			biometricPrompt = new BiometricPrompt(activityOrFragment.getActivity(), executor, authenticationCallback);
+			return new BiometricPrompt(activityOrFragment.getActivity(), executor, authenticationCallback);
 		} else {
-			biometricPrompt = new BiometricPrompt(activityOrFragment.getFragment(), executor, authenticationCallback);
+			return new BiometricPrompt(activityOrFragment.getFragment(), executor, authenticationCallback);
 		}
-		if (cryptoObject == null) {
-			biometricPrompt.authenticate(promptInfo);
-		} else {
-			biometricPrompt.authenticate(promptInfo, cryptoObject);
+	}
+
+	private void onPromptSucceeded(ObservableEmitter<T> emitter, BiometricPrompt.AuthenticationResult result) {
+		BiometricPrompt.CryptoObject cryptoObject = result.getCryptoObject();
+		if (cryptoObject == null && isTimeBound() && isCryptoObjectRequired()) {
+			// The time-bound key was unlocked by this authentication
+			try {
+				cryptoObject = initCryptoObject(emitter);
+			} catch (Exception e) {
+				emitter.onError(e);
+				return;
+			}
+			if (cryptoObject == null) {
+				return;
+			}
 		}
+		onAuthenticationSucceeded(emitter, cryptoObject);
 	}
 
-	private BiometricPrompt.AuthenticationCallback createAuthenticationCallback(final ObservableEmitter<T> emitter) {
-		return new BiometricPrompt.AuthenticationCallback() {
-			@Override
-			public void onAuthenticationError(int errorCode, @NonNull CharSequence errorMessage) {
-				if (!emitter.isDisposed()) {
-					emitter.onError(new BiometricAuthenticationException(errorCode, errorMessage));
-				}
+	/**
+	 * Callback of the {@link BiometricPrompt} that forwards to the observable until the
+	 * subscription is disposed. Afterwards it no longer references the observable, its
+	 * {@link BiometricPrompt.CryptoObject} or the Activity or Fragment.
+	 */
+	private static final class PromptCallback<T> extends BiometricPrompt.AuthenticationCallback {
+
+		private volatile BiometricDialogObservable<T> observable;
+		private volatile ObservableEmitter<T> emitter;
+
+		PromptCallback(BiometricDialogObservable<T> observable, ObservableEmitter<T> emitter) {
+			this.observable = observable;
+			this.emitter = emitter;
+		}
+
+		void release() {
+			observable = null;
+			emitter = null;
+		}
+
+		@Override
+		public void onAuthenticationError(int errorCode, @NonNull CharSequence errorMessage) {
+			ObservableEmitter<T> emitter = this.emitter;
+			if (emitter != null && !emitter.isDisposed()) {
+				emitter.onError(new BiometricAuthenticationException(errorCode, errorMessage));
 			}
+		}
 
-			@Override
-			public void onAuthenticationFailed() {
-				BiometricDialogObservable.this.onAuthenticationFailed(emitter);
+		@Override
+		public void onAuthenticationFailed() {
+			BiometricDialogObservable<T> observable = this.observable;
+			ObservableEmitter<T> emitter = this.emitter;
+			if (observable != null && emitter != null) {
+				observable.onAuthenticationFailed(emitter);
 			}
+		}
 
-			@Override
-			public void onAuthenticationSucceeded(@NonNull BiometricPrompt.AuthenticationResult result) {
-				BiometricDialogObservable.this.onAuthenticationSucceeded(emitter, result);
+		@Override
+		public void onAuthenticationSucceeded(@NonNull BiometricPrompt.AuthenticationResult result) {
+			BiometricDialogObservable<T> observable = this.observable;
+			ObservableEmitter<T> emitter = this.emitter;
+			if (observable != null && emitter != null) {
+				observable.onPromptSucceeded(emitter, result);
 			}
-		};
+		}
 	}
 
 	/**
 	 * Method to initialize the {@link BiometricPrompt.CryptoObject}
 	 * used for the fingerprint authentication.
 	 *
+	 * <p/>
+	 * Called again after the authentication for keys that are unlocked for a while, see
+	 * {@link #isTimeBound()}.
+	 *
 	 * @param subscriber current subscriber
 	 * @return a {@link BiometricPrompt.CryptoObject}
 	 * that is to be used in the authentication. May be {@code null}.
+	 * @throws Exception if the {@link BiometricPrompt.CryptoObject} cannot be created, will be
+	 *                   passed to the subscriber
 	 */
 	@Nullable
-	protected abstract BiometricPrompt.CryptoObject initCryptoObject(ObservableEmitter<T> subscriber);
+	protected abstract BiometricPrompt.CryptoObject initCryptoObject(ObservableEmitter<T> subscriber) throws Exception;
 
 	/**
 	 * Action to execute when fingerprint authentication was successful.
@@ -116,10 +241,11 @@ abstract class BiometricDialogObservable<T> implements ObservableOnSubscribe<T>
 	 * <p/>
 	 * Should call {@link Emitter#onComplete()}.
 	 *
-	 * @param emitter current subscriber
-	 * @param result  result of the successful fingerprint authentication
+	 * @param emitter      current subscriber
+	 * @param cryptoObject unlocked {@link BiometricPrompt.CryptoObject} returned by
+	 *                     {@link #initCryptoObject(ObservableEmitter)}, {@code null} if none was used
 	 */
-	protected abstract void onAuthenticationSucceeded(ObservableEmitter<T> emitter, BiometricPrompt.AuthenticationResult result);
+	protected abstract void onAuthenticationSucceeded(ObservableEmitter<T> emitter, @Nullable BiometricPrompt.CryptoObject cryptoObject);
 
 	/**
 	 * Action to execute when the fingerprint authentication failed.
@@ -133,4 +259,14 @@ abstract class BiometricDialogObservable<T> implements ObservableOnSubscribe<T>
 	protected abstract void onAuthenticationFailed(ObservableEmitter<T> emitter);
 
 	protected abstract boolean isCryptoObjectRequired();
+
+	/**
+	 * @return {@code true} if the key used by the {@link BiometricPrompt.CryptoObject} stays
+	 * unlocked for a while after an authentication. The operation then runs without a prompt while
+	 * the key is unlocked and falls back to a prompt without {@link BiometricPrompt.CryptoObject}
+	 * once it is locked again.
+	 */
+	protected boolean isTimeBound() {
+		return false;
+	}
 }
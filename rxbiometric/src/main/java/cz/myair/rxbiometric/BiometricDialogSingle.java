@@ -0,0 +1,114 @@
+/*
+ * Copyright 2018 Marvin Ramin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.myair.rxbiometric;
+
+import java.util.NoSuchElementException;
+
+import cz.myair.rxbiometric.data.BiometricAuthenticationResult;
+import io.reactivex.Observable;
+import io.reactivex.ObservableSource;
+import io.reactivex.Observer;
+import io.reactivex.Single;
+import io.reactivex.SingleEmitter;
+import io.reactivex.SingleOnSubscribe;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.functions.Consumer;
+
+/**
+ * Emits the successful result of a {@link BiometricDialogObservable} as a {@link Single}.
+ * <p/>
+ * Failed authentication attempts, after which the prompt stays open, are passed to a separate
+ * observer instead. This replaces a {@code filter()} and {@code firstOrError()} chain with a
+ * single operator. A source shared by several Singles passes its failed attempts on itself, see
+ * {@link #forwardFailedAttempts(Observable, Observer)}, so that each attempt is passed on once.
+ */
+final class BiometricDialogSingle<T extends BiometricAuthenticationResult> implements SingleOnSubscribe<T> {
+
+	private final ObservableSource<T> source;
+	private final Observer<? super T> failedAttempts;
+
+	/**
+	 * @param source         results of every authentication attempt, see {@link BiometricDialogObservable}
+	 * @param failedAttempts receives failed authentication attempts, is never completed
+	 * @return Single emitting the first successful result
+	 */
+	static <T extends BiometricAuthenticationResult> Single<T> create(Observable<T> source, Observer<? super T> failedAttempts) {
+		return Single.create(new BiometricDialogSingle<>(source, failedAttempts));
+	}
+
+	/**
+	 * @param source results of every authentication attempt, passing failed attempts on with
+	 *               {@link #forwardFailedAttempts(Observable, Observer)}
+	 * @return Single emitting the first successful result
+	 */
+	static <T extends BiometricAuthenticationResult> Single<T> create(Observable<T> source) {
+		return Single.create(new BiometricDialogSingle<>(source, null));
+	}
+
+	/**
+	 * @param source         results of every authentication attempt, before they are shared
+	 * @param failedAttempts receives failed authentication attempts, is never completed
+	 * @return source passing failed attempts on once for all of its subscribers
+	 */
+	static <T extends BiometricAuthenticationResult> Observable<T> forwardFailedAttempts(Observable<T> source, final Observer<? super T> failedAttempts) {
+		return source.doOnNext(new Consumer<T>() {
+			@Override
+			public void accept(T result) {
+				if (!result.isSuccess()) {
+					failedAttempts.onNext(result);
+				}
+			}
+		});
+	}
+
+	private BiometricDialogSingle(ObservableSource<T> source, Observer<? super T> failedAttempts) {
+		this.source = source;
+		this.failedAttempts = failedAttempts;
+	}
+
+	@Override
+	public void subscribe(final SingleEmitter<T> emitter) {
+		source.subscribe(new Observer<T>() {
+			@Override
+			public void onSubscribe(Disposable disposable) {
+				emitter.setDisposable(disposable);
+			}
+
+			@Override
+			public void onNext(T result) {
+				if (result.isSuccess()) {
+					// Disposes the source as well
+					emitter.onSuccess(result);
+				} else if (failedAttempts != null) {
+					failedAttempts.onNext(result);
+				}
+			}
+
+			@Override
+			public void onError(Throwable throwable) {
+				emitter.onError(throwable);
+			}
+
+			@Override
+			public void onComplete() {
+				if (!emitter.isDisposed()) {
+					emitter.onError(new NoSuchElementException("Operation completed without a successful authentication"));
+				}
+			}
+		});
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2018 Marvin Ramin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.myair.rxbiometric;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+
+import cz.myair.rxbiometric.data.BiometricAuthenticationResult;
+import cz.myair.rxbiometric.data.BiometricDecryptionResult;
+import cz.myair.rxbiometric.data.BiometricEncryptionResult;
+import io.reactivex.Observable;
+import io.reactivex.Single;
+import io.reactivex.SingleSource;
+import io.reactivex.functions.Predicate;
+
+/**
+ * Encrypts and decrypts values with a key that was unlocked once by
+ * {@link RxBiometric#openSession(String)}.
+ * <p/>
+ * Operations of an open session run without a prompt. A session is open until it is closed or
+ * the authentication validity duration of its key has passed, operations on a session that is no
+ * longer open fail with an {@link IllegalStateException}.
+ */
+public final class BiometricSession implements Closeable {
+
+	private final RxBiometric rxBiometric;
+	@Nullable
+	private final String keyName;
+	private final long expiresAtNanos;
+	private volatile boolean closed;
+
+	BiometricSession(RxBiometric rxBiometric, @Nullable String keyName, long timeToLiveNanos) {
+		this.rxBiometric = rxBiometric;
+		this.keyName = keyName;
+		this.expiresAtNanos = System.nanoTime() + timeToLiveNanos;
+	}
+
+	/**
+	 * @param toEncrypt data to encrypt, will be cleared
+	 * @return Single {@link BiometricEncryptionResult} of the encryption
+	 * @see RxBiometric#encrypt(String, char[])
+	 */
+	@NonNull
+	public Single<BiometricEncryptionResult> encrypt(@NonNull final char[] toEncrypt) {
+		return run(new Callable<Observable<BiometricEncryptionResult>>() {
+			@Override
+			public Observable<BiometricEncryptionResult> call() {
+				return rxBiometric.encrypt(keyName, toEncrypt);
+			}
+		});
+	}
+
+	/**
+	 * @param toEncrypt data to encrypt, is not wiped by the encryption
+	 * @return Single {@link BiometricEncryptionResult} of the encryption
+	 * @see RxBiometric#encrypt(String, SecureBuffer)
+	 */
+	@NonNull
+	public Single<BiometricEncryptionResult> encrypt(@NonNull final SecureBuffer toEncrypt) {
+		return run(new Callable<Observable<BiometricEncryptionResult>>() {
+			@Override
+			public Observable<BiometricEncryptionResult> call() {
+				return rxBiometric.encrypt(keyName, toEncrypt);
+			}
+		});
+	}
+
+	/**
+	 * @param encrypted data to decrypt
+	 * @return Single {@link BiometricDecryptionResult} of the decryption
+	 * @see RxBiometric#decrypt(String, String)
+	 */
+	@NonNull
+	public Single<BiometricDecryptionResult> decrypt(@NonNull final String encrypted) {
+		return run(new Callable<Observable<BiometricDecryptionResult>>() {
+			@Override
+			public Observable<BiometricDecryptionResult> call() {
+				return rxBiometric.decrypt(keyName, encrypted);
+			}
+		});
+	}
+
+	/**
+	 * @param encrypted data to decrypt in binary form
+	 * @return Single {@link BiometricDecryptionResult} of the decryption
+	 * @see RxBiometric#decrypt(String, ByteBuffer)
+	 */
+	@NonNull
+	public Single<BiometricDecryptionResult> decrypt(@NonNull final ByteBuffer encrypted) {
+		return run(new Callable<Observable<BiometricDecryptionResult>>() {
+			@Override
+			public Observable<BiometricDecryptionResult> call() {
+				return rxBiometric.decrypt(keyName, encrypted);
+			}
+		});
+	}
+
+	/**
+	 * @param encrypted data to decrypt
+	 * @return Single {@link BiometricDecryptionResult} providing the decrypted data as a
+	 * {@link SecureBuffer}
+	 * @see RxBiometric#decryptToBuffer(String, String)
+	 */
+	@NonNull
+	public Single<BiometricDecryptionResult> decryptToBuffer(@NonNull final String encrypted) {
+		return run(new Callable<Observable<BiometricDecryptionResult>>() {
+			@Override
+			public Observable<BiometricDecryptionResult> call() {
+				return rxBiometric.decryptToBuffer(keyName, encrypted);
+			}
+		});
+	}
+
+	/**
+	 * @return {@code true} if the session was neither closed nor has expired
+	 */
+	public boolean isOpen() {
+		return !closed && System.nanoTime() - expiresAtNanos < 0;
+	}
+
+	/**
+	 * Closes the session, later operations fail. The key itself stays unlocked until its
+	 * authentication validity duration has passed.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+	}
+
+	private <T extends BiometricAuthenticationResult> Single<T> run(final Callable<Observable<T>> operation) {
+		return Single.defer(new Callable<SingleSource<T>>() {
+			@Override
+			public SingleSource<T> call() throws Exception {
+				if (!isOpen()) {
+					return Single.error(new IllegalStateException("BiometricSession is closed or has expired."));
+				}
+				return operation.call()
+						.filter(new Predicate<T>() {
+							@Override
+							public boolean test(T result) {
+								return result.isSuccess();
+							}
+						})
+						.firstOrError();
+			}
+		});
+	}
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2018 Marvin Ramin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.myair.rxbiometric;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import cz.myair.rxbiometric.data.BiometricDecryptionResult;
+import cz.myair.rxbiometric.data.BiometricEncryptionResult;
+import io.reactivex.Completable;
+import io.reactivex.CompletableSource;
+import io.reactivex.Maybe;
+import io.reactivex.Single;
+import io.reactivex.SingleSource;
+import io.reactivex.functions.Action;
+import io.reactivex.functions.Function;
+
+/**
+ * Persistent store of values encrypted with biometric authentication, opened by
+ * {@link RxBiometric#openVault(File, String)}.
+ * <p/>
+ * Values are encrypted and decrypted by the {@link RxBiometric} instance the vault was opened
+ * with and stored in an append-only log file, so a write only appends the changed value instead
+ * of rewriting the whole store. Values are found by a memory-mapped hash index in a second file
+ * next to it, so no index is held in memory and opening a large vault does not read all of it.
+ * Space of replaced and removed values is reclaimed by a
+ * compaction in the background. A write that was interrupted by the process dying is discarded
+ * when the vault is opened again, all previous values are kept.
+ * <p/>
+ * With {@link EncryptionMethod#AES_GCM} the name of a value is authenticated as associated data,
+ * so a value copied to another name in the file fails to decrypt.
+ * <p/>
+ * File access runs on the scheduler of the {@link RxBiometric} instance, results are delivered
+ * on its result scheduler.
+ */
+public final class BiometricVault implements Closeable {
+
+	/**
+	 * Garbage in the log is only compacted once it exceeds this size as well as the size of
+	 * the live values.
+	 */
+	static final long MIN_COMPACTION_BYTES = 64 * 1024;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final RxBiometric rxBiometric;
+	@Nullable
+	private final String keyName;
+	private final VaultLog log;
+	private final AtomicBoolean compacting = new AtomicBoolean();
+
+	private BiometricVault(RxBiometric rxBiometric, @Nullable String keyName, VaultLog log) {
+		this.rxBiometric = rxBiometric;
+		this.keyName = keyName;
+		this.log = log;
+	}
+
+	static BiometricVault open(RxBiometric rxBiometric, File file, @Nullable String keyName) throws IOException {
+		return new BiometricVault(rxBiometric, keyName, VaultLog.open(file));
+	}
+
+	/**
+	 * Encrypts the value and stores it under the given name, replacing a previous value.
+	 *
+	 * @param name  name of the value
+	 * @param value value to encrypt, will be cleared
+	 * @return Completable that completes once the encrypted value was written
+	 * @see RxBiometric#encryptSingle(String, char[])
+	 */
+	@NonNull
+	public Completable put(@NonNull final String name, @NonNull char[] value) {
+		return encrypt(name, value)
+				.observeOn(rxBiometric.getScheduler())
+				.flatMapCompletable(new Function<BiometricEncryptionResult, CompletableSource>() {
+					@Override
+					public CompletableSource apply(final BiometricEncryptionResult result) {
+						return write(new Action() {
+							@Override
+							public void run() throws Exception {
+								log.put(name, result.getEncryptedBytes());
+							}
+						});
+					}
+				})
+				.observeOn(rxBiometric.getResultScheduler());
+	}
+
+	/**
+	 * Decrypts the value stored under the given name.
+	 *
+	 * @param name name of the value
+	 * @return Maybe {@link BiometricDecryptionResult} of the value, empty if there is none
+	 * @see RxBiometric#decryptSingle(String, ByteBuffer)
+	 */
+	@NonNull
+	public Maybe<BiometricDecryptionResult> get(@NonNull final String name) {
+		return Maybe.fromCallable(new Callable<byte[]>() {
+			@Override
+			public byte[] call() throws Exception {
+				return log.get(name);
+			}
+		})
+				.subscribeOn(rxBiometric.getScheduler())
+				.flatMapSingleElement(new Function<byte[], SingleSource<BiometricDecryptionResult>>() {
+					@Override
+					public SingleSource<BiometricDecryptionResult> apply(byte[] encrypted) {
+						return decrypt(name, ByteBuffer.wrap(encrypted));
+					}
+				})
+				.observeOn(rxBiometric.getResultScheduler());
+	}
+
+	/**
+	 * Removes the value stored under the given name. Does not require authentication.
+	 *
+	 * @param name name of the value
+	 * @return Completable that completes once the removal was written
+	 */
+	@NonNull
+	public Completable remove(@NonNull final String name) {
+		return write(new Action() {
+			@Override
+			public void run() throws Exception {
+				log.remove(name);
+			}
+		})
+				.subscribeOn(rxBiometric.getScheduler())
+				.observeOn(rxBiometric.getResultScheduler());
+	}
+
+	/**
+	 * Looks the name up in the index file of the vault, which takes constant time regardless
+	 * of the number of stored values. Does not require authentication.
+	 *
+	 * @param name name of the value
+	 * @return Single that emits {@code true} if a value is stored under the given name
+	 */
+	@NonNull
+	public Single<Boolean> contains(@NonNull final String name) {
+		return Single.fromCallable(new Callable<Boolean>() {
+			@Override
+			public Boolean call() throws Exception {
+				return log.contains(name);
+			}
+		})
+				.subscribeOn(rxBiometric.getScheduler())
+				.observeOn(rxBiometric.getResultScheduler());
+	}
+
+	/**
+	 * Reads the names from the vault file, which takes time proportional to the number of
+	 * stored values. Does not require authentication.
+	 *
+	 * @return Single of the names of all stored values
+	 */
+	@NonNull
+	public Single<Set<String>> names() {
+		return Single.fromCallable(new Callable<Set<String>>() {
+			@Override
+			public Set<String> call() throws Exception {
+				return log.names();
+			}
+		})
+				.subscribeOn(rxBiometric.getScheduler())
+				.observeOn(rxBiometric.getResultScheduler());
+	}
+
+	/**
+	 * Reclaims the space of replaced and removed values. Runs automatically once they take up
+	 * more space than the stored values.
+	 *
+	 * @return Completable that completes once the vault was compacted
+	 */
+	@NonNull
+	public Completable compact() {
+		return Completable.fromAction(new Action() {
+			@Override
+			public void run() throws Exception {
+				log.compact();
+			}
+		})
+				.subscribeOn(rxBiometric.getScheduler())
+				.observeOn(rxBiometric.getResultScheduler());
+	}
+
+	/**
+	 * Closes the log file. Operations after closing fail.
+	 */
+	@Override
+	public void close() throws IOException {
+		log.close();
+	}
+
+	private Single<BiometricEncryptionResult> encrypt(String name, char[] value) {
+		if (rxBiometric.getEncryptionMethod() == EncryptionMethod.AES_GCM) {
+			return rxBiometric.encryptSingle(keyName, value, name.getBytes(UTF_8));
+		}
+		return rxBiometric.encryptSingle(keyName, value);
+	}
+
+	private Single<BiometricDecryptionResult> decrypt(String name, ByteBuffer encrypted) {
+		if (rxBiometric.getEncryptionMethod() == EncryptionMethod.AES_GCM) {
+			return rxBiometric.decryptSingle(keyName, encrypted, name.getBytes(UTF_8));
+		}
+		return rxBiometric.decryptSingle(keyName, encrypted);
+	}
+
+	private Completable write(final Action write) {
+		return Completable.fromAction(new Action() {
+			@Override
+			public void run() throws Exception {
+				write.run();
+				compactIfNeeded();
+			}
+		});
+	}
+
+	private void compactIfNeeded() {
+		long garbageBytes = log.garbageBytes();
+		if (garbageBytes < MIN_COMPACTION_BYTES || garbageBytes < log.liveBytes() || !compacting.compareAndSet(false, true)) {
+			return;
+		}
+		Completable.fromAction(new Action() {
+			@Override
+			public void run() throws Exception {
+				log.compact();
+			}
+		})
+				.subscribeOn(rxBiometric.getScheduler())
+				.doFinally(new Action() {
+					@Override
+					public void run() {
+						compacting.set(false);
+					}
+				})
+				// The log is left unchanged on errors, compaction is tried again after the next write
+				.onErrorComplete()
+				.subscribe();
+	}
+}
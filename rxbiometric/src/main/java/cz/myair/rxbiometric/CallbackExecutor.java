@@ -0,0 +1,58 @@
+/*
+ * Copyright 2018 Marvin Ramin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.myair.rxbiometric;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Default {@link Executor} for the callbacks of the {@link androidx.biometric.BiometricPrompt}.
+ * <p/>
+ * Successful authentications finish the cipher operation in their callback, which must not
+ * block the main thread. Callbacks of a prompt have to be delivered in order, so a single
+ * background thread shared by all prompts is used. The thread is only started once the first
+ * callback is delivered.
+ */
+final class CallbackExecutor {
+
+	private static final String THREAD_NAME = "RxBiometric-callback";
+
+	private CallbackExecutor() {
+	}
+
+	/**
+	 * @return the shared callback executor
+	 */
+	static Executor shared() {
+		return Shared.EXECUTOR;
+	}
+
+	private static final class Shared {
+		static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(@NonNull Runnable runnable) {
+				Thread thread = new Thread(runnable, THREAD_NAME);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+}
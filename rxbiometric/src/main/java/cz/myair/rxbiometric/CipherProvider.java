@@ -30,7 +30,6 @@ import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.UnrecoverableKeyException;
 import java.security.cert.CertificateException;
-import java.util.Enumeration;
 
 import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
@@ -39,28 +38,54 @@ import javax.crypto.NoSuchPaddingException;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import cz.myair.rxbiometric.data.BiometricWarmUpResult;
+
 abstract class CipherProvider {
 	static final String ANDROID_KEY_STORE = "AndroidKeyStore";
-	private static final String DEFAULT_KEY_NAME = "rxfingerprint_default"; // Must be kept as rxfingerprint for compatibility reasons
+	static final String DEFAULT_KEY_NAME = "rxfingerprint_default"; // Must be kept as rxfingerprint for compatibility reasons
 
 	final String keyName;
-	final KeyStore keyStore;
 	final boolean invalidatedByBiometricEnrollment;
+	final int authenticationValidityDurationSeconds;
 	private final RxBiometricLogger logger;
 
 	CipherProvider(@NonNull Context context,
 				   @Nullable String keyName,
 				   boolean keyInvalidatedByBiometricEnrollment,
-				   @NonNull RxBiometricLogger logger) throws KeyStoreException, CertificateException, NoSuchAlgorithmException, IOException {
+				   int authenticationValidityDurationSeconds,
+				   @NonNull RxBiometricLogger logger) {
 		if (keyName == null) {
-			this.keyName = context.getPackageName() + "." + DEFAULT_KEY_NAME;
+			this.keyName = context.getPackageName() + "." + defaultKeyName();
 		} else {
 			this.keyName = keyName;
 		}
 		this.logger = logger;
 		invalidatedByBiometricEnrollment = keyInvalidatedByBiometricEnrollment;
-		keyStore = KeyStore.getInstance(ANDROID_KEY_STORE);
-		keyStore.load(null);
+		this.authenticationValidityDurationSeconds = authenticationValidityDurationSeconds;
+	}
+
+	/**
+	 * Called from the constructor, must not depend on the state of the provider.
+	 *
+	 * @return name of the key used if no key name is given, prefixed with the package name
+	 */
+	String defaultKeyName() {
+		return DEFAULT_KEY_NAME;
+	}
+
+	/**
+	 * @return {@code true} if keys of this provider stay unlocked for a while after the user
+	 * authenticated instead of requiring an authentication for every operation
+	 */
+	boolean isTimeBound() {
+		return authenticationValidityDurationSeconds > 0;
+	}
+
+	/**
+	 * @return the shared Android {@link KeyStore}, see {@link KeyStoreProvider}
+	 */
+	static KeyStore keyStore() throws KeyStoreException, CertificateException, NoSuchAlgorithmException, IOException {
+		return KeyStoreProvider.get();
 	}
 
 	/**
@@ -71,9 +96,41 @@ abstract class CipherProvider {
 	@TargetApi(Build.VERSION_CODES.M)
 	abstract Cipher createCipher() throws NoSuchPaddingException, NoSuchAlgorithmException;
 
+	/**
+	 * @return initialized cipher of the key that is only usable after user authentication
+	 */
+	abstract Cipher getCipherRequiringAuthentication() throws GeneralSecurityException, IOException;
+
+	/**
+	 * Creates the key of this provider if it does not exist yet.
+	 *
+	 * @return {@code true} if the key was created
+	 */
+	abstract boolean prepareKey() throws GeneralSecurityException, IOException;
+
+	/**
+	 * Loads the keystore, creates the key if it is missing and resolves the cipher implementation
+	 * ahead of the first operation. The keystore and known keys are cached by
+	 * {@link KeyStoreProvider}, the cipher implementation by the JCA itself.
+	 *
+	 * @return durations of the single phases
+	 */
+	@TargetApi(Build.VERSION_CODES.M)
+	BiometricWarmUpResult warmUp() throws GeneralSecurityException, IOException {
+		long start = System.nanoTime();
+		keyStore();
+		long keyStoreLoaded = System.nanoTime();
+		boolean keyCreated = prepareKey();
+		long keyPrepared = System.nanoTime();
+		createCipher();
+		long cipherResolved = System.nanoTime();
+		return new BiometricWarmUpResult(keyCreated, keyStoreLoaded - start, keyPrepared - keyStoreLoaded, cipherResolved - keyPrepared);
+	}
+
 	@NonNull
 	@TargetApi(Build.VERSION_CODES.M)
-	static KeyGenParameterSpec.Builder getKeyGenParameterSpecBuilder(String keyName, String blockModes, String encryptionPaddings, boolean invalidatedByBiometricEnrollment) {
+	@SuppressWarnings("deprecation")
+	static KeyGenParameterSpec.Builder getKeyGenParameterSpecBuilder(String keyName, String blockModes, String encryptionPaddings, boolean invalidatedByBiometricEnrollment, int authenticationValidityDurationSeconds) {
 		KeyGenParameterSpec.Builder builder = new KeyGenParameterSpec.Builder(keyName,
 				KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
 				.setBlockModes(blockModes)
@@ -82,6 +139,13 @@ abstract class CipherProvider {
 		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
 			builder.setInvalidatedByBiometricEnrollment(invalidatedByBiometricEnrollment);
 		}
+		if (authenticationValidityDurationSeconds > 0) {
+			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+				builder.setUserAuthenticationParameters(authenticationValidityDurationSeconds, KeyProperties.AUTH_BIOMETRIC_STRONG);
+			} else {
+				builder.setUserAuthenticationValidityDurationSeconds(authenticationValidityDurationSeconds);
+			}
+		}
 		return builder;
 	}
 
@@ -89,6 +153,10 @@ abstract class CipherProvider {
 	Cipher getCipherForEncryption() throws IOException, GeneralSecurityException {
 		try {
 			return cipherForEncryption();
+		} catch (KeyStoreException e) {
+			logger.warn("Reloading keystore after error: " + e.getMessage());
+			KeyStoreProvider.invalidate();
+			return cipherForEncryption();
 		} catch (KeyPermanentlyInvalidatedException | UnrecoverableKeyException e) {
 			logger.warn("Renewing invalidated key.");
 			try {
@@ -123,25 +191,14 @@ abstract class CipherProvider {
 		return e;
 	}
 
-	private static void removeKey(String keyName) throws KeyStoreException, CertificateException, NoSuchAlgorithmException, IOException {
+	static void removeKey(String keyName) throws KeyStoreException, CertificateException, NoSuchAlgorithmException, IOException {
 		if (keyExists(keyName)) {
-			KeyStore keyStore = KeyStore.getInstance(ANDROID_KEY_STORE);
-			keyStore.load(null);
-			keyStore.deleteEntry(keyName);
+			keyStore().deleteEntry(keyName);
+			KeyStoreProvider.onKeyDeleted(keyName);
 		}
 	}
 
 	static boolean keyExists(String keyName) throws KeyStoreException, CertificateException, NoSuchAlgorithmException, IOException {
-		KeyStore keyStore = KeyStore.getInstance(ANDROID_KEY_STORE);
-		keyStore.load(null);
-		Enumeration<String> aliases = keyStore.aliases();
-
-		while (aliases.hasMoreElements()) {
-			if (keyName.equals(aliases.nextElement())) {
-				return true;
-			}
-		}
-
-		return false;
+		return KeyStoreProvider.containsAlias(keyName);
 	}
 }
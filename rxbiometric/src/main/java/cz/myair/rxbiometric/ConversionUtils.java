@@ -19,35 +19,151 @@ package cz.myair.rxbiometric;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.util.Arrays;
 
 /**
  * Data conversion utility methods
+ * <p/>
+ * Conversions use a {@link CharsetEncoder} and {@link CharsetDecoder} per thread. Only the
+ * returned array is allocated, decoding goes through a scratch buffer of the thread which is
+ * wiped after every use. Both conversions clear their input, except for decoding a
+ * {@link SecureBuffer} which is wiped by its owner.
  */
 class ConversionUtils {
 
-  // based on https://stackoverflow.com/a/9670279/115145
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
 
-  static byte[] toBytes(char[] chars) {
-    CharBuffer charBuffer = CharBuffer.wrap(chars);
-    ByteBuffer byteBuffer = Charset.forName("UTF-8").encode(charBuffer);
-    byte[] bytes = Arrays.copyOfRange(byteBuffer.array(), byteBuffer.position(), byteBuffer.limit());
+  /**
+   * Largest scratch buffer kept for reuse, larger values use a temporary buffer
+   */
+  static final int MAX_POOLED_CHARS = 64 * 1024;
 
-    Arrays.fill(charBuffer.array(), '\u0000'); // clear the cleartext
-    Arrays.fill(byteBuffer.array(), (byte) 0); // clear the ciphertext
+  private static final ThreadLocal<Coders> CODERS = new ThreadLocal<Coders>() {
+    @Override
+    protected Coders initialValue() {
+      return new Coders();
+    }
+  };
 
+  static byte[] toBytes(char[] chars) {
+    byte[] bytes = new byte[utf8Length(chars)];
+    encode(chars, ByteBuffer.wrap(bytes));
     return bytes;
   }
 
+  static SecureBuffer toSecureBuffer(char[] chars) {
+    SecureBuffer secureBuffer = SecureBuffer.allocate(utf8Length(chars));
+    try {
+      encode(chars, secureBuffer.buffer());
+    } catch (IllegalStateException e) {
+      secureBuffer.wipe();
+      throw e;
+    }
+    secureBuffer.buffer().flip();
+    return secureBuffer;
+  }
+
+  /**
+   * Encodes the chars into the remaining bytes of the buffer, which has to match
+   * {@link #utf8Length(char[])} of the chars exactly.
+   */
+  private static void encode(char[] chars, ByteBuffer byteBuffer) {
+    CharsetEncoder encoder = CODERS.get().encoder;
+
+    encoder.reset();
+    CoderResult result = encoder.encode(CharBuffer.wrap(chars), byteBuffer, true);
+    if (result.isUnderflow()) {
+      result = encoder.flush(byteBuffer);
+    }
+    Arrays.fill(chars, '\u0000'); // clear the cleartext
+
+    if (!result.isUnderflow() || byteBuffer.hasRemaining()) {
+      if (byteBuffer.hasArray()) {
+        Arrays.fill(byteBuffer.array(), (byte) 0);
+      }
+      throw new IllegalStateException("Unexpected UTF-8 length of " + chars.length + " chars");
+    }
+  }
+
   static char[] toChars(byte[] bytes) {
-    Charset charset = Charset.forName("UTF-8");
-    ByteBuffer byteBuffer = ByteBuffer.wrap(bytes);
-    CharBuffer charBuffer = charset.decode(byteBuffer);
-    char[] chars = Arrays.copyOf(charBuffer.array(), charBuffer.limit());
+    try {
+      return toChars(ByteBuffer.wrap(bytes));
+    } finally {
+      Arrays.fill(bytes, (byte) 0); // clear the ciphertext
+    }
+  }
+
+  /**
+   * Decodes the remaining bytes of the buffer, the buffer itself is not cleared.
+   */
+  static char[] toChars(ByteBuffer bytes) {
+    Coders coders = CODERS.get();
+    CharsetDecoder decoder = coders.decoder;
+    int length = bytes.remaining();
+    // every UTF-8 byte decodes to at most one char
+    char[] scratch = coders.scratch(length);
+    CharBuffer charBuffer = CharBuffer.wrap(scratch);
+
+    try {
+      decoder.reset();
+      CoderResult result = decoder.decode(bytes, charBuffer, true);
+      if (result.isUnderflow()) {
+        result = decoder.flush(charBuffer);
+      }
+      if (!result.isUnderflow()) {
+        throw new IllegalStateException("Unexpected UTF-8 length of " + length + " bytes");
+      }
+      return Arrays.copyOf(scratch, charBuffer.position());
+    } finally {
+      Arrays.fill(scratch, 0, charBuffer.position(), '\u0000'); // clear the cleartext
+    }
+  }
+
+  /**
+   * @return number of bytes of the UTF-8 encoding, malformed surrogates are replaced by a single byte
+   * like {@link Charset#encode(CharBuffer)} does
+   */
+  static int utf8Length(char[] chars) {
+    int length = 0;
+    for (int i = 0; i < chars.length; i++) {
+      char c = chars[i];
+      if (c < 0x80) {
+        length++;
+      } else if (c < 0x800) {
+        length += 2;
+      } else if (Character.isHighSurrogate(c) && i + 1 < chars.length && Character.isLowSurrogate(chars[i + 1])) {
+        length += 4;
+        i++;
+      } else if (Character.isSurrogate(c)) {
+        length++;
+      } else {
+        length += 3;
+      }
+    }
+    return length;
+  }
 
-    Arrays.fill(charBuffer.array(), '\u0000'); // clear the cleartext
-    Arrays.fill(byteBuffer.array(), (byte) 0); // clear the ciphertext
+  private static class Coders {
+    final CharsetEncoder encoder = UTF_8.newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    final CharsetDecoder decoder = UTF_8.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private char[] scratch = new char[0];
 
-    return chars;
+    char[] scratch(int size) {
+      if (size > MAX_POOLED_CHARS) {
+        return new char[size];
+      }
+      if (scratch.length < size) {
+        scratch = new char[Math.max(size, Math.min(MAX_POOLED_CHARS, 2 * scratch.length))];
+      }
+      return scratch;
+    }
   }
 }
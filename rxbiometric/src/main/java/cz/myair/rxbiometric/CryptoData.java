@@ -16,27 +16,32 @@
 
 package cz.myair.rxbiometric;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
 /**
  * Data of a cryptographic operation with RxBiometric.
+ * <p/>
+ * The legacy string form is {@code message-_-iv} with both parts encoded by the
+ * {@link EncodingProvider}. The binary form is {@code version, methodId, ivLength, iv, message}
+ * without any encoding.
  */
 class CryptoData {
 	static final String SEPARATOR = "-_-";
+	static final byte BINARY_VERSION = 1;
+
+	private static final int BINARY_HEADER_SIZE = 3;
+	private static final Charset LEGACY_CHARSET = Charset.forName("US-ASCII");
 
 	private final EncodingProvider encodingProvider;
 
-    private final String messageEncoded;
-    private final String ivEncoded;
+    private final byte[] message;
+    private final byte[] iv;
 
     private CryptoData(EncodingProvider encodingProvider, byte[] messageBytes, byte[] ivBytes) {
 		this.encodingProvider = encodingProvider;
-		messageEncoded = encodingProvider.encode(messageBytes);
-		ivEncoded = encodingProvider.encode(ivBytes);
-    }
-
-    private CryptoData(EncodingProvider encodingProvider, String message, String iv) {
-		this.encodingProvider = encodingProvider;
-		messageEncoded = message;
-		ivEncoded = iv;
+		message = messageBytes;
+		iv = ivBytes;
     }
 
     /**
@@ -46,10 +51,39 @@ class CryptoData {
 	 * @return parsed data
 	 */
 	static CryptoData fromString(EncodingProvider encodingProvider, String input) throws CryptoDataException {
-		verifyCryptoDataString(input);
+		return fromString(encodingProvider, input, 0, input.length());
+	}
+
+	/**
+	 * Sets up data from a part of an input string. The input is scanned once for the separator,
+	 * message and IV are decoded right away.
+	 *
+	 * @param input input string that was previously encrypted by RxBiometric
+	 * @param start index of the first character of the data
+	 * @param end   index after the last character of the data
+	 * @return parsed data
+	 */
+	static CryptoData fromString(EncodingProvider encodingProvider, String input, int start, int end) throws CryptoDataException {
+		int separator = indexOfSeparator(input, start, end);
+		if (separator <= start) {
+			throw CryptoDataException.fromCryptoDataString(input);
+		}
+		int ivStart = separator + SEPARATOR.length();
+		int ivEnd = indexOfSeparator(input, ivStart, end);
+		if (ivEnd < 0) {
+			ivEnd = end;
+		}
+		return new CryptoData(encodingProvider,
+				encodingProvider.decode(input.substring(start, separator)),
+				encodingProvider.decode(input.substring(ivStart, ivEnd)));
+	}
 
-		String[] inputParams = input.split(SEPARATOR);
-		return new CryptoData(encodingProvider, inputParams[0], inputParams[1]);
+	/**
+	 * @return index of the first separator between start and end or {@code -1} if there is none
+	 */
+	static int indexOfSeparator(String input, int start, int end) {
+		int index = input.indexOf(SEPARATOR, start);
+		return index < 0 || index + SEPARATOR.length() > end ? -1 : index;
 	}
 
 	/**
@@ -63,6 +97,61 @@ class CryptoData {
 		return new CryptoData(encodingProviders, messageBytes, ivBytes);
 	}
 
+	/**
+	 * Sets up data from its binary form.
+	 *
+	 * @param input  binary form previously created by {@link #toBinary(EncryptionMethod)}, its
+	 *               position is not changed
+	 * @param method encryption method the data must have been encrypted with
+	 * @return parsed data
+	 */
+	static CryptoData fromBinary(EncodingProvider encodingProvider, ByteBuffer input, EncryptionMethod method) throws CryptoDataException {
+		ByteBuffer buffer = readBinaryHeader(input, method);
+		byte[] ivBytes = new byte[buffer.get() & 0xff];
+		if (buffer.remaining() < ivBytes.length) {
+			throw CryptoDataException.fromBinary("IV is truncated");
+		}
+		buffer.get(ivBytes);
+		byte[] messageBytes = new byte[buffer.remaining()];
+		buffer.get(messageBytes);
+		return new CryptoData(encodingProvider, messageBytes, ivBytes);
+	}
+
+	/**
+	 * Verifies version and method of the binary form.
+	 *
+	 * @return duplicate of the input positioned after version and method
+	 */
+	static ByteBuffer readBinaryHeader(ByteBuffer input, EncryptionMethod method) throws CryptoDataException {
+		ByteBuffer buffer = input.duplicate();
+		if (buffer.remaining() < BINARY_HEADER_SIZE || buffer.get() != BINARY_VERSION) {
+			throw CryptoDataException.fromBinary("Unsupported format");
+		}
+		byte methodId = buffer.get();
+		if (methodId != method.id) {
+			throw CryptoDataException.fromBinary("Data was not encrypted with " + method);
+		}
+		return buffer;
+	}
+
+	/**
+	 * @param input encrypted data
+	 * @return {@code true} if the input is in the binary form, {@code false} if it contains a
+	 * legacy string
+	 */
+	static boolean isBinary(ByteBuffer input) {
+		// legacy strings only consist of characters of the encoding
+		return input.hasRemaining() && input.get(input.position()) == BINARY_VERSION;
+	}
+
+	/**
+	 * @param input encrypted data containing a legacy string
+	 * @return the legacy string
+	 */
+	static String toLegacyString(ByteBuffer input) {
+		return LEGACY_CHARSET.decode(input.duplicate()).toString();
+	}
+
 	/**
 	 * Checks if the given input is a valid encrypted string. Will throw an exception if the input
 	 * is invalid.
@@ -75,22 +164,32 @@ class CryptoData {
 		}
 	}
 
+	/**
+	 * @param method encryption method the data was encrypted with
+	 * @return binary form of the data
+	 */
+	byte[] toBinary(EncryptionMethod method) {
+		ByteBuffer buffer = ByteBuffer.allocate(BINARY_HEADER_SIZE + iv.length + message.length);
+		buffer.put(BINARY_VERSION).put(method.id).put((byte) iv.length).put(iv).put(message);
+		return buffer.array();
+	}
+
     @Override
     public String toString() {
-        return messageEncoded + SEPARATOR + ivEncoded;
+        return encodingProvider.encode(message) + SEPARATOR + encodingProvider.encode(iv);
     }
 
     /**
      * @return initialization vector of the crypto operation
      */
      byte[] getIv() {
-        return encodingProvider.decode(ivEncoded);
+        return iv;
     }
 
     /**
      * @return message of the crypto operation
      */
      byte[] getMessage() {
-        return encodingProvider.decode(messageEncoded);
+        return message;
     }
 }
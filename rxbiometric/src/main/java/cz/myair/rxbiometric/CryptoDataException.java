@@ -22,6 +22,8 @@ package cz.myair.rxbiometric;
 class CryptoDataException extends Exception {
 
 	static final String ERROR_MSG = "Invalid input given for decryption operation. Make sure you provide a string that was previously encrypted by RxBiometric. empty: %s, correct format: %s";
+	static final String BINARY_ERROR_MSG = "Invalid binary data given for decryption operation. Make sure you provide data that was previously encrypted by RxBiometric. %s";
+	static final String STREAM_ERROR_MSG = "Invalid stream given for decryption operation. Make sure you provide a stream that was previously encrypted by RxBiometric. %s";
 
 	private CryptoDataException(String message) {
 		super(message);
@@ -34,4 +36,12 @@ class CryptoDataException extends Exception {
 
 		return new CryptoDataException(message);
 	}
+
+	static CryptoDataException fromBinary(String reason) {
+		return new CryptoDataException(String.format(BINARY_ERROR_MSG, reason));
+	}
+
+	static CryptoDataException fromStream(String reason) {
+		return new CryptoDataException(String.format(STREAM_ERROR_MSG, reason));
+	}
 }
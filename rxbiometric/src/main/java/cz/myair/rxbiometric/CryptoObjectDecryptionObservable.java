@@ -3,6 +3,8 @@ package cz.myair.rxbiometric;
 import androidx.annotation.Nullable;
 import androidx.biometric.BiometricPrompt;
 
+import java.util.concurrent.Callable;
+
 import cz.myair.rxbiometric.data.BiometricCryptoObjectDecryptionResult;
 import cz.myair.rxbiometric.data.BiometricResult;
 import io.reactivex.Observable;
@@ -13,7 +15,8 @@ import io.reactivex.ObservableEmitter;
  */
 class CryptoObjectDecryptionObservable extends BiometricDialogObservable<BiometricCryptoObjectDecryptionResult> {
 
-	private final BiometricPrompt.CryptoObject cryptoObject;
+	private final Callable<BiometricPrompt.CryptoObject> cryptoObjectFactory;
+	private final boolean timeBound;
 
 	/**
 	 * Creates a new AesEncryptionObservable that will listen to fingerprint authentication
@@ -26,27 +29,52 @@ class CryptoObjectDecryptionObservable extends BiometricDialogObservable<Biometr
 	 */
 	static Observable<BiometricCryptoObjectDecryptionResult> create(ActivityOrFragment activityOrFragment,
 																	BiometricDialogBundle biometricDialogBundle,
-																	BiometricPrompt.CryptoObject cryptoObject) {
-		return Observable.create(new CryptoObjectDecryptionObservable(activityOrFragment, biometricDialogBundle, cryptoObject));
+																	final BiometricPrompt.CryptoObject cryptoObject) {
+		return create(activityOrFragment, biometricDialogBundle, new Callable<BiometricPrompt.CryptoObject>() {
+			@Override
+			public BiometricPrompt.CryptoObject call() {
+				return cryptoObject;
+			}
+		}, false);
+	}
+
+	/**
+	 * Creates a new CryptoObjectDecryptionObservable that creates the crypto object for every
+	 * subscription.
+	 *
+	 * @param activityOrFragment    activity or fragment wrapper
+	 * @param biometricDialogBundle bundle containing dialog texts
+	 * @param cryptoObjectFactory   creates the crypto object to unlock
+	 * @param timeBound             whether the key of the crypto object stays unlocked for a
+	 *                              while after an authentication
+	 * @return Observable result of the decryption
+	 */
+	static Observable<BiometricCryptoObjectDecryptionResult> create(ActivityOrFragment activityOrFragment,
+																	BiometricDialogBundle biometricDialogBundle,
+																	Callable<BiometricPrompt.CryptoObject> cryptoObjectFactory,
+																	boolean timeBound) {
+		return Observable.create(new CryptoObjectDecryptionObservable(activityOrFragment, biometricDialogBundle, cryptoObjectFactory, timeBound));
 	}
 
 	private CryptoObjectDecryptionObservable(ActivityOrFragment activityOrFragment,
 											 BiometricDialogBundle biometricDialogBundle,
-											 BiometricPrompt.CryptoObject cryptoObject) {
+											 Callable<BiometricPrompt.CryptoObject> cryptoObjectFactory,
+											 boolean timeBound) {
 		super(activityOrFragment, biometricDialogBundle);
-		this.cryptoObject = cryptoObject;
+		this.cryptoObjectFactory = cryptoObjectFactory;
+		this.timeBound = timeBound;
 	}
 
 	@Nullable
 	@Override
-	protected BiometricPrompt.CryptoObject initCryptoObject(ObservableEmitter<BiometricCryptoObjectDecryptionResult> subscriber) {
-		return cryptoObject;
+	protected BiometricPrompt.CryptoObject initCryptoObject(ObservableEmitter<BiometricCryptoObjectDecryptionResult> subscriber) throws Exception {
+		return cryptoObjectFactory.call();
 	}
 
 	@Override
-	protected void onAuthenticationSucceeded(ObservableEmitter<BiometricCryptoObjectDecryptionResult> emitter, BiometricPrompt.AuthenticationResult result) {
+	protected void onAuthenticationSucceeded(ObservableEmitter<BiometricCryptoObjectDecryptionResult> emitter, BiometricPrompt.CryptoObject cryptoObject) {
 		try {
-			emitter.onNext(new BiometricCryptoObjectDecryptionResult(BiometricResult.AUTHENTICATED, result.getCryptoObject()));
+			emitter.onNext(new BiometricCryptoObjectDecryptionResult(BiometricResult.AUTHENTICATED, cryptoObject));
 			emitter.onComplete();
 		} catch (Exception e) {
 			emitter.onError(e);
@@ -62,4 +90,9 @@ class CryptoObjectDecryptionObservable extends BiometricDialogObservable<Biometr
 	protected boolean isCryptoObjectRequired() {
 		return true;
 	}
+
+	@Override
+	protected boolean isTimeBound() {
+		return timeBound;
+	}
 }
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2018 Marvin Ramin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.myair.rxbiometric;
+
+import androidx.annotation.Nullable;
+
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+import cz.myair.rxbiometric.data.BiometricDecryptionCacheStats;
+
+/**
+ * Keeps recently decrypted values, so that decrypting them again requires neither a prompt nor
+ * the Android KeyStore.
+ * <p/>
+ * Values are held encrypted with an ephemeral key that only exists in memory, so they don't
+ * appear as plaintext in heap dumps. The least recently used entry is evicted once the cache
+ * is full, entries expire after a fixed time. Evicted entries are overwritten with zeros.
+ */
+final class DecryptionCache {
+
+	private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+	private static final int IV_LENGTH = 12;
+	private static final int TAG_LENGTH_BITS = 128;
+
+	private final int maxEntries;
+	private final long timeToLiveNanos;
+	private final SecretKey key;
+	private final SecureRandom random = new SecureRandom();
+	private final LinkedHashMap<InFlightRequests.Key, Entry> entries;
+
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * @param maxEntries      maximum number of cached values
+	 * @param timeToLiveNanos time after which a cached value expires
+	 */
+	DecryptionCache(int maxEntries, long timeToLiveNanos) throws GeneralSecurityException {
+		this.maxEntries = maxEntries;
+		this.timeToLiveNanos = timeToLiveNanos;
+
+		KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+		keyGenerator.init(256);
+		this.key = keyGenerator.generateKey();
+		this.entries = new LinkedHashMap<InFlightRequests.Key, Entry>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<InFlightRequests.Key, Entry> eldest) {
+				if (size() > DecryptionCache.this.maxEntries) {
+					eldest.getValue().wipe();
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * @return decrypted value for the given request, {@code null} if none is cached or it expired
+	 */
+	@Nullable
+	synchronized char[] get(InFlightRequests.Key request) throws GeneralSecurityException {
+		Entry entry = entries.get(request);
+		if (entry != null && System.nanoTime() - entry.createdNanos >= timeToLiveNanos) {
+			entries.remove(request);
+			entry.wipe();
+			evictions++;
+			entry = null;
+		}
+		if (entry == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+
+		Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+		cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH_BITS, entry.encrypted, 0, IV_LENGTH));
+		// Clears the decrypted bytes
+		return ConversionUtils.toChars(cipher.doFinal(entry.encrypted, IV_LENGTH, entry.encrypted.length - IV_LENGTH));
+	}
+
+	/**
+	 * Caches the given decrypted value. Replaces and wipes a value cached for the same request.
+	 */
+	synchronized void put(InFlightRequests.Key request, char[] decrypted) throws GeneralSecurityException {
+		// The conversion clears its input, which still belongs to the caller
+		byte[] plaintext = ConversionUtils.toBytes(decrypted.clone());
+		byte[] encrypted;
+		try {
+			byte[] iv = new byte[IV_LENGTH];
+			random.nextBytes(iv);
+			Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+			cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH_BITS, iv));
+
+			encrypted = new byte[IV_LENGTH + cipher.getOutputSize(plaintext.length)];
+			System.arraycopy(iv, 0, encrypted, 0, IV_LENGTH);
+			cipher.doFinal(plaintext, 0, plaintext.length, encrypted, IV_LENGTH);
+		} finally {
+			Arrays.fill(plaintext, (byte) 0);
+		}
+
+		Entry previous = entries.put(request, new Entry(encrypted, System.nanoTime()));
+		if (previous != null) {
+			previous.wipe();
+		}
+	}
+
+	/**
+	 * Removes and wipes all cached values.
+	 */
+	synchronized void clear() {
+		Iterator<Entry> iterator = entries.values().iterator();
+		while (iterator.hasNext()) {
+			iterator.next().wipe();
+			iterator.remove();
+		}
+	}
+
+	synchronized BiometricDecryptionCacheStats getStats() {
+		return new BiometricDecryptionCacheStats(entries.size(), hits, misses, evictions);
+	}
+
+	private static final class Entry {
+
+		private final byte[] encrypted;
+		private final long createdNanos;
+
+		Entry(byte[] encrypted, long createdNanos) {
+			this.encrypted = encrypted;
+			this.createdNanos = createdNanos;
+		}
+
+		void wipe() {
+			Arrays.fill(encrypted, (byte) 0);
+		}
+	}
+}
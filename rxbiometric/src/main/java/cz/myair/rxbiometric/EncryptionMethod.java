@@ -34,7 +34,7 @@ public enum EncryptionMethod {
 	 * <p>
 	 * Using AES will require biometric authentication for both encryption and decryption.
 	 */
-	AES,
+	AES((byte) 1),
 
 	/**
 	 * Uses the RSA public-key encryption standard.
@@ -42,5 +42,36 @@ public enum EncryptionMethod {
 	 * Using RSA will only require biometric authentication for decryption. Values can be
 	 * encrypted without the user needing to authenticate their biometric.
 	 */
-	RSA
+	RSA((byte) 2),
+
+	/**
+	 * Uses envelope encryption for large values. Every value is encrypted in-process with a new
+	 * AES-GCM data key, only the data key is encrypted by an AES key in the keystore. The
+	 * encrypted data key is stored together with the encrypted value.
+	 * <p>
+	 * Using AES_ENVELOPE will require biometric authentication for both encryption and
+	 * decryption. Values encrypted with {@link #AES} cannot be decrypted with this method.
+	 */
+	AES_ENVELOPE((byte) 3),
+
+	/**
+	 * Uses AES in Galois/Counter Mode (GCM) with a 256-bit key. Unlike {@link #AES} the
+	 * encrypted data is authenticated, so modified data fails to decrypt, and no padding is added.
+	 * Optional associated data (e.g. the id of a record) can be bound to the encrypted value, it
+	 * has to be given again for decryption.
+	 * <p>
+	 * Using AES_GCM will require biometric authentication for both encryption and decryption.
+	 * Keys created for {@link #AES} cannot be used with this method, use a different key name.
+	 * The default key of this method is separate from the default key of {@link #AES}.
+	 */
+	AES_GCM((byte) 4);
+
+	/**
+	 * Identifies the method in the binary form of encrypted data
+	 */
+	final byte id;
+
+	EncryptionMethod(byte id) {
+		this.id = id;
+	}
 }
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2017 Marvin Ramin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.myair.rxbiometric;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Envelope encryption for {@link EncryptionMethod#AES_ENVELOPE}.
+ * <p/>
+ * Every payload is encrypted in-process with a random AES-GCM data key. Only the data key is
+ * encrypted with the keystore key, so the amount of data passing through the keystore stays the
+ * same regardless of the payload size.
+ */
+class EnvelopeCipher {
+	private static final String DATA_KEY_ALGORITHM = "AES";
+	private static final String DATA_TRANSFORMATION = "AES/GCM/NoPadding";
+	private static final int DATA_KEY_SIZE = 32;
+	private static final int GCM_IV_SIZE = 12;
+	private static final int GCM_TAG_SIZE = 128;
+
+	private static final SecureRandom secureRandom = new SecureRandom();
+
+	private EnvelopeCipher() {
+	}
+
+	/**
+	 * Encrypts the payload with a new data key and wraps the data key with the given cipher.
+	 *
+	 * @param keyCipher cipher of the keystore key initialized for encryption
+	 * @param payload   data to encrypt, will be cleared
+	 * @return encrypted payload and wrapped data key
+	 */
+	static EnvelopeData seal(Cipher keyCipher, byte[] payload, EncodingProvider encodingProvider) throws GeneralSecurityException {
+		try {
+			return seal(keyCipher, ByteBuffer.wrap(payload), encodingProvider);
+		} finally {
+			Arrays.fill(payload, (byte) 0); // clear the cleartext
+		}
+	}
+
+	/**
+	 * Same as {@link #seal(Cipher, byte[], EncodingProvider)} for a payload kept in a
+	 * {@link SecureBuffer}, which is not wiped.
+	 */
+	static EnvelopeData seal(Cipher keyCipher, SecureBuffer payload, EncodingProvider encodingProvider) throws GeneralSecurityException {
+		return seal(keyCipher, payload.asReadOnlyBuffer(), encodingProvider);
+	}
+
+	private static EnvelopeData seal(Cipher keyCipher, ByteBuffer payload, EncodingProvider encodingProvider) throws GeneralSecurityException {
+		byte[] dataKey = new byte[DATA_KEY_SIZE];
+		byte[] iv = new byte[GCM_IV_SIZE];
+		secureRandom.nextBytes(dataKey);
+		secureRandom.nextBytes(iv);
+		try {
+			Cipher dataCipher = Cipher.getInstance(DATA_TRANSFORMATION);
+			dataCipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(dataKey, DATA_KEY_ALGORITHM), new GCMParameterSpec(GCM_TAG_SIZE, iv));
+			byte[] encryptedPayload = new byte[dataCipher.getOutputSize(payload.remaining())];
+			dataCipher.doFinal(payload, ByteBuffer.wrap(encryptedPayload));
+
+			byte[] wrappedKey = keyCipher.doFinal(dataKey);
+			return EnvelopeData.fromBytes(encodingProvider, encryptedPayload, iv, wrappedKey, keyCipher.getIV());
+		} finally {
+			Arrays.fill(dataKey, (byte) 0);
+		}
+	}
+
+	/**
+	 * Unwraps the data key with the given cipher and decrypts the payload with it.
+	 *
+	 * @param keyCipher    cipher of the keystore key initialized for decryption
+	 * @param envelopeData encrypted payload and wrapped data key
+	 * @return decrypted payload
+	 */
+	static byte[] open(Cipher keyCipher, EnvelopeData envelopeData) throws GeneralSecurityException {
+		return dataCipherForDecryption(keyCipher, envelopeData).doFinal(envelopeData.getPayload().getMessage());
+	}
+
+	/**
+	 * Same as {@link #open(Cipher, EnvelopeData)}, but decrypts the payload directly into a
+	 * {@link SecureBuffer}.
+	 */
+	static SecureBuffer openToBuffer(Cipher keyCipher, EnvelopeData envelopeData) throws GeneralSecurityException {
+		return SecureBuffer.doFinal(dataCipherForDecryption(keyCipher, envelopeData), envelopeData.getPayload().getMessage());
+	}
+
+	private static Cipher dataCipherForDecryption(Cipher keyCipher, EnvelopeData envelopeData) throws GeneralSecurityException {
+		byte[] dataKey = keyCipher.doFinal(envelopeData.getWrappedKey().getMessage());
+		try {
+			Cipher dataCipher = Cipher.getInstance(DATA_TRANSFORMATION);
+			dataCipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(dataKey, DATA_KEY_ALGORITHM),
+					new GCMParameterSpec(GCM_TAG_SIZE, envelopeData.getPayload().getIv()));
+			return dataCipher;
+		} finally {
+			Arrays.fill(dataKey, (byte) 0);
+		}
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2017 Marvin Ramin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.myair.rxbiometric;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Data of an envelope encryption with RxBiometric. Consists of the payload encrypted with a data
+ * key and the data key wrapped by the keystore key, both as {@link CryptoData}.
+ * <p/>
+ * The string form is {@code payload-_-payloadIv-_-wrappedKey-_-wrappedKeyIv}. The binary form
+ * follows {@link CryptoData#toBinary(EncryptionMethod)} with the payload IV, the message starts
+ * with {@code wrappedKeyIvLength, wrappedKeyIv, wrappedKeyLength, wrappedKey} followed by the
+ * payload.
+ */
+class EnvelopeData {
+
+	private final CryptoData payload;
+	private final CryptoData wrappedKey;
+
+	private EnvelopeData(CryptoData payload, CryptoData wrappedKey) {
+		this.payload = payload;
+		this.wrappedKey = wrappedKey;
+	}
+
+	/**
+	 * Sets up data from an input string.
+	 *
+	 * @param input input string that was previously encrypted by RxBiometric
+	 * @return parsed data
+	 */
+	static EnvelopeData fromString(EncodingProvider encodingProvider, String input) throws CryptoDataException {
+		int payloadIv = CryptoData.indexOfSeparator(input, 0, input.length());
+		int payloadEnd = payloadIv < 0 ? -1 : CryptoData.indexOfSeparator(input, payloadIv + CryptoData.SEPARATOR.length(), input.length());
+		if (payloadEnd < 0) {
+			throw CryptoDataException.fromCryptoDataString(input);
+		}
+		return new EnvelopeData(CryptoData.fromString(encodingProvider, input, 0, payloadEnd),
+				CryptoData.fromString(encodingProvider, input, payloadEnd + CryptoData.SEPARATOR.length(), input.length()));
+	}
+
+	/**
+	 * Sets up data from the bytes that resulted from an envelope encryption.
+	 *
+	 * @param payloadBytes    encrypted payload
+	 * @param payloadIvBytes  initialization vector of the payload encryption
+	 * @param wrappedKeyBytes encrypted data key
+	 * @param keyIvBytes      initialization vector of the data key encryption
+	 * @return parsed data
+	 */
+	static EnvelopeData fromBytes(EncodingProvider encodingProvider, byte[] payloadBytes, byte[] payloadIvBytes, byte[] wrappedKeyBytes, byte[] keyIvBytes) {
+		return new EnvelopeData(CryptoData.fromBytes(encodingProvider, payloadBytes, payloadIvBytes),
+				CryptoData.fromBytes(encodingProvider, wrappedKeyBytes, keyIvBytes));
+	}
+
+	/**
+	 * Sets up data from its binary form.
+	 *
+	 * @param input binary form previously created by {@link #toBinary()}, its position is not
+	 *              changed
+	 * @return parsed data
+	 */
+	static EnvelopeData fromBinary(EncodingProvider encodingProvider, ByteBuffer input) throws CryptoDataException {
+		ByteBuffer buffer = CryptoData.readBinaryHeader(input, EncryptionMethod.AES_ENVELOPE);
+		try {
+			byte[] payloadIv = new byte[buffer.get() & 0xff];
+			buffer.get(payloadIv);
+			byte[] keyIv = new byte[buffer.get() & 0xff];
+			buffer.get(keyIv);
+			byte[] wrappedKey = new byte[buffer.getShort() & 0xffff];
+			buffer.get(wrappedKey);
+			byte[] payload = new byte[buffer.remaining()];
+			buffer.get(payload);
+			return fromBytes(encodingProvider, payload, payloadIv, wrappedKey, keyIv);
+		} catch (BufferUnderflowException e) {
+			throw CryptoDataException.fromBinary("Data is truncated");
+		}
+	}
+
+	@Override
+	public String toString() {
+		return payload + CryptoData.SEPARATOR + wrappedKey;
+	}
+
+	/**
+	 * @return binary form of the data
+	 */
+	byte[] toBinary() {
+		byte[] payloadIv = payload.getIv();
+		byte[] keyIv = wrappedKey.getIv();
+		byte[] key = wrappedKey.getMessage();
+		byte[] payloadBytes = payload.getMessage();
+		ByteBuffer buffer = ByteBuffer.allocate(6 + payloadIv.length + keyIv.length + key.length + payloadBytes.length);
+		buffer.put(CryptoData.BINARY_VERSION).put(EncryptionMethod.AES_ENVELOPE.id)
+				.put((byte) payloadIv.length).put(payloadIv)
+				.put((byte) keyIv.length).put(keyIv)
+				.putShort((short) key.length).put(key)
+				.put(payloadBytes);
+		return buffer.array();
+	}
+
+	/**
+	 * @return payload encrypted with the data key
+	 */
+	CryptoData getPayload() {
+		return payload;
+	}
+
+	/**
+	 * @return data key encrypted with the keystore key
+	 */
+	CryptoData getWrappedKey() {
+		return wrappedKey;
+	}
+}
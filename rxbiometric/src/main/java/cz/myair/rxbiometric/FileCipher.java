@@ -0,0 +1,325 @@
+/*
+ * Copyright 2018 Marvin Ramin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.myair.rxbiometric;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+import io.reactivex.Completable;
+import io.reactivex.CompletableEmitter;
+import io.reactivex.CompletableOnSubscribe;
+
+/**
+ * Encrypts and decrypts files in the format of {@link StreamingCipher} through memory-mapped
+ * windows of a {@link FileChannel}, so the file content is never copied to the heap as a whole.
+ * <p/>
+ * After every window the output is forced to disk and the number of finished segments is
+ * recorded in a checkpoint file next to the output. An interrupted operation on the same files
+ * continues after the last checkpoint instead of starting over. The checkpoint is bound to the
+ * size and modification time of the input and to a digest of the input processed so far. The
+ * digest is verified before resuming, as an input rewritten within the modification time
+ * granularity would otherwise get segments encrypted with the same data key and nonce.
+ */
+class FileCipher {
+	static final int DEFAULT_CHECKPOINT_INTERVAL = 256;
+
+	private static final String CHECKPOINT_SUFFIX = ".checkpoint";
+	private static final byte CHECKPOINT_VERSION = 2;
+	private static final String DIGEST_ALGORITHM = "SHA-256";
+	private static final int DIGEST_LENGTH = 32;
+	private static final int DIGEST_CHUNK_SIZE = 1 << 20;
+
+	private FileCipher() {
+	}
+
+	/**
+	 * Encrypts the input file to the output file.
+	 *
+	 * @param input              file to encrypt
+	 * @param output             encrypted file
+	 * @param header             header of the encrypted file, read from the output when resuming
+	 * @param dataKey            data key to encrypt the segments with, will be cleared
+	 * @param checkpointInterval number of segments between checkpoints
+	 * @return Completable that completes once the whole file was encrypted. Disposing it stops
+	 * the operation at the next checkpoint. If the input was modified since the interrupted
+	 * encryption the output and the checkpoint are deleted and an {@link IOException} is emitted,
+	 * the encryption has to be started again with a new header and data key.
+	 */
+	static Completable encrypt(File input, File output, StreamingCipher.Header header, byte[] dataKey, int checkpointInterval) {
+		return Completable.create(new FileOperation(Cipher.ENCRYPT_MODE, input, output, header, dataKey, checkpointInterval));
+	}
+
+	/**
+	 * Decrypts the input file to the output file. If the input was modified the output and the
+	 * checkpoint are deleted. An interrupted decryption of an input modified since starts over.
+	 *
+	 * @param input              encrypted file
+	 * @param output             decrypted file
+	 * @param header             header of the encrypted file
+	 * @param dataKey            unwrapped data key, will be cleared
+	 * @param checkpointInterval number of segments between checkpoints
+	 * @return Completable that completes once the whole file was decrypted. Disposing it stops
+	 * the operation at the next checkpoint.
+	 */
+	static Completable decrypt(File input, File output, StreamingCipher.Header header, byte[] dataKey, int checkpointInterval) {
+		return Completable.create(new FileOperation(Cipher.DECRYPT_MODE, input, output, header, dataKey, checkpointInterval));
+	}
+
+	/**
+	 * @param file encrypted file
+	 * @return header of the encrypted file
+	 */
+	static StreamingCipher.Header readHeader(File file) throws IOException, CryptoDataException {
+		InputStream input = new FileInputStream(file);
+		try {
+			return StreamingCipher.readHeader(input);
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * @param input  input file of an operation
+	 * @param output output file of an operation
+	 * @return {@code true} if a previous operation on these files was interrupted and can be
+	 * continued. The digest of the input is only verified by the operation itself.
+	 */
+	static boolean canResume(File input, File output) {
+		return readCheckpoint(input, output) != null;
+	}
+
+	/**
+	 * @return checkpoint of an interrupted operation or {@code null} if there is no checkpoint
+	 * matching the size and modification time of the input
+	 */
+	private static Checkpoint readCheckpoint(File input, File output) {
+		File checkpoint = checkpointFile(output);
+		if (!checkpoint.exists() || !output.exists()) {
+			return null;
+		}
+		try {
+			DataInputStream checkpointInput = new DataInputStream(new FileInputStream(checkpoint));
+			try {
+				boolean valid = checkpointInput.readByte() == CHECKPOINT_VERSION
+						&& checkpointInput.readLong() == input.length()
+						&& checkpointInput.readLong() == input.lastModified();
+				if (!valid) {
+					return null;
+				}
+				long segments = checkpointInput.readLong();
+				byte[] digest = new byte[DIGEST_LENGTH];
+				checkpointInput.readFully(digest);
+				return segments > 0 ? new Checkpoint(segments, digest) : null;
+			} finally {
+				checkpointInput.close();
+			}
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @param segments number of finished segments
+	 * @param digest   {@value #DIGEST_ALGORITHM} digest of the input up to the end of the
+	 *                 finished segments
+	 */
+	@VisibleForTesting
+	static void writeCheckpoint(File input, File output, long segments, byte[] digest) throws IOException {
+		File temporary = new File(output.getPath() + CHECKPOINT_SUFFIX + ".tmp");
+		FileOutputStream fileOutput = new FileOutputStream(temporary);
+		try {
+			DataOutputStream checkpointOutput = new DataOutputStream(fileOutput);
+			checkpointOutput.writeByte(CHECKPOINT_VERSION);
+			checkpointOutput.writeLong(input.length());
+			checkpointOutput.writeLong(input.lastModified());
+			checkpointOutput.writeLong(segments);
+			checkpointOutput.write(digest);
+			checkpointOutput.flush();
+			fileOutput.getFD().sync();
+		} finally {
+			fileOutput.close();
+		}
+		if (!temporary.renameTo(checkpointFile(output))) {
+			throw new IOException("Unable to write checkpoint for " + output);
+		}
+	}
+
+	private static void deleteCheckpoint(File output) {
+		//noinspection ResultOfMethodCallIgnored
+		checkpointFile(output).delete();
+	}
+
+	private static File checkpointFile(File output) {
+		return new File(output.getPath() + CHECKPOINT_SUFFIX);
+	}
+
+	/**
+	 * Adds the bytes of the channel between the given positions to the digest.
+	 */
+	private static void updateDigest(MessageDigest digest, FileChannel channel, long position, long end) throws IOException {
+		while (position < end) {
+			long size = Math.min(DIGEST_CHUNK_SIZE, end - position);
+			digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position, size));
+			position += size;
+		}
+	}
+
+	private static class Checkpoint {
+		final long segments;
+		final byte[] digest;
+
+		Checkpoint(long segments, byte[] digest) {
+			this.segments = segments;
+			this.digest = digest;
+		}
+	}
+
+	private static class FileOperation implements CompletableOnSubscribe {
+		private final int mode;
+		private final File input;
+		private final File output;
+		private final StreamingCipher.Header header;
+		private final byte[] dataKey;
+		private final int checkpointInterval;
+
+		FileOperation(int mode, File input, File output, StreamingCipher.Header header, byte[] dataKey, int checkpointInterval) {
+			this.mode = mode;
+			this.input = input;
+			this.output = output;
+			this.header = header;
+			this.dataKey = dataKey;
+			this.checkpointInterval = checkpointInterval;
+		}
+
+		@Override
+		public void subscribe(CompletableEmitter emitter) throws Exception {
+			try {
+				if (process(emitter)) {
+					deleteCheckpoint(output);
+					emitter.onComplete();
+				}
+			} catch (AEADBadTagException e) {
+				// never leave data of a modified file behind
+				deleteCheckpoint(output);
+				//noinspection ResultOfMethodCallIgnored
+				output.delete();
+				emitter.onError(e);
+			} finally {
+				Arrays.fill(dataKey, (byte) 0);
+			}
+		}
+
+		/**
+		 * @return {@code true} if all segments were processed, {@code false} if the operation was
+		 * disposed before
+		 */
+		private boolean process(CompletableEmitter emitter) throws Exception {
+			Checkpoint checkpoint = readCheckpoint(input, output);
+			long resumeSegment = checkpoint != null ? checkpoint.segments : 0;
+			RandomAccessFile inputFile = new RandomAccessFile(input, "r");
+			RandomAccessFile outputFile = new RandomAccessFile(output, "rw");
+			try {
+				FileChannel inputChannel = inputFile.getChannel();
+				FileChannel outputChannel = outputFile.getChannel();
+
+				byte[] headerBytes = header.toBytes();
+				boolean encrypt = mode == Cipher.ENCRYPT_MODE;
+				long inputOffset = encrypt ? 0 : headerBytes.length;
+				long outputOffset = encrypt ? headerBytes.length : 0;
+				long inputSegmentSize = encrypt ? header.segmentSize : header.segmentSize + StreamingCipher.TAG_SIZE;
+				long outputSegmentSize = encrypt ? header.segmentSize + StreamingCipher.TAG_SIZE : header.segmentSize;
+
+				long payloadSize = inputChannel.size() - inputOffset;
+				long segments = encrypt ? Math.max(1, (payloadSize + inputSegmentSize - 1) / inputSegmentSize) : (payloadSize + inputSegmentSize - 1) / inputSegmentSize;
+				long lastSegmentSize = payloadSize - (segments - 1) * inputSegmentSize;
+				if (!encrypt && (segments == 0 || lastSegmentSize < StreamingCipher.TAG_SIZE)) {
+					throw CryptoDataException.fromStream("Encrypted file is truncated");
+				}
+				long outputSize = outputOffset + payloadSize + (encrypt ? segments : -segments) * StreamingCipher.TAG_SIZE;
+
+				MessageDigest digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+				updateDigest(digest, inputChannel, 0, Math.min(inputChannel.size(), inputOffset + resumeSegment * inputSegmentSize));
+				if (checkpoint != null && !MessageDigest.isEqual(checkpoint.digest, ((MessageDigest) digest.clone()).digest())) {
+					if (encrypt) {
+						// the header of the interrupted encryption must not encrypt other content
+						deleteCheckpoint(output);
+						//noinspection ResultOfMethodCallIgnored
+						output.delete();
+						throw new IOException("Input was modified after the encryption of " + output + " was interrupted");
+					}
+					resumeSegment = 0;
+					digest.reset();
+					updateDigest(digest, inputChannel, 0, inputOffset);
+				}
+
+				if (resumeSegment == 0 && encrypt) {
+					outputChannel.write(ByteBuffer.wrap(headerBytes), 0);
+				}
+
+				SecretKeySpec key = new SecretKeySpec(dataKey, StreamingCipher.DATA_KEY_ALGORITHM);
+				Cipher cipher = Cipher.getInstance(StreamingCipher.DATA_TRANSFORMATION);
+				for (long windowStart = resumeSegment; windowStart < segments; ) {
+					if (emitter.isDisposed()) {
+						return false;
+					}
+					long windowEnd = Math.min(segments, windowStart + checkpointInterval);
+					long inputPosition = inputOffset + windowStart * inputSegmentSize;
+					long outputPosition = outputOffset + windowStart * outputSegmentSize;
+					MappedByteBuffer inputWindow = inputChannel.map(FileChannel.MapMode.READ_ONLY, inputPosition,
+							Math.min(inputChannel.size(), inputOffset + windowEnd * inputSegmentSize) - inputPosition);
+					MappedByteBuffer outputWindow = outputChannel.map(FileChannel.MapMode.READ_WRITE, outputPosition,
+							Math.min(outputSize, outputOffset + windowEnd * outputSegmentSize) - outputPosition);
+					digest.update(inputWindow.duplicate());
+
+					for (long segment = windowStart; segment < windowEnd; segment++) {
+						inputWindow.limit((int) Math.min(inputWindow.capacity(), inputWindow.position() + inputSegmentSize));
+						cipher.init(mode, key, StreamingCipher.segmentParameters(header, (int) segment, segment == segments - 1));
+						cipher.doFinal(inputWindow, outputWindow);
+					}
+
+					outputWindow.force();
+					windowStart = windowEnd;
+					if (windowStart < segments) {
+						writeCheckpoint(input, output, windowStart, ((MessageDigest) digest.clone()).digest());
+					}
+				}
+				outputChannel.truncate(outputSize);
+				return true;
+			} finally {
+				inputFile.close();
+				outputFile.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2018 Marvin Ramin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.myair.rxbiometric;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.reactivex.Observable;
+import io.reactivex.ObservableSource;
+import io.reactivex.functions.Action;
+
+/**
+ * Shares pending operations between identical requests of one {@link RxBiometric} instance, so
+ * that only one {@link androidx.biometric.BiometricPrompt} is shown for them.
+ * <p/>
+ * Requests are only shared within an instance, as its configuration (the Activity or Fragment
+ * showing the prompt, dialog texts, schedulers and key settings) is part of the operation but
+ * not of its {@link Key}.
+ * <p/>
+ * A request subscribing while an identical one is pending receives the results of the pending
+ * one instead of starting its own operation, including results emitted before it subscribed.
+ * The operation is disposed once all of its subscribers are, and a new operation is started for
+ * requests after it terminated.
+ * <p/>
+ * Results are shared as they are, callers hand out copies of mutable results to each subscriber.
+ */
+final class InFlightRequests {
+
+	private final ConcurrentMap<Key, Observable<?>> requests = new ConcurrentHashMap<>();
+
+	/**
+	 * @param key       identifies identical requests
+	 * @param operation creates the operation, only called if no identical request is pending
+	 * @return Observable sharing the pending operation for the given key
+	 */
+	<T> Observable<T> share(final Key key, final Callable<Observable<T>> operation) {
+		return Observable.defer(new Callable<ObservableSource<T>>() {
+			@Override
+			@SuppressWarnings("unchecked")
+			public ObservableSource<T> call() throws Exception {
+				Observable<?> pending = requests.get(key);
+				if (pending != null) {
+					return (Observable<T>) pending;
+				}
+
+				final AtomicReference<Observable<T>> shared = new AtomicReference<>();
+				shared.set(operation.call()
+						.doFinally(new Action() {
+							@Override
+							public void run() {
+								requests.remove(key, shared.get());
+							}
+						})
+						.replay()
+						.refCount());
+
+				pending = requests.putIfAbsent(key, shared.get());
+				return pending != null ? (Observable<T>) pending : shared.get();
+			}
+		});
+	}
+
+	int size() {
+		return requests.size();
+	}
+
+	/**
+	 * Identifies an operation by its name, {@link EncryptionMethod}, key name and input data.
+	 */
+	static final class Key {
+
+		private final String operation;
+		private final EncryptionMethod encryptionMethod;
+		@Nullable
+		private final String keyName;
+		private final Object input;
+		@Nullable
+		private final byte[] associatedData;
+
+		/**
+		 * @param input either a {@link String} or a {@link java.nio.ByteBuffer} that is not
+		 *              modified afterwards
+		 */
+		Key(@NonNull String operation,
+			EncryptionMethod encryptionMethod,
+			@Nullable String keyName,
+			@NonNull Object input,
+			@Nullable byte[] associatedData) {
+			this.operation = operation;
+			this.encryptionMethod = encryptionMethod;
+			this.keyName = keyName;
+			this.input = input;
+			this.associatedData = associatedData;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (o == null || getClass() != o.getClass()) return false;
+
+			Key key = (Key) o;
+			return operation.equals(key.operation)
+					&& encryptionMethod == key.encryptionMethod
+					&& (keyName != null ? keyName.equals(key.keyName) : key.keyName == null)
+					&& input.equals(key.input)
+					&& Arrays.equals(associatedData, key.associatedData);
+		}
+
+		@Override
+		public int hashCode() {
+			int result = operation.hashCode();
+			result = 31 * result + (encryptionMethod != null ? encryptionMethod.hashCode() : 0);
+			result = 31 * result + (keyName != null ? keyName.hashCode() : 0);
+			result = 31 * result + input.hashCode();
+			result = 31 * result + Arrays.hashCode(associatedData);
+			return result;
+		}
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2017 Marvin Ramin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.myair.rxbiometric;
+
+import java.io.IOException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.cert.CertificateException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Provides the process-wide handle to the Android {@link KeyStore}.
+ * <p/>
+ * Loading the keystore is an IPC call to the keystore daemon, so the loaded instance is created
+ * lazily once and shared by all {@link CipherProvider}s. It is only dropped via
+ * {@link #invalidate()} when the keystore reported an error.
+ * <p/>
+ * Next to the keystore an index of known aliases is kept, so that repeated lookups of the same
+ * key do not need to ask the keystore again. The index is updated whenever RxBiometric creates
+ * or deletes a key and cleared together with the keystore handle.
+ * <p/>
+ * Public keys of RSA key pairs are cached as well, as encrypting with them requires no user
+ * authentication and therefore no further keystore access.
+ */
+final class KeyStoreProvider {
+
+	private static final Object LOCK = new Object();
+
+	private static final Set<String> knownAliases = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private static final Map<String, PublicKey> publicKeys = new ConcurrentHashMap<>();
+
+	private static volatile KeyStore keyStore;
+
+	private KeyStoreProvider() {
+	}
+
+	/**
+	 * @return the shared, loaded Android {@link KeyStore}
+	 */
+	static KeyStore get() throws KeyStoreException, CertificateException, NoSuchAlgorithmException, IOException {
+		KeyStore result = keyStore;
+		if (result == null) {
+			synchronized (LOCK) {
+				result = keyStore;
+				if (result == null) {
+					result = KeyStore.getInstance(CipherProvider.ANDROID_KEY_STORE);
+					result.load(null);
+					keyStore = result;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Drops the shared {@link KeyStore} so the next call to {@link #get()} loads a fresh one.
+	 */
+	static void invalidate() {
+		synchronized (LOCK) {
+			keyStore = null;
+			knownAliases.clear();
+			publicKeys.clear();
+		}
+	}
+
+	/**
+	 * Checks if the keystore contains the given alias. Known aliases are answered from memory,
+	 * unknown ones are looked up with {@link KeyStore#containsAlias(String)}.
+	 *
+	 * @param alias alias to look up
+	 * @return {@code true} if a key with the given alias exists
+	 */
+	static boolean containsAlias(String alias) throws KeyStoreException, CertificateException, NoSuchAlgorithmException, IOException {
+		if (knownAliases.contains(alias)) {
+			return true;
+		}
+		if (get().containsAlias(alias)) {
+			knownAliases.add(alias);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Records that a key with the given alias was created.
+	 */
+	static void onKeyCreated(String alias) {
+		publicKeys.remove(alias);
+		knownAliases.add(alias);
+	}
+
+	/**
+	 * Records that the key with the given alias was deleted or is no longer usable.
+	 */
+	static void onKeyDeleted(String alias) {
+		publicKeys.remove(alias);
+		knownAliases.remove(alias);
+	}
+
+	/**
+	 * @param alias alias of the key pair
+	 * @return cached public key of the key pair or {@code null} if none was cached yet
+	 */
+	static PublicKey getPublicKey(String alias) {
+		return publicKeys.get(alias);
+	}
+
+	/**
+	 * Caches the public key of the key pair with the given alias.
+	 */
+	static void putPublicKey(String alias, PublicKey publicKey) {
+		publicKeys.put(alias, publicKey);
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2018 Marvin Ramin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.myair.rxbiometric;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.Executor;
+
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Runs tasks on the main thread. Tasks submitted from the main thread run right away, others are
+ * posted to the main {@link Looper}.
+ */
+final class MainThreadExecutor implements Executor {
+
+	private static final MainThreadExecutor INSTANCE = new MainThreadExecutor();
+	private static final Scheduler SCHEDULER = Schedulers.from(INSTANCE);
+
+	private final Handler handler = new Handler(Looper.getMainLooper());
+
+	private MainThreadExecutor() {
+	}
+
+	static MainThreadExecutor get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * @return {@link Scheduler} backed by the main thread
+	 */
+	static Scheduler scheduler() {
+		return SCHEDULER;
+	}
+
+	@Override
+	public void execute(@NonNull Runnable runnable) {
+		if (Looper.myLooper() == Looper.getMainLooper()) {
+			runnable.run();
+		} else {
+			handler.post(runnable);
+		}
+	}
+}
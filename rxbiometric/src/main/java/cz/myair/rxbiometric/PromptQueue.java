@@ -0,0 +1,155 @@
+/*
+ * Copyright 2018 Marvin Ramin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.myair.rxbiometric;
+
+import androidx.annotation.NonNull;
+
+import java.util.PriorityQueue;
+
+import cz.myair.rxbiometric.data.BiometricPromptQueueMetrics;
+import io.reactivex.disposables.Disposable;
+
+/**
+ * Queue of operations waiting to show a {@link androidx.biometric.BiometricPrompt}.
+ * <p/>
+ * Only one prompt can be shown at a time, a second one cancels the first. Operations therefore
+ * take turns: the operation with the highest priority that waits the longest is started once
+ * the previous one released its turn.
+ */
+final class PromptQueue {
+
+	private static final PromptQueue SHARED = new PromptQueue();
+
+	private final PriorityQueue<Turn> waiting = new PriorityQueue<>();
+	private Turn active;
+	private long sequence;
+
+	private long promptsShown;
+	private long totalWaitNanos;
+	private long maxWaitNanos;
+
+	/**
+	 * @return the queue shared by all {@link RxBiometric} instances of the process
+	 */
+	static PromptQueue shared() {
+		return SHARED;
+	}
+
+	/**
+	 * Queues the given prompt. It is started right away if no other prompt is active.
+	 *
+	 * @param priority operations with a higher priority are started first
+	 * @param prompt   shows the prompt, called once it is the operation's turn
+	 * @return the turn of the operation, which has to be disposed once the prompt is done
+	 */
+	Disposable enqueue(int priority, @NonNull Runnable prompt) {
+		Turn turn;
+		Turn next;
+		synchronized (this) {
+			turn = new Turn(priority, sequence++, prompt);
+			waiting.add(turn);
+			next = next();
+		}
+		start(next);
+		return turn;
+	}
+
+	/**
+	 * @return current length of the queue and wait times of the prompts shown so far
+	 */
+	synchronized BiometricPromptQueueMetrics getMetrics() {
+		return new BiometricPromptQueueMetrics(waiting.size(), active != null, promptsShown, totalWaitNanos, maxWaitNanos);
+	}
+
+	private void release(Turn turn) {
+		Turn next;
+		synchronized (this) {
+			if (active == turn) {
+				active = null;
+			} else {
+				waiting.remove(turn);
+			}
+			next = next();
+		}
+		start(next);
+	}
+
+	/**
+	 * @return the turn to start, {@code null} if a prompt is active or none is waiting
+	 */
+	private Turn next() {
+		if (active != null || waiting.isEmpty()) {
+			return null;
+		}
+		active = waiting.poll();
+
+		long waitNanos = System.nanoTime() - active.enqueuedNanos;
+		promptsShown++;
+		totalWaitNanos += waitNanos;
+		maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+		return active;
+	}
+
+	private static void start(Turn turn) {
+		if (turn == null) {
+			return;
+		}
+		Runnable prompt = turn.prompt;
+		turn.prompt = null;
+		// The turn may have been disposed in the meantime
+		if (prompt != null) {
+			prompt.run();
+		}
+	}
+
+	private final class Turn implements Disposable, Comparable<Turn> {
+
+		private final int priority;
+		private final long sequence;
+		private final long enqueuedNanos = System.nanoTime();
+		private volatile Runnable prompt;
+		private volatile boolean disposed;
+
+		Turn(int priority, long sequence, Runnable prompt) {
+			this.priority = priority;
+			this.sequence = sequence;
+			this.prompt = prompt;
+		}
+
+		@Override
+		public void dispose() {
+			if (!disposed) {
+				disposed = true;
+				prompt = null;
+				release(this);
+			}
+		}
+
+		@Override
+		public boolean isDisposed() {
+			return disposed;
+		}
+
+		@Override
+		public int compareTo(@NonNull Turn other) {
+			if (priority != other.priority) {
+				return priority > other.priority ? -1 : 1;
+			}
+			return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+		}
+	}
+}
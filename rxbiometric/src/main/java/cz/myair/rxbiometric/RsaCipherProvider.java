@@ -19,7 +19,9 @@ package cz.myair.rxbiometric;
 import android.annotation.TargetApi;
 import android.content.Context;
 import android.os.Build;
+import android.security.keystore.KeyPermanentlyInvalidatedException;
 import android.security.keystore.KeyProperties;
+import android.security.keystore.UserNotAuthenticatedException;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -33,7 +35,6 @@ import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
-import java.security.cert.CertificateException;
 import java.security.spec.KeySpec;
 import java.security.spec.X509EncodedKeySpec;
 
@@ -42,33 +43,86 @@ import javax.crypto.NoSuchPaddingException;
 
 class RsaCipherProvider extends CipherProvider {
 
-	RsaCipherProvider(@NonNull Context context, @Nullable String keyName, boolean keyInvalidatedByBiometricEnrollment, RxBiometricLogger logger) throws CertificateException, NoSuchAlgorithmException, KeyStoreException, IOException {
-		super(context, keyName, keyInvalidatedByBiometricEnrollment, logger);
+	RsaCipherProvider(@NonNull Context context, @Nullable String keyName, boolean keyInvalidatedByBiometricEnrollment, int authenticationValidityDurationSeconds, RxBiometricLogger logger) {
+		super(context, keyName, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger);
 	}
 
 	@Override
 	@TargetApi(Build.VERSION_CODES.M)
-	Cipher cipherForEncryption() throws GeneralSecurityException {
-		KeyPairGenerator keyGenerator = KeyPairGenerator.getInstance(KeyProperties.KEY_ALGORITHM_RSA, ANDROID_KEY_STORE);
-
-		keyGenerator.initialize(getKeyGenParameterSpecBuilder(keyName, KeyProperties.BLOCK_MODE_ECB, KeyProperties.ENCRYPTION_PADDING_RSA_PKCS1, invalidatedByBiometricEnrollment)
-				.build());
+	Cipher cipherForEncryption() throws GeneralSecurityException, IOException {
+		PublicKey publicKey = KeyStoreProvider.getPublicKey(keyName);
+		if (publicKey == null) {
+			publicKey = findOrCreatePublicKey();
+			KeyStoreProvider.putPublicKey(keyName, publicKey);
+		}
 
-		keyGenerator.generateKeyPair();
-
-		KeyFactory keyFactory = KeyFactory.getInstance(KeyProperties.KEY_ALGORITHM_RSA);
 		Cipher cipher = createCipher();
-		cipher.init(Cipher.ENCRYPT_MODE, getPublicKey(keyFactory, keyStore));
-
+		cipher.init(Cipher.ENCRYPT_MODE, publicKey);
 		return cipher;
 	}
 
-	Cipher getCipherForDecryption() throws GeneralSecurityException {
+	@TargetApi(Build.VERSION_CODES.M)
+	Cipher getCipherForDecryption() throws GeneralSecurityException, IOException {
 		Cipher cipher = createCipher();
-		cipher.init(Cipher.DECRYPT_MODE, getPrivateKey(keyStore, keyName));
+		PrivateKey privateKey;
+		try {
+			privateKey = getPrivateKey(keyStore(), keyName);
+		} catch (KeyStoreException e) {
+			KeyStoreProvider.invalidate();
+			throw e;
+		}
+		try {
+			cipher.init(Cipher.DECRYPT_MODE, privateKey);
+		} catch (KeyPermanentlyInvalidatedException e) {
+			// The key pair can never be used again, the next encryption will create a new one
+			removeKey(keyName);
+			throw e;
+		}
 		return cipher;
 	}
 
+	@Override
+	Cipher getCipherRequiringAuthentication() throws GeneralSecurityException, IOException {
+		return getCipherForDecryption();
+	}
+
+	@Override
+	@TargetApi(Build.VERSION_CODES.M)
+	boolean prepareKey() throws GeneralSecurityException, IOException {
+		boolean keyCreated = !keyExists(keyName);
+		if (KeyStoreProvider.getPublicKey(keyName) == null) {
+			KeyStoreProvider.putPublicKey(keyName, findOrCreatePublicKey());
+		}
+		return keyCreated;
+	}
+
+	@TargetApi(Build.VERSION_CODES.M)
+	private PublicKey findOrCreatePublicKey() throws GeneralSecurityException, IOException {
+		PrivateKey privateKey = keyExists(keyName) ? getPrivateKey(keyStore(), keyName) : null;
+		if (privateKey != null) {
+			try {
+				// Throws KeyPermanentlyInvalidatedException for invalidated keys, which renews the key pair
+				createCipher().init(Cipher.DECRYPT_MODE, privateKey);
+			} catch (UserNotAuthenticatedException ignored) {
+				// Time-bound key pair that is currently locked, but still valid
+			}
+		} else {
+			createKeyPair();
+		}
+		return getPublicKey(KeyFactory.getInstance(KeyProperties.KEY_ALGORITHM_RSA), keyStore());
+	}
+
+	@TargetApi(Build.VERSION_CODES.M)
+	private void createKeyPair() throws GeneralSecurityException {
+		KeyPairGenerator keyGenerator = KeyPairGenerator.getInstance(KeyProperties.KEY_ALGORITHM_RSA, ANDROID_KEY_STORE);
+
+		keyGenerator.initialize(getKeyGenParameterSpecBuilder(keyName, KeyProperties.BLOCK_MODE_ECB, KeyProperties.ENCRYPTION_PADDING_RSA_PKCS1, invalidatedByBiometricEnrollment, authenticationValidityDurationSeconds)
+				.build());
+
+		keyGenerator.generateKeyPair();
+		KeyStoreProvider.onKeyCreated(keyName);
+	}
+
 	private PrivateKey getPrivateKey(KeyStore keyStore, String keyAlias) throws GeneralSecurityException {
 		return (PrivateKey) keyStore.getKey(keyAlias, null);
 	}
@@ -19,6 +19,8 @@ package cz.myair.rxbiometric;
 import androidx.annotation.Nullable;
 import androidx.biometric.BiometricPrompt;
 
+import java.nio.ByteBuffer;
+
 import javax.crypto.Cipher;
 
 import cz.myair.rxbiometric.data.BiometricDecryptionResult;
@@ -31,8 +33,11 @@ class RsaDecryptionObservable extends BiometricDialogObservable<BiometricDecrypt
 
 	private final RsaCipherProvider cipherProvider;
 	private final String encryptedString;
+	private final ByteBuffer encryptedBytes;
+	private final boolean decryptToBuffer;
 	private final EncodingProvider encodingProvider;
 	private final RxBiometricLogger logger;
+	private byte[] message;
 
 	/**
 	 * Creates a new AesEncryptionObservable that will listen to fingerprint authentication
@@ -42,20 +47,52 @@ class RsaDecryptionObservable extends BiometricDialogObservable<BiometricDecrypt
 	 * @param biometricDialogBundle
 	 * @param keyName               keyName to use for the decryption
 	 * @param encrypted             data to encrypt  @return Observable {@link BiometricEncryptionResult}
+	 * @param decryptToBuffer       whether to decrypt into a {@link SecureBuffer} instead of a char[]
 	 * @return Observable result of the decryption
 	 */
 	static Observable<BiometricDecryptionResult> create(ActivityOrFragment activityOrFragment,
 														BiometricDialogBundle biometricDialogBundle,
 														String keyName,
 														String encrypted,
+														boolean decryptToBuffer,
 														boolean keyInvalidatedByBiometricEnrollment,
+														int authenticationValidityDurationSeconds,
 														RxBiometricLogger logger) {
+		return create(activityOrFragment, biometricDialogBundle, keyName, encrypted, null, decryptToBuffer, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger);
+	}
+
+	/**
+	 * Same as {@link #create(ActivityOrFragment, BiometricDialogBundle, String, String, boolean, boolean, int, RxBiometricLogger)}
+	 * for data in binary form. A legacy String given as bytes is decrypted as well.
+	 */
+	static Observable<BiometricDecryptionResult> create(ActivityOrFragment activityOrFragment,
+														BiometricDialogBundle biometricDialogBundle,
+														String keyName,
+														ByteBuffer encrypted,
+														boolean decryptToBuffer,
+														boolean keyInvalidatedByBiometricEnrollment,
+														int authenticationValidityDurationSeconds,
+														RxBiometricLogger logger) {
+		return create(activityOrFragment, biometricDialogBundle, keyName, null, encrypted, decryptToBuffer, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger);
+	}
+
+	private static Observable<BiometricDecryptionResult> create(ActivityOrFragment activityOrFragment,
+																BiometricDialogBundle biometricDialogBundle,
+																String keyName,
+																String encryptedString,
+																ByteBuffer encryptedBytes,
+																boolean decryptToBuffer,
+																boolean keyInvalidatedByBiometricEnrollment,
+																int authenticationValidityDurationSeconds,
+																RxBiometricLogger logger) {
 		try {
 			return Observable.create(new RsaDecryptionObservable(
 					activityOrFragment,
 					biometricDialogBundle,
-					new RsaCipherProvider(activityOrFragment.getContext(), keyName, keyInvalidatedByBiometricEnrollment, logger),
-					encrypted,
+					new RsaCipherProvider(activityOrFragment.getContext(), keyName, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger),
+					encryptedString,
+					encryptedBytes,
+					decryptToBuffer,
 					new Base64Provider(),
 					logger));
 		} catch (Exception e) {
@@ -66,35 +103,39 @@ class RsaDecryptionObservable extends BiometricDialogObservable<BiometricDecrypt
 	private RsaDecryptionObservable(ActivityOrFragment activityOrFragment,
 									BiometricDialogBundle biometricDialogBundle,
 									RsaCipherProvider cipherProvider,
-									String encrypted,
+									String encryptedString,
+									ByteBuffer encryptedBytes,
+									boolean decryptToBuffer,
 									EncodingProvider encodingProvider,
 									RxBiometricLogger logger) {
 		super(activityOrFragment, biometricDialogBundle);
 		this.cipherProvider = cipherProvider;
-		encryptedString = encrypted;
+		this.encryptedString = encryptedString;
+		this.encryptedBytes = encryptedBytes;
+		this.decryptToBuffer = decryptToBuffer;
 		this.encodingProvider = encodingProvider;
 		this.logger = logger;
 	}
 
 	@Nullable
 	@Override
-	protected BiometricPrompt.CryptoObject initCryptoObject(ObservableEmitter<BiometricDecryptionResult> subscriber) {
-		try {
-			Cipher cipher = cipherProvider.getCipherForDecryption();
-			return new BiometricPrompt.CryptoObject(cipher);
-		} catch (Exception e) {
-			subscriber.onError(e);
-			return null;
-		}
+	protected BiometricPrompt.CryptoObject initCryptoObject(ObservableEmitter<BiometricDecryptionResult> subscriber) throws Exception {
+		message = parseMessage();
+		Cipher cipher = cipherProvider.getCipherForDecryption();
+		return new BiometricPrompt.CryptoObject(cipher);
 	}
 
 	@Override
-	protected void onAuthenticationSucceeded(ObservableEmitter<BiometricDecryptionResult> emitter, BiometricPrompt.AuthenticationResult result) {
+	protected void onAuthenticationSucceeded(ObservableEmitter<BiometricDecryptionResult> emitter, BiometricPrompt.CryptoObject cryptoObject) {
 		try {
-			Cipher cipher = result.getCryptoObject().getCipher();
-			byte[] bytes = cipher.doFinal(encodingProvider.decode(encryptedString));
-
-			emitter.onNext(new BiometricDecryptionResult(BiometricResult.AUTHENTICATED, ConversionUtils.toChars(bytes)));
+			Cipher cipher = cryptoObject.getCipher();
+			if (decryptToBuffer) {
+				SecureBuffer decrypted = SecureBuffer.doFinal(cipher, message);
+				emitter.onNext(new BiometricDecryptionResult(BiometricResult.AUTHENTICATED, null, decrypted));
+			} else {
+				byte[] bytes = cipher.doFinal(message);
+				emitter.onNext(new BiometricDecryptionResult(BiometricResult.AUTHENTICATED, ConversionUtils.toChars(bytes)));
+			}
 			emitter.onComplete();
 		} catch (Exception e) {
 			logger.error("Unable to decrypt given value. RxBiometric is only able to decrypt values previously encrypted by RxBiometric with the same encryption mode.", e);
@@ -103,6 +144,19 @@ class RsaDecryptionObservable extends BiometricDialogObservable<BiometricDecrypt
 
 	}
 
+	/**
+	 * @return message to decrypt, given in binary or legacy String form
+	 */
+	private byte[] parseMessage() throws CryptoDataException {
+		if (encryptedBytes == null) {
+			return encodingProvider.decode(encryptedString);
+		}
+		if (CryptoData.isBinary(encryptedBytes)) {
+			return CryptoData.fromBinary(encodingProvider, encryptedBytes, EncryptionMethod.RSA).getMessage();
+		}
+		return encodingProvider.decode(CryptoData.toLegacyString(encryptedBytes));
+	}
+
 	@Override
 	protected void onAuthenticationFailed(ObservableEmitter<BiometricDecryptionResult> emitter) {
 		emitter.onNext(new BiometricDecryptionResult(BiometricResult.FAILED, null));
@@ -112,4 +166,9 @@ class RsaDecryptionObservable extends BiometricDialogObservable<BiometricDecrypt
 	protected boolean isCryptoObjectRequired() {
 		return true;
 	}
+
+	@Override
+	protected boolean isTimeBound() {
+		return cipherProvider.isTimeBound();
+	}
 }
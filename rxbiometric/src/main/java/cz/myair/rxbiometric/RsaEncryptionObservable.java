@@ -32,6 +32,7 @@ class RsaEncryptionObservable implements ObservableOnSubscribe<BiometricEncrypti
 
 	private final RsaCipherProvider cipherProvider;
 	private final char[] toEncrypt;
+	private final SecureBuffer toEncryptBuffer;
 	private final EncodingProvider encodingProvider;
 	private final RxBiometricLogger logger;
 
@@ -43,13 +44,32 @@ class RsaEncryptionObservable implements ObservableOnSubscribe<BiometricEncrypti
 	 * @param keyName   name of the key in the keystore
 	 * @param toEncrypt data to encrypt  @return Observable {@link BiometricEncryptionResult}
 	 */
-	static Observable<BiometricEncryptionResult> create(Context context, String keyName, char[] toEncrypt, boolean keyInvalidatedByBiometricEnrollment, RxBiometricLogger logger) {
+	static Observable<BiometricEncryptionResult> create(Context context, String keyName, char[] toEncrypt, boolean keyInvalidatedByBiometricEnrollment, int authenticationValidityDurationSeconds, RxBiometricLogger logger) {
 		if (toEncrypt == null) {
 			return Observable.error(new IllegalArgumentException("String to be encrypted is null. Can only encrypt valid strings"));
 		}
 		try {
 			return Observable.create(new RsaEncryptionObservable(
-					new RsaCipherProvider(context, keyName, keyInvalidatedByBiometricEnrollment, logger),
+					new RsaCipherProvider(context, keyName, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger),
+					toEncrypt,
+					new Base64Provider(),
+					logger));
+		} catch (Exception e) {
+			return Observable.error(e);
+		}
+	}
+
+	/**
+	 * Same as {@link #create(Context, String, char[], boolean, int, RxBiometricLogger)} for data kept
+	 * in a {@link SecureBuffer}, which is not wiped by the encryption.
+	 */
+	static Observable<BiometricEncryptionResult> create(Context context, String keyName, SecureBuffer toEncrypt, boolean keyInvalidatedByBiometricEnrollment, int authenticationValidityDurationSeconds, RxBiometricLogger logger) {
+		if (toEncrypt == null) {
+			return Observable.error(new IllegalArgumentException("String to be encrypted is null. Can only encrypt valid strings"));
+		}
+		try {
+			return Observable.create(new RsaEncryptionObservable(
+					new RsaCipherProvider(context, keyName, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger),
 					toEncrypt,
 					new Base64Provider(),
 					logger));
@@ -63,8 +83,25 @@ class RsaEncryptionObservable implements ObservableOnSubscribe<BiometricEncrypti
 							char[] toEncrypt,
 							EncodingProvider encodingProvider,
 							RxBiometricLogger logger) {
+		this(cipherProvider, toEncrypt, null, encodingProvider, logger);
+	}
+
+	@VisibleForTesting
+	RsaEncryptionObservable(RsaCipherProvider cipherProvider,
+							SecureBuffer toEncrypt,
+							EncodingProvider encodingProvider,
+							RxBiometricLogger logger) {
+		this(cipherProvider, null, toEncrypt, encodingProvider, logger);
+	}
+
+	private RsaEncryptionObservable(RsaCipherProvider cipherProvider,
+									char[] toEncrypt,
+									SecureBuffer toEncryptBuffer,
+									EncodingProvider encodingProvider,
+									RxBiometricLogger logger) {
 		this.cipherProvider = cipherProvider;
 		this.toEncrypt = toEncrypt;
+		this.toEncryptBuffer = toEncryptBuffer;
 		this.encodingProvider = encodingProvider;
 		this.logger = logger;
 	}
@@ -73,10 +110,13 @@ class RsaEncryptionObservable implements ObservableOnSubscribe<BiometricEncrypti
 	public void subscribe(ObservableEmitter<BiometricEncryptionResult> emitter) {
 		try {
 			Cipher cipher = cipherProvider.getCipherForEncryption();
-			byte[] encryptedBytes = cipher.doFinal(ConversionUtils.toBytes(toEncrypt));
+			byte[] encryptedBytes = toEncryptBuffer != null
+					? toEncryptBuffer.doFinal(cipher)
+					: cipher.doFinal(ConversionUtils.toBytes(toEncrypt));
 
 			String encryptedString = encodingProvider.encode(encryptedBytes);
-			emitter.onNext(new BiometricEncryptionResult(BiometricResult.AUTHENTICATED, encryptedString));
+			byte[] binary = CryptoData.fromBytes(encodingProvider, encryptedBytes, new byte[0]).toBinary(EncryptionMethod.RSA);
+			emitter.onNext(new BiometricEncryptionResult(BiometricResult.AUTHENTICATED, encryptedString, binary));
 			emitter.onComplete();
 		} catch (Exception e) {
 			logger.error(String.format("Error writing value for key: %s", cipherProvider.keyName), e);
@@ -30,12 +30,39 @@ import androidx.fragment.app.FragmentActivity;
 
 import org.reactivestreams.Subscriber;
 
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
 import cz.myair.rxbiometric.data.BiometricAuthenticationResult;
+import cz.myair.rxbiometric.data.BiometricBatchDecryptionResult;
+import cz.myair.rxbiometric.data.BiometricBatchEncryptionResult;
 import cz.myair.rxbiometric.data.BiometricCryptoObjectDecryptionResult;
+import cz.myair.rxbiometric.data.BiometricDecryptionCacheStats;
 import cz.myair.rxbiometric.data.BiometricDecryptionResult;
 import cz.myair.rxbiometric.data.BiometricEncryptionResult;
+import cz.myair.rxbiometric.data.BiometricPromptQueueMetrics;
+import cz.myair.rxbiometric.data.BiometricResult;
+import cz.myair.rxbiometric.data.BiometricWarmUpResult;
 import cz.myair.rxbiometric.data.BiometricsUnavailableException;
+import io.reactivex.Flowable;
 import io.reactivex.Observable;
+import io.reactivex.Scheduler;
+import io.reactivex.ObservableSource;
+import io.reactivex.Single;
+import io.reactivex.functions.Consumer;
+import io.reactivex.functions.Function;
+import io.reactivex.functions.Predicate;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subjects.PublishSubject;
+import io.reactivex.subjects.Subject;
 
 import static androidx.biometric.BiometricManager.BIOMETRIC_SUCCESS;
 
@@ -58,22 +85,39 @@ import static androidx.biometric.BiometricManager.BIOMETRIC_SUCCESS;
  */
 public class RxBiometric {
 
+	private static final InFlightRequests.Key AUTHENTICATION = new InFlightRequests.Key("authenticate", null, null, "", null);
+
 	private final ActivityOrFragment activityOrFragment;
 	private final boolean keyInvalidatedByBiometricEnrollment;
+	private final int authenticationValidityDurationSeconds;
 	private final EncryptionMethod encryptionMethod;
 	private final RxBiometricLogger logger;
 	private final BiometricDialogBundle biometricDialogBundle;
+	private final Scheduler scheduler;
+	private final Scheduler resultScheduler;
+	@Nullable
+	private final DecryptionCache decryptionCache;
+	private final InFlightRequests inFlightRequests = new InFlightRequests();
+	private final Subject<BiometricAuthenticationResult> failedAttempts = PublishSubject.<BiometricAuthenticationResult>create().toSerialized();
 
 	private RxBiometric(ActivityOrFragment activityOrFragment,
 						boolean keyInvalidatedByBiometricEnrollment,
+						int authenticationValidityDurationSeconds,
 						EncryptionMethod encryptionMethod,
 						RxBiometricLogger logger,
-						BiometricDialogBundle biometricDialogBundle) {
+						BiometricDialogBundle biometricDialogBundle,
+						Scheduler scheduler,
+						Scheduler resultScheduler,
+						@Nullable DecryptionCache decryptionCache) {
 		this.activityOrFragment = activityOrFragment;
 		this.keyInvalidatedByBiometricEnrollment = keyInvalidatedByBiometricEnrollment;
+		this.authenticationValidityDurationSeconds = authenticationValidityDurationSeconds;
 		this.encryptionMethod = encryptionMethod;
 		this.logger = logger;
 		this.biometricDialogBundle = biometricDialogBundle;
+		this.scheduler = scheduler;
+		this.resultScheduler = resultScheduler;
+		this.decryptionCache = decryptionCache;
 	}
 
 	/**
@@ -82,6 +126,7 @@ public class RxBiometric {
 	public static class Builder {
 		private final ActivityOrFragment activityOrFragment;
 		private boolean keyInvalidatedByBiometricEnrollment = true;
+		private int authenticationValidityDurationSeconds;
 		private EncryptionMethod encryptionMethod = EncryptionMethod.RSA;
 		private RxBiometricLogger logger = new DefaultLogger();
 		private int dialogTitleText;
@@ -91,6 +136,12 @@ public class RxBiometric {
 		private Integer dialogDescriptionText;
 		private int dialogNegativeButtonText;
 		private boolean confirmationRequired = true;
+		private Scheduler scheduler = Schedulers.io();
+		private Scheduler resultScheduler = MainThreadExecutor.scheduler();
+		private Executor callbackExecutor = CallbackExecutor.shared();
+		private int promptPriority;
+		private int decryptionCacheSize;
+		private long decryptionCacheTimeToLiveNanos;
 
 		/**
 		 * Creates a new Builder for {@link RxBiometric} using {@link Fragment}
@@ -168,6 +219,30 @@ public class RxBiometric {
 			return this;
 		}
 
+		/**
+		 * Keeps encryption keys unlocked for the given duration after the user authenticated.
+		 * Operations within this window run right away without showing a prompt, once it
+		 * expired the user is prompted again. By default every operation requires its own
+		 * authentication.
+		 * <p>
+		 * This only applies to keys created with this setting, keys already in the Android
+		 * KeyStore keep the behavior they were created with. Use a different key name when
+		 * changing this setting.
+		 *
+		 * @param seconds duration in seconds for which keys stay unlocked after an
+		 *                authentication. Defaults to {@code 0}, which requires an
+		 *                authentication for every operation.
+		 * @return the {@link Builder}
+		 */
+		@NonNull
+		public Builder authenticationValidityDuration(int seconds) {
+			if (seconds < 0) {
+				throw new IllegalArgumentException("authenticationValidityDuration must not be negative.");
+			}
+			this.authenticationValidityDurationSeconds = seconds;
+			return this;
+		}
+
 		/**
 		 * Sets the {@link EncryptionMethod} that will be used for this instance of
 		 * {@link RxBiometric}. AES requires user authentication for both
@@ -198,6 +273,90 @@ public class RxBiometric {
 			return this;
 		}
 
+		/**
+		 * Sets the {@link Scheduler} that loads the Android KeyStore, creates keys and runs the
+		 * ciphers of all operations. The {@link BiometricPrompt} is always shown from the main
+		 * thread.
+		 *
+		 * @param scheduler Scheduler for keystore and cipher work.
+		 *                  Defaults to {@link Schedulers#io()}
+		 * @return the {@link Builder}
+		 */
+		@NonNull
+		public Builder scheduler(@NonNull Scheduler scheduler) {
+			this.scheduler = scheduler;
+			return this;
+		}
+
+		/**
+		 * Sets the {@link Scheduler} on which the results of all operations are delivered.
+		 *
+		 * @param resultScheduler Scheduler results are delivered on. Defaults to the main thread
+		 * @return the {@link Builder}
+		 */
+		@NonNull
+		public Builder resultScheduler(@NonNull Scheduler resultScheduler) {
+			this.resultScheduler = resultScheduler;
+			return this;
+		}
+
+		/**
+		 * Sets the {@link Executor} that receives the callbacks of the {@link BiometricPrompt}.
+		 * After a successful authentication the data is encrypted or decrypted in this callback.
+		 * The executor has to run its tasks in the order they were submitted.
+		 *
+		 * @param callbackExecutor Executor for the callbacks of the prompt.
+		 *                         Defaults to a single background thread shared by all prompts
+		 * @return the {@link Builder}
+		 */
+		@NonNull
+		public Builder callbackExecutor(@NonNull Executor callbackExecutor) {
+			this.callbackExecutor = callbackExecutor;
+			return this;
+		}
+
+		/**
+		 * Sets the priority of the prompts of this instance. Only one prompt can be shown at a
+		 * time, so operations of all instances wait for their turn. Waiting operations with a
+		 * higher priority are started first, those with the same priority in the order they
+		 * were subscribed.
+		 *
+		 * @param promptPriority priority of the prompts of this instance. Defaults to 0
+		 * @return the {@link Builder}
+		 */
+		@NonNull
+		public Builder promptPriority(int promptPriority) {
+			this.promptPriority = promptPriority;
+			return this;
+		}
+
+		/**
+		 * Enables a cache of decrypted values. Decrypting a cached value again neither shows a
+		 * prompt nor accesses the Android KeyStore. Values are held encrypted with a key that
+		 * only exists in memory and are overwritten once evicted.
+		 * <p/>
+		 * Only Strings and binary data decrypted into a {@code char[]} are cached, not data
+		 * decrypted into a {@link SecureBuffer}. Disabled by default.
+		 *
+		 * @param maxEntries maximum number of cached values, the least recently used value is
+		 *                   evicted once the cache is full
+		 * @param timeToLive time after which a cached value expires
+		 * @param unit       unit of the timeToLive
+		 * @return the {@link Builder}
+		 */
+		@NonNull
+		public Builder decryptionCache(int maxEntries, long timeToLive, @NonNull TimeUnit unit) {
+			if (maxEntries <= 0) {
+				throw new IllegalArgumentException("decryptionCache requires a positive number of entries.");
+			}
+			if (timeToLive <= 0) {
+				throw new IllegalArgumentException("decryptionCache requires a positive timeToLive.");
+			}
+			this.decryptionCacheSize = maxEntries;
+			this.decryptionCacheTimeToLiveNanos = unit.toNanos(timeToLive);
+			return this;
+		}
+
 		public RxBiometric build() {
 			if (dialogTitleText == 0) {
 				throw new IllegalArgumentException("RxBiometric requires a dialogTitleText.");
@@ -209,6 +368,7 @@ public class RxBiometric {
 
 			return new RxBiometric(activityOrFragment,
 					keyInvalidatedByBiometricEnrollment,
+					authenticationValidityDurationSeconds,
 					encryptionMethod,
 					logger,
 					new BiometricDialogBundle(
@@ -216,9 +376,27 @@ public class RxBiometric {
 							dialogSubtitleText,
 							dialogDescriptionText,
 							dialogNegativeButtonText,
-							confirmationRequired)
+							confirmationRequired,
+							callbackExecutor,
+							promptPriority,
+							PromptQueue.shared()),
+					scheduler,
+					resultScheduler,
+					createDecryptionCache()
 			);
 		}
+
+		@Nullable
+		private DecryptionCache createDecryptionCache() {
+			if (decryptionCacheSize == 0) {
+				return null;
+			}
+			try {
+				return new DecryptionCache(decryptionCacheSize, decryptionCacheTimeToLiveNanos);
+			} catch (GeneralSecurityException e) {
+				throw new IllegalStateException("Unable to create the decryption cache.", e);
+			}
+		}
 	}
 
 	/**
@@ -228,12 +406,20 @@ public class RxBiometric {
 	 * All possible recoverable errors will be provided in {@link Subscriber#onNext(Object)} and
 	 * should be handled there. Unrecoverable errors will be provided with
 	 * {@link Subscriber#onError(Throwable)} calls.
+	 * <p/>
+	 * Authentications of this instance subscribed while another one is pending share its prompt
+	 * and results.
 	 *
 	 * @return Observable {@link BiometricAuthenticationResult}. Will complete once the
 	 * authentication was successful or has failed entirely.
 	 */
 	public Observable<BiometricAuthenticationResult> authenticate() {
-		return AuthenticationObservable.create(activityOrFragment, biometricDialogBundle);
+		return inFlightRequests.share(AUTHENTICATION, new Callable<Observable<BiometricAuthenticationResult>>() {
+			@Override
+			public Observable<BiometricAuthenticationResult> call() {
+				return BiometricDialogSingle.forwardFailedAttempts(schedule(AuthenticationObservable.create(activityOrFragment, biometricDialogBundle)), failedAttempts);
+			}
+		});
 	}
 
 	/**
@@ -248,7 +434,7 @@ public class RxBiometric {
 	 * Will complete once the authentication and decryption were successful or have failed entirely.
 	 */
 	public Observable<BiometricCryptoObjectDecryptionResult> authenticate(@NonNull BiometricPrompt.CryptoObject cryptoObject) {
-		return CryptoObjectDecryptionObservable.create(activityOrFragment, biometricDialogBundle, cryptoObject);
+		return schedule(CryptoObjectDecryptionObservable.create(activityOrFragment, biometricDialogBundle, cryptoObject));
 	}
 
 	/**
@@ -349,11 +535,15 @@ public class RxBiometric {
 		}
 		switch (encryptionMethod) {
 			case AES:
-				return AesEncryptionObservable.create(activityOrFragment, biometricDialogBundle, keyName, toEncrypt, keyInvalidatedByBiometricEnrollment, logger);
+				return schedule(AesEncryptionObservable.create(activityOrFragment, biometricDialogBundle, keyName, toEncrypt, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger));
+			case AES_GCM:
+				return schedule(AesEncryptionObservable.createGcm(activityOrFragment, biometricDialogBundle, keyName, toEncrypt, null, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger));
+			case AES_ENVELOPE:
+				return schedule(AesEnvelopeEncryptionObservable.create(activityOrFragment, biometricDialogBundle, keyName, toEncrypt, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger));
 			case RSA:
 				// RSA encryption implementation does not depend on biometric authentication!
 				if (isAvailable(activityOrFragment.getContext())) {
-					return RsaEncryptionObservable.create(activityOrFragment.getContext(), keyName, toEncrypt, keyInvalidatedByBiometricEnrollment, logger);
+					return schedule(RsaEncryptionObservable.create(activityOrFragment.getContext(), keyName, toEncrypt, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger));
 				} else {
 					return Observable.error(new BiometricsUnavailableException("Biometric authentication is not available on this device! Ensure that the device has a biometric sensor and enrolled biometrics by calling RxBiometric#isAvailable(Context) first"));
 				}
@@ -362,6 +552,95 @@ public class RxBiometric {
 		}
 	}
 
+	/**
+	 * Encrypt data with {@link EncryptionMethod#AES_GCM} and bind the given associated data to
+	 * it, e.g. the id of the record the value is stored in. The associated data is not encrypted
+	 * or stored, it has to be given again for decryption with
+	 * {@link #decrypt(String, String, byte[])}. Decryption fails if it does not match, so an
+	 * encrypted value cannot be moved to another record unnoticed.
+	 *
+	 * @param keyName        name of the key to store in the Android {@link java.security.KeyStore}
+	 * @param toEncrypt      data to encrypt
+	 * @param associatedData data to authenticate along with the encrypted data
+	 * @return Observable {@link BiometricEncryptionResult} that will contain the encrypted data.
+	 * Will complete once the operation was successful or failed entirely.
+	 */
+	public Observable<BiometricEncryptionResult> encrypt(@Nullable String keyName, @NonNull char[] toEncrypt, @NonNull byte[] associatedData) {
+		if (encryptionMethod != EncryptionMethod.AES_GCM) {
+			return Observable.error(new IllegalArgumentException("Associated data is only supported for EncryptionMethod.AES_GCM"));
+		}
+		return schedule(AesEncryptionObservable.createGcm(activityOrFragment, biometricDialogBundle, keyName, toEncrypt, associatedData, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger));
+	}
+
+	/**
+	 * Encrypt data kept in a {@link SecureBuffer}. Same as {@link #encrypt(String, char[])}, but
+	 * the data is read directly from the buffer without copying it to the Java heap as a whole.
+	 * The buffer is not wiped by the encryption, it stays owned by the caller.
+	 *
+	 * @param keyName   name of the key to store in the Android {@link java.security.KeyStore}
+	 * @param toEncrypt data to encrypt
+	 * @return Observable {@link BiometricEncryptionResult} that will contain the encrypted data.
+	 * Will complete once the operation was successful or failed entirely.
+	 */
+	public Observable<BiometricEncryptionResult> encrypt(@Nullable String keyName, @NonNull SecureBuffer toEncrypt) {
+		if (encryptionMethod == null) {
+			return Observable.error(new IllegalArgumentException("Unable to encrypt without encryptionMethod specified"));
+		}
+		switch (encryptionMethod) {
+			case AES:
+				return schedule(AesEncryptionObservable.create(activityOrFragment, biometricDialogBundle, keyName, toEncrypt, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger));
+			case AES_GCM:
+				return schedule(AesEncryptionObservable.createGcm(activityOrFragment, biometricDialogBundle, keyName, toEncrypt, null, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger));
+			case AES_ENVELOPE:
+				return schedule(AesEnvelopeEncryptionObservable.create(activityOrFragment, biometricDialogBundle, keyName, toEncrypt, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger));
+			case RSA:
+				// RSA encryption implementation does not depend on biometric authentication!
+				if (isAvailable(activityOrFragment.getContext())) {
+					return schedule(RsaEncryptionObservable.create(activityOrFragment.getContext(), keyName, toEncrypt, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger));
+				} else {
+					return Observable.error(new BiometricsUnavailableException("Biometric authentication is not available on this device! Ensure that the device has a biometric sensor and enrolled biometrics by calling RxBiometric#isAvailable(Context) first"));
+				}
+			default:
+				return Observable.error(new IllegalArgumentException("Unknown encryption method: " + encryptionMethod));
+		}
+	}
+
+	/**
+	 * Encrypt multiple values with a single biometric authentication. Will use a default keyName
+	 * in the Android keystore unique to this applications package name.
+	 * If you want to provide a custom key name use {@link #encryptAll(String, Map)} instead.
+	 *
+	 * @param toEncrypt values to encrypt by their name
+	 * @return Observable {@link BiometricBatchEncryptionResult} that will contain the encrypted
+	 * values. Will complete once the authentication and encryption were successful or have failed entirely.
+	 * @see #encryptAll(String, Map)
+	 */
+	public Observable<BiometricBatchEncryptionResult> encryptAll(@NonNull Map<String, char[]> toEncrypt) {
+		return encryptAll(null, toEncrypt);
+	}
+
+	/**
+	 * Encrypt multiple values with a single biometric authentication. Only supported for
+	 * {@link EncryptionMethod#AES}, as {@link EncryptionMethod#RSA} does not require
+	 * authentication for encryption.
+	 * <p>
+	 * The resulting {@link BiometricBatchEncryptionResult} will contain the encrypted data of
+	 * every value by its name, accessible via {@link BiometricBatchEncryptionResult#getEncrypted()}
+	 * if the operation was successful. Each value can be decrypted on its own by calling
+	 * {@link #decrypt(String, String)} with the same key name.
+	 *
+	 * @param keyName   name of the key to store in the Android {@link java.security.KeyStore}
+	 * @param toEncrypt values to encrypt by their name
+	 * @return Observable {@link BiometricBatchEncryptionResult} that will contain the encrypted
+	 * values. Will complete once the operation was successful or failed entirely.
+	 */
+	public Observable<BiometricBatchEncryptionResult> encryptAll(@Nullable String keyName, @NonNull Map<String, char[]> toEncrypt) {
+		if (encryptionMethod != EncryptionMethod.AES) {
+			return Observable.error(new IllegalArgumentException("Encrypting multiple values is only supported for EncryptionMethod.AES"));
+		}
+		return schedule(AesBatchEncryptionObservable.create(activityOrFragment, biometricDialogBundle, keyName, toEncrypt, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger));
+	}
+
 	/**
 	 * Decrypt data previously encrypted with {@link #encrypt(String)}.
 	 * <p/>
@@ -394,6 +673,9 @@ public class RxBiometric {
 	 * authentication and decryption was successful.
 	 * <p>
 	 * This operation will require the user to authenticate with their biometric.
+	 * <p/>
+	 * Identical decryptions of this instance subscribed while this one is pending share its
+	 * prompt and results instead of showing a prompt of their own.
 	 *
 	 * @param keyName   name of the key in the keystore to use
 	 * @param toDecrypt String of encrypted data previously encrypted with
@@ -402,19 +684,682 @@ public class RxBiometric {
 	 * Will complete once the authentication and decryption were successful or have failed entirely.
 	 */
 	public Observable<BiometricDecryptionResult> decrypt(@Nullable String keyName, @NonNull String toDecrypt) {
+		return decrypt(keyName, toDecrypt, null, false);
+	}
+
+	/**
+	 * Decrypt data previously encrypted with {@link #encrypt(String)} given in the binary form
+	 * of {@link BiometricEncryptionResult#getEncryptedBytes()}. Will use a default keyName in the
+	 * Android keystore unique to this applications package name.
+	 *
+	 * @param encrypted encrypted data in binary form
+	 * @return Observable {@link BiometricDecryptionResult} that will contain the decrypted data.
+	 * Will complete once the authentication and decryption were successful or have failed entirely.
+	 * @see #decrypt(String, ByteBuffer)
+	 */
+	public Observable<BiometricDecryptionResult> decrypt(@NonNull byte[] encrypted) {
+		return decrypt(null, ByteBuffer.wrap(encrypted));
+	}
+
+	/**
+	 * Decrypt data previously encrypted with {@link #encrypt(String, char[])} given in the binary
+	 * form of {@link BiometricEncryptionResult#getEncryptedBytes()}.
+	 *
+	 * @param keyName   name of the key in the keystore to use
+	 * @param encrypted encrypted data in binary form
+	 * @return Observable {@link BiometricDecryptionResult} that will contain the decrypted data.
+	 * Will complete once the authentication and decryption were successful or have failed entirely.
+	 * @see #decrypt(String, ByteBuffer)
+	 */
+	public Observable<BiometricDecryptionResult> decrypt(@Nullable String keyName, @NonNull byte[] encrypted) {
+		return decrypt(keyName, ByteBuffer.wrap(encrypted));
+	}
+
+	/**
+	 * Decrypt data previously encrypted with {@link #encrypt(String, char[])} given in the binary
+	 * form of {@link BiometricEncryptionResult#getEncryptedBuffer()}. The binary form contains the
+	 * {@link EncryptionMethod} it was encrypted with, which has to match the one of this instance.
+	 * <p/>
+	 * Encrypted Strings of the {@link BiometricEncryptionResult#getEncrypted()} form stored as
+	 * bytes are decrypted as well. Identical decryptions pending at the same time share a prompt,
+	 * see {@link #decrypt(String, String)}.
+	 *
+	 * @param keyName   name of the key in the keystore to use
+	 * @param encrypted encrypted data from its position to its limit, the position is not changed
+	 * @return Observable {@link BiometricDecryptionResult} that will contain the decrypted data.
+	 * Will complete once the authentication and decryption were successful or have failed entirely.
+	 */
+	public Observable<BiometricDecryptionResult> decrypt(@Nullable String keyName, @NonNull ByteBuffer encrypted) {
+		return decrypt(keyName, encrypted, null, false);
+	}
+
+	/**
+	 * Decrypt data previously encrypted with {@link #encrypt(String, char[], byte[])} and
+	 * {@link EncryptionMethod#AES_GCM}. The associated data has to match the one given for
+	 * encryption, otherwise the decryption fails with an {@code onError} call.
+	 *
+	 * @param keyName        name of the key in the keystore to use
+	 * @param toDecrypt      String of encrypted data
+	 * @param associatedData data given for encryption
+	 * @return Observable {@link BiometricDecryptionResult} that will contain the decrypted data.
+	 * Will complete once the authentication and decryption were successful or have failed entirely.
+	 */
+	public Observable<BiometricDecryptionResult> decrypt(@Nullable String keyName, @NonNull String toDecrypt, @NonNull byte[] associatedData) {
+		if (encryptionMethod != EncryptionMethod.AES_GCM) {
+			return Observable.error(new IllegalArgumentException("Associated data is only supported for EncryptionMethod.AES_GCM"));
+		}
+		return decrypt(keyName, toDecrypt, associatedData, false);
+	}
+
+	/**
+	 * Same as {@link #decrypt(String, String, byte[])} for encrypted data in the binary form of
+	 * {@link BiometricEncryptionResult#getEncryptedBuffer()}.
+	 *
+	 * @param keyName        name of the key in the keystore to use
+	 * @param encrypted      encrypted data from its position to its limit, the position is not changed
+	 * @param associatedData data given for encryption
+	 * @return Observable {@link BiometricDecryptionResult} that will contain the decrypted data.
+	 * Will complete once the authentication and decryption were successful or have failed entirely.
+	 */
+	public Observable<BiometricDecryptionResult> decrypt(@Nullable String keyName, @NonNull ByteBuffer encrypted, @NonNull byte[] associatedData) {
+		if (encryptionMethod != EncryptionMethod.AES_GCM) {
+			return Observable.error(new IllegalArgumentException("Associated data is only supported for EncryptionMethod.AES_GCM"));
+		}
+		return decrypt(keyName, encrypted, associatedData, false);
+	}
+
+	/**
+	 * Decrypt data previously encrypted with {@link #encrypt(String, char[])} or
+	 * {@link #encrypt(String, SecureBuffer)} into a {@link SecureBuffer}. Same as
+	 * {@link #decrypt(String, String)}, but the decrypted data does not end up on the Java heap.
+	 * <p/>
+	 * The buffer is accessible via {@link BiometricDecryptionResult#getDecryptedBuffer()} if the
+	 * authentication and decryption was successful. Call {@link SecureBuffer#wipe()} once the data
+	 * is no longer needed or use {@link #decryptUsing(String, String, Function)} instead.
+	 *
+	 * @param keyName   name of the key in the keystore to use
+	 * @param toDecrypt String of encrypted data previously encrypted with
+	 *                  {@link #encrypt(String, char[])}.
+	 * @return Observable {@link BiometricDecryptionResult} that will contain the decrypted data.
+	 * Will complete once the authentication and decryption were successful or have failed entirely.
+	 */
+	public Observable<BiometricDecryptionResult> decryptToBuffer(@Nullable String keyName, @NonNull String toDecrypt) {
+		return decrypt(keyName, toDecrypt, null, true);
+	}
+
+	/**
+	 * Same as {@link #decryptToBuffer(String, String)} for encrypted data in the binary form of
+	 * {@link BiometricEncryptionResult#getEncryptedBuffer()}.
+	 *
+	 * @param keyName   name of the key in the keystore to use
+	 * @param encrypted encrypted data from its position to its limit, the position is not changed
+	 * @return Observable {@link BiometricDecryptionResult} that will contain the decrypted data.
+	 * Will complete once the authentication and decryption were successful or have failed entirely.
+	 */
+	public Observable<BiometricDecryptionResult> decryptToBuffer(@Nullable String keyName, @NonNull ByteBuffer encrypted) {
+		return decrypt(keyName, encrypted, null, true);
+	}
+
+	/**
+	 * Decrypt data into a {@link SecureBuffer} like {@link #decryptToBuffer(String, String)} and
+	 * provide it to the source created by the given function. The buffer is wiped as soon as that
+	 * source terminates or the subscription is disposed, so the decrypted data only lives as long
+	 * as it is used.
+	 *
+	 * @param keyName        name of the key in the keystore to use
+	 * @param toDecrypt      String of encrypted data previously encrypted with
+	 *                       {@link #encrypt(String, char[])}.
+	 * @param sourceSupplier creates the source that uses the decrypted data, the buffer must not
+	 *                       be used after that source terminated
+	 * @return Observable emitting the items of the created source. Failed authentication attempts
+	 * are not emitted, the prompt stays open until authentication succeeds or fails entirely.
+	 * @see SecureBuffer#using(SecureBuffer, Function)
+	 */
+	public <R> Observable<R> decryptUsing(@Nullable String keyName,
+										  @NonNull String toDecrypt,
+										  @NonNull final Function<? super SecureBuffer, ? extends ObservableSource<? extends R>> sourceSupplier) {
+		return decryptToBuffer(keyName, toDecrypt)
+				.filter(new Predicate<BiometricDecryptionResult>() {
+					@Override
+					public boolean test(BiometricDecryptionResult result) {
+						return result.isSuccess();
+					}
+				})
+				.firstElement()
+				.flatMapObservable(new Function<BiometricDecryptionResult, ObservableSource<R>>() {
+					@Override
+					public ObservableSource<R> apply(BiometricDecryptionResult result) {
+						return SecureBuffer.using(result.getDecryptedBuffer(), sourceSupplier);
+					}
+				});
+	}
+
+	private Observable<BiometricDecryptionResult> decrypt(@Nullable final String keyName, @NonNull final String toDecrypt, @Nullable final byte[] associatedData, boolean decryptToBuffer) {
+		if (decryptToBuffer) {
+			// Buffers are wiped by their subscriber and can't be shared
+			return createDecryption(keyName, toDecrypt, associatedData, true);
+		}
+		final InFlightRequests.Key key = new InFlightRequests.Key("decrypt", encryptionMethod, keyName, toDecrypt,
+				associatedData != null ? associatedData.clone() : null);
+		return cache(key, copyDecrypted(inFlightRequests.share(key, new Callable<Observable<BiometricDecryptionResult>>() {
+			@Override
+			public Observable<BiometricDecryptionResult> call() {
+				return BiometricDialogSingle.forwardFailedAttempts(cacheResult(key, createDecryption(keyName, toDecrypt, associatedData, false)), failedAttempts);
+			}
+		})));
+	}
+
+	private Observable<BiometricDecryptionResult> createDecryption(@Nullable String keyName, @NonNull String toDecrypt, @Nullable byte[] associatedData, boolean decryptToBuffer) {
 		if (encryptionMethod == null) {
 			return Observable.error(new IllegalArgumentException("Unable to decrypt without encryptionMethod specified"));
 		}
 		switch (encryptionMethod) {
 			case AES:
-				return AesDecryptionObservable.create(activityOrFragment, biometricDialogBundle, keyName, toDecrypt, keyInvalidatedByBiometricEnrollment, logger);
+				return schedule(AesDecryptionObservable.create(activityOrFragment, biometricDialogBundle, keyName, toDecrypt, decryptToBuffer, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger));
+			case AES_GCM:
+				return schedule(AesDecryptionObservable.createGcm(activityOrFragment, biometricDialogBundle, keyName, toDecrypt, associatedData, decryptToBuffer, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger));
+			case AES_ENVELOPE:
+				return schedule(AesEnvelopeDecryptionObservable.create(activityOrFragment, biometricDialogBundle, keyName, toDecrypt, decryptToBuffer, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger));
 			case RSA:
-				return RsaDecryptionObservable.create(activityOrFragment, biometricDialogBundle, keyName, toDecrypt, keyInvalidatedByBiometricEnrollment, logger);
+				return schedule(RsaDecryptionObservable.create(activityOrFragment, biometricDialogBundle, keyName, toDecrypt, decryptToBuffer, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger));
 			default:
 				return Observable.error(new IllegalArgumentException("Unknown decryption method: " + encryptionMethod));
 		}
 	}
 
+	private Observable<BiometricDecryptionResult> decrypt(@Nullable final String keyName, @NonNull final ByteBuffer encrypted, @Nullable final byte[] associatedData, boolean decryptToBuffer) {
+		if (decryptToBuffer) {
+			// Buffers are wiped by their subscriber and can't be shared
+			return createDecryption(keyName, encrypted, associatedData, true);
+		}
+		final ByteBuffer input = ByteBuffer.allocate(encrypted.remaining());
+		input.put(encrypted.duplicate()).flip();
+		final InFlightRequests.Key key = new InFlightRequests.Key("decrypt", encryptionMethod, keyName, input,
+				associatedData != null ? associatedData.clone() : null);
+		return cache(key, copyDecrypted(inFlightRequests.share(key, new Callable<Observable<BiometricDecryptionResult>>() {
+			@Override
+			public Observable<BiometricDecryptionResult> call() {
+				return BiometricDialogSingle.forwardFailedAttempts(cacheResult(key, createDecryption(keyName, input, associatedData, false)), failedAttempts);
+			}
+		})));
+	}
+
+	/**
+	 * Hands every subscriber of a shared decryption its own copy of the decrypted chars, so one
+	 * subscriber clearing its result does not clear the result of the others.
+	 */
+	private Observable<BiometricDecryptionResult> copyDecrypted(Observable<BiometricDecryptionResult> decryption) {
+		return decryption.map(new Function<BiometricDecryptionResult, BiometricDecryptionResult>() {
+			@Override
+			public BiometricDecryptionResult apply(BiometricDecryptionResult result) {
+				if (!result.isSuccess()) {
+					return result;
+				}
+				return new BiometricDecryptionResult(result.getResult(), result.getDecryptedChars().clone());
+			}
+		});
+	}
+
+	/**
+	 * Serves the decryption from the {@link DecryptionCache} if it is enabled and the value is
+	 * cached, otherwise subscribes to the decryption.
+	 */
+	private Observable<BiometricDecryptionResult> cache(final InFlightRequests.Key key, final Observable<BiometricDecryptionResult> decryption) {
+		if (decryptionCache == null) {
+			return decryption;
+		}
+		return Observable.defer(new Callable<ObservableSource<BiometricDecryptionResult>>() {
+			@Override
+			public ObservableSource<BiometricDecryptionResult> call() throws Exception {
+				char[] cached = decryptionCache.get(key);
+				if (cached != null) {
+					return Observable.just(new BiometricDecryptionResult(BiometricResult.AUTHENTICATED, cached))
+							.observeOn(resultScheduler);
+				}
+				return decryption;
+			}
+		});
+	}
+
+	/**
+	 * Puts the result of the decryption into the {@link DecryptionCache} if it is enabled. Applied
+	 * to the shared operation, so the value is cached once before any subscriber received it.
+	 */
+	private Observable<BiometricDecryptionResult> cacheResult(final InFlightRequests.Key key, Observable<BiometricDecryptionResult> decryption) {
+		if (decryptionCache == null) {
+			return decryption;
+		}
+		return decryption.doOnNext(new Consumer<BiometricDecryptionResult>() {
+			@Override
+			public void accept(BiometricDecryptionResult result) throws Exception {
+				if (result.isSuccess()) {
+					decryptionCache.put(key, result.getDecryptedChars());
+				}
+			}
+		});
+	}
+
+	private Observable<BiometricDecryptionResult> createDecryption(@Nullable String keyName, @NonNull ByteBuffer encrypted, @Nullable byte[] associatedData, boolean decryptToBuffer) {
+		if (encryptionMethod == null) {
+			return Observable.error(new IllegalArgumentException("Unable to decrypt without encryptionMethod specified"));
+		}
+		switch (encryptionMethod) {
+			case AES:
+				return schedule(AesDecryptionObservable.create(activityOrFragment, biometricDialogBundle, keyName, encrypted, decryptToBuffer, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger));
+			case AES_GCM:
+				return schedule(AesDecryptionObservable.createGcm(activityOrFragment, biometricDialogBundle, keyName, encrypted, associatedData, decryptToBuffer, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger));
+			case AES_ENVELOPE:
+				return schedule(AesEnvelopeDecryptionObservable.create(activityOrFragment, biometricDialogBundle, keyName, encrypted, decryptToBuffer, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger));
+			case RSA:
+				return schedule(RsaDecryptionObservable.create(activityOrFragment, biometricDialogBundle, keyName, encrypted, decryptToBuffer, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger));
+			default:
+				return Observable.error(new IllegalArgumentException("Unknown decryption method: " + encryptionMethod));
+		}
+	}
+
+	/**
+	 * Decrypt multiple values previously encrypted with {@link #encrypt(String, char[])} or
+	 * {@link #encryptAll(Map)} with a single biometric authentication. Will use a default
+	 * keyName in the Android keystore unique to this applications package name.
+	 * If you want to provide a custom key name use {@link #decryptAll(String, Collection)} instead.
+	 *
+	 * @param encrypted Strings of encrypted data
+	 * @return Observable emitting a {@link BiometricBatchDecryptionResult} for every value.
+	 * @see #decryptAll(String, Collection)
+	 */
+	public Observable<BiometricBatchDecryptionResult> decryptAll(@NonNull Collection<String> encrypted) {
+		return decryptAll(null, encrypted);
+	}
+
+	/**
+	 * Decrypt multiple values previously encrypted with {@link #encrypt(String, char[])} or
+	 * {@link #encryptAll(String, Map)} with a single biometric authentication. Only supported
+	 * for {@link EncryptionMethod#AES}, as every {@link EncryptionMethod#RSA} value requires a
+	 * keystore operation of its own.
+	 * <p/>
+	 * After a successful authentication a {@link BiometricBatchDecryptionResult} is emitted for
+	 * every given value in the given order. A value that could not be decrypted does not abort the
+	 * others, its result contains the error instead of the decrypted data. Only an invalid last
+	 * value, a wrong key or a failing keystore fails the whole batch with an error.
+	 *
+	 * @param keyName   name of the key in the keystore to use
+	 * @param encrypted Strings of encrypted data
+	 * @return Observable emitting a {@link BiometricBatchDecryptionResult} for every value.
+	 * Will complete once all values were processed or authentication has failed entirely.
+	 */
+	public Observable<BiometricBatchDecryptionResult> decryptAll(@Nullable String keyName, @NonNull Collection<String> encrypted) {
+		if (encryptionMethod != EncryptionMethod.AES) {
+			return Observable.error(new IllegalArgumentException("Decrypting multiple values is only supported for EncryptionMethod.AES"));
+		}
+		return schedule(AesBatchDecryptionObservable.create(activityOrFragment, biometricDialogBundle, keyName, encrypted, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger));
+	}
+
+	/**
+	 * Encrypt a stream of any size with a single biometric authentication and write the
+	 * encrypted stream to the given output. Only supported for {@link EncryptionMethod#AES} and
+	 * {@link EncryptionMethod#AES_ENVELOPE}.
+	 * <p/>
+	 * After the authentication the input is encrypted in segments with a data key that is
+	 * wrapped by the key in the Android keystore, so only a single segment is held in memory at
+	 * any time. The encrypted stream can be decrypted again with
+	 * {@link #decryptStream(String, InputStream, OutputStream)} and the same key name.
+	 *
+	 * @param keyName name of the key in the keystore to use
+	 * @param input   stream to encrypt, will be closed once the operation terminates
+	 * @param output  stream the encrypted data is written to, will not be closed
+	 * @return Observable {@link BiometricAuthenticationResult}. Will complete once the whole
+	 * input was encrypted or the operation has failed entirely.
+	 */
+	public Observable<BiometricAuthenticationResult> encryptStream(@Nullable String keyName, @NonNull InputStream input, @NonNull OutputStream output) {
+		if (encryptionMethod != EncryptionMethod.AES && encryptionMethod != EncryptionMethod.AES_ENVELOPE) {
+			return Observable.error(new IllegalArgumentException("Encrypting streams is only supported for EncryptionMethod.AES and EncryptionMethod.AES_ENVELOPE"));
+		}
+		return schedule(AesStreamOperation.encryption(activityOrFragment, biometricDialogBundle, keyName, input, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger).writeTo(output));
+	}
+
+	/**
+	 * Encrypt a stream of any size with a single biometric authentication. Same as
+	 * {@link #encryptStream(String, InputStream, OutputStream)}, but provides the encrypted
+	 * stream as {@link Flowable}. The input is only read as fast as the subscriber requests
+	 * the encrypted data.
+	 *
+	 * @param keyName name of the key in the keystore to use
+	 * @param input   stream to encrypt, will be closed once the operation terminates
+	 * @return Flowable of the encrypted stream. Failed authentication attempts are not emitted.
+	 */
+	public Flowable<ByteBuffer> encryptStream(@Nullable String keyName, @NonNull InputStream input) {
+		if (encryptionMethod != EncryptionMethod.AES && encryptionMethod != EncryptionMethod.AES_ENVELOPE) {
+			return Flowable.error(new IllegalArgumentException("Encrypting streams is only supported for EncryptionMethod.AES and EncryptionMethod.AES_ENVELOPE"));
+		}
+		return schedule(AesStreamOperation.encryption(activityOrFragment, biometricDialogBundle, keyName, input, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger).toFlowable());
+	}
+
+	/**
+	 * Decrypt a stream previously encrypted with
+	 * {@link #encryptStream(String, InputStream, OutputStream)} with a single biometric
+	 * authentication and write the decrypted stream to the given output.
+	 * <p/>
+	 * Modified or truncated input results in an {@code onError} call. The output written until
+	 * then must not be trusted.
+	 *
+	 * @param keyName name of the key in the keystore to use
+	 * @param input   encrypted stream, will be closed once the operation terminates
+	 * @param output  stream the decrypted data is written to, will not be closed
+	 * @return Observable {@link BiometricAuthenticationResult}. Will complete once the whole
+	 * input was decrypted or the operation has failed entirely.
+	 */
+	public Observable<BiometricAuthenticationResult> decryptStream(@Nullable String keyName, @NonNull InputStream input, @NonNull OutputStream output) {
+		if (encryptionMethod != EncryptionMethod.AES && encryptionMethod != EncryptionMethod.AES_ENVELOPE) {
+			return Observable.error(new IllegalArgumentException("Decrypting streams is only supported for EncryptionMethod.AES and EncryptionMethod.AES_ENVELOPE"));
+		}
+		return schedule(AesStreamOperation.decryption(activityOrFragment, biometricDialogBundle, keyName, input, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger).writeTo(output));
+	}
+
+	/**
+	 * Decrypt a stream previously encrypted with {@link #encryptStream(String, InputStream)}
+	 * with a single biometric authentication. Same as
+	 * {@link #decryptStream(String, InputStream, OutputStream)}, but provides the decrypted
+	 * stream as {@link Flowable}. The input is only read as fast as the subscriber requests
+	 * the decrypted data.
+	 *
+	 * @param keyName name of the key in the keystore to use
+	 * @param input   encrypted stream, will be closed once the operation terminates
+	 * @return Flowable of the decrypted stream. Failed authentication attempts are not emitted.
+	 */
+	public Flowable<ByteBuffer> decryptStream(@Nullable String keyName, @NonNull InputStream input) {
+		if (encryptionMethod != EncryptionMethod.AES && encryptionMethod != EncryptionMethod.AES_ENVELOPE) {
+			return Flowable.error(new IllegalArgumentException("Decrypting streams is only supported for EncryptionMethod.AES and EncryptionMethod.AES_ENVELOPE"));
+		}
+		return schedule(AesStreamOperation.decryption(activityOrFragment, biometricDialogBundle, keyName, input, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger).toFlowable());
+	}
+
+	/**
+	 * Encrypt a file of any size with a single biometric authentication. Only supported for
+	 * {@link EncryptionMethod#AES} and {@link EncryptionMethod#AES_ENVELOPE}.
+	 * <p/>
+	 * The file is encrypted through memory-mapped windows without copying its content to the
+	 * heap. Progress is recorded in a checkpoint file next to the output, so calling this method
+	 * again after an interruption (e.g. the process was killed or the Observable disposed)
+	 * continues where the previous encryption stopped, as long as the input was not modified.
+	 * If the input was modified since, the output is deleted and {@code onError} is called, the
+	 * next call encrypts the file again from the start.
+	 * The encrypted file can also be decrypted with {@link #decryptStream(String, InputStream)}.
+	 *
+	 * @param keyName name of the key in the keystore to use
+	 * @param input   file to encrypt
+	 * @param output  file the encrypted data is written to
+	 * @return Observable {@link BiometricAuthenticationResult}. Will complete once the whole
+	 * file was encrypted or the operation has failed entirely.
+	 */
+	public Observable<BiometricAuthenticationResult> encryptFile(@Nullable String keyName, @NonNull File input, @NonNull File output) {
+		if (encryptionMethod != EncryptionMethod.AES && encryptionMethod != EncryptionMethod.AES_ENVELOPE) {
+			return Observable.error(new IllegalArgumentException("Encrypting files is only supported for EncryptionMethod.AES and EncryptionMethod.AES_ENVELOPE"));
+		}
+		return schedule(AesFileOperation.encryption(activityOrFragment, biometricDialogBundle, keyName, input, output, scheduler, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger).toObservable());
+	}
+
+	/**
+	 * Decrypt a file previously encrypted with {@link #encryptFile(String, File, File)} or
+	 * {@link #encryptStream(String, InputStream, OutputStream)} with a single biometric
+	 * authentication. Like {@link #encryptFile(String, File, File)} an interrupted decryption
+	 * continues where it stopped.
+	 * <p/>
+	 * If the encrypted file was modified the output is deleted and {@code onError} is called.
+	 *
+	 * @param keyName name of the key in the keystore to use
+	 * @param input   encrypted file
+	 * @param output  file the decrypted data is written to
+	 * @return Observable {@link BiometricAuthenticationResult}. Will complete once the whole
+	 * file was decrypted or the operation has failed entirely.
+	 */
+	public Observable<BiometricAuthenticationResult> decryptFile(@Nullable String keyName, @NonNull File input, @NonNull File output) {
+		if (encryptionMethod != EncryptionMethod.AES && encryptionMethod != EncryptionMethod.AES_ENVELOPE) {
+			return Observable.error(new IllegalArgumentException("Decrypting files is only supported for EncryptionMethod.AES and EncryptionMethod.AES_ENVELOPE"));
+		}
+		return schedule(AesFileOperation.decryption(activityOrFragment, biometricDialogBundle, keyName, input, output, scheduler, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger).toObservable());
+	}
+
+	/**
+	 * Authenticate the user with his biometrics like {@link #authenticate()}, but emits only the
+	 * successful authentication. Failed attempts, after which the user can try again, are
+	 * emitted by {@link #failedAttempts()} instead.
+	 *
+	 * @return Single {@link BiometricAuthenticationResult} once the user authenticated
+	 */
+	public Single<BiometricAuthenticationResult> authenticateSingle() {
+		return BiometricDialogSingle.create(authenticate());
+	}
+
+	/**
+	 * Encrypt data like {@link #encrypt(String, char[])}, but emits only the successful result.
+	 * Failed authentication attempts, after which the user can try again, are emitted by
+	 * {@link #failedAttempts()} instead.
+	 *
+	 * @param keyName   name of the key to store in the Android {@link java.security.KeyStore}
+	 * @param toEncrypt data to encrypt
+	 * @return Single {@link BiometricEncryptionResult} that will contain the encrypted data
+	 */
+	public Single<BiometricEncryptionResult> encryptSingle(@Nullable String keyName, @NonNull char[] toEncrypt) {
+		return BiometricDialogSingle.create(encrypt(keyName, toEncrypt), failedAttempts);
+	}
+
+	/**
+	 * Encrypt data with associated data like {@link #encrypt(String, char[], byte[])}, but emits
+	 * only the successful result. Only supported for {@link EncryptionMethod#AES_GCM}.
+	 *
+	 * @param keyName        name of the key to store in the Android {@link java.security.KeyStore}
+	 * @param toEncrypt      data to encrypt
+	 * @param associatedData data to authenticate along with the encrypted data
+	 * @return Single {@link BiometricEncryptionResult} that will contain the encrypted data
+	 */
+	public Single<BiometricEncryptionResult> encryptSingle(@Nullable String keyName, @NonNull char[] toEncrypt, @NonNull byte[] associatedData) {
+		return BiometricDialogSingle.create(encrypt(keyName, toEncrypt, associatedData), failedAttempts);
+	}
+
+	/**
+	 * Decrypt data like {@link #decrypt(String, String)}, but emits only the successful result.
+	 * Failed authentication attempts, after which the user can try again, are emitted by
+	 * {@link #failedAttempts()} instead.
+	 *
+	 * @param keyName   name of the key in the keystore to use
+	 * @param toDecrypt String of encrypted data previously encrypted with
+	 *                  {@link #encrypt(String, char[])}.
+	 * @return Single {@link BiometricDecryptionResult} that will contain the decrypted data
+	 */
+	public Single<BiometricDecryptionResult> decryptSingle(@Nullable String keyName, @NonNull String toDecrypt) {
+		return BiometricDialogSingle.create(decrypt(keyName, toDecrypt));
+	}
+
+	/**
+	 * Decrypt data in binary form like {@link #decrypt(String, ByteBuffer)}, but emits only the
+	 * successful result. Failed authentication attempts, after which the user can try again, are
+	 * emitted by {@link #failedAttempts()} instead.
+	 *
+	 * @param keyName   name of the key in the keystore to use
+	 * @param encrypted encrypted data from its position to its limit, the position is not changed
+	 * @return Single {@link BiometricDecryptionResult} that will contain the decrypted data
+	 */
+	public Single<BiometricDecryptionResult> decryptSingle(@Nullable String keyName, @NonNull ByteBuffer encrypted) {
+		return BiometricDialogSingle.create(decrypt(keyName, encrypted));
+	}
+
+	/**
+	 * Decrypt data in binary form with associated data like
+	 * {@link #decrypt(String, ByteBuffer, byte[])}, but emits only the successful result. Only
+	 * supported for {@link EncryptionMethod#AES_GCM}.
+	 *
+	 * @param keyName        name of the key in the keystore to use
+	 * @param encrypted      encrypted data from its position to its limit, the position is not changed
+	 * @param associatedData data given for encryption
+	 * @return Single {@link BiometricDecryptionResult} that will contain the decrypted data
+	 */
+	public Single<BiometricDecryptionResult> decryptSingle(@Nullable String keyName, @NonNull ByteBuffer encrypted, @NonNull byte[] associatedData) {
+		return BiometricDialogSingle.create(decrypt(keyName, encrypted, associatedData));
+	}
+
+	/**
+	 * Failed authentication attempts of the {@code Single} operations of this instance, like
+	 * {@link #encryptSingle(String, char[])} or {@link #openSession(String)}. The prompt stays
+	 * open after a failed attempt, so these can be used to show progress to the user.
+	 * <p/>
+	 * Attempts are emitted on the scheduler set with {@link Builder#resultScheduler(Scheduler)}.
+	 * Only attempts made while subscribed are emitted, the Observable never completes.
+	 * <p/>
+	 * A prompt shared by several operations, see {@link #authenticate()} and
+	 * {@link #decrypt(String, String)}, emits each of its failed attempts once, also if it was
+	 * started by an {@code Observable} operation.
+	 *
+	 * @return Observable of failed {@link BiometricAuthenticationResult}s
+	 */
+	public Observable<BiometricAuthenticationResult> failedAttempts() {
+		return failedAttempts.hide();
+	}
+
+	/**
+	 * Provides the counters of the cache of decrypted values, see
+	 * {@link Builder#decryptionCache(int, long, TimeUnit)}.
+	 *
+	 * @return snapshot of the {@link BiometricDecryptionCacheStats}, {@code null} if the cache
+	 * is not enabled
+	 */
+	@Nullable
+	public BiometricDecryptionCacheStats getDecryptionCacheStats() {
+		return decryptionCache != null ? decryptionCache.getStats() : null;
+	}
+
+	/**
+	 * Removes and overwrites all values of the cache of decrypted values, e.g. once the user
+	 * logs out. Does nothing if the cache is not enabled.
+	 */
+	public void clearDecryptionCache() {
+		if (decryptionCache != null) {
+			decryptionCache.clear();
+		}
+	}
+
+	/**
+	 * Unlocks the key with a single biometric authentication and provides a
+	 * {@link BiometricSession} to encrypt and decrypt values with it without further prompts.
+	 * If the key is still unlocked from a previous authentication no prompt is shown.
+	 * <p/>
+	 * Requires keys that stay unlocked for a while, see
+	 * {@link Builder#authenticationValidityDuration(int)}. The session expires after this
+	 * duration. Failed authentication attempts are emitted by {@link #failedAttempts()}.
+	 *
+	 * @param keyName name of the key in the keystore to use
+	 * @return Single {@link BiometricSession} once the user authenticated
+	 */
+	public Single<BiometricSession> openSession(@Nullable final String keyName) {
+		if (authenticationValidityDurationSeconds == 0) {
+			return Single.error(new IllegalStateException("Opening a session requires an authenticationValidityDuration."));
+		}
+		final CipherProvider cipherProvider;
+		try {
+			cipherProvider = createCipherProvider(keyName);
+		} catch (Exception e) {
+			return Single.error(e);
+		}
+		Callable<BiometricPrompt.CryptoObject> cryptoObjectFactory = new Callable<BiometricPrompt.CryptoObject>() {
+			@Override
+			public BiometricPrompt.CryptoObject call() throws Exception {
+				return new BiometricPrompt.CryptoObject(cipherProvider.getCipherRequiringAuthentication());
+			}
+		};
+		return BiometricDialogSingle.create(schedule(CryptoObjectDecryptionObservable.create(activityOrFragment, biometricDialogBundle, cryptoObjectFactory, true)), failedAttempts)
+				.map(new Function<BiometricCryptoObjectDecryptionResult, BiometricSession>() {
+					@Override
+					public BiometricSession apply(BiometricCryptoObjectDecryptionResult result) {
+						return new BiometricSession(RxBiometric.this, keyName, TimeUnit.SECONDS.toNanos(authenticationValidityDurationSeconds));
+					}
+				});
+	}
+
+	/**
+	 * Prepares the keystore and key for later operations, so that they reach the prompt faster.
+	 * Loads the Android KeyStore, creates the key if it does not exist yet and resolves the
+	 * cipher implementation of the {@link EncryptionMethod} of this instance.
+	 * <p/>
+	 * Does not require user authentication.
+	 *
+	 * @param keyName name of the key in the keystore to use
+	 * @return Single {@link BiometricWarmUpResult} with the durations of the single phases
+	 */
+	public Single<BiometricWarmUpResult> warmUp(@Nullable String keyName) {
+		final CipherProvider cipherProvider;
+		try {
+			cipherProvider = createCipherProvider(keyName);
+		} catch (Exception e) {
+			return Single.error(e);
+		}
+		return schedule(Single.fromCallable(new Callable<BiometricWarmUpResult>() {
+			@Override
+			public BiometricWarmUpResult call() throws Exception {
+				return cipherProvider.warmUp();
+			}
+		}));
+	}
+
+	/**
+	 * Opens a {@link BiometricVault} that stores values encrypted by this instance in the given
+	 * file. The file is created if it does not exist.
+	 *
+	 * With {@link EncryptionMethod#AES_GCM} every value is bound to its name, a value moved to
+	 * another name fails to decrypt.
+	 *
+	 * @param file    file to store the values in, should be in the app's private storage
+	 * @param keyName name of the key in the keystore to use
+	 * @return Single {@link BiometricVault} once the file was read
+	 */
+	public Single<BiometricVault> openVault(@NonNull final File file, @Nullable final String keyName) {
+		return schedule(Single.fromCallable(new Callable<BiometricVault>() {
+			@Override
+			public BiometricVault call() throws Exception {
+				return BiometricVault.open(RxBiometric.this, file, keyName);
+			}
+		}));
+	}
+
+	EncryptionMethod getEncryptionMethod() {
+		return encryptionMethod;
+	}
+
+	Scheduler getScheduler() {
+		return scheduler;
+	}
+
+	Scheduler getResultScheduler() {
+		return resultScheduler;
+	}
+
+	private CipherProvider createCipherProvider(@Nullable String keyName) {
+		if (encryptionMethod == EncryptionMethod.RSA) {
+			return new RsaCipherProvider(activityOrFragment.getContext(), keyName, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger);
+		}
+		return AesCipherProvider.create(encryptionMethod, activityOrFragment.getContext(), keyName, keyInvalidatedByBiometricEnrollment, authenticationValidityDurationSeconds, logger);
+	}
+
+	private <T> Observable<T> schedule(Observable<T> observable) {
+		return observable.subscribeOn(scheduler).observeOn(resultScheduler);
+	}
+
+	private <T> Flowable<T> schedule(Flowable<T> flowable) {
+		return flowable.subscribeOn(scheduler).observeOn(resultScheduler);
+	}
+
+	private <T> Single<T> schedule(Single<T> single) {
+		return single.subscribeOn(scheduler).observeOn(resultScheduler);
+	}
+
+	/**
+	 * Provides the number of operations waiting for the biometric prompt and how long operations
+	 * waited for their turn so far, see {@link Builder#promptPriority(int)}.
+	 *
+	 * @return snapshot of the {@link BiometricPromptQueueMetrics}
+	 */
+	public static BiometricPromptQueueMetrics getPromptQueueMetrics() {
+		return PromptQueue.shared().getMetrics();
+	}
+
 	/**
 	 * Provides information if biometric authentication is currently available.
 	 * <p/>
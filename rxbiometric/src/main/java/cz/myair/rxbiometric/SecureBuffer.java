@@ -0,0 +1,217 @@
+/*
+ * Copyright 2018 Marvin Ramin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.myair.rxbiometric;
+
+import androidx.annotation.NonNull;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+import javax.crypto.Cipher;
+
+import io.reactivex.Observable;
+import io.reactivex.ObservableSource;
+import io.reactivex.functions.Consumer;
+import io.reactivex.functions.Function;
+
+/**
+ * Plaintext kept outside of the Java heap.
+ * <p/>
+ * The data is held in a direct {@link ByteBuffer}, so it is not moved around by the garbage
+ * collector and does not stay in memory until the next collection. Call {@link #wipe()} or
+ * {@link #close()} once the data is no longer needed to overwrite it with zeros, or use
+ * {@link #using(SecureBuffer, Function)} to do so when a subscriber is done with it.
+ * <p/>
+ * Data passed to a {@link Cipher} is copied to the heap in small chunks by the cipher itself.
+ */
+public final class SecureBuffer implements Closeable {
+
+	private static final byte[] ZEROS = new byte[4096];
+
+	private final ByteBuffer buffer;
+	private volatile boolean wiped;
+
+	private SecureBuffer(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	/**
+	 * @param capacity maximum number of bytes the buffer can hold
+	 * @return empty buffer to be written with {@link #buffer()} and flipped afterwards
+	 */
+	static SecureBuffer allocate(int capacity) {
+		return new SecureBuffer(ByteBuffer.allocateDirect(capacity));
+	}
+
+	/**
+	 * Encodes the given chars as UTF-8 into a new buffer.
+	 *
+	 * @param chars data to store, will be cleared
+	 * @return buffer containing the given data
+	 */
+	@NonNull
+	public static SecureBuffer fromChars(@NonNull char[] chars) {
+		return ConversionUtils.toSecureBuffer(chars);
+	}
+
+	/**
+	 * Copies the given bytes into a new buffer.
+	 *
+	 * @param bytes data to store, will be cleared
+	 * @return buffer containing the given data
+	 */
+	@NonNull
+	public static SecureBuffer fromBytes(@NonNull byte[] bytes) {
+		SecureBuffer secureBuffer = allocate(bytes.length);
+		secureBuffer.buffer.put(bytes).flip();
+		Arrays.fill(bytes, (byte) 0); // clear the cleartext
+		return secureBuffer;
+	}
+
+	/**
+	 * Provides the buffer to a source created by the given function and wipes it once the source
+	 * terminates or is disposed, similar to {@link Observable#using(Callable, Function, Consumer)}.
+	 *
+	 * @param secureBuffer buffer to provide
+	 * @param sourceSupplier creates the source that uses the buffer
+	 * @return Observable emitting the items of the created source
+	 */
+	@NonNull
+	public static <R> Observable<R> using(@NonNull final SecureBuffer secureBuffer,
+										  @NonNull Function<? super SecureBuffer, ? extends ObservableSource<? extends R>> sourceSupplier) {
+		return Observable.using(
+				new Callable<SecureBuffer>() {
+					@Override
+					public SecureBuffer call() {
+						return secureBuffer;
+					}
+				},
+				sourceSupplier,
+				new Consumer<SecureBuffer>() {
+					@Override
+					public void accept(SecureBuffer buffer) {
+						buffer.wipe();
+					}
+				});
+	}
+
+	/**
+	 * @return number of bytes in the buffer
+	 */
+	public int size() {
+		checkNotWiped();
+		return buffer.limit();
+	}
+
+	/**
+	 * @return read-only view of the data, only valid until the buffer is wiped
+	 */
+	@NonNull
+	public ByteBuffer asReadOnlyBuffer() {
+		checkNotWiped();
+		ByteBuffer readOnly = buffer.asReadOnlyBuffer();
+		readOnly.rewind();
+		return readOnly;
+	}
+
+	/**
+	 * @return data decoded from UTF-8, should be cleared by the caller after use
+	 */
+	@NonNull
+	public char[] toChars() {
+		return ConversionUtils.toChars(asReadOnlyBuffer());
+	}
+
+	/**
+	 * Overwrites the data with zeros. The buffer cannot be accessed anymore afterwards.
+	 */
+	public synchronized void wipe() {
+		if (wiped) {
+			return;
+		}
+		wiped = true;
+		ByteBuffer target = buffer.duplicate();
+		target.clear();
+		while (target.hasRemaining()) {
+			target.put(ZEROS, 0, Math.min(ZEROS.length, target.remaining()));
+		}
+		buffer.limit(0);
+	}
+
+	/**
+	 * @return {@code true} if the data was already wiped
+	 */
+	public boolean isWiped() {
+		return wiped;
+	}
+
+	/**
+	 * Same as {@link #wipe()}
+	 */
+	@Override
+	public void close() {
+		wipe();
+	}
+
+	/**
+	 * @return underlying buffer to write the data to
+	 */
+	ByteBuffer buffer() {
+		return buffer;
+	}
+
+	/**
+	 * Encrypts the data without copying it to the heap as a whole.
+	 *
+	 * @param cipher initialized cipher
+	 * @return output of the cipher
+	 */
+	byte[] doFinal(Cipher cipher) throws GeneralSecurityException {
+		ByteBuffer input = asReadOnlyBuffer();
+		byte[] output = new byte[cipher.getOutputSize(input.remaining())];
+		int length = cipher.doFinal(input, ByteBuffer.wrap(output));
+		return length == output.length ? output : Arrays.copyOf(output, length);
+	}
+
+	/**
+	 * Decrypts the given data directly into a new buffer.
+	 *
+	 * @param cipher initialized cipher
+	 * @param input  data to decrypt
+	 * @return output of the cipher
+	 */
+	static SecureBuffer doFinal(Cipher cipher, byte[] input) throws GeneralSecurityException {
+		SecureBuffer output = allocate(cipher.getOutputSize(input.length));
+		try {
+			cipher.doFinal(ByteBuffer.wrap(input), output.buffer);
+		} catch (GeneralSecurityException | RuntimeException e) {
+			output.wipe();
+			throw e;
+		}
+		output.buffer.flip();
+		return output;
+	}
+
+	private void checkNotWiped() {
+		if (wiped) {
+			throw new IllegalStateException("SecureBuffer was already wiped");
+		}
+	}
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright 2017 Marvin Ramin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.myair.rxbiometric;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import io.reactivex.Emitter;
+import io.reactivex.Flowable;
+import io.reactivex.functions.BiFunction;
+import io.reactivex.functions.Consumer;
+
+/**
+ * Segmented AES-GCM encryption of streams with a data key.
+ * <p/>
+ * The stream starts with a header containing the data key wrapped by the keystore key. The
+ * payload follows in segments of a fixed size which are encrypted on their own, so neither
+ * encryption nor decryption needs to hold more than a single segment in memory. The nonce of a
+ * segment consists of a random prefix, the segment number and a flag marking the last segment,
+ * which makes reordered, removed or truncated segments fail to decrypt.
+ * <p/>
+ * Stream format: {@code version, segmentSize, noncePrefix, wrappedKeyLength, wrappedKey,
+ * keyIvLength, keyIv, segment...}
+ */
+class StreamingCipher {
+	static final int DATA_KEY_SIZE = 32;
+	static final int DEFAULT_SEGMENT_SIZE = 64 * 1024;
+	static final int TAG_SIZE = 16;
+
+	static final String DATA_KEY_ALGORITHM = "AES";
+	static final String DATA_TRANSFORMATION = "AES/GCM/NoPadding";
+
+	private static final byte VERSION = 1;
+	private static final int NONCE_PREFIX_SIZE = 7;
+	private static final int NONCE_SIZE = NONCE_PREFIX_SIZE + 5;
+	private static final int MAX_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+	private static final SecureRandom secureRandom = new SecureRandom();
+
+	private StreamingCipher() {
+	}
+
+	/**
+	 * @return new random data key
+	 */
+	static byte[] createDataKey() {
+		byte[] dataKey = new byte[DATA_KEY_SIZE];
+		secureRandom.nextBytes(dataKey);
+		return dataKey;
+	}
+
+	/**
+	 * Encrypts the given stream. The returned {@link Flowable} only reads from the stream as
+	 * requested by its subscriber and closes the stream once it terminates.
+	 *
+	 * @param input       plaintext to encrypt
+	 * @param dataKey     data key to encrypt the segments with, will be cleared
+	 * @param wrappedKey  data key encrypted by the keystore key
+	 * @param keyIv       IV of the keystore encryption of the data key
+	 * @param segmentSize size of the plaintext of a segment
+	 * @return header followed by the encrypted segments
+	 */
+	static Flowable<ByteBuffer> encrypt(InputStream input, byte[] dataKey, byte[] wrappedKey, byte[] keyIv, int segmentSize) {
+		Header header = createHeader(wrappedKey, keyIv, segmentSize);
+		return Flowable.generate(new SegmentState.Factory(input, header, dataKey, Cipher.ENCRYPT_MODE), SEGMENT_GENERATOR, SEGMENT_STATE_DISPOSER);
+	}
+
+	/**
+	 * Decrypts the given stream, of which the {@link Header} was already read. The returned
+	 * {@link Flowable} only reads from the stream as requested by its subscriber and closes the
+	 * stream once it terminates.
+	 *
+	 * @param input   encrypted stream positioned after the header
+	 * @param header  header of the stream
+	 * @param dataKey unwrapped data key, will be cleared
+	 * @return decrypted segments
+	 */
+	static Flowable<ByteBuffer> decrypt(InputStream input, Header header, byte[] dataKey) {
+		return Flowable.generate(new SegmentState.Factory(input, header, dataKey, Cipher.DECRYPT_MODE), SEGMENT_GENERATOR, SEGMENT_STATE_DISPOSER);
+	}
+
+	/**
+	 * Creates the header of a new encrypted stream with a random nonce prefix.
+	 *
+	 * @param wrappedKey  data key encrypted by the keystore key
+	 * @param keyIv       IV of the keystore encryption of the data key
+	 * @param segmentSize size of the plaintext of a segment
+	 * @return header of the stream
+	 */
+	static Header createHeader(byte[] wrappedKey, byte[] keyIv, int segmentSize) {
+		byte[] noncePrefix = new byte[NONCE_PREFIX_SIZE];
+		secureRandom.nextBytes(noncePrefix);
+		return new Header(segmentSize, noncePrefix, wrappedKey, keyIv);
+	}
+
+	/**
+	 * @param header  header of the stream
+	 * @param segment number of the segment
+	 * @param last    whether this is the last segment of the stream
+	 * @return GCM parameters of the segment
+	 */
+	static GCMParameterSpec segmentParameters(Header header, int segment, boolean last) {
+		byte[] nonce = Arrays.copyOf(header.noncePrefix, NONCE_SIZE);
+		ByteBuffer.wrap(nonce, NONCE_PREFIX_SIZE, 4).putInt(segment);
+		nonce[NONCE_SIZE - 1] = (byte) (last ? 1 : 0);
+		return new GCMParameterSpec(TAG_SIZE * 8, nonce);
+	}
+
+	/**
+	 * Reads the header of an encrypted stream.
+	 *
+	 * @param input encrypted stream
+	 * @return header of the stream
+	 */
+	static Header readHeader(InputStream input) throws IOException, CryptoDataException {
+		DataInputStream dataInput = new DataInputStream(input);
+		byte version = dataInput.readByte();
+		if (version != VERSION) {
+			throw CryptoDataException.fromStream("Unsupported stream version: " + version);
+		}
+		int segmentSize = dataInput.readInt();
+		if (segmentSize <= 0 || segmentSize > MAX_SEGMENT_SIZE) {
+			throw CryptoDataException.fromStream("Invalid stream segment size: " + segmentSize);
+		}
+		byte[] noncePrefix = new byte[NONCE_PREFIX_SIZE];
+		dataInput.readFully(noncePrefix);
+		byte[] wrappedKey = new byte[dataInput.readUnsignedShort()];
+		dataInput.readFully(wrappedKey);
+		byte[] keyIv = new byte[dataInput.readUnsignedByte()];
+		dataInput.readFully(keyIv);
+		return new Header(segmentSize, noncePrefix, wrappedKey, keyIv);
+	}
+
+	/**
+	 * Header of an encrypted stream
+	 */
+	static class Header {
+		final int segmentSize;
+		final byte[] noncePrefix;
+		final byte[] wrappedKey;
+		final byte[] keyIv;
+
+		Header(int segmentSize, byte[] noncePrefix, byte[] wrappedKey, byte[] keyIv) {
+			this.segmentSize = segmentSize;
+			this.noncePrefix = noncePrefix;
+			this.wrappedKey = wrappedKey;
+			this.keyIv = keyIv;
+		}
+
+		byte[] toBytes() throws IOException {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream output = new DataOutputStream(bytes);
+			output.writeByte(VERSION);
+			output.writeInt(segmentSize);
+			output.write(noncePrefix);
+			output.writeShort(wrappedKey.length);
+			output.write(wrappedKey);
+			output.writeByte(keyIv.length);
+			output.write(keyIv);
+			return bytes.toByteArray();
+		}
+	}
+
+	private static final BiFunction<SegmentState, Emitter<ByteBuffer>, SegmentState> SEGMENT_GENERATOR = new BiFunction<SegmentState, Emitter<ByteBuffer>, SegmentState>() {
+		@Override
+		public SegmentState apply(SegmentState state, Emitter<ByteBuffer> emitter) throws Exception {
+			ByteBuffer next = state.next();
+			if (next == null) {
+				emitter.onComplete();
+			} else {
+				emitter.onNext(next);
+			}
+			return state;
+		}
+	};
+
+	private static final Consumer<SegmentState> SEGMENT_STATE_DISPOSER = new Consumer<SegmentState>() {
+		@Override
+		public void accept(SegmentState state) throws Exception {
+			state.close();
+		}
+	};
+
+	/**
+	 * Reads and processes one segment at a time
+	 */
+	private static class SegmentState {
+		private final PushbackInputStream input;
+		private final Header header;
+		private final SecretKeySpec key;
+		private final byte[] dataKey;
+		private final int mode;
+		private final Cipher cipher;
+		private final byte[] buffer;
+
+		private boolean headerPending;
+		private boolean finished;
+		private int segment;
+
+		SegmentState(InputStream input, Header header, byte[] dataKey, int mode) throws GeneralSecurityException {
+			this.input = new PushbackInputStream(input, 1);
+			this.header = header;
+			this.dataKey = dataKey;
+			this.mode = mode;
+			key = new SecretKeySpec(dataKey, DATA_KEY_ALGORITHM);
+			cipher = Cipher.getInstance(DATA_TRANSFORMATION);
+			buffer = new byte[mode == Cipher.ENCRYPT_MODE ? header.segmentSize : header.segmentSize + TAG_SIZE];
+			headerPending = mode == Cipher.ENCRYPT_MODE;
+		}
+
+		/**
+		 * @return next output of the stream or {@code null} once the stream is finished
+		 */
+		ByteBuffer next() throws IOException, GeneralSecurityException, CryptoDataException {
+			if (headerPending) {
+				headerPending = false;
+				return ByteBuffer.wrap(header.toBytes());
+			}
+			if (finished) {
+				return null;
+			}
+
+			int read = readFully(input, buffer);
+			boolean last = read < buffer.length || isAtEnd(input);
+			if (mode == Cipher.DECRYPT_MODE && read < TAG_SIZE) {
+				throw CryptoDataException.fromStream("Encrypted stream is truncated");
+			}
+
+			cipher.init(mode, key, segmentParameters(header, segment, last));
+			byte[] output = cipher.doFinal(buffer, 0, read);
+			Arrays.fill(buffer, (byte) 0); // clear the cleartext
+
+			segment++;
+			finished = last;
+			return ByteBuffer.wrap(output);
+		}
+
+		void close() throws IOException {
+			Arrays.fill(dataKey, (byte) 0);
+			Arrays.fill(buffer, (byte) 0);
+			input.close();
+		}
+
+		private static int readFully(InputStream input, byte[] buffer) throws IOException {
+			int offset = 0;
+			while (offset < buffer.length) {
+				int read = input.read(buffer, offset, buffer.length - offset);
+				if (read < 0) {
+					break;
+				}
+				offset += read;
+			}
+			return offset;
+		}
+
+		private static boolean isAtEnd(PushbackInputStream input) throws IOException {
+			int next = input.read();
+			if (next < 0) {
+				return true;
+			}
+			input.unread(next);
+			return false;
+		}
+
+		static class Factory implements Callable<SegmentState> {
+			private final InputStream input;
+			private final Header header;
+			private final byte[] dataKey;
+			private final int mode;
+
+			Factory(InputStream input, Header header, byte[] dataKey, int mode) {
+				this.input = input;
+				this.header = header;
+				this.dataKey = dataKey;
+				this.mode = mode;
+			}
+
+			@Override
+			public SegmentState call() throws Exception {
+				return new SegmentState(input, header, dataKey, mode);
+			}
+		}
+	}
+}
@@ -0,0 +1,413 @@
+/*
+ * Copyright 2018 Marvin Ramin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.myair.rxbiometric;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Memory-mapped hash index from the names of a {@link VaultLog} to the positions of their
+ * records, stored in a file next to the log.
+ * <p/>
+ * Slots are found by open addressing with linear probing. A slot only holds the 64 bit hash of
+ * the name, the record is read to verify the name. A lookup therefore touches the page of its
+ * slot, rarely the next one, and the record in the log. No part of the index is kept on the
+ * heap.
+ * <p/>
+ * The index is derived from the log and records the log it belongs to and how much of it is
+ * applied. Records appended after that are applied again when the log is opened, an index of
+ * another log is replaced.
+ *
+ * <pre>
+ * file: magic (int) | version (int) | log id (long) | log end (long) | capacity (int)
+ *       | size (int) | tombstones (int) | live bytes (long) | padding | slot*
+ * slot: hash (long) | record position (long) | name length (int) | value length (int)
+ * </pre>
+ */
+final class VaultIndex implements Closeable {
+
+	/**
+	 * Reads the names of records in the log.
+	 */
+	interface Records {
+		/**
+		 * @return UTF-8 bytes of the name of the record at the given position
+		 */
+		byte[] readName(long position, int nameLength) throws IOException;
+	}
+
+	private static final int MAGIC = 0x52584249; // "RXBI"
+	private static final int VERSION = 1;
+	private static final int HEADER_LENGTH = 64;
+	private static final int SLOT_LENGTH = 24;
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final int MAX_CAPACITY = Integer.highestOneBit((Integer.MAX_VALUE - HEADER_LENGTH) / SLOT_LENGTH);
+	private static final long EMPTY = 0;
+	private static final long TOMBSTONE = -1;
+	private static final String GROW_SUFFIX = ".grow";
+
+	private static final int LOG_ID_OFFSET = 8;
+	private static final int LOG_END_OFFSET = 16;
+	private static final int CAPACITY_OFFSET = 24;
+	private static final int SIZE_OFFSET = 28;
+	private static final int TOMBSTONES_OFFSET = 32;
+	private static final int LIVE_BYTES_OFFSET = 36;
+
+	private final File file;
+	private final Records records;
+	private MappedByteBuffer buffer;
+	private int capacity;
+	private int size;
+	private int tombstones;
+	private long probes;
+
+	private VaultIndex(File file, Records records) {
+		this.file = file;
+		this.records = records;
+	}
+
+	/**
+	 * Opens the index in the given file. Creates an empty index if the file does not exist or
+	 * belongs to another log, see {@link #getLogEnd()}.
+	 *
+	 * @param logId   id of the log the index belongs to
+	 * @param records reads the names of records in the log
+	 */
+	static VaultIndex open(@NonNull File file, long logId, @NonNull Records records) throws IOException {
+		VaultIndex index = new VaultIndex(file, records);
+		// A growth that did not finish, the index itself is still complete
+		deleteGrowFile(file);
+		if (file.length() >= HEADER_LENGTH) {
+			index.map(file);
+			if (index.buffer.getInt(0) == MAGIC
+					&& index.buffer.getInt(4) == VERSION
+					&& index.buffer.getLong(LOG_ID_OFFSET) == logId
+					&& index.buffer.capacity() == slotsLength(index.buffer.getInt(CAPACITY_OFFSET))) {
+				index.capacity = index.buffer.getInt(CAPACITY_OFFSET);
+				index.size = index.buffer.getInt(SIZE_OFFSET);
+				index.tombstones = index.buffer.getInt(TOMBSTONES_OFFSET);
+				return index;
+			}
+		}
+		return create(file, logId, records);
+	}
+
+	/**
+	 * Creates an empty index in the given file, replacing a previous index.
+	 *
+	 * @param logId   id of the log the index belongs to
+	 * @param records reads the names of records in the log
+	 */
+	static VaultIndex create(@NonNull File file, long logId, @NonNull Records records) throws IOException {
+		deleteGrowFile(file);
+		VaultIndex index = new VaultIndex(file, records);
+		index.buffer = createFile(file, logId, INITIAL_CAPACITY);
+		index.capacity = INITIAL_CAPACITY;
+		return index;
+	}
+
+	/**
+	 * @return position in the log up to which its records are applied to the index, zero for
+	 * a new index
+	 */
+	long getLogEnd() {
+		return buffer.getLong(LOG_END_OFFSET);
+	}
+
+	void setLogEnd(long logEnd) {
+		buffer.putLong(LOG_END_OFFSET, logEnd);
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return total length of the records of all names in the log
+	 */
+	long liveBytes() {
+		return buffer.getLong(LIVE_BYTES_OFFSET);
+	}
+
+	/**
+	 * @return number of slots, see {@link #location(int)}
+	 */
+	int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return number of slots visited by lookups and updates so far
+	 */
+	long probes() {
+		return probes;
+	}
+
+	/**
+	 * @return location of the record of the given name, {@code null} if there is none
+	 */
+	@Nullable
+	Location get(@NonNull byte[] name) throws IOException {
+		int slot = find(name, hash(name));
+		return slot < 0 ? null : location(slot);
+	}
+
+	/**
+	 * @return location of the record in the given slot, {@code null} if the slot is unused
+	 */
+	@Nullable
+	Location location(int slot) {
+		int offset = slotOffset(slot);
+		long position = buffer.getLong(offset + 8);
+		if (buffer.getLong(offset) == EMPTY || position == TOMBSTONE) {
+			return null;
+		}
+		return new Location(position, buffer.getInt(offset + 16), buffer.getInt(offset + 20));
+	}
+
+	/**
+	 * Points the given name to the given record, replacing its previous record.
+	 */
+	void put(@NonNull byte[] name, @NonNull Location location) throws IOException {
+		long hash = hash(name);
+		int slot = find(name, hash);
+		if (slot >= 0) {
+			addLiveBytes(-location(slot).getRecordLength());
+		} else {
+			// Linear probing needs many more probes for misses above half of the capacity
+			if ((size + tombstones + 1) * 2L > capacity) {
+				grow();
+			}
+			slot = freeSlot(hash);
+			if (buffer.getLong(slotOffset(slot)) != EMPTY) {
+				tombstones--;
+			}
+			size++;
+			writeCounts();
+		}
+		int offset = slotOffset(slot);
+		buffer.putLong(offset + 8, location.position);
+		buffer.putInt(offset + 16, location.nameLength);
+		buffer.putInt(offset + 20, location.valueLength);
+		// Written last, a slot only becomes visible once it is complete
+		buffer.putLong(offset, hash);
+		addLiveBytes(location.getRecordLength());
+	}
+
+	/**
+	 * @return {@code true} if the given name was removed
+	 */
+	boolean remove(@NonNull byte[] name) throws IOException {
+		int slot = find(name, hash(name));
+		if (slot < 0) {
+			return false;
+		}
+		addLiveBytes(-location(slot).getRecordLength());
+		// The hash is kept, so that lookups continue probing past the slot
+		buffer.putLong(slotOffset(slot) + 8, TOMBSTONE);
+		size--;
+		tombstones++;
+		writeCounts();
+		return true;
+	}
+
+	/**
+	 * Writes the changed pages to the file.
+	 */
+	void force() {
+		buffer.force();
+	}
+
+	/**
+	 * Unmapping is left to the garbage collector, the index must not be used afterwards.
+	 */
+	@Override
+	public void close() {
+		if (buffer != null) {
+			buffer.force();
+			buffer = null;
+		}
+	}
+
+	/**
+	 * @return slot of the given name, -1 if there is none
+	 */
+	private int find(byte[] name, long hash) throws IOException {
+		int mask = capacity - 1;
+		for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+			probes++;
+			int offset = slotOffset(slot);
+			long slotHash = buffer.getLong(offset);
+			if (slotHash == EMPTY) {
+				return -1;
+			}
+			long position = buffer.getLong(offset + 8);
+			if (slotHash == hash && position != TOMBSTONE && buffer.getInt(offset + 16) == name.length
+					&& Arrays.equals(name, records.readName(position, name.length))) {
+				return slot;
+			}
+		}
+	}
+
+	/**
+	 * @return first empty slot or tombstone for the given hash
+	 */
+	private int freeSlot(long hash) {
+		int mask = capacity - 1;
+		for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+			int offset = slotOffset(slot);
+			if (buffer.getLong(offset) == EMPTY || buffer.getLong(offset + 8) == TOMBSTONE) {
+				return slot;
+			}
+		}
+	}
+
+	/**
+	 * Rehashes all names into a new file with twice the capacity, or the same capacity if
+	 * mostly tombstones are to be dropped, which then replaces the index.
+	 */
+	private void grow() throws IOException {
+		int newCapacity = (size + 1) * 4L > capacity ? capacity * 2 : capacity;
+		if (newCapacity > MAX_CAPACITY) {
+			throw new IOException("Vault index " + file + " is full");
+		}
+		File grow = new File(file.getPath() + GROW_SUFFIX);
+		MappedByteBuffer grown = createFile(grow, buffer.getLong(LOG_ID_OFFSET), newCapacity);
+		grown.putLong(LOG_END_OFFSET, getLogEnd());
+		grown.putInt(SIZE_OFFSET, size);
+		grown.putLong(LIVE_BYTES_OFFSET, liveBytes());
+
+		int newMask = newCapacity - 1;
+		for (int slot = 0; slot < capacity; slot++) {
+			int offset = slotOffset(slot);
+			long hash = buffer.getLong(offset);
+			if (hash == EMPTY || buffer.getLong(offset + 8) == TOMBSTONE) {
+				continue;
+			}
+			int newSlot = (int) hash & newMask;
+			while (grown.getLong(slotOffset(newSlot)) != EMPTY) {
+				newSlot = (newSlot + 1) & newMask;
+			}
+			int newOffset = slotOffset(newSlot);
+			grown.putLong(newOffset + 8, buffer.getLong(offset + 8));
+			grown.putLong(newOffset + 16, buffer.getLong(offset + 16));
+			grown.putLong(newOffset, hash);
+		}
+		grown.force();
+
+		if (!grow.renameTo(file)) {
+			throw new IOException("Unable to replace " + file + " with " + grow);
+		}
+		buffer = grown;
+		capacity = newCapacity;
+		tombstones = 0;
+	}
+
+	private void writeCounts() {
+		buffer.putInt(SIZE_OFFSET, size);
+		buffer.putInt(TOMBSTONES_OFFSET, tombstones);
+	}
+
+	private void addLiveBytes(long bytes) {
+		buffer.putLong(LIVE_BYTES_OFFSET, liveBytes() + bytes);
+	}
+
+	private void map(File file) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+		try {
+			// The mapping stays valid after closing the file
+			buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, randomAccessFile.length());
+		} finally {
+			randomAccessFile.close();
+		}
+	}
+
+	private static void deleteGrowFile(File file) throws IOException {
+		File grow = new File(file.getPath() + GROW_SUFFIX);
+		if (grow.exists() && !grow.delete()) {
+			throw new IOException("Unable to delete " + grow);
+		}
+	}
+
+	private static MappedByteBuffer createFile(File file, long logId, int capacity) throws IOException {
+		MappedByteBuffer buffer;
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+		try {
+			FileChannel channel = randomAccessFile.getChannel();
+			channel.truncate(0);
+			// New regions of a file read as zeros, which marks all slots as empty
+			buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, slotsLength(capacity));
+		} finally {
+			randomAccessFile.close();
+		}
+		buffer.putInt(0, MAGIC);
+		buffer.putInt(4, VERSION);
+		buffer.putLong(LOG_ID_OFFSET, logId);
+		buffer.putInt(CAPACITY_OFFSET, capacity);
+		return buffer;
+	}
+
+	private static int slotsLength(int capacity) {
+		return HEADER_LENGTH + capacity * SLOT_LENGTH;
+	}
+
+	private static int slotOffset(int slot) {
+		return HEADER_LENGTH + slot * SLOT_LENGTH;
+	}
+
+	/**
+	 * 64 bit FNV-1a hash of the name, never {@link #EMPTY}.
+	 */
+	private static long hash(byte[] name) {
+		long hash = 0xcbf29ce484222325L;
+		for (byte b : name) {
+			hash ^= b & 0xff;
+			hash *= 0x100000001b3L;
+		}
+		// Spread the high bits into the low bits used for the slot
+		hash ^= hash >>> 32;
+		return hash == EMPTY ? 1 : hash;
+	}
+
+	/**
+	 * Position and lengths of a record in the log.
+	 */
+	static final class Location {
+
+		final long position;
+		final int nameLength;
+		final int valueLength;
+
+		Location(long position, int nameLength, int valueLength) {
+			this.position = position;
+			this.nameLength = nameLength;
+			this.valueLength = valueLength;
+		}
+
+		int getRecordLength() {
+			return VaultLog.RECORD_HEADER_LENGTH + VaultLog.BODY_HEADER_LENGTH + nameLength + valueLength;
+		}
+	}
+}
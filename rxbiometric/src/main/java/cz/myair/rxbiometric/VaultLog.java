@@ -0,0 +1,426 @@
+/*
+ * Copyright 2018 Marvin Ramin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.myair.rxbiometric;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import cz.myair.rxbiometric.VaultIndex.Location;
+
+/**
+ * Append-only log file of named values, the storage of a {@link BiometricVault}.
+ * <p/>
+ * Every write appends one record, a removal appends a tombstone. Records replaced or removed
+ * this way remain in the file as garbage until the log is compacted, which rewrites the live
+ * records to a new file that atomically replaces the log.
+ * <p/>
+ * Each record is protected by a CRC32. A record that was not completely written before the
+ * process died, and everything after it, is truncated when the log is opened again.
+ * <p/>
+ * Names are looked up in a {@link VaultIndex} in a file next to the log, which is updated after
+ * every write. Only records the index is missing are read when the log is opened, the whole log
+ * only if the index does not match it.
+ *
+ * <pre>
+ * file:   magic (int) | version (byte) | log id (long) | record*
+ * record: body length (int) | crc32 of body (int) | body
+ * body:   type (byte) | name length (int) | name (UTF-8) | value
+ * </pre>
+ */
+final class VaultLog implements Closeable, VaultIndex.Records {
+
+	private static final int MAGIC = 0x52584256; // "RXBV"
+	private static final byte VERSION = 1;
+	private static final int FILE_HEADER_LENGTH = 13;
+	static final int RECORD_HEADER_LENGTH = 8;
+	static final int BODY_HEADER_LENGTH = 5;
+	private static final byte TYPE_PUT = 1;
+	private static final byte TYPE_REMOVE = 2;
+	private static final String COMPACTION_SUFFIX = ".compact";
+	private static final String INDEX_SUFFIX = ".index";
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final File file;
+	private FileChannel channel;
+	private VaultIndex index;
+	private long end;
+
+	private VaultLog(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Opens the log in the given file, which is created if it does not exist. Recovers from
+	 * writes and compactions that were interrupted.
+	 *
+	 * @throws IOException if the file cannot be read or is no vault log
+	 */
+	static VaultLog open(@NonNull File file) throws IOException {
+		// A compaction that did not finish, the log itself is still complete
+		File compaction = compactionFile(file);
+		for (File unfinished : new File[]{compaction, indexFile(compaction)}) {
+			if (unfinished.exists() && !unfinished.delete()) {
+				throw new IOException("Unable to delete " + unfinished);
+			}
+		}
+
+		VaultLog log = new VaultLog(file);
+		log.channel = new RandomAccessFile(file, "rw").getChannel();
+		try {
+			log.recover();
+		} catch (IOException e) {
+			log.close();
+			throw e;
+		}
+		return log;
+	}
+
+	/**
+	 * Appends the given value, which replaces a previous value of the same name.
+	 */
+	synchronized void put(@NonNull String name, @NonNull byte[] value) throws IOException {
+		byte[] nameBytes = name.getBytes(UTF_8);
+		long position = append(TYPE_PUT, nameBytes, value);
+		index.put(nameBytes, new Location(position, nameBytes.length, value.length));
+		commitIndex();
+	}
+
+	/**
+	 * Appends a tombstone for the value of the given name.
+	 *
+	 * @return {@code true} if a value was removed
+	 */
+	synchronized boolean remove(@NonNull String name) throws IOException {
+		byte[] nameBytes = name.getBytes(UTF_8);
+		if (index.get(nameBytes) == null) {
+			return false;
+		}
+		append(TYPE_REMOVE, nameBytes, new byte[0]);
+		index.remove(nameBytes);
+		commitIndex();
+		return true;
+	}
+
+	/**
+	 * @return value of the given name, {@code null} if there is none
+	 */
+	@Nullable
+	synchronized byte[] get(@NonNull String name) throws IOException {
+		Location location = index.get(name.getBytes(UTF_8));
+		if (location == null) {
+			return null;
+		}
+		ByteBuffer value = ByteBuffer.allocate(location.valueLength);
+		readFully(channel, value, location.position + RECORD_HEADER_LENGTH + BODY_HEADER_LENGTH + location.nameLength);
+		return value.array();
+	}
+
+	synchronized boolean contains(@NonNull String name) throws IOException {
+		return index.get(name.getBytes(UTF_8)) != null;
+	}
+
+	/**
+	 * Reads the names of all values from the log.
+	 */
+	synchronized Set<String> names() throws IOException {
+		Set<String> names = new HashSet<>(index.size());
+		for (int slot = 0; slot < index.capacity(); slot++) {
+			Location location = index.location(slot);
+			if (location != null) {
+				names.add(new String(readName(location.position, location.nameLength), UTF_8));
+			}
+		}
+		return Collections.unmodifiableSet(names);
+	}
+
+	@Override
+	public synchronized byte[] readName(long position, int nameLength) throws IOException {
+		return readName(channel, position, nameLength);
+	}
+
+	/**
+	 * @return length of the log file in bytes
+	 */
+	synchronized long length() {
+		return end;
+	}
+
+	/**
+	 * @return bytes of replaced and removed records that a compaction would free
+	 */
+	synchronized long garbageBytes() {
+		return end - FILE_HEADER_LENGTH - index.liveBytes();
+	}
+
+	synchronized long liveBytes() {
+		return index.liveBytes();
+	}
+
+	/**
+	 * Rewrites the live records to a new file which then replaces the log. If the process dies
+	 * during the compaction the log is left as it was.
+	 */
+	synchronized void compact() throws IOException {
+		if (!channel.isOpen()) {
+			// Closed before a background compaction started
+			return;
+		}
+		File compaction = compactionFile(file);
+		long compactedId = new SecureRandom().nextLong();
+
+		RandomAccessFile compactionFile = new RandomAccessFile(compaction, "rw");
+		try {
+			final FileChannel compactionChannel = compactionFile.getChannel();
+			compactionChannel.truncate(0);
+			long compactedEnd = writeFileHeader(compactionChannel, compactedId);
+			VaultIndex compactedIndex = VaultIndex.create(indexFile(compaction), compactedId, new VaultIndex.Records() {
+				@Override
+				public byte[] readName(long position, int nameLength) throws IOException {
+					return VaultLog.readName(compactionChannel, position, nameLength);
+				}
+			});
+			try {
+				for (int slot = 0; slot < index.capacity(); slot++) {
+					Location location = index.location(slot);
+					if (location == null) {
+						continue;
+					}
+					ByteBuffer record = ByteBuffer.allocate(location.getRecordLength());
+					readFully(channel, record, location.position);
+					int nameOffset = RECORD_HEADER_LENGTH + BODY_HEADER_LENGTH;
+					byte[] name = Arrays.copyOfRange(record.array(), nameOffset, nameOffset + location.nameLength);
+					record.flip();
+					writeFully(compactionChannel, record, compactedEnd);
+
+					compactedIndex.put(name, new Location(compactedEnd, location.nameLength, location.valueLength));
+					compactedEnd += location.getRecordLength();
+				}
+				compactedIndex.setLogEnd(compactedEnd);
+				compactionChannel.force(true);
+			} finally {
+				compactedIndex.close();
+			}
+		} finally {
+			compactionFile.close();
+		}
+
+		close();
+		try {
+			if (!compaction.renameTo(file)) {
+				throw new IOException("Unable to replace " + file + " with " + compaction);
+			}
+			// Without the compacted index, the index is rebuilt from the compacted log
+			indexFile(compaction).renameTo(indexFile(file));
+		} finally {
+			channel = new RandomAccessFile(file, "rw").getChannel();
+			recover();
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		channel.close();
+		if (index != null) {
+			index.close();
+		}
+	}
+
+	private void recover() throws IOException {
+		long length = channel.size();
+		if (length < FILE_HEADER_LENGTH) {
+			// New file, or the process died while creating it
+			long logId = new SecureRandom().nextLong();
+			channel.truncate(0);
+			end = writeFileHeader(channel, logId);
+			channel.force(true);
+			index = VaultIndex.create(indexFile(file), logId, this);
+			commitIndex();
+			return;
+		}
+
+		ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_LENGTH);
+		readFully(channel, header, 0);
+		if (header.getInt(0) != MAGIC || header.get(4) != VERSION) {
+			throw new IOException(file + " is not a vault file");
+		}
+		long logId = header.getLong(5);
+		index = VaultIndex.open(indexFile(file), logId, this);
+		long position = index.getLogEnd();
+		if (position > length) {
+			// The index is ahead of the log, which lost records
+			index.close();
+			index = VaultIndex.create(indexFile(file), logId, this);
+			position = 0;
+		}
+		// Only records after the end of the log applied to the index are read
+		position = Math.max(position, FILE_HEADER_LENGTH);
+
+		channel.position(position);
+		// Not closed, as that would close the channel as well
+		DataInputStream input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+		CRC32 crc = new CRC32();
+		while (position + RECORD_HEADER_LENGTH <= length) {
+			int bodyLength = input.readInt();
+			int checksum = input.readInt();
+			if (bodyLength < BODY_HEADER_LENGTH || bodyLength > length - position - RECORD_HEADER_LENGTH) {
+				break;
+			}
+			byte[] body = new byte[bodyLength];
+			try {
+				input.readFully(body);
+			} catch (EOFException e) {
+				break;
+			}
+			crc.reset();
+			crc.update(body, 0, bodyLength);
+			if ((int) crc.getValue() != checksum || !apply(body, position)) {
+				break;
+			}
+			position += RECORD_HEADER_LENGTH + bodyLength;
+		}
+
+		end = position;
+		if (position < length) {
+			// Drop the incomplete record of an interrupted write
+			channel.truncate(position);
+			channel.force(true);
+		}
+		commitIndex();
+	}
+
+	/**
+	 * Applies the record read while recovering to the index.
+	 *
+	 * @return {@code false} if the record is invalid
+	 */
+	private boolean apply(byte[] body, long position) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(body);
+		byte type = buffer.get();
+		int nameLength = buffer.getInt();
+		if (nameLength < 0 || nameLength > buffer.remaining()) {
+			return false;
+		}
+		byte[] name = Arrays.copyOfRange(body, BODY_HEADER_LENGTH, BODY_HEADER_LENGTH + nameLength);
+
+		if (type == TYPE_PUT) {
+			index.put(name, new Location(position, nameLength, buffer.remaining() - nameLength));
+		} else if (type == TYPE_REMOVE) {
+			index.remove(name);
+		} else {
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Records that the index contains all records up to the end of the log. The log is written
+	 * first, so the index never refers to records that were not written.
+	 */
+	private void commitIndex() {
+		index.setLogEnd(end);
+		index.force();
+	}
+
+	/**
+	 * @return position of the appended record
+	 */
+	private long append(byte type, byte[] name, byte[] value) throws IOException {
+		int bodyLength = BODY_HEADER_LENGTH + name.length + value.length;
+		ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_LENGTH + bodyLength);
+		record.putInt(bodyLength);
+		record.putInt(0);
+		record.put(type);
+		record.putInt(name.length);
+		record.put(name);
+		record.put(value);
+
+		CRC32 crc = new CRC32();
+		crc.update(record.array(), RECORD_HEADER_LENGTH, bodyLength);
+		record.putInt(4, (int) crc.getValue());
+		record.flip();
+
+		long position = end;
+		try {
+			writeFully(channel, record, position);
+			channel.force(false);
+		} catch (IOException e) {
+			// Don't leave a partial record in front of the next one
+			channel.truncate(position);
+			throw e;
+		}
+		end = position + record.limit();
+		return position;
+	}
+
+	private static long writeFileHeader(FileChannel channel, long logId) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_LENGTH);
+		header.putInt(MAGIC);
+		header.put(VERSION);
+		header.putLong(logId);
+		header.flip();
+		writeFully(channel, header, 0);
+		return FILE_HEADER_LENGTH;
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position);
+			if (read < 0) {
+				throw new EOFException("Unexpected end of " + channel);
+			}
+			position += read;
+		}
+	}
+
+	private static byte[] readName(FileChannel channel, long position, int nameLength) throws IOException {
+		ByteBuffer name = ByteBuffer.allocate(nameLength);
+		readFully(channel, name, position + RECORD_HEADER_LENGTH + BODY_HEADER_LENGTH);
+		return name.array();
+	}
+
+	private static File compactionFile(File file) {
+		return new File(file.getPath() + COMPACTION_SUFFIX);
+	}
+
+	private static File indexFile(File file) {
+		return new File(file.getPath() + INDEX_SUFFIX);
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2015 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.myair.rxbiometric.data;
+
+
+/**
+ * Result for one value of a decryption of multiple values with a single biometric
+ * authentication.
+ */
+public class BiometricBatchDecryptionResult extends BiometricDecryptionResult {
+
+    private final String encrypted;
+    private final Throwable error;
+
+    /**
+     * Default constructor
+     *  @param result    result of the biometric authentication
+     * @param encrypted encrypted value this result belongs to
+     * @param decrypted decrypted data
+     * @param error     error that occurred while decrypting this value
+     */
+    public BiometricBatchDecryptionResult(BiometricResult result, String encrypted, char[] decrypted, Throwable error) {
+        super(result, decrypted);
+        this.encrypted = encrypted;
+        this.error = error;
+    }
+
+    /**
+     * @return encrypted value this result belongs to. {@code null} if the biometric
+     * authentication was not successful.
+     */
+    public String getEncrypted() {
+        return encrypted;
+    }
+
+    /**
+     * @return error that occurred while decrypting this value or {@code null} if the value was
+     * decrypted successfully
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    /**
+     * @return {@code true} if decrypting this value failed
+     */
+    public boolean hasError() {
+        return error != null;
+    }
+
+    /**
+     * @return decrypted data as a char[]. Can only be accessed if the result of the biometric
+     * authentication was of type {@link BiometricResult#AUTHENTICATED} and this value was
+     * decrypted successfully.
+     */
+    @Override
+    public char[] getDecryptedChars() {
+        if (hasError()) {
+            throw new IllegalAccessError("Decryption of this value failed, cannot access decryption result");
+        }
+        return super.getDecryptedChars();
+    }
+}
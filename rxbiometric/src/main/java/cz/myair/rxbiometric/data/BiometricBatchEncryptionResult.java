@@ -0,0 +1,57 @@
+/*
+ * Copyright 2015 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.myair.rxbiometric.data;
+
+import java.util.Map;
+
+/**
+ * Result of a biometric authenticated encryption of multiple values
+ */
+public class BiometricBatchEncryptionResult extends BiometricAuthenticationResult {
+
+    private final Map<String, String> encrypted;
+
+    /**
+     * Default constructor
+     *  @param result    result of the operation
+     * @param encrypted encrypted data by the name of each value
+     */
+    public BiometricBatchEncryptionResult(BiometricResult result, Map<String, String> encrypted) {
+        super(result);
+        this.encrypted = encrypted;
+    }
+
+    /**
+     * @return encrypted data by the name of each value, can only be accessed if the result was of
+     * type {@link BiometricResult#AUTHENTICATED}
+     */
+    public Map<String, String> getEncrypted() {
+        if (!isSuccess()) {
+            throw new IllegalAccessError("Biometric authentication was not successful, cannot access encryption result");
+        }
+        return encrypted;
+    }
+
+    /**
+     * @param name name of the value
+     * @return encrypted data of the value with the given name, can only be accessed if the result
+     * was of type {@link BiometricResult#AUTHENTICATED}
+     */
+    public String getEncrypted(String name) {
+        return getEncrypted().get(name);
+    }
+}
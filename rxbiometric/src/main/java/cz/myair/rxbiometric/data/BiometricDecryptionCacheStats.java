@@ -0,0 +1,79 @@
+/*
+ * Copyright 2018 Marvin Ramin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.myair.rxbiometric.data;
+
+/**
+ * Snapshot of the size and the counters of the cache of decrypted values.
+ */
+public class BiometricDecryptionCacheStats {
+
+	private final int size;
+	private final long hits;
+	private final long misses;
+	private final long evictions;
+
+	/**
+	 * Default constructor
+	 *
+	 * @param size      number of cached values
+	 * @param hits      number of decryptions served from the cache
+	 * @param misses    number of decryptions that were not cached
+	 * @param evictions number of values evicted because the cache was full or they expired
+	 */
+	public BiometricDecryptionCacheStats(int size, long hits, long misses, long evictions) {
+		this.size = size;
+		this.hits = hits;
+		this.misses = misses;
+		this.evictions = evictions;
+	}
+
+	/**
+	 * @return number of cached values
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * @return number of decryptions served from the cache without prompt
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return number of decryptions that were not cached
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return number of values evicted because the cache was full or they expired
+	 */
+	public long getEvictions() {
+		return evictions;
+	}
+
+	@Override
+	public String toString() {
+		return "BiometricDecryptionCacheStats {" + "size=" + size
+				+ ", hits=" + hits
+				+ ", misses=" + misses
+				+ ", evictions=" + evictions + "}";
+	}
+}
@@ -16,6 +16,7 @@
 
 package cz.myair.rxbiometric.data;
 
+import cz.myair.rxbiometric.SecureBuffer;
 
 /**
  * Result of a decryption operation with biometric authentication.
@@ -23,6 +24,7 @@ package cz.myair.rxbiometric.data;
 public class BiometricDecryptionResult extends BiometricAuthenticationResult {
 
     private final char[] decrypted;
+    private final SecureBuffer decryptedBuffer;
 
     /**
      * Default constructor
@@ -30,8 +32,20 @@ public class BiometricDecryptionResult extends BiometricAuthenticationResult {
      * @param decrypted decrypted data
      */
     public BiometricDecryptionResult(BiometricResult result, char[] decrypted) {
+        this(result, decrypted, null);
+    }
+
+    /**
+     * Constructor for data decrypted into a {@link SecureBuffer}
+     *
+     * @param result          result of the biometric authentication
+     * @param decrypted       decrypted data, {@code null} if only the buffer is provided
+     * @param decryptedBuffer decrypted data kept outside of the heap
+     */
+    public BiometricDecryptionResult(BiometricResult result, char[] decrypted, SecureBuffer decryptedBuffer) {
         super(result);
         this.decrypted = decrypted;
+        this.decryptedBuffer = decryptedBuffer;
     }
 
     /**
@@ -50,6 +64,21 @@ public class BiometricDecryptionResult extends BiometricAuthenticationResult {
         if (!isSuccess()) {
             throw new IllegalAccessError("Biometric authentication was not successful, cannot access decryption result");
         }
+        if (decrypted == null && decryptedBuffer != null) {
+            return decryptedBuffer.toChars();
+        }
         return decrypted;
     }
+
+    /**
+     * @return decrypted data kept outside of the heap, {@code null} unless the data was decrypted
+     * into a {@link SecureBuffer}. Wipe it once the data is no longer needed. Can only be accessed
+     * if the result of the biometric authentication was of type {@link BiometricResult#AUTHENTICATED}.
+     */
+    public SecureBuffer getDecryptedBuffer() {
+        if (!isSuccess()) {
+            throw new IllegalAccessError("Biometric authentication was not successful, cannot access decryption result");
+        }
+        return decryptedBuffer;
+    }
 }
\ No newline at end of file
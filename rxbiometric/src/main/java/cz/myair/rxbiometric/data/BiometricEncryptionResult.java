@@ -16,6 +16,7 @@
 
 package cz.myair.rxbiometric.data;
 
+import java.nio.ByteBuffer;
 
 /**
  * Result of a biometric authenticated encryption operation
@@ -23,6 +24,7 @@ package cz.myair.rxbiometric.data;
 public class BiometricEncryptionResult extends BiometricAuthenticationResult {
 
     private final String encrypted;
+    private final byte[] encryptedBytes;
 
     /**
      * Default constructor
@@ -30,8 +32,20 @@ public class BiometricEncryptionResult extends BiometricAuthenticationResult {
      * @param encrypted encrypted data
      */
     public BiometricEncryptionResult(BiometricResult result, String encrypted) {
+        this(result, encrypted, null);
+    }
+
+    /**
+     * Constructor including the binary form of the encrypted data
+     *
+     * @param result         result of the operation
+     * @param encrypted      encrypted data
+     * @param encryptedBytes encrypted data in binary form
+     */
+    public BiometricEncryptionResult(BiometricResult result, String encrypted, byte[] encryptedBytes) {
         super(result);
         this.encrypted = encrypted;
+        this.encryptedBytes = encryptedBytes;
     }
 
     /**
@@ -44,4 +58,23 @@ public class BiometricEncryptionResult extends BiometricAuthenticationResult {
         }
         return encrypted;
     }
+
+    /**
+     * @return encrypted data in the compact binary form, which can be decrypted again just like
+     * the String returned by {@link #getEncrypted()}. Can only be accessed if the result was of
+     * type {@link BiometricResult#AUTHENTICATED}
+     */
+    public byte[] getEncryptedBytes() {
+        if (!isSuccess()) {
+            throw new IllegalAccessError("Biometric authentication was not successful, cannot access encryption result");
+        }
+        return encryptedBytes;
+    }
+
+    /**
+     * @return read-only view of {@link #getEncryptedBytes()}
+     */
+    public ByteBuffer getEncryptedBuffer() {
+        return ByteBuffer.wrap(getEncryptedBytes()).asReadOnlyBuffer();
+    }
 }
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2018 Marvin Ramin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <http://www.apache.org/licenses/LICENSE-2.0>
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.myair.rxbiometric.data;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snapshot of the operations waiting for the biometric prompt and of the time they waited.
+ */
+public class BiometricPromptQueueMetrics {
+
+	private final int queueDepth;
+	private final boolean promptActive;
+	private final long promptsShown;
+	private final long totalWaitNanos;
+	private final long maxWaitNanos;
+
+	/**
+	 * Default constructor
+	 *
+	 * @param queueDepth     number of operations waiting for the prompt
+	 * @param promptActive   whether an operation currently shows the prompt
+	 * @param promptsShown   number of operations that got their turn so far
+	 * @param totalWaitNanos sum of the time these operations waited in nanoseconds
+	 * @param maxWaitNanos   longest time one of these operations waited in nanoseconds
+	 */
+	public BiometricPromptQueueMetrics(int queueDepth, boolean promptActive, long promptsShown, long totalWaitNanos, long maxWaitNanos) {
+		this.queueDepth = queueDepth;
+		this.promptActive = promptActive;
+		this.promptsShown = promptsShown;
+		this.totalWaitNanos = totalWaitNanos;
+		this.maxWaitNanos = maxWaitNanos;
+	}
+
+	/**
+	 * @return number of operations waiting for the prompt, not counting the active one
+	 */
+	public int getQueueDepth() {
+		return queueDepth;
+	}
+
+	/**
+	 * @return {@code true} if an operation currently shows the prompt
+	 */
+	public boolean isPromptActive() {
+		return promptActive;
+	}
+
+	/**
+	 * @return number of operations that got their turn to show the prompt so far
+	 */
+	public long getPromptsShown() {
+		return promptsShown;
+	}
+
+	/**
+	 * @return average time operations waited for their turn, zero if none got a turn yet
+	 */
+	public long getAverageWait(TimeUnit unit) {
+		return promptsShown == 0 ? 0 : unit.convert(totalWaitNanos / promptsShown, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @return longest time an operation waited for its turn
+	 */
+	public long getMaxWait(TimeUnit unit) {
+		return unit.convert(maxWaitNanos, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public String toString() {
+		return "BiometricPromptQueueMetrics {" + "queueDepth=" + queueDepth
+				+ ", promptActive=" + promptActive
+				+ ", promptsShown=" + promptsShown
+				+ ", totalWaitNanos=" + totalWaitNanos
+				+ ", maxWaitNanos=" + maxWaitNanos + "}";
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2018 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.myair.rxbiometric.data;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durations of the phases of a warm-up, which prepares the keystore and key for later
+ * operations.
+ */
+public class BiometricWarmUpResult {
+
+	private final boolean keyCreated;
+	private final long keyStoreNanos;
+	private final long keyNanos;
+	private final long cipherNanos;
+
+	/**
+	 * Default constructor
+	 *
+	 * @param keyCreated    whether the key did not exist and was created
+	 * @param keyStoreNanos duration of loading the keystore in nanoseconds
+	 * @param keyNanos      duration of looking up or creating the key in nanoseconds
+	 * @param cipherNanos   duration of resolving the cipher in nanoseconds
+	 */
+	public BiometricWarmUpResult(boolean keyCreated, long keyStoreNanos, long keyNanos, long cipherNanos) {
+		this.keyCreated = keyCreated;
+		this.keyStoreNanos = keyStoreNanos;
+		this.keyNanos = keyNanos;
+		this.cipherNanos = cipherNanos;
+	}
+
+	/**
+	 * @return {@code true} if the key did not exist yet and was created
+	 */
+	public boolean isKeyCreated() {
+		return keyCreated;
+	}
+
+	/**
+	 * @return duration of loading the keystore, zero if it was already loaded
+	 */
+	public long getKeyStoreDuration(TimeUnit unit) {
+		return unit.convert(keyStoreNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @return duration of looking up or creating the key
+	 */
+	public long getKeyDuration(TimeUnit unit) {
+		return unit.convert(keyNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @return duration of resolving the cipher implementation
+	 */
+	public long getCipherDuration(TimeUnit unit) {
+		return unit.convert(cipherNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @return total duration of the warm-up
+	 */
+	public long getTotalDuration(TimeUnit unit) {
+		return unit.convert(keyStoreNanos + keyNanos + cipherNanos, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public String toString() {
+		return "BiometricWarmUpResult {" + "keyCreated=" + keyCreated
+				+ ", keyStoreNanos=" + keyStoreNanos
+				+ ", keyNanos=" + keyNanos
+				+ ", cipherNanos=" + cipherNanos + "}";
+	}
+}
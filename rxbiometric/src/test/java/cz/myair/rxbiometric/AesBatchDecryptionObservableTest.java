@@ -0,0 +1,245 @@
+package cz.myair.rxbiometric;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.security.AlgorithmParameters;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.CipherSpi;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.IvParameterSpec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link AesBatchDecryptionObservable#decryptAll(Cipher, List)}
+ */
+public class AesBatchDecryptionObservableTest {
+
+	private static final List<String> VALUES = Arrays.asList("", "a", "0123456789abcdef", "The quick brown fox jumps over the lazy dog");
+
+	private final EncodingProvider encodingProvider = new TestBase64EncodingProvider();
+
+	private SecretKey key;
+
+	@Before
+	public void setUp() throws Exception {
+		KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+		keyGenerator.init(128);
+		key = keyGenerator.generateKey();
+	}
+
+	@Test
+	public void decryptsIndependentlyEncryptedValues() throws Exception {
+		List<String> encrypted = new ArrayList<>();
+		for (String value : VALUES) {
+			encrypted.add(encrypt(value));
+		}
+
+		List<AesBatchDecryptionObservable.Entry> entries = decryptAll(encrypted);
+
+		for (int i = 0; i < VALUES.size(); i++) {
+			assertNull(entries.get(i).error);
+			assertEquals(VALUES.get(i), new String(entries.get(i).decrypted));
+		}
+	}
+
+	@Test
+	public void decryptsBatchEncryptedValues() throws Exception {
+		Map<String, char[]> values = new LinkedHashMap<>();
+		for (String value : VALUES) {
+			values.put(value, value.toCharArray());
+		}
+		Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+		cipher.init(Cipher.ENCRYPT_MODE, key);
+		List<String> encrypted = new ArrayList<>(AesBatchEncryptionObservable.encryptAll(cipher, values, encodingProvider).values());
+
+		List<AesBatchDecryptionObservable.Entry> entries = decryptAll(encrypted);
+
+		for (int i = 0; i < VALUES.size(); i++) {
+			assertEquals(VALUES.get(i), new String(entries.get(i).decrypted));
+		}
+	}
+
+	@Test
+	public void corruptValuesDoNotAbortOthers() throws Exception {
+		String tampered = encrypt("tampered");
+		CryptoData tamperedData = CryptoData.fromString(encodingProvider, tampered);
+		byte[] message = tamperedData.getMessage();
+		byte[] tamperedIv = tamperedData.getIv();
+		// turns the padding of the single block from 8 to 9
+		tamperedIv[tamperedIv.length - 1] ^= 1;
+
+		List<String> encrypted = Arrays.asList(
+				"invalid",
+				encrypt("first"),
+				CryptoData.fromBytes(encodingProvider, Arrays.copyOf(message, 5), tamperedData.getIv()).toString(),
+				CryptoData.fromBytes(encodingProvider, message, tamperedIv).toString(),
+				encrypt("second"));
+
+		List<AesBatchDecryptionObservable.Entry> entries = decryptAll(encrypted);
+
+		assertTrue(entries.get(0).error instanceof CryptoDataException);
+		assertEquals("first", new String(entries.get(1).decrypted));
+		assertNotNull(entries.get(2).error);
+		assertTrue(entries.get(3).error instanceof BadPaddingException);
+		assertEquals("second", new String(entries.get(4).decrypted));
+	}
+
+	@Test(expected = BadPaddingException.class)
+	public void invalidPaddingOfLastValueFailsBatch() throws Exception {
+		CryptoData data = CryptoData.fromString(encodingProvider, encrypt("last"));
+		byte[] tamperedIv = data.getIv();
+		tamperedIv[tamperedIv.length - 1] ^= 1;
+
+		decryptAll(Arrays.asList(encrypt("first"), CryptoData.fromBytes(encodingProvider, data.getMessage(), tamperedIv).toString()));
+	}
+
+	@Test
+	public void decryptsWithCipherHoldingBackOutput() throws Exception {
+		List<String> encrypted = new ArrayList<>();
+		for (String value : VALUES) {
+			encrypted.add(encrypt(value));
+		}
+		List<AesBatchDecryptionObservable.Entry> entries = AesBatchDecryptionObservable.parse(encrypted, encodingProvider);
+		Cipher cipher = new BufferingCipher();
+		cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(entries.get(0).iv));
+
+		AesBatchDecryptionObservable.decryptAll(cipher, entries);
+
+		for (int i = 0; i < VALUES.size(); i++) {
+			assertNull(entries.get(i).error);
+			assertEquals(VALUES.get(i), new String(entries.get(i).decrypted));
+		}
+	}
+
+	private List<AesBatchDecryptionObservable.Entry> decryptAll(List<String> encrypted) throws Exception {
+		List<AesBatchDecryptionObservable.Entry> entries = AesBatchDecryptionObservable.parse(encrypted, encodingProvider);
+		byte[] iv = null;
+		for (AesBatchDecryptionObservable.Entry entry : entries) {
+			if (entry.error == null) {
+				iv = entry.iv;
+				break;
+			}
+		}
+		Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+		cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(iv));
+
+		AesBatchDecryptionObservable.decryptAll(cipher, entries);
+		return entries;
+	}
+
+	/**
+	 * Returns no output before doFinal, which ciphers are allowed to do
+	 */
+	private static class BufferingCipher extends Cipher {
+		BufferingCipher() throws Exception {
+			super(new BufferingCipherSpi(), Cipher.getInstance("AES/CBC/PKCS5Padding").getProvider(), "AES/CBC/PKCS5Padding");
+		}
+	}
+
+	private static class BufferingCipherSpi extends CipherSpi {
+		private final Cipher cipher;
+		private final ByteArrayOutputStream input = new ByteArrayOutputStream();
+
+		BufferingCipherSpi() throws Exception {
+			cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+		}
+
+		@Override
+		protected void engineSetMode(String mode) {
+		}
+
+		@Override
+		protected void engineSetPadding(String padding) {
+		}
+
+		@Override
+		protected int engineGetBlockSize() {
+			return cipher.getBlockSize();
+		}
+
+		@Override
+		protected int engineGetOutputSize(int inputLen) {
+			return cipher.getOutputSize(input.size() + inputLen);
+		}
+
+		@Override
+		protected byte[] engineGetIV() {
+			return cipher.getIV();
+		}
+
+		@Override
+		protected AlgorithmParameters engineGetParameters() {
+			return cipher.getParameters();
+		}
+
+		@Override
+		protected void engineInit(int opmode, Key key, SecureRandom random) throws InvalidKeyException {
+			cipher.init(opmode, key, random);
+		}
+
+		@Override
+		protected void engineInit(int opmode, Key key, AlgorithmParameterSpec params, SecureRandom random) throws InvalidKeyException, InvalidAlgorithmParameterException {
+			cipher.init(opmode, key, params, random);
+		}
+
+		@Override
+		protected void engineInit(int opmode, Key key, AlgorithmParameters params, SecureRandom random) throws InvalidKeyException, InvalidAlgorithmParameterException {
+			cipher.init(opmode, key, params, random);
+		}
+
+		@Override
+		protected byte[] engineUpdate(byte[] bytes, int offset, int length) {
+			input.write(bytes, offset, length);
+			return new byte[0];
+		}
+
+		@Override
+		protected int engineUpdate(byte[] bytes, int offset, int length, byte[] output, int outputOffset) {
+			input.write(bytes, offset, length);
+			return 0;
+		}
+
+		@Override
+		protected byte[] engineDoFinal(byte[] bytes, int offset, int length) throws IllegalBlockSizeException, BadPaddingException {
+			if (bytes != null) {
+				input.write(bytes, offset, length);
+			}
+			return cipher.doFinal(input.toByteArray());
+		}
+
+		@Override
+		protected int engineDoFinal(byte[] bytes, int offset, int length, byte[] output, int outputOffset) throws ShortBufferException, IllegalBlockSizeException, BadPaddingException {
+			if (bytes != null) {
+				input.write(bytes, offset, length);
+			}
+			return cipher.doFinal(input.toByteArray(), 0, input.size(), output, outputOffset);
+		}
+	}
+
+	private String encrypt(String value) throws Exception {
+		Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+		cipher.init(Cipher.ENCRYPT_MODE, key);
+		return CryptoData.fromBytes(encodingProvider, cipher.doFinal(value.getBytes("UTF-8")), cipher.getIV()).toString();
+	}
+}
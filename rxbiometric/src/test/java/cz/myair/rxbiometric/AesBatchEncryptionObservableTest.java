@@ -0,0 +1,95 @@
+package cz.myair.rxbiometric;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link AesBatchEncryptionObservable#encryptAll(Cipher, Map, EncodingProvider)}
+ */
+public class AesBatchEncryptionObservableTest {
+
+	private final EncodingProvider encodingProvider = new TestBase64EncodingProvider();
+
+	private SecretKey key;
+
+	@Before
+	public void setUp() throws Exception {
+		KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+		keyGenerator.init(128);
+		key = keyGenerator.generateKey();
+	}
+
+	@Test
+	public void everyValueDecryptsOnItsOwn() throws Exception {
+		Map<String, String> values = new LinkedHashMap<>();
+		values.put("empty", "");
+		values.put("short", "a");
+		values.put("block", "0123456789abcdef");
+		values.put("long", "The quick brown fox jumps over the lazy dog, twice, and once more");
+		values.put("unicode", "\u017elu\u0165ou\u010dk\u00fd k\u016f\u0148 \uD83D\uDD12");
+
+		Map<String, String> encrypted = AesBatchEncryptionObservable.encryptAll(encryptionCipher(), toChars(values), encodingProvider);
+
+		assertEquals(values.keySet(), encrypted.keySet());
+		for (Map.Entry<String, String> entry : values.entrySet()) {
+			assertEquals(entry.getValue(), decrypt(encrypted.get(entry.getKey())));
+		}
+	}
+
+	@Test
+	public void batchIsOneCipherOperation() throws Exception {
+		int[] valueCounts = {1, 10, 100, 1000};
+		TestKeyStore.install();
+
+		for (int valueCount : valueCounts) {
+			Map<String, String> values = new LinkedHashMap<>();
+			for (int i = 0; i < valueCount; i++) {
+				values.put("secret" + i, "value of secret number " + i);
+			}
+
+			TestKeyStore.reset();
+			Cipher cipher = Cipher.getInstance("AES/CBC/PKCS7Padding");
+			cipher.init(Cipher.ENCRYPT_MODE, key);
+			Map<String, String> encrypted = AesBatchEncryptionObservable.encryptAll(cipher, toChars(values), encodingProvider);
+
+			// the single operation an authentication allows, and only the padding of every value on top
+			assertEquals(1, TestKeyStore.cipherInits.get());
+			assertEquals(1, TestKeyStore.cipherFinals.get());
+			for (int i = 0; i < valueCount; i++) {
+				int length = values.get("secret" + i).length();
+				assertEquals(length - length % 16 + 16, CryptoData.fromString(encodingProvider, encrypted.get("secret" + i)).getMessage().length);
+			}
+		}
+	}
+
+	private Cipher encryptionCipher() throws Exception {
+		Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+		cipher.init(Cipher.ENCRYPT_MODE, key);
+		return cipher;
+	}
+
+	private String decrypt(String encrypted) throws Exception {
+		CryptoData cryptoData = CryptoData.fromString(encodingProvider, encrypted);
+		Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+		cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(cryptoData.getIv()));
+		return new String(ConversionUtils.toChars(cipher.doFinal(cryptoData.getMessage())));
+	}
+
+	private static Map<String, char[]> toChars(Map<String, String> values) {
+		Map<String, char[]> chars = new LinkedHashMap<>();
+		for (Map.Entry<String, String> entry : values.entrySet()) {
+			chars.put(entry.getKey(), entry.getValue().toCharArray());
+		}
+		return chars;
+	}
+}
@@ -0,0 +1,132 @@
+package cz.myair.rxbiometric;
+
+import android.content.Context;
+import android.security.keystore.KeyProperties;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.security.InvalidKeyException;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+import cz.myair.rxbiometric.data.BiometricWarmUpResult;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link AesGcmCipherProvider}
+ */
+public class AesGcmCipherProviderTest {
+
+	private static final String KEY_NAME = "aes_gcm";
+	private static final String PACKAGE_NAME = "cz.myair.test";
+	private static final byte[] INPUT = "TEST".getBytes();
+	private static final byte[] RECORD_ID = "record-1".getBytes();
+
+	private AesGcmCipherProvider cipherProvider;
+
+	@Before
+	public void setUp() throws Exception {
+		TestKeyStore.install();
+		TestKeyStore.putKey(KEY_NAME, generateKey());
+
+		cipherProvider = new AesGcmCipherProvider(mock(Context.class), KEY_NAME, true, 0, new EmptyLogger());
+	}
+
+	@Test
+	public void encryptedDataIsAuthenticated() throws Exception {
+		Cipher encryption = cipherProvider.getCipherForEncryption();
+		encryption.updateAAD(RECORD_ID);
+		byte[] encrypted = encryption.doFinal(INPUT);
+
+		// no padding, only the authentication tag is added
+		assertEquals(INPUT.length + AesGcmCipherProvider.GCM_TAG_SIZE / 8, encrypted.length);
+
+		Cipher decryption = cipherProvider.getCipherForDecryption(encryption.getIV());
+		decryption.updateAAD(RECORD_ID);
+		assertArrayEquals(INPUT, decryption.doFinal(encrypted));
+	}
+
+	@Test(expected = AEADBadTagException.class)
+	public void mismatchedAssociatedDataIsRejected() throws Exception {
+		Cipher encryption = cipherProvider.getCipherForEncryption();
+		encryption.updateAAD(RECORD_ID);
+		byte[] encrypted = encryption.doFinal(INPUT);
+
+		Cipher decryption = cipherProvider.getCipherForDecryption(encryption.getIV());
+		decryption.updateAAD("record-2".getBytes());
+		decryption.doFinal(encrypted);
+	}
+
+	@Test
+	public void binaryFormIsMarkedAsGcm() throws Exception {
+		CryptoData cryptoData = CryptoData.fromBytes(new TestBase64EncodingProvider(), INPUT, new byte[12]);
+		byte[] binary = cryptoData.toBinary(cipherProvider.encryptionMethod());
+
+		assertEquals(EncryptionMethod.AES_GCM, cipherProvider.encryptionMethod());
+		assertEquals(cryptoData.toString(), CryptoData.fromBinary(new TestBase64EncodingProvider(), ByteBuffer.wrap(binary), EncryptionMethod.AES_GCM).toString());
+	}
+
+	@Test(expected = CryptoDataException.class)
+	public void cbcDataIsRejectedBeforeAuthentication() throws Exception {
+		byte[] binary = CryptoData.fromBytes(new TestBase64EncodingProvider(), INPUT, new byte[16]).toBinary(EncryptionMethod.AES);
+
+		CryptoData.fromBinary(new TestBase64EncodingProvider(), ByteBuffer.wrap(binary), cipherProvider.encryptionMethod());
+	}
+
+	@Test
+	public void defaultKeyOfAesIsNotUsed() throws Exception {
+		Context context = mock(Context.class);
+		when(context.getPackageName()).thenReturn(PACKAGE_NAME);
+		TestKeyStore.putKey(PACKAGE_NAME + "." + CipherProvider.DEFAULT_KEY_NAME, generateKey(), KeyProperties.BLOCK_MODE_CBC);
+		TestKeyStore.putKey(PACKAGE_NAME + "." + AesGcmCipherProvider.DEFAULT_GCM_KEY_NAME, generateKey(), KeyProperties.BLOCK_MODE_GCM);
+
+		AesGcmCipherProvider gcmProvider = new AesGcmCipherProvider(context, null, true, 0, new EmptyLogger());
+		Cipher encryption = gcmProvider.getCipherForEncryption();
+		byte[] encrypted = encryption.doFinal(INPUT);
+		assertArrayEquals(INPUT, gcmProvider.getCipherForDecryption(encryption.getIV()).doFinal(encrypted));
+
+		// the default key of AES keeps its name for compatibility
+		AesCipherProvider cbcProvider = new AesCipherProvider(context, null, true, 0, new EmptyLogger());
+		assertEquals(PACKAGE_NAME + ".rxfingerprint_default", cbcProvider.keyName);
+		encryption = cbcProvider.getCipherForEncryption();
+		encrypted = encryption.doFinal(INPUT);
+		assertArrayEquals(INPUT, cbcProvider.getCipherForDecryption(encryption.getIV()).doFinal(encrypted));
+	}
+
+	@Test(expected = InvalidKeyException.class)
+	public void cbcKeyIsRejected() throws Exception {
+		TestKeyStore.putKey("aes_cbc", generateKey(), KeyProperties.BLOCK_MODE_CBC);
+
+		new AesGcmCipherProvider(mock(Context.class), "aes_cbc", true, 0, new EmptyLogger()).getCipherForEncryption();
+	}
+
+	@Test
+	public void warmUpFindsExistingKey() throws Exception {
+		BiometricWarmUpResult result = cipherProvider.warmUp();
+
+		assertFalse(result.isKeyCreated());
+		assertEquals(1, TestKeyStore.loads.get());
+		assertEquals(1, TestKeyStore.containsAliasCalls.get());
+
+		// the operation after the warm up does not query the keystore for the key again
+		cipherProvider.getCipherForEncryption();
+		assertEquals(1, TestKeyStore.loads.get());
+		assertEquals(1, TestKeyStore.containsAliasCalls.get());
+	}
+
+	private static SecretKey generateKey() throws Exception {
+		KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+		keyGenerator.init(128);
+		return keyGenerator.generateKey();
+	}
+}
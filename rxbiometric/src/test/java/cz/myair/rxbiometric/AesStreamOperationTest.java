@@ -0,0 +1,101 @@
+package cz.myair.rxbiometric;
+
+import android.content.Context;
+import android.security.keystore.UserNotAuthenticatedException;
+
+import androidx.fragment.app.FragmentActivity;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+
+import io.reactivex.Flowable;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link AesStreamOperation} and the stream operations of {@link RxBiometric} with a
+ * time-bound key
+ */
+public class AesStreamOperationTest {
+
+	private static final String KEY_NAME = "stream";
+
+	private ActivityOrFragment activityOrFragment;
+	private BiometricDialogBundle biometricDialogBundle;
+	private byte[] plaintext;
+
+	@Before
+	public void setUp() throws Exception {
+		TestKeyStore.install();
+		KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+		keyGenerator.init(128);
+		TestKeyStore.putKey(KEY_NAME, keyGenerator.generateKey());
+
+		activityOrFragment = mock(ActivityOrFragment.class);
+		when(activityOrFragment.getContext()).thenReturn(mock(Context.class));
+		biometricDialogBundle = new BiometricDialogBundle(1, null, null, 2, true, CallbackExecutor.shared(), 0, new PromptQueue());
+		plaintext = new byte[3 * StreamingCipher.DEFAULT_SEGMENT_SIZE + 17];
+		new Random(42).nextBytes(plaintext);
+	}
+
+	@Test
+	public void decryptionIsInitializedAgainAfterUnlock() throws Exception {
+		AesStreamOperation encryption = AesStreamOperation.encryption(activityOrFragment, biometricDialogBundle, KEY_NAME,
+				new ByteArrayInputStream(plaintext), false, 30, new EmptyLogger());
+		byte[] encrypted = concat(encryption.process(encryption.initCipher()));
+
+		AesStreamOperation decryption = AesStreamOperation.decryption(activityOrFragment, biometricDialogBundle, KEY_NAME,
+				new ByteArrayInputStream(encrypted), false, 30, new EmptyLogger());
+		// The authentication of the time-bound key expired, the prompt unlocks it without a CryptoObject
+		TestKeyStore.setLocked(KEY_NAME, true);
+		try {
+			decryption.initCipher();
+			fail("Locked key was used");
+		} catch (UserNotAuthenticatedException expected) {
+		}
+		TestKeyStore.setLocked(KEY_NAME, false);
+		Cipher cipher = decryption.initCipher();
+
+		assertArrayEquals(plaintext, concat(decryption.process(cipher)));
+	}
+
+	@Test
+	public void decryptStreamWithAuthenticationValidityDuration() throws Exception {
+		RxBiometric rxBiometric = new RxBiometric.Builder(mock(FragmentActivity.class))
+				.encryptionMethod(EncryptionMethod.AES)
+				.authenticationValidityDuration(30)
+				.dialogTitleText(1)
+				.dialogNegativeButtonText(2)
+				.logger(new EmptyLogger())
+				.build();
+		ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+		rxBiometric.encryptStream(KEY_NAME, new ByteArrayInputStream(plaintext), encrypted).blockingSubscribe();
+
+		ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+		rxBiometric.decryptStream(KEY_NAME, new ByteArrayInputStream(encrypted.toByteArray()), decrypted)
+				.test()
+				.await()
+				.assertComplete();
+
+		assertArrayEquals(plaintext, decrypted.toByteArray());
+	}
+
+	private static byte[] concat(Flowable<ByteBuffer> buffers) {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		for (ByteBuffer buffer : buffers.blockingIterable()) {
+			output.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+		}
+		return output.toByteArray();
+	}
+}
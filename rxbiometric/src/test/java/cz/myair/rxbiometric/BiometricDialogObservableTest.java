@@ -0,0 +1,189 @@
+package cz.myair.rxbiometric;
+
+import android.content.Context;
+import android.security.keystore.UserNotAuthenticatedException;
+
+import androidx.biometric.BiometricPrompt;
+import androidx.fragment.app.FragmentActivity;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.Executor;
+
+import javax.crypto.KeyGenerator;
+
+import cz.myair.rxbiometric.data.BiometricAuthenticationResult;
+import cz.myair.rxbiometric.data.BiometricEncryptionResult;
+import cz.myair.rxbiometric.data.BiometricResult;
+import io.reactivex.Observable;
+import io.reactivex.ObservableEmitter;
+import io.reactivex.observers.TestObserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for keys that stay unlocked for a while and for disposing in {@link BiometricDialogObservable}
+ */
+public class BiometricDialogObservableTest {
+
+	private static final String KEY_NAME = "time_bound";
+
+	private ActivityOrFragment activityOrFragment;
+	private BiometricDialogBundle biometricDialogBundle;
+
+	@Before
+	public void setUp() throws Exception {
+		TestKeyStore.install();
+		KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+		keyGenerator.init(128);
+		TestKeyStore.putKey(KEY_NAME, keyGenerator.generateKey());
+
+		activityOrFragment = mock(ActivityOrFragment.class);
+		when(activityOrFragment.getContext()).thenReturn(mock(Context.class));
+		when(activityOrFragment.hasActivity()).thenReturn(true);
+		when(activityOrFragment.getActivity()).thenReturn(mock(FragmentActivity.class));
+		biometricDialogBundle = new BiometricDialogBundle(1, null, null, 2, true, CallbackExecutor.shared(), 0, new PromptQueue());
+	}
+
+	@Test
+	public void unlockedKeyIsUsedWithoutPrompt() {
+		TestObserver<BiometricEncryptionResult> observer = AesEncryptionObservable.createGcm(activityOrFragment, biometricDialogBundle,
+				KEY_NAME, "secret".toCharArray(), null, true, 30, new EmptyLogger()).test();
+
+		observer.assertComplete();
+		assertEquals(BiometricResult.AUTHENTICATED, observer.values().get(0).getResult());
+		verify(activityOrFragment, never()).getActivity();
+	}
+
+	@Test
+	public void perUseKeyPrompts() {
+		TestObserver<BiometricEncryptionResult> observer = AesEncryptionObservable.createGcm(activityOrFragment, biometricDialogBundle,
+				KEY_NAME, "secret".toCharArray(), null, true, 0, new EmptyLogger()).test();
+
+		observer.assertNoValues();
+		observer.assertNotTerminated();
+		verify(activityOrFragment).getActivity();
+	}
+
+	@Test
+	public void lockedTimeBoundKeyPrompts() {
+		TestObserver<BiometricAuthenticationResult> observer = Observable.create(new LockedKeyObservable(true)).test();
+
+		observer.assertNoValues();
+		observer.assertNotTerminated();
+		verify(activityOrFragment).getActivity();
+	}
+
+	@Test
+	public void lockedPerUseKeyFails() {
+		TestObserver<BiometricAuthenticationResult> observer = Observable.create(new LockedKeyObservable(false)).test();
+
+		observer.assertError(UserNotAuthenticatedException.class);
+		verify(activityOrFragment, never()).getActivity();
+	}
+
+	@Test
+	public void disposeCancelsPrompt() {
+		LockedKeyObservable lockedKeyObservable = new LockedKeyObservable(true);
+		TestObserver<BiometricAuthenticationResult> observer = Observable.create(lockedKeyObservable).test();
+
+		observer.dispose();
+
+		verify(lockedKeyObservable.biometricPrompt).cancelAuthentication();
+	}
+
+	@Test
+	public void secondPromptWaitsForFirst() {
+		LockedKeyObservable first = new LockedKeyObservable(true);
+		LockedKeyObservable second = new LockedKeyObservable(true);
+		TestObserver<BiometricAuthenticationResult> firstObserver = Observable.create(first).test();
+		Observable.create(second).test();
+
+		assertNotNull(first.callback);
+		assertNull(second.callback);
+
+		firstObserver.dispose();
+
+		assertNotNull(second.callback);
+	}
+
+	@Test
+	public void disposeReleasesActivity() throws Exception {
+		FragmentActivity activity = mock(FragmentActivity.class);
+		when(activityOrFragment.getActivity()).thenReturn(activity);
+		WeakReference<FragmentActivity> activityReference = new WeakReference<>(activity);
+
+		LockedKeyObservable lockedKeyObservable = new LockedKeyObservable(true);
+		TestObserver<BiometricAuthenticationResult> observer = Observable.create(lockedKeyObservable).test();
+		// Like the BiometricPrompt, keep the callback after the Activity is gone
+		BiometricPrompt.AuthenticationCallback callback = lockedKeyObservable.callback;
+		assertNotNull(callback);
+
+		observer.dispose();
+		activity = null;
+		lockedKeyObservable = null;
+		observer = null;
+		activityOrFragment = null;
+
+		for (int i = 0; i < 20 && activityReference.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertNull(activityReference.get());
+		// Callbacks after disposing are ignored
+		callback.onAuthenticationFailed();
+	}
+
+	private class LockedKeyObservable extends BiometricDialogObservable<BiometricAuthenticationResult> {
+
+		private final boolean timeBound;
+		private final BiometricPrompt biometricPrompt = mock(BiometricPrompt.class);
+		private BiometricPrompt.AuthenticationCallback callback;
+
+		LockedKeyObservable(boolean timeBound) {
+			super(activityOrFragment, biometricDialogBundle);
+			this.timeBound = timeBound;
+		}
+
+		@Override
+		BiometricPrompt createBiometricPrompt(Executor executor, BiometricPrompt.AuthenticationCallback authenticationCallback) {
+			callback = authenticationCallback;
+			super.createBiometricPrompt(executor, authenticationCallback);
+			return biometricPrompt;
+		}
+
+		@Override
+		protected BiometricPrompt.CryptoObject initCryptoObject(ObservableEmitter<BiometricAuthenticationResult> subscriber) throws Exception {
+			throw new UserNotAuthenticatedException();
+		}
+
+		@Override
+		protected void onAuthenticationSucceeded(ObservableEmitter<BiometricAuthenticationResult> emitter, BiometricPrompt.CryptoObject cryptoObject) {
+			emitter.onNext(new BiometricAuthenticationResult(BiometricResult.AUTHENTICATED));
+			emitter.onComplete();
+		}
+
+		@Override
+		protected void onAuthenticationFailed(ObservableEmitter<BiometricAuthenticationResult> emitter) {
+			emitter.onNext(new BiometricAuthenticationResult(BiometricResult.FAILED));
+		}
+
+		@Override
+		protected boolean isCryptoObjectRequired() {
+			return true;
+		}
+
+		@Override
+		protected boolean isTimeBound() {
+			return timeBound;
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package cz.myair.rxbiometric;
+
+import org.junit.Test;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+
+import cz.myair.rxbiometric.data.BiometricAuthenticationResult;
+import cz.myair.rxbiometric.data.BiometricResult;
+import io.reactivex.Observable;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.subjects.PublishSubject;
+
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Tests for {@link BiometricDialogSingle}
+ */
+public class BiometricDialogSingleTest {
+
+	private static final BiometricAuthenticationResult FAILED = new BiometricAuthenticationResult(BiometricResult.FAILED);
+	private static final InFlightRequests.Key KEY = new InFlightRequests.Key("authenticate", null, null, "", null);
+	private static final BiometricAuthenticationResult AUTHENTICATED = new BiometricAuthenticationResult(BiometricResult.AUTHENTICATED);
+
+	@Test
+	public void failedAttemptsGoToProgressChannel() {
+		PublishSubject<BiometricAuthenticationResult> progress = PublishSubject.create();
+		TestObserver<BiometricAuthenticationResult> failedAttempts = progress.test();
+
+		BiometricDialogSingle.create(Observable.just(FAILED, FAILED, AUTHENTICATED), progress)
+				.test()
+				.assertResult(AUTHENTICATED);
+
+		failedAttempts.assertValues(FAILED, FAILED);
+		failedAttempts.assertNotTerminated();
+	}
+
+	@Test
+	public void failedAttemptsOfSharedSourceArePassedOnOnce() {
+		final PublishSubject<BiometricAuthenticationResult> source = PublishSubject.create();
+		final PublishSubject<BiometricAuthenticationResult> progress = PublishSubject.create();
+		TestObserver<BiometricAuthenticationResult> failedAttempts = progress.test();
+		InFlightRequests requests = new InFlightRequests();
+		Callable<Observable<BiometricAuthenticationResult>> operation = new Callable<Observable<BiometricAuthenticationResult>>() {
+			@Override
+			public Observable<BiometricAuthenticationResult> call() {
+				return BiometricDialogSingle.forwardFailedAttempts(source, progress);
+			}
+		};
+
+		TestObserver<BiometricAuthenticationResult> first = BiometricDialogSingle.create(requests.share(KEY, operation)).test();
+		TestObserver<BiometricAuthenticationResult> second = BiometricDialogSingle.create(requests.share(KEY, operation)).test();
+		source.onNext(FAILED);
+		source.onNext(AUTHENTICATED);
+
+		first.assertResult(AUTHENTICATED);
+		second.assertResult(AUTHENTICATED);
+		failedAttempts.assertValues(FAILED);
+	}
+
+	@Test
+	public void successDisposesSource() {
+		PublishSubject<BiometricAuthenticationResult> source = PublishSubject.create();
+		TestObserver<BiometricAuthenticationResult> observer = BiometricDialogSingle.create(source, PublishSubject.<BiometricAuthenticationResult>create()).test();
+
+		source.onNext(AUTHENTICATED);
+
+		observer.assertResult(AUTHENTICATED);
+		assertFalse(source.hasObservers());
+	}
+
+	@Test
+	public void completionWithoutSuccessFails() {
+		BiometricDialogSingle.create(Observable.just(FAILED), PublishSubject.<BiometricAuthenticationResult>create())
+				.test()
+				.assertError(NoSuchElementException.class);
+	}
+
+	@Test
+	public void errorsArePassedOn() {
+		PublishSubject<BiometricAuthenticationResult> progress = PublishSubject.create();
+		TestObserver<BiometricAuthenticationResult> failedAttempts = progress.test();
+
+		BiometricDialogSingle.create(Observable.<BiometricAuthenticationResult>error(new IllegalStateException()), progress)
+				.test()
+				.assertError(IllegalStateException.class);
+
+		failedAttempts.assertNoValues();
+	}
+}
@@ -0,0 +1,75 @@
+package cz.myair.rxbiometric;
+
+import androidx.fragment.app.FragmentActivity;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.crypto.KeyGenerator;
+
+import cz.myair.rxbiometric.data.BiometricDecryptionResult;
+import cz.myair.rxbiometric.data.BiometricEncryptionResult;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests for {@link BiometricSession} and {@link RxBiometric#openSession(String)}
+ */
+public class BiometricSessionTest {
+
+	private static final String KEY_NAME = "session";
+
+	@Before
+	public void setUp() throws Exception {
+		TestKeyStore.install();
+		KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+		keyGenerator.init(128);
+		TestKeyStore.putKey(KEY_NAME, keyGenerator.generateKey());
+	}
+
+	@Test
+	public void sessionEncryptsAndDecryptsWithoutPrompt() {
+		BiometricSession session = rxBiometric(30).openSession(KEY_NAME).blockingGet();
+		assertTrue(session.isOpen());
+
+		BiometricEncryptionResult encrypted = session.encrypt("first".toCharArray()).blockingGet();
+		BiometricDecryptionResult decrypted = session.decrypt(encrypted.getEncrypted()).blockingGet();
+
+		assertEquals("first", decrypted.getDecrypted());
+	}
+
+	@Test
+	public void closedSessionFails() {
+		BiometricSession session = rxBiometric(30).openSession(KEY_NAME).blockingGet();
+		session.close();
+
+		assertFalse(session.isOpen());
+		session.encrypt("first".toCharArray()).test().assertError(IllegalStateException.class);
+	}
+
+	@Test
+	public void sessionExpires() {
+		BiometricSession session = new BiometricSession(rxBiometric(30), KEY_NAME, 0);
+
+		assertFalse(session.isOpen());
+		session.decrypt("encrypted").test().assertError(IllegalStateException.class);
+	}
+
+	@Test
+	public void sessionRequiresValidityDuration() {
+		rxBiometric(0).openSession(KEY_NAME).test().assertError(IllegalStateException.class);
+	}
+
+	private static RxBiometric rxBiometric(int authenticationValidityDuration) {
+		return new RxBiometric.Builder(mock(FragmentActivity.class))
+				.encryptionMethod(EncryptionMethod.AES_GCM)
+				.authenticationValidityDuration(authenticationValidityDuration)
+				.dialogTitleText(1)
+				.dialogNegativeButtonText(2)
+				.logger(new EmptyLogger())
+				.build();
+	}
+}
@@ -0,0 +1,147 @@
+package cz.myair.rxbiometric;
+
+import androidx.fragment.app.FragmentActivity;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.KeyGenerator;
+
+import io.reactivex.observers.TestObserver;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.schedulers.TestScheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests for {@link BiometricVault} and {@link RxBiometric#openVault(File, String)}
+ */
+public class BiometricVaultTest {
+
+	private static final String KEY_NAME = "vault";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private RxBiometric rxBiometric;
+	private File file;
+
+	@Before
+	public void setUp() throws Exception {
+		TestKeyStore.install();
+		KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+		keyGenerator.init(128);
+		TestKeyStore.putKey(KEY_NAME, keyGenerator.generateKey());
+
+		rxBiometric = new RxBiometric.Builder(mock(FragmentActivity.class))
+				.encryptionMethod(EncryptionMethod.AES_GCM)
+				.authenticationValidityDuration(30)
+				.dialogTitleText(1)
+				.dialogNegativeButtonText(2)
+				.logger(new EmptyLogger())
+				.build();
+		file = new File(folder.getRoot(), "vault");
+	}
+
+	@Test
+	public void valuesAreEncryptedAndPersisted() throws Exception {
+		BiometricVault vault = rxBiometric.openVault(file, KEY_NAME).blockingGet();
+		vault.put("token", "secret".toCharArray()).blockingAwait();
+		vault.close();
+
+		vault = rxBiometric.openVault(file, KEY_NAME).blockingGet();
+		assertTrue(vault.contains("token").blockingGet());
+		assertEquals("secret", vault.get("token").blockingGet().getDecrypted());
+		vault.close();
+	}
+
+	@Test
+	public void missingValueIsEmpty() throws Exception {
+		BiometricVault vault = rxBiometric.openVault(file, KEY_NAME).blockingGet();
+
+		vault.get("token").test().await().assertNoValues().assertComplete();
+		vault.close();
+	}
+
+	@Test
+	public void removedValueIsGone() throws Exception {
+		BiometricVault vault = rxBiometric.openVault(file, KEY_NAME).blockingGet();
+		vault.put("token", "secret".toCharArray()).blockingAwait();
+
+		vault.remove("token").blockingAwait();
+
+		assertFalse(vault.contains("token").blockingGet());
+		assertTrue(vault.names().blockingGet().isEmpty());
+		vault.close();
+	}
+
+	@Test
+	public void lookupsRunOnScheduler() throws Exception {
+		TestScheduler scheduler = new TestScheduler();
+		RxBiometric rxBiometric = new RxBiometric.Builder(mock(FragmentActivity.class))
+				.encryptionMethod(EncryptionMethod.AES_GCM)
+				.scheduler(scheduler)
+				.resultScheduler(Schedulers.trampoline())
+				.dialogTitleText(1)
+				.dialogNegativeButtonText(2)
+				.logger(new EmptyLogger())
+				.build();
+		TestObserver<BiometricVault> opened = rxBiometric.openVault(file, KEY_NAME).test();
+		scheduler.triggerActions();
+		BiometricVault vault = opened.values().get(0);
+
+		TestObserver<Boolean> contains = vault.contains("token").test();
+		TestObserver<Set<String>> names = vault.names().test();
+		contains.assertNoValues();
+		names.assertNoValues();
+		scheduler.triggerActions();
+
+		contains.assertResult(false);
+		names.assertResult(Collections.<String>emptySet());
+		vault.close();
+	}
+
+	@Test
+	public void valueMovedToOtherNameIsRejected() throws Exception {
+		BiometricVault vault = rxBiometric.openVault(file, KEY_NAME).blockingGet();
+		vault.put("token", "secret".toCharArray()).blockingAwait();
+		vault.close();
+
+		VaultLog log = VaultLog.open(file);
+		log.put("other", log.get("token"));
+		log.close();
+
+		vault = rxBiometric.openVault(file, KEY_NAME).blockingGet();
+		assertEquals("secret", vault.get("token").blockingGet().getDecrypted());
+		vault.get("other").test().await().assertError(AEADBadTagException.class);
+		vault.close();
+	}
+
+	@Test
+	public void replacedValuesAreCompactedInBackground() throws Exception {
+		BiometricVault vault = rxBiometric.openVault(file, KEY_NAME).blockingGet();
+		char[] value = new char[4096];
+		for (int i = 0; i < 40; i++) {
+			Arrays.fill(value, (char) ('a' + i % 26));
+			vault.put("large", value.clone()).blockingAwait();
+		}
+
+		for (int i = 0; i < 100 && file.length() > BiometricVault.MIN_COMPACTION_BYTES; i++) {
+			Thread.sleep(10);
+		}
+		assertTrue(file.length() < BiometricVault.MIN_COMPACTION_BYTES);
+		assertEquals(4096, vault.get("large").blockingGet().getDecryptedChars().length);
+		vault.close();
+	}
+}
@@ -0,0 +1,46 @@
+package cz.myair.rxbiometric;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link CallbackExecutor}
+ */
+public class CallbackExecutorTest {
+
+	@Test
+	public void callbacksRunInOrderOffTheCallingThread() throws Exception {
+		final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+		final List<String> threads = Collections.synchronizedList(new ArrayList<String>());
+		final CountDownLatch done = new CountDownLatch(100);
+
+		for (int i = 0; i < 100; i++) {
+			final int index = i;
+			CallbackExecutor.shared().execute(new Runnable() {
+				@Override
+				public void run() {
+					order.add(index);
+					threads.add(Thread.currentThread().getName());
+					done.countDown();
+				}
+			});
+		}
+
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		for (int i = 0; i < 100; i++) {
+			assertEquals(i, (int) order.get(i));
+		}
+		assertNotEquals(Thread.currentThread().getName(), threads.get(0));
+		assertEquals(1, new HashSet<>(threads).size());
+	}
+}
@@ -0,0 +1,198 @@
+package cz.myair.rxbiometric;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Tests for {@link ConversionUtils}
+ */
+public class ConversionUtilsTest {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final String TEXT = "plain ascii, čeština, € and 🔑";
+
+	@Test
+	public void toBytesEncodesUtf8() throws Exception {
+		assertArrayEquals(TEXT.getBytes("UTF-8"), ConversionUtils.toBytes(TEXT.toCharArray()));
+		assertArrayEquals(new byte[0], ConversionUtils.toBytes(new char[0]));
+	}
+
+	@Test
+	public void toBytesReplacesMalformedSurrogates() {
+		String[] inputs = {"\ud83d", "a\ud83d", "\ud83da", "\udd11", "\udd11\ud83d", "\ud83d🔑"};
+		for (String input : inputs) {
+			ByteBuffer expected = UTF_8.encode(input);
+			assertArrayEquals(input, Arrays.copyOf(expected.array(), expected.limit()), ConversionUtils.toBytes(input.toCharArray()));
+		}
+	}
+
+	@Test
+	public void toCharsDecodesUtf8() throws Exception {
+		assertArrayEquals(TEXT.toCharArray(), ConversionUtils.toChars(TEXT.getBytes("UTF-8")));
+		assertArrayEquals(new char[0], ConversionUtils.toChars(new byte[0]));
+	}
+
+	@Test
+	public void toCharsReplacesMalformedInput() {
+		byte[] input = {'a', (byte) 0xc3, 'b', (byte) 0xff};
+
+		assertArrayEquals(UTF_8.decode(ByteBuffer.wrap(input.clone())).toString().toCharArray(), ConversionUtils.toChars(input));
+	}
+
+	@Test
+	public void conversionsClearTheirInput() throws Exception {
+		char[] chars = TEXT.toCharArray();
+		byte[] bytes = TEXT.getBytes("UTF-8");
+
+		ConversionUtils.toBytes(chars);
+		ConversionUtils.toChars(bytes);
+
+		assertArrayEquals(new char[chars.length], chars);
+		assertArrayEquals(new byte[bytes.length], bytes);
+	}
+
+	@Test
+	public void valuesLargerThanScratchBuffer() {
+		char[] chars = randomText(3 * ConversionUtils.MAX_POOLED_CHARS);
+
+		assertArrayEquals(chars, ConversionUtils.toChars(ConversionUtils.toBytes(chars.clone())));
+	}
+
+	@Test
+	public void toBytesOnlyAllocatesOutput() {
+		assumeTrue(allocationCountingSupported());
+		final char[] chars = randomText(ConversionUtils.MAX_POOLED_CHARS);
+		final int length = ConversionUtils.toBytes(chars.clone()).length;
+
+		long allocated = allocatedBytes(new Runnable() {
+			@Override
+			public void run() {
+				ConversionUtils.toBytes(chars.clone());
+			}
+		}) - 2L * chars.length;
+		long previously = allocatedBytes(new Runnable() {
+			@Override
+			public void run() {
+				toBytesWithCharset(chars.clone());
+			}
+		}) - 2L * chars.length;
+
+		assertTrue("Allocated " + allocated + " bytes", allocated < length + 1024);
+		assertTrue(allocated * 2 < previously);
+	}
+
+	@Test
+	public void toCharsOnlyAllocatesOutput() throws Exception {
+		assumeTrue(allocationCountingSupported());
+		final byte[] bytes = new String(randomText(ConversionUtils.MAX_POOLED_CHARS / 4)).getBytes("UTF-8");
+		final int length = 2 * ConversionUtils.toChars(bytes.clone()).length;
+
+		long allocated = allocatedBytes(new Runnable() {
+			@Override
+			public void run() {
+				ConversionUtils.toChars(bytes.clone());
+			}
+		}) - bytes.length;
+		long previously = allocatedBytes(new Runnable() {
+			@Override
+			public void run() {
+				toCharsWithCharset(bytes.clone());
+			}
+		}) - bytes.length;
+
+		assertTrue("Allocated " + allocated + " bytes", allocated < length + 1024);
+		assertTrue(allocated * 2 < previously);
+	}
+
+	@Test
+	public void codersAreUsedPerThread() throws Exception {
+		final char[] chars = randomText(1000);
+		final byte[] expected = new String(chars).getBytes("UTF-8");
+		final Throwable[] failure = new Throwable[1];
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						for (int j = 0; j < 500; j++) {
+							assertArrayEquals(expected, ConversionUtils.toBytes(chars.clone()));
+							assertArrayEquals(chars, ConversionUtils.toChars(expected.clone()));
+						}
+					} catch (Throwable e) {
+						failure[0] = e;
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(null, failure[0]);
+	}
+
+	/**
+	 * Conversion as done before, creating the coder and copying the result
+	 */
+	private static byte[] toBytesWithCharset(char[] chars) {
+		ByteBuffer byteBuffer = Charset.forName("UTF-8").encode(CharBuffer.wrap(chars));
+		return Arrays.copyOfRange(byteBuffer.array(), byteBuffer.position(), byteBuffer.limit());
+	}
+
+	private static char[] toCharsWithCharset(byte[] bytes) {
+		CharBuffer charBuffer = Charset.forName("UTF-8").decode(ByteBuffer.wrap(bytes));
+		return Arrays.copyOf(charBuffer.array(), charBuffer.limit());
+	}
+
+	private static char[] randomText(int length) {
+		Random random = new Random(length);
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			switch (random.nextInt(3)) {
+				case 0:
+					chars[i] = (char) ('a' + random.nextInt(26));
+					break;
+				case 1:
+					chars[i] = (char) (0x100 + random.nextInt(0x100));
+					break;
+				default:
+					chars[i] = (char) (0x4e00 + random.nextInt(0x100));
+			}
+		}
+		return chars;
+	}
+
+	private static boolean allocationCountingSupported() {
+		return ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean
+				&& ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).isThreadAllocatedMemorySupported();
+	}
+
+	/**
+	 * @return bytes allocated by the current thread in a single run, after warming up
+	 */
+	private static long allocatedBytes(Runnable runnable) {
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		for (int i = 0; i < 20; i++) {
+			runnable.run();
+		}
+		long minimum = Long.MAX_VALUE;
+		for (int i = 0; i < 5; i++) {
+			long before = bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+			runnable.run();
+			minimum = Math.min(minimum, bean.getThreadAllocatedBytes(Thread.currentThread().getId()) - before);
+		}
+		return minimum;
+	}
+}
@@ -1,9 +1,24 @@
 package cz.myair.rxbiometric;
 
+import android.content.Context;
+
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+
+import cz.myair.rxbiometric.data.BiometricDecryptionResult;
+import io.reactivex.ObservableEmitter;
+
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 
 public class CryptoDataTest {
 
@@ -45,4 +60,118 @@ public class CryptoDataTest {
 	public void verifyNullString() throws Exception {
 		CryptoData.verifyCryptoDataString(null);
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void binaryRoundTrip() throws Exception {
+		byte[] binary = CryptoData.fromBytes(encodingProvider, TEST_MESSAGE.getBytes(), TEST_IV.getBytes()).toBinary(EncryptionMethod.AES);
+
+		ByteBuffer input = ByteBuffer.wrap(binary);
+		CryptoData cryptoData = CryptoData.fromBinary(encodingProvider, input, EncryptionMethod.AES);
+
+		assertTrue(CryptoData.isBinary(input));
+		assertEquals(0, input.position());
+		assertArrayEquals(TEST_MESSAGE.getBytes(), cryptoData.getMessage());
+		assertArrayEquals(TEST_IV.getBytes(), cryptoData.getIv());
+	}
+
+	@Test
+	public void binaryIsSmallerThanString() throws Exception {
+		byte[] message = new byte[1024];
+		new Random(1).nextBytes(message);
+		CryptoData cryptoData = CryptoData.fromBytes(new TestBase64EncodingProvider(), message, new byte[16]);
+
+		assertEquals(3 + 16 + 1024, cryptoData.toBinary(EncryptionMethod.AES).length);
+		assertTrue(cryptoData.toString().length() > 1.3 * cryptoData.toBinary(EncryptionMethod.AES).length);
+	}
+
+	@Test
+	public void legacyStringIsNotBinary() throws Exception {
+		ByteBuffer input = ByteBuffer.wrap(INPUT.getBytes("US-ASCII"));
+
+		assertFalse(CryptoData.isBinary(input));
+		assertEquals(INPUT, CryptoData.toLegacyString(input));
+	}
+
+	@Test(expected = CryptoDataException.class)
+	public void binaryOfOtherMethodIsRejected() throws Exception {
+		byte[] binary = CryptoData.fromBytes(encodingProvider, TEST_MESSAGE.getBytes(), TEST_IV.getBytes()).toBinary(EncryptionMethod.RSA);
+
+		CryptoData.fromBinary(encodingProvider, ByteBuffer.wrap(binary), EncryptionMethod.AES);
+	}
+
+	@Test(expected = CryptoDataException.class)
+	public void truncatedBinaryIsRejected() throws Exception {
+		CryptoData.fromBinary(encodingProvider, ByteBuffer.wrap(new byte[]{CryptoData.BINARY_VERSION, EncryptionMethod.AES.id, 16, 1}), EncryptionMethod.AES);
+	}
+
+	@Test
+	public void fromStringUsesFirstTwoParts() throws Exception {
+		CryptoData cryptoData = CryptoData.fromString(encodingProvider, INPUT + CryptoData.SEPARATOR + "ignored");
+
+		assertArrayEquals(TEST_MESSAGE.getBytes(), cryptoData.getMessage());
+		assertArrayEquals(TEST_IV.getBytes(), cryptoData.getIv());
+	}
+
+	@Test(expected = CryptoDataException.class)
+	public void fromStringWithoutSeparator() throws Exception {
+		CryptoData.fromString(encodingProvider, TEST_MESSAGE);
+	}
+
+	@Test
+	public void parsingLargeCiphertextOnce() throws Exception {
+		CountingEncodingProvider encodingProvider = new CountingEncodingProvider();
+		byte[] message = new byte[1024 * 1024];
+		new Random(1).nextBytes(message);
+		String input = CryptoData.fromBytes(encodingProvider, message, new byte[16]).toString();
+
+		CryptoData cryptoData = CryptoData.fromString(encodingProvider, input);
+		cryptoData.getIv();
+		cryptoData.getIv();
+		cryptoData.getMessage();
+
+		// message and IV are decoded once, every character of the input is read by a single decode
+		assertArrayEquals(message, cryptoData.getMessage());
+		assertEquals(2, encodingProvider.decodes);
+		assertEquals(input.length() - CryptoData.SEPARATOR.length(), encodingProvider.decodedChars);
+	}
+
+	@Test
+	public void timeBoundDecryptionParsesOnce() throws Exception {
+		TestKeyStore.install();
+		KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+		keyGenerator.init(128);
+		TestKeyStore.putKey("parse", keyGenerator.generateKey());
+		AesCipherProvider cipherProvider = AesCipherProvider.create(EncryptionMethod.AES, mock(Context.class), "parse", false, 30, new EmptyLogger());
+		Cipher cipher = cipherProvider.cipherForEncryption();
+		CountingEncodingProvider encodingProvider = new CountingEncodingProvider();
+		String input = CryptoData.fromBytes(encodingProvider, cipher.doFinal(TEST_MESSAGE.getBytes()), cipher.getIV()).toString();
+
+		ActivityOrFragment activityOrFragment = mock(ActivityOrFragment.class);
+		AesDecryptionObservable observable = new AesDecryptionObservable(activityOrFragment,
+				new BiometricDialogBundle(1, null, null, 2, true, CallbackExecutor.shared(), 0, new PromptQueue()),
+				cipherProvider, input, null, null, false, encodingProvider);
+		@SuppressWarnings("unchecked")
+		ObservableEmitter<BiometricDecryptionResult> emitter = mock(ObservableEmitter.class);
+		// The CryptoObject of a time-bound key is initialized again after the prompt unlocked it
+		observable.initCryptoObject(emitter);
+		observable.onAuthenticationSucceeded(emitter, observable.initCryptoObject(emitter));
+
+		verify(emitter).onComplete();
+		assertEquals(2, encodingProvider.decodes);
+	}
+
+	/**
+	 * Counts the decoded strings and their characters
+	 */
+	private static class CountingEncodingProvider extends TestBase64EncodingProvider {
+		int decodes;
+		long decodedChars;
+
+		@Override
+		public byte[] decode(String toDecode) {
+			decodes++;
+			decodedChars += toDecode.length();
+			return super.decode(toDecode);
+		}
+	}
+}
@@ -0,0 +1,151 @@
+package cz.myair.rxbiometric;
+
+import androidx.fragment.app.FragmentActivity;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.KeyGenerator;
+
+import cz.myair.rxbiometric.data.BiometricDecryptionCacheStats;
+import cz.myair.rxbiometric.data.BiometricDecryptionResult;
+import cz.myair.rxbiometric.data.BiometricEncryptionResult;
+import io.reactivex.functions.Consumer;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.schedulers.TestScheduler;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests for {@link DecryptionCache} and {@link RxBiometric.Builder#decryptionCache}
+ */
+public class DecryptionCacheTest {
+
+	private static final String KEY_NAME = "cache";
+
+	@Before
+	public void setUp() throws Exception {
+		TestKeyStore.install();
+		KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+		keyGenerator.init(128);
+		TestKeyStore.putKey(KEY_NAME, keyGenerator.generateKey());
+	}
+
+	@Test
+	public void cachedValueIsReturned() throws Exception {
+		DecryptionCache cache = new DecryptionCache(10, TimeUnit.MINUTES.toNanos(1));
+
+		assertNull(cache.get(key("first")));
+		cache.put(key("first"), "secret".toCharArray());
+
+		assertArrayEquals("secret".toCharArray(), cache.get(key("first")));
+		BiometricDecryptionCacheStats stats = cache.getStats();
+		assertEquals(1, stats.getSize());
+		assertEquals(1, stats.getHits());
+		assertEquals(1, stats.getMisses());
+	}
+
+	@Test
+	public void leastRecentlyUsedValueIsEvicted() throws Exception {
+		DecryptionCache cache = new DecryptionCache(2, TimeUnit.MINUTES.toNanos(1));
+		cache.put(key("first"), "1".toCharArray());
+		cache.put(key("second"), "2".toCharArray());
+		cache.get(key("first"));
+
+		cache.put(key("third"), "3".toCharArray());
+
+		assertNull(cache.get(key("second")));
+		assertArrayEquals("1".toCharArray(), cache.get(key("first")));
+		assertArrayEquals("3".toCharArray(), cache.get(key("third")));
+		assertEquals(1, cache.getStats().getEvictions());
+	}
+
+	@Test
+	public void expiredValueIsEvicted() throws Exception {
+		DecryptionCache cache = new DecryptionCache(10, TimeUnit.MILLISECONDS.toNanos(1));
+		cache.put(key("first"), "secret".toCharArray());
+		Thread.sleep(5);
+
+		assertNull(cache.get(key("first")));
+		assertEquals(0, cache.getStats().getSize());
+		assertEquals(1, cache.getStats().getEvictions());
+	}
+
+	@Test
+	public void clearRemovesValues() throws Exception {
+		DecryptionCache cache = new DecryptionCache(10, TimeUnit.MINUTES.toNanos(1));
+		cache.put(key("first"), "secret".toCharArray());
+
+		cache.clear();
+
+		assertNull(cache.get(key("first")));
+	}
+
+	@Test
+	public void cacheHitSkipsKeyStore() {
+		RxBiometric rxBiometric = new RxBiometric.Builder(mock(FragmentActivity.class))
+				.encryptionMethod(EncryptionMethod.AES_GCM)
+				.authenticationValidityDuration(30)
+				.decryptionCache(10, 1, TimeUnit.MINUTES)
+				.dialogTitleText(1)
+				.dialogNegativeButtonText(2)
+				.logger(new EmptyLogger())
+				.build();
+		String encrypted = rxBiometric.encrypt(KEY_NAME, "secret".toCharArray()).blockingFirst().getEncrypted();
+		assertEquals("secret", rxBiometric.decrypt(KEY_NAME, encrypted).blockingFirst().getDecrypted());
+
+		TestKeyStore.reset();
+		BiometricDecryptionResult cached = rxBiometric.decrypt(KEY_NAME, encrypted).blockingFirst();
+
+		assertEquals("secret", cached.getDecrypted());
+		assertEquals(0, TestKeyStore.loads.get());
+		assertEquals(1, rxBiometric.getDecryptionCacheStats().getHits());
+		assertEquals(1, rxBiometric.getDecryptionCacheStats().getMisses());
+	}
+
+	@Test
+	public void clearedResultOfSharedDecryptionIsNotCached() throws Exception {
+		TestScheduler scheduler = new TestScheduler();
+		RxBiometric rxBiometric = new RxBiometric.Builder(mock(FragmentActivity.class))
+				.encryptionMethod(EncryptionMethod.AES_GCM)
+				.authenticationValidityDuration(30)
+				.decryptionCache(10, 1, TimeUnit.MINUTES)
+				.scheduler(scheduler)
+				.resultScheduler(Schedulers.trampoline())
+				.dialogTitleText(1)
+				.dialogNegativeButtonText(2)
+				.logger(new EmptyLogger())
+				.build();
+		TestObserver<BiometricEncryptionResult> encryption = rxBiometric.encrypt(KEY_NAME, "secret".toCharArray()).test();
+		scheduler.triggerActions();
+		String encrypted = encryption.values().get(0).getEncrypted();
+
+		// the first subscriber clears its cleartext once it was used
+		TestObserver<BiometricDecryptionResult> first = rxBiometric.decrypt(KEY_NAME, encrypted)
+				.doOnNext(new Consumer<BiometricDecryptionResult>() {
+					@Override
+					public void accept(BiometricDecryptionResult result) {
+						Arrays.fill(result.getDecryptedChars(), '\0');
+					}
+				})
+				.test();
+		TestObserver<BiometricDecryptionResult> second = rxBiometric.decrypt(KEY_NAME, encrypted).test();
+		scheduler.triggerActions();
+		first.assertValueCount(1);
+		second.assertValueCount(1);
+
+		assertEquals("secret", rxBiometric.decrypt(KEY_NAME, encrypted).blockingFirst().getDecrypted());
+		assertEquals(1, rxBiometric.getDecryptionCacheStats().getHits());
+	}
+
+	private static InFlightRequests.Key key(String encrypted) {
+		return new InFlightRequests.Key("decrypt", EncryptionMethod.AES_GCM, KEY_NAME, encrypted, null);
+	}
+}
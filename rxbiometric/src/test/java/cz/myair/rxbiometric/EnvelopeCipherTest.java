@@ -0,0 +1,109 @@
+package cz.myair.rxbiometric;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link EnvelopeCipher} and {@link EnvelopeData}
+ */
+public class EnvelopeCipherTest {
+
+	private final EncodingProvider encodingProvider = new TestBase64EncodingProvider();
+
+	private SecretKey keystoreKey;
+
+	@Before
+	public void setUp() throws Exception {
+		KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+		keyGenerator.init(128);
+		keystoreKey = keyGenerator.generateKey();
+	}
+
+	@Test
+	public void sealAndOpenLargePayload() throws Exception {
+		byte[] payload = new byte[512 * 1024];
+		new Random(42).nextBytes(payload);
+
+		String encrypted = EnvelopeCipher.seal(encryptionCipher(), payload.clone(), encodingProvider).toString();
+		EnvelopeData envelopeData = EnvelopeData.fromString(encodingProvider, encrypted);
+
+		// only the data key passes through the keystore key
+		assertTrue(envelopeData.getWrappedKey().getMessage().length <= 48);
+		assertArrayEquals(payload, EnvelopeCipher.open(decryptionCipher(envelopeData), envelopeData));
+	}
+
+	@Test
+	public void sealClearsPayload() throws Exception {
+		byte[] payload = "secret".getBytes();
+
+		EnvelopeCipher.seal(encryptionCipher(), payload, encodingProvider);
+
+		assertArrayEquals(new byte[payload.length], payload);
+	}
+
+	@Test
+	public void sealAndOpenSecureBuffer() throws Exception {
+		byte[] payload = new byte[64 * 1024];
+		new Random(3).nextBytes(payload);
+		SecureBuffer secureBuffer = SecureBuffer.fromBytes(payload.clone());
+
+		EnvelopeData envelopeData = EnvelopeCipher.seal(encryptionCipher(), secureBuffer, encodingProvider);
+
+		assertFalse(secureBuffer.isWiped());
+		assertEquals(ByteBuffer.wrap(payload), EnvelopeCipher.openToBuffer(decryptionCipher(envelopeData), envelopeData).asReadOnlyBuffer());
+	}
+
+	@Test(expected = AEADBadTagException.class)
+	public void tamperedPayloadIsRejected() throws Exception {
+		EnvelopeData sealed = EnvelopeCipher.seal(encryptionCipher(), "secret".getBytes(), encodingProvider);
+		byte[] payload = sealed.getPayload().getMessage();
+		payload[0] ^= 1;
+		EnvelopeData tampered = EnvelopeData.fromBytes(encodingProvider, payload, sealed.getPayload().getIv(),
+				sealed.getWrappedKey().getMessage(), sealed.getWrappedKey().getIv());
+
+		EnvelopeCipher.open(decryptionCipher(tampered), tampered);
+	}
+
+	@Test
+	public void binaryRoundTrip() throws Exception {
+		byte[] payload = new byte[4096];
+		new Random(7).nextBytes(payload);
+
+		EnvelopeData sealed = EnvelopeCipher.seal(encryptionCipher(), payload.clone(), encodingProvider);
+		EnvelopeData envelopeData = EnvelopeData.fromBinary(encodingProvider, ByteBuffer.wrap(sealed.toBinary()));
+
+		assertEquals(sealed.toString(), envelopeData.toString());
+		assertArrayEquals(payload, EnvelopeCipher.open(decryptionCipher(envelopeData), envelopeData));
+	}
+
+	@Test(expected = CryptoDataException.class)
+	public void legacyFormatIsRejected() throws Exception {
+		EnvelopeData.fromString(encodingProvider, "message" + CryptoData.SEPARATOR + "iv");
+	}
+
+	private Cipher encryptionCipher() throws Exception {
+		Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+		cipher.init(Cipher.ENCRYPT_MODE, keystoreKey);
+		return cipher;
+	}
+
+	private Cipher decryptionCipher(EnvelopeData envelopeData) throws Exception {
+		Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+		cipher.init(Cipher.DECRYPT_MODE, keystoreKey, new IvParameterSpec(envelopeData.getWrappedKey().getIv()));
+		return cipher;
+	}
+}
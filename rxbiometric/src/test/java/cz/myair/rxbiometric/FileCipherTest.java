@@ -0,0 +1,260 @@
+package cz.myair.rxbiometric;
+
+import android.content.Context;
+import android.security.keystore.UserNotAuthenticatedException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.KeyGenerator;
+
+import io.reactivex.schedulers.Schedulers;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link FileCipher}
+ */
+public class FileCipherTest {
+
+	private static final byte[] WRAPPED_KEY = new byte[48];
+	private static final byte[] KEY_IV = new byte[16];
+	private static final int SEGMENT_SIZE = 1024;
+	private static final int CHECKPOINT_INTERVAL = 2;
+
+	private File directory;
+	private File plain;
+	private File encrypted;
+	private File decrypted;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = File.createTempFile("files", "");
+		assertTrue(directory.delete() && directory.mkdir());
+		plain = new File(directory, "plain");
+		encrypted = new File(directory, "encrypted");
+		decrypted = new File(directory, "decrypted");
+	}
+
+	@After
+	public void tearDown() {
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				//noinspection ResultOfMethodCallIgnored
+				file.delete();
+			}
+		}
+		//noinspection ResultOfMethodCallIgnored
+		directory.delete();
+	}
+
+	@Test
+	public void encryptAndDecryptFiles() throws Exception {
+		for (int size : new int[]{0, 1, SEGMENT_SIZE, SEGMENT_SIZE + 1, 5 * SEGMENT_SIZE, 7 * SEGMENT_SIZE + 100}) {
+			byte[] content = write(plain, size);
+			byte[] dataKey = StreamingCipher.createDataKey();
+			StreamingCipher.Header header = StreamingCipher.createHeader(WRAPPED_KEY, KEY_IV, SEGMENT_SIZE);
+
+			FileCipher.encrypt(plain, encrypted, header, dataKey.clone(), CHECKPOINT_INTERVAL).blockingAwait();
+			FileCipher.decrypt(encrypted, decrypted, FileCipher.readHeader(encrypted), dataKey.clone(), CHECKPOINT_INTERVAL).blockingAwait();
+
+			assertArrayEquals("size " + size, content, read(decrypted));
+			assertArrayEquals("size " + size, content, decryptStream(encrypted, dataKey));
+			assertFalse(FileCipher.canResume(plain, encrypted));
+		}
+	}
+
+	@Test
+	public void encryptionResumesAfterCheckpoint() throws Exception {
+		byte[] content = write(plain, 9 * SEGMENT_SIZE + 10);
+		byte[] dataKey = StreamingCipher.createDataKey();
+		StreamingCipher.Header header = StreamingCipher.createHeader(WRAPPED_KEY, KEY_IV, SEGMENT_SIZE);
+		FileCipher.encrypt(plain, encrypted, header, dataKey.clone(), CHECKPOINT_INTERVAL).blockingAwait();
+		byte[] complete = read(encrypted);
+
+		// interrupted after the second checkpoint, the rest of the output was never written
+		int finished = 2 * CHECKPOINT_INTERVAL;
+		int headerSize = header.toBytes().length;
+		RandomAccessFile output = new RandomAccessFile(encrypted, "rw");
+		output.setLength(headerSize + finished * (SEGMENT_SIZE + StreamingCipher.TAG_SIZE));
+		output.close();
+		FileCipher.writeCheckpoint(plain, encrypted, finished, digest(content, finished * SEGMENT_SIZE));
+		assertTrue(FileCipher.canResume(plain, encrypted));
+
+		FileCipher.encrypt(plain, encrypted, FileCipher.readHeader(encrypted), dataKey.clone(), CHECKPOINT_INTERVAL).blockingAwait();
+
+		assertArrayEquals(complete, read(encrypted));
+		assertArrayEquals(content, decryptStream(encrypted, dataKey));
+		assertFalse(FileCipher.canResume(plain, encrypted));
+	}
+
+	@Test
+	public void encryptionStartsOverIfCheckpointIsGoneAfterUnlock() throws Exception {
+		TestKeyStore.install();
+		KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+		keyGenerator.init(128);
+		TestKeyStore.putKey("file", keyGenerator.generateKey());
+		ActivityOrFragment activityOrFragment = mock(ActivityOrFragment.class);
+		when(activityOrFragment.getContext()).thenReturn(mock(Context.class));
+		BiometricDialogBundle biometricDialogBundle = new BiometricDialogBundle(1, null, null, 2, true, CallbackExecutor.shared(), 0, new PromptQueue());
+
+		byte[] content = write(plain, 3 * SEGMENT_SIZE);
+		FileCipher.encrypt(plain, encrypted, StreamingCipher.createHeader(WRAPPED_KEY, KEY_IV, SEGMENT_SIZE),
+				StreamingCipher.createDataKey(), CHECKPOINT_INTERVAL).blockingAwait();
+		FileCipher.writeCheckpoint(plain, encrypted, 1, digest(content, SEGMENT_SIZE));
+		AesFileOperation encryption = AesFileOperation.encryption(activityOrFragment, biometricDialogBundle, "file",
+				plain, encrypted, Schedulers.trampoline(), false, 30, new EmptyLogger());
+		// The authentication of the time-bound key expired, the prompt unlocks it without a CryptoObject
+		TestKeyStore.setLocked("file", true);
+		try {
+			encryption.initCipher();
+			fail("Locked key was used");
+		} catch (UserNotAuthenticatedException expected) {
+		}
+
+		content = write(plain, 4 * SEGMENT_SIZE);
+		assertFalse(FileCipher.canResume(plain, encrypted));
+		TestKeyStore.setLocked("file", false);
+		encryption.process(encryption.initCipher()).blockingAwait();
+
+		AesFileOperation decryption = AesFileOperation.decryption(activityOrFragment, biometricDialogBundle, "file",
+				encrypted, decrypted, Schedulers.trampoline(), false, 30, new EmptyLogger());
+		decryption.process(decryption.initCipher()).blockingAwait();
+		assertArrayEquals(content, read(decrypted));
+	}
+
+	@Test
+	public void checkpointOfModifiedInputIsIgnored() throws Exception {
+		byte[] content = write(plain, 3 * SEGMENT_SIZE);
+		FileCipher.encrypt(plain, encrypted, StreamingCipher.createHeader(WRAPPED_KEY, KEY_IV, SEGMENT_SIZE),
+				StreamingCipher.createDataKey(), CHECKPOINT_INTERVAL).blockingAwait();
+		FileCipher.writeCheckpoint(plain, encrypted, 1, digest(content, SEGMENT_SIZE));
+
+		write(plain, 4 * SEGMENT_SIZE);
+
+		assertFalse(FileCipher.canResume(plain, encrypted));
+	}
+
+	@Test
+	public void encryptionOfInputRewrittenWithSameSizeAndTimeIsNotResumed() throws Exception {
+		byte[] content = write(plain, 9 * SEGMENT_SIZE + 10);
+		byte[] dataKey = StreamingCipher.createDataKey();
+		StreamingCipher.Header header = StreamingCipher.createHeader(WRAPPED_KEY, KEY_IV, SEGMENT_SIZE);
+		FileCipher.encrypt(plain, encrypted, header, dataKey.clone(), CHECKPOINT_INTERVAL).blockingAwait();
+		FileCipher.writeCheckpoint(plain, encrypted, CHECKPOINT_INTERVAL, digest(content, CHECKPOINT_INTERVAL * SEGMENT_SIZE));
+
+		rewriteFirstSegment(plain);
+		assertTrue(FileCipher.canResume(plain, encrypted));
+
+		// the same data key and nonces must not encrypt the rewritten content
+		FileCipher.encrypt(plain, encrypted, FileCipher.readHeader(encrypted), dataKey, CHECKPOINT_INTERVAL)
+				.test()
+				.assertError(IOException.class);
+
+		assertFalse(encrypted.exists());
+		assertFalse(FileCipher.canResume(plain, encrypted));
+	}
+
+	@Test
+	public void decryptionOfInputRewrittenWithSameSizeAndTimeStartsOver() throws Exception {
+		byte[] content = write(plain, 9 * SEGMENT_SIZE + 10);
+		byte[] dataKey = StreamingCipher.createDataKey();
+		FileCipher.encrypt(plain, encrypted, StreamingCipher.createHeader(WRAPPED_KEY, KEY_IV, SEGMENT_SIZE), dataKey.clone(), CHECKPOINT_INTERVAL).blockingAwait();
+		// interrupted decryption of other content of the same size
+		FileOutputStream output = new FileOutputStream(decrypted);
+		output.write(new byte[content.length]);
+		output.close();
+		FileCipher.writeCheckpoint(encrypted, decrypted, CHECKPOINT_INTERVAL, digest(new byte[SEGMENT_SIZE], SEGMENT_SIZE));
+		assertTrue(FileCipher.canResume(encrypted, decrypted));
+
+		FileCipher.decrypt(encrypted, decrypted, FileCipher.readHeader(encrypted), dataKey, CHECKPOINT_INTERVAL).blockingAwait();
+
+		assertArrayEquals(content, read(decrypted));
+	}
+
+	@Test
+	public void modifiedFileIsRejected() throws Exception {
+		write(plain, 5 * SEGMENT_SIZE);
+		byte[] dataKey = StreamingCipher.createDataKey();
+		FileCipher.encrypt(plain, encrypted, StreamingCipher.createHeader(WRAPPED_KEY, KEY_IV, SEGMENT_SIZE), dataKey.clone(), CHECKPOINT_INTERVAL).blockingAwait();
+		RandomAccessFile file = new RandomAccessFile(encrypted, "rw");
+		file.seek(file.length() - 1);
+		int last = file.read();
+		file.seek(file.length() - 1);
+		file.write(last ^ 1);
+		file.close();
+
+		FileCipher.decrypt(encrypted, decrypted, FileCipher.readHeader(encrypted), dataKey, CHECKPOINT_INTERVAL)
+				.test()
+				.assertError(AEADBadTagException.class);
+
+		assertFalse(decrypted.exists());
+	}
+
+	private static byte[] write(File file, int size) throws IOException {
+		byte[] content = new byte[size];
+		new Random(size).nextBytes(content);
+		FileOutputStream output = new FileOutputStream(file);
+		output.write(content);
+		output.close();
+		return content;
+	}
+
+	/**
+	 * Overwrites the first segment of the file, keeping its size and modification time.
+	 */
+	private static void rewriteFirstSegment(File file) throws IOException {
+		long lastModified = file.lastModified();
+		RandomAccessFile input = new RandomAccessFile(file, "rw");
+		input.write(new byte[SEGMENT_SIZE]);
+		input.close();
+		assertTrue(file.setLastModified(lastModified));
+	}
+
+	private static byte[] digest(byte[] content, int length) throws Exception {
+		MessageDigest digest = MessageDigest.getInstance("SHA-256");
+		digest.update(content, 0, length);
+		return digest.digest();
+	}
+
+	private static byte[] read(File file) throws IOException {
+		InputStream input = new FileInputStream(file);
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int read;
+		while ((read = input.read(buffer)) >= 0) {
+			output.write(buffer, 0, read);
+		}
+		input.close();
+		return output.toByteArray();
+	}
+
+	private static byte[] decryptStream(File file, byte[] dataKey) throws Exception {
+		InputStream input = new FileInputStream(file);
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		for (ByteBuffer buffer : StreamingCipher.decrypt(input, StreamingCipher.readHeader(input), Arrays.copyOf(dataKey, dataKey.length)).blockingIterable()) {
+			output.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+		}
+		return output.toByteArray();
+	}
+}
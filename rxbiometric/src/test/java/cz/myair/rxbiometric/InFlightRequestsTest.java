@@ -0,0 +1,201 @@
+package cz.myair.rxbiometric;
+
+import androidx.fragment.app.FragmentActivity;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.KeyGenerator;
+
+import cz.myair.rxbiometric.data.BiometricDecryptionResult;
+import io.reactivex.Observable;
+import io.reactivex.Scheduler;
+import io.reactivex.functions.Consumer;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.schedulers.TestScheduler;
+import io.reactivex.subjects.PublishSubject;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests for {@link InFlightRequests}
+ */
+public class InFlightRequestsTest {
+
+	private static final InFlightRequests.Key KEY = new InFlightRequests.Key("decrypt", EncryptionMethod.AES, "key", "encrypted", null);
+
+	private InFlightRequests requests;
+	private PublishSubject<String> operation;
+	private AtomicInteger operationCount;
+
+	@Before
+	public void setUp() {
+		requests = new InFlightRequests();
+		operation = PublishSubject.create();
+		operationCount = new AtomicInteger();
+	}
+
+	@Test
+	public void identicalRequestsShareOperation() {
+		TestObserver<String> first = request(KEY).test();
+		TestObserver<String> second = request(new InFlightRequests.Key("decrypt", EncryptionMethod.AES, "key", "encrypted", null)).test();
+
+		operation.onNext("FAILED");
+		operation.onNext("AUTHENTICATED");
+		operation.onComplete();
+
+		first.assertResult("FAILED", "AUTHENTICATED");
+		second.assertResult("FAILED", "AUTHENTICATED");
+		assertEquals(1, operationCount.get());
+		assertEquals(0, requests.size());
+	}
+
+	@Test
+	public void lateRequestReceivesEarlierResults() {
+		TestObserver<String> first = request(KEY).test();
+		operation.onNext("FAILED");
+
+		TestObserver<String> second = request(KEY).test();
+		operation.onNext("AUTHENTICATED");
+
+		first.assertValues("FAILED", "AUTHENTICATED");
+		second.assertValues("FAILED", "AUTHENTICATED");
+		assertEquals(1, operationCount.get());
+	}
+
+	@Test
+	public void requestAfterTerminationStartsNewOperation() {
+		request(KEY).test();
+		operation.onComplete();
+
+		operation = PublishSubject.create();
+		request(KEY).test();
+
+		assertEquals(2, operationCount.get());
+	}
+
+	@Test
+	public void operationIsDisposedWithLastRequest() {
+		TestObserver<String> first = request(KEY).test();
+		TestObserver<String> second = request(KEY).test();
+
+		first.dispose();
+		assertEquals(1, requests.size());
+
+		second.dispose();
+		assertFalse(operation.hasObservers());
+		assertEquals(0, requests.size());
+	}
+
+	@Test
+	public void differentRequestsDoNotShare() {
+		request(KEY).test();
+		request(new InFlightRequests.Key("decrypt", EncryptionMethod.AES, "other", "encrypted", null)).test();
+		request(new InFlightRequests.Key("decrypt", EncryptionMethod.AES, "key", "encrypted", new byte[]{1})).test();
+
+		assertEquals(3, operationCount.get());
+	}
+
+	@Test
+	public void keysCompareBinaryInput() {
+		InFlightRequests.Key first = new InFlightRequests.Key("decrypt", EncryptionMethod.AES, null, ByteBuffer.wrap(new byte[]{1, 2}), null);
+		InFlightRequests.Key second = new InFlightRequests.Key("decrypt", EncryptionMethod.AES, null, ByteBuffer.wrap(new byte[]{1, 2}), null);
+		InFlightRequests.Key third = new InFlightRequests.Key("decrypt", EncryptionMethod.AES, null, ByteBuffer.wrap(new byte[]{1, 3}), null);
+
+		assertEquals(first, second);
+		assertEquals(first.hashCode(), second.hashCode());
+		assertNotEquals(first, third);
+	}
+
+	@Test
+	public void decryptionsOfOneInstanceShareOperation() throws Exception {
+		TestScheduler scheduler = new TestScheduler();
+		RxBiometric rxBiometric = rxBiometric(scheduler);
+		String encrypted = encrypt();
+		int keyLookups = TestKeyStore.keyLookups.get();
+
+		TestObserver<BiometricDecryptionResult> first = rxBiometric.decrypt("shared", encrypted).test();
+		TestObserver<BiometricDecryptionResult> second = rxBiometric.decrypt("shared", encrypted).test();
+		scheduler.triggerActions();
+
+		first.await().assertValueCount(1);
+		second.await().assertValueCount(1);
+		assertEquals(keyLookups + 1, TestKeyStore.keyLookups.get());
+	}
+
+	@Test
+	public void sharedDecryptionsReceiveOwnChars() throws Exception {
+		TestScheduler scheduler = new TestScheduler();
+		RxBiometric rxBiometric = rxBiometric(scheduler);
+		String encrypted = encrypt();
+
+		TestObserver<BiometricDecryptionResult> first = rxBiometric.decrypt("shared", encrypted)
+				.doOnNext(new Consumer<BiometricDecryptionResult>() {
+					@Override
+					public void accept(BiometricDecryptionResult result) {
+						Arrays.fill(result.getDecryptedChars(), '\0');
+					}
+				})
+				.test();
+		TestObserver<BiometricDecryptionResult> second = rxBiometric.decrypt("shared", encrypted).test();
+		scheduler.triggerActions();
+
+		first.await().assertValueCount(1);
+		assertEquals("secret", second.await().values().get(0).getDecrypted());
+	}
+
+	@Test
+	public void instancesDoNotShareOperations() throws Exception {
+		TestScheduler scheduler = new TestScheduler();
+		String encrypted = encrypt();
+		int keyLookups = TestKeyStore.keyLookups.get();
+
+		// Each instance shows its prompt with its own Activity, texts and schedulers
+		TestObserver<BiometricDecryptionResult> first = rxBiometric(scheduler).decrypt("shared", encrypted).test();
+		TestObserver<BiometricDecryptionResult> second = rxBiometric(scheduler).decrypt("shared", encrypted).test();
+		scheduler.triggerActions();
+
+		first.await().assertValueCount(1);
+		second.await().assertValueCount(1);
+		assertEquals(keyLookups + 2, TestKeyStore.keyLookups.get());
+	}
+
+	private static String encrypt() throws Exception {
+		TestKeyStore.install();
+		KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+		keyGenerator.init(128);
+		TestKeyStore.putKey("shared", keyGenerator.generateKey());
+		return rxBiometric(Schedulers.trampoline()).encryptSingle("shared", "secret".toCharArray()).blockingGet().getEncrypted();
+	}
+
+	private static RxBiometric rxBiometric(Scheduler scheduler) {
+		return new RxBiometric.Builder(mock(FragmentActivity.class))
+				.encryptionMethod(EncryptionMethod.AES_GCM)
+				.authenticationValidityDuration(30)
+				.scheduler(scheduler)
+				.resultScheduler(Schedulers.trampoline())
+				.dialogTitleText(1)
+				.dialogNegativeButtonText(2)
+				.logger(new EmptyLogger())
+				.build();
+	}
+
+	private Observable<String> request(InFlightRequests.Key key) {
+		return requests.share(key, new Callable<Observable<String>>() {
+			@Override
+			public Observable<String> call() {
+				operationCount.incrementAndGet();
+				return operation;
+			}
+		});
+	}
+}
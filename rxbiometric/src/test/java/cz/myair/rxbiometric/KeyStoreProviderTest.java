@@ -0,0 +1,117 @@
+package cz.myair.rxbiometric;
+
+import android.content.Context;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.KeyStore;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests for {@link KeyStoreProvider}
+ */
+public class KeyStoreProviderTest {
+
+	private static final String KEY_NAME = "key";
+
+	@Before
+	public void setUp() throws Exception {
+		TestKeyStore.install();
+	}
+
+	@Test
+	public void loadsKeyStoreOnce() throws Exception {
+		KeyStore first = KeyStoreProvider.get();
+		KeyStore second = KeyStoreProvider.get();
+
+		assertSame(first, second);
+		assertEquals(1, TestKeyStore.loads.get());
+	}
+
+	@Test
+	public void invalidateReloadsKeyStore() throws Exception {
+		KeyStore first = KeyStoreProvider.get();
+		KeyStoreProvider.invalidate();
+		KeyStore second = KeyStoreProvider.get();
+
+		assertNotSame(first, second);
+		assertEquals(2, TestKeyStore.loads.get());
+	}
+
+	@Test
+	public void providersShareKeyStore() throws Exception {
+		TestKeyStore.putKey(KEY_NAME, new SecretKeySpec(new byte[16], "AES"));
+		Context context = mock(Context.class);
+
+		new AesCipherProvider(context, KEY_NAME, true, 0, new EmptyLogger());
+		new RsaCipherProvider(context, KEY_NAME, true, 0, new EmptyLogger());
+		assertTrue(CipherProvider.keyExists(KEY_NAME));
+		assertFalse(CipherProvider.keyExists("unknown"));
+
+		assertEquals(1, TestKeyStore.loads.get());
+	}
+
+	@Test
+	public void knownAliasIsAnsweredFromIndex() throws Exception {
+		TestKeyStore.putKey(KEY_NAME, new SecretKeySpec(new byte[16], "AES"));
+
+		assertTrue(KeyStoreProvider.containsAlias(KEY_NAME));
+		assertTrue(KeyStoreProvider.containsAlias(KEY_NAME));
+		assertTrue(KeyStoreProvider.containsAlias(KEY_NAME));
+
+		assertEquals(1, TestKeyStore.containsAliasCalls.get());
+		assertEquals(0, TestKeyStore.aliasEnumerations.get());
+	}
+
+	@Test
+	public void deletedKeyIsRemovedFromIndex() throws Exception {
+		TestKeyStore.putKey(KEY_NAME, new SecretKeySpec(new byte[16], "AES"));
+		assertTrue(CipherProvider.keyExists(KEY_NAME));
+
+		KeyStoreProvider.get().deleteEntry(KEY_NAME);
+		KeyStoreProvider.onKeyDeleted(KEY_NAME);
+
+		assertFalse(CipherProvider.keyExists(KEY_NAME));
+	}
+
+	@Test
+	public void invalidateClearsIndex() throws Exception {
+		KeyStoreProvider.onKeyCreated(KEY_NAME);
+		KeyStoreProvider.invalidate();
+
+		assertFalse(KeyStoreProvider.containsAlias(KEY_NAME));
+	}
+
+	@Test
+	public void lookupCostIndependentOfAliasCount() throws Exception {
+		int[] aliasCounts = {10, 100, 1000, 10000};
+		int lookups = 100;
+
+		for (int aliasCount : aliasCounts) {
+			TestKeyStore.reset();
+			for (int i = 0; i < aliasCount; i++) {
+				TestKeyStore.putKey(KEY_NAME + i, new SecretKeySpec(new byte[16], "AES"));
+			}
+
+			for (int i = 0; i < lookups; i++) {
+				assertTrue(CipherProvider.keyExists(KEY_NAME + (aliasCount - 1)));
+				assertFalse(CipherProvider.keyExists("missing"));
+			}
+
+			// one keystore query for the first hit and one per miss, regardless of the alias count
+			assertEquals(1, TestKeyStore.loads.get());
+			assertEquals(0, TestKeyStore.aliasEnumerations.get());
+			assertEquals(1 + lookups, TestKeyStore.containsAliasCalls.get());
+			assertEquals(0, TestKeyStore.keyLookups.get());
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package cz.myair.rxbiometric;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import cz.myair.rxbiometric.data.BiometricPromptQueueMetrics;
+import io.reactivex.disposables.Disposable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link PromptQueue}
+ */
+public class PromptQueueTest {
+
+	private PromptQueue queue;
+	private List<String> started;
+
+	@Before
+	public void setUp() {
+		queue = new PromptQueue();
+		started = new ArrayList<>();
+	}
+
+	@Test
+	public void promptStartsWhenQueueIsEmpty() {
+		enqueue(0, "first");
+
+		assertEquals(1, started.size());
+		assertTrue(queue.getMetrics().isPromptActive());
+	}
+
+	@Test
+	public void promptWaitsForActivePrompt() {
+		Disposable first = enqueue(0, "first");
+		enqueue(0, "second");
+
+		assertEquals(1, started.size());
+		assertEquals(1, queue.getMetrics().getQueueDepth());
+
+		first.dispose();
+
+		assertEquals("second", started.get(1));
+		assertEquals(0, queue.getMetrics().getQueueDepth());
+	}
+
+	@Test
+	public void higherPriorityStartsFirst() {
+		Disposable first = enqueue(0, "first");
+		Disposable low = enqueue(0, "low");
+		Disposable high = enqueue(10, "high");
+		enqueue(0, "last");
+
+		first.dispose();
+		high.dispose();
+		low.dispose();
+
+		assertEquals("first", started.get(0));
+		assertEquals("high", started.get(1));
+		assertEquals("low", started.get(2));
+		assertEquals("last", started.get(3));
+	}
+
+	@Test
+	public void disposedPromptIsNotStarted() {
+		Disposable first = enqueue(0, "first");
+		Disposable second = enqueue(0, "second");
+
+		second.dispose();
+		first.dispose();
+
+		assertEquals(1, started.size());
+		BiometricPromptQueueMetrics metrics = queue.getMetrics();
+		assertEquals(0, metrics.getQueueDepth());
+		assertFalse(metrics.isPromptActive());
+		assertEquals(1, metrics.getPromptsShown());
+	}
+
+	@Test
+	public void metricsCountWaitTime() throws Exception {
+		Disposable first = enqueue(0, "first");
+		enqueue(0, "second");
+		Thread.sleep(20);
+		first.dispose();
+
+		BiometricPromptQueueMetrics metrics = queue.getMetrics();
+		assertEquals(2, metrics.getPromptsShown());
+		assertTrue(metrics.getMaxWait(TimeUnit.MILLISECONDS) >= 20);
+	}
+
+	private Disposable enqueue(int priority, final String name) {
+		return queue.enqueue(priority, new Runnable() {
+			@Override
+			public void run() {
+				started.add(name);
+			}
+		});
+	}
+}
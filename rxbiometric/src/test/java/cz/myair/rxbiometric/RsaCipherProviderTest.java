@@ -0,0 +1,72 @@
+package cz.myair.rxbiometric;
+
+import android.content.Context;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+
+import javax.crypto.Cipher;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests for {@link RsaCipherProvider}
+ */
+public class RsaCipherProviderTest {
+
+	private static final String KEY_NAME = "rsa";
+	private static final byte[] INPUT = "TEST".getBytes();
+
+	private RsaCipherProvider cipherProvider;
+
+	@Before
+	public void setUp() throws Exception {
+		TestKeyStore.install();
+		KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+		keyPairGenerator.initialize(1024);
+		KeyPair keyPair = keyPairGenerator.generateKeyPair();
+		TestKeyStore.putKeyPair(KEY_NAME, keyPair);
+
+		cipherProvider = new RsaCipherProvider(mock(Context.class), KEY_NAME, true, 0, new EmptyLogger());
+	}
+
+	@Test
+	public void existingKeyPairIsReused() throws Exception {
+		byte[] encrypted = cipherProvider.getCipherForEncryption().doFinal(INPUT);
+
+		// Decrypting with the stored private key proves that no new key pair was generated
+		Cipher decryption = cipherProvider.getCipherForDecryption();
+		assertArrayEquals(INPUT, decryption.doFinal(encrypted));
+	}
+
+	@Test
+	public void publicKeyIsCached() throws Exception {
+		cipherProvider.getCipherForEncryption();
+		int keystoreCalls = TestKeyStore.keyLookups.get() + TestKeyStore.containsAliasCalls.get();
+
+		for (int i = 0; i < 10; i++) {
+			new RsaCipherProvider(mock(Context.class), KEY_NAME, true, 0, new EmptyLogger())
+					.getCipherForEncryption()
+					.doFinal(INPUT);
+		}
+
+		assertEquals(keystoreCalls, TestKeyStore.keyLookups.get() + TestKeyStore.containsAliasCalls.get());
+		assertEquals(1, TestKeyStore.loads.get());
+	}
+
+	@Test
+	public void removedKeyDropsCachedPublicKey() throws Exception {
+		cipherProvider.getCipherForEncryption();
+		int keyLookups = TestKeyStore.keyLookups.get();
+
+		KeyStoreProvider.onKeyDeleted(KEY_NAME);
+		cipherProvider.getCipherForEncryption();
+
+		assertEquals(2 * keyLookups, TestKeyStore.keyLookups.get());
+	}
+}
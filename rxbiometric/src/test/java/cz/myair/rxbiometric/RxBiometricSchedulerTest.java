@@ -0,0 +1,123 @@
+package cz.myair.rxbiometric;
+
+import androidx.fragment.app.FragmentActivity;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.crypto.KeyGenerator;
+
+import cz.myair.rxbiometric.data.BiometricAuthenticationResult;
+import cz.myair.rxbiometric.data.BiometricEncryptionResult;
+import io.reactivex.Scheduler;
+import io.reactivex.functions.Consumer;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.schedulers.TestScheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests for the schedulers set with {@link RxBiometric.Builder#scheduler} and
+ * {@link RxBiometric.Builder#resultScheduler}
+ */
+public class RxBiometricSchedulerTest {
+
+	private static final String KEY_NAME = "scheduler";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ExecutorService resultExecutor;
+
+	@Before
+	public void setUp() throws Exception {
+		TestKeyStore.install();
+		KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+		keyGenerator.init(128);
+		TestKeyStore.putKey(KEY_NAME, keyGenerator.generateKey());
+
+		resultExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				return new Thread(runnable, "result");
+			}
+		});
+	}
+
+	@After
+	public void tearDown() {
+		resultExecutor.shutdownNow();
+	}
+
+	@Test
+	public void keystoreWorkRunsOnScheduler() throws Exception {
+		TestScheduler scheduler = new TestScheduler();
+		final String[] resultThread = new String[1];
+
+		TestObserver<BiometricEncryptionResult> observer = rxBiometric(scheduler)
+				.encrypt(KEY_NAME, "secret".toCharArray())
+				.doOnNext(new Consumer<BiometricEncryptionResult>() {
+					@Override
+					public void accept(BiometricEncryptionResult result) {
+						resultThread[0] = Thread.currentThread().getName();
+					}
+				})
+				.test();
+
+		observer.assertNoValues();
+		scheduler.triggerActions();
+		observer.await();
+
+		observer.assertValueCount(1);
+		assertEquals("result", resultThread[0]);
+	}
+
+	@Test
+	public void fileIsProcessedOnScheduler() throws Exception {
+		TestScheduler scheduler = new TestScheduler();
+		File input = folder.newFile("plain");
+		File output = new File(folder.getRoot(), "encrypted");
+		FileOutputStream inputStream = new FileOutputStream(input);
+		inputStream.write(new byte[3 * StreamingCipher.DEFAULT_SEGMENT_SIZE]);
+		inputStream.close();
+
+		TestObserver<BiometricAuthenticationResult> observer = rxBiometric(EncryptionMethod.AES, scheduler, Schedulers.trampoline())
+				.encryptFile(KEY_NAME, input, output)
+				.test();
+
+		observer.assertNoValues();
+		scheduler.triggerActions();
+
+		observer.assertValueCount(1);
+		observer.assertComplete();
+		assertTrue(output.length() > input.length());
+	}
+
+	private RxBiometric rxBiometric(TestScheduler scheduler) {
+		return rxBiometric(EncryptionMethod.AES_GCM, scheduler, Schedulers.from(resultExecutor));
+	}
+
+	private static RxBiometric rxBiometric(EncryptionMethod encryptionMethod, TestScheduler scheduler, Scheduler resultScheduler) {
+		return new RxBiometric.Builder(mock(FragmentActivity.class))
+				.encryptionMethod(encryptionMethod)
+				.authenticationValidityDuration(30)
+				.scheduler(scheduler)
+				.resultScheduler(resultScheduler)
+				.dialogTitleText(1)
+				.dialogNegativeButtonText(2)
+				.logger(new EmptyLogger())
+				.build();
+	}
+}
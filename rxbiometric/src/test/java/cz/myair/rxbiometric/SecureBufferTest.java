@@ -0,0 +1,117 @@
+package cz.myair.rxbiometric;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+
+import io.reactivex.Observable;
+import io.reactivex.ObservableSource;
+import io.reactivex.functions.Function;
+import io.reactivex.observers.TestObserver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link SecureBuffer}
+ */
+public class SecureBufferTest {
+
+	private static final String TEXT = "plain ascii, čeština, € and 🔑";
+
+	@Test
+	public void fromCharsEncodesUtf8AndClearsInput() throws Exception {
+		char[] chars = TEXT.toCharArray();
+
+		SecureBuffer secureBuffer = SecureBuffer.fromChars(chars);
+
+		assertArrayEquals(new char[chars.length], chars);
+		assertTrue(secureBuffer.asReadOnlyBuffer().isDirect());
+		assertEquals(ByteBuffer.wrap(TEXT.getBytes("UTF-8")), secureBuffer.asReadOnlyBuffer());
+		assertArrayEquals(TEXT.toCharArray(), secureBuffer.toChars());
+	}
+
+	@Test
+	public void fromBytesClearsInput() {
+		byte[] bytes = {1, 2, 3};
+
+		SecureBuffer secureBuffer = SecureBuffer.fromBytes(bytes);
+
+		assertArrayEquals(new byte[3], bytes);
+		assertEquals(ByteBuffer.wrap(new byte[]{1, 2, 3}), secureBuffer.asReadOnlyBuffer());
+	}
+
+	@Test
+	public void wipeOverwritesData() {
+		SecureBuffer secureBuffer = SecureBuffer.fromChars(TEXT.toCharArray());
+		ByteBuffer view = secureBuffer.asReadOnlyBuffer();
+
+		secureBuffer.close();
+
+		assertTrue(secureBuffer.isWiped());
+		while (view.hasRemaining()) {
+			assertEquals(0, view.get());
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void wipedBufferCannotBeAccessed() {
+		SecureBuffer secureBuffer = SecureBuffer.fromChars(TEXT.toCharArray());
+		secureBuffer.wipe();
+
+		secureBuffer.toChars();
+	}
+
+	@Test
+	public void cipherRoundTrip() throws Exception {
+		byte[] payload = new byte[100 * 1024];
+		new Random(42).nextBytes(payload);
+		SecretKey key = KeyGenerator.getInstance("AES").generateKey();
+		Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+		cipher.init(Cipher.ENCRYPT_MODE, key);
+
+		byte[] encrypted = SecureBuffer.fromBytes(payload.clone()).doFinal(cipher);
+		cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(cipher.getIV()));
+		SecureBuffer decrypted = SecureBuffer.doFinal(cipher, encrypted);
+
+		assertEquals(ByteBuffer.wrap(payload), decrypted.asReadOnlyBuffer());
+	}
+
+	@Test
+	public void usingWipesBufferOnTermination() {
+		SecureBuffer secureBuffer = SecureBuffer.fromChars(TEXT.toCharArray());
+
+		SecureBuffer.using(secureBuffer, new Function<SecureBuffer, ObservableSource<Integer>>() {
+			@Override
+			public ObservableSource<Integer> apply(SecureBuffer buffer) {
+				return Observable.just(buffer.size());
+			}
+		}).test().assertResult(ConversionUtils.utf8Length(TEXT.toCharArray()));
+
+		assertTrue(secureBuffer.isWiped());
+	}
+
+	@Test
+	public void usingWipesBufferOnDispose() {
+		SecureBuffer secureBuffer = SecureBuffer.fromChars(TEXT.toCharArray());
+
+		TestObserver<Object> observer = SecureBuffer.using(secureBuffer, new Function<SecureBuffer, ObservableSource<Object>>() {
+			@Override
+			public ObservableSource<Object> apply(SecureBuffer buffer) {
+				return Observable.never();
+			}
+		}).test();
+
+		assertFalse(secureBuffer.isWiped());
+		observer.dispose();
+		assertTrue(secureBuffer.isWiped());
+	}
+}
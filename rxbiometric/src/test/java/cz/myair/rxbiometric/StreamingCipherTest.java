@@ -0,0 +1,251 @@
+package cz.myair.rxbiometric;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.AEADBadTagException;
+
+import io.reactivex.Flowable;
+import io.reactivex.functions.Consumer;
+import io.reactivex.subscribers.TestSubscriber;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link StreamingCipher}
+ */
+public class StreamingCipherTest {
+
+	private static final byte[] WRAPPED_KEY = new byte[48];
+	private static final byte[] KEY_IV = new byte[16];
+	private static final int SEGMENT_SIZE = 1024;
+
+	@Test
+	public void encryptAndDecryptAtSegmentBoundaries() throws Exception {
+		for (int size : new int[]{0, 1, SEGMENT_SIZE - 1, SEGMENT_SIZE, SEGMENT_SIZE + 1, 3 * SEGMENT_SIZE, 5000}) {
+			byte[] plaintext = new byte[size];
+			new Random(size).nextBytes(plaintext);
+			byte[] dataKey = StreamingCipher.createDataKey();
+
+			byte[] encrypted = concat(StreamingCipher.encrypt(new ByteArrayInputStream(plaintext), dataKey.clone(), WRAPPED_KEY, KEY_IV, SEGMENT_SIZE));
+
+			assertArrayEquals("size " + size, plaintext, decrypt(encrypted, dataKey));
+		}
+	}
+
+	@Test
+	public void headerContainsWrappedKey() throws Exception {
+		byte[] wrappedKey = new byte[]{1, 2, 3};
+		byte[] keyIv = new byte[]{4, 5};
+		byte[] encrypted = concat(StreamingCipher.encrypt(new ByteArrayInputStream(new byte[10]), StreamingCipher.createDataKey(), wrappedKey, keyIv, SEGMENT_SIZE));
+
+		StreamingCipher.Header header = StreamingCipher.readHeader(new ByteArrayInputStream(encrypted));
+
+		assertEquals(SEGMENT_SIZE, header.segmentSize);
+		assertArrayEquals(wrappedKey, header.wrappedKey);
+		assertArrayEquals(keyIv, header.keyIv);
+	}
+
+	@Test
+	public void encryptClearsDataKey() throws Exception {
+		byte[] dataKey = StreamingCipher.createDataKey();
+
+		concat(StreamingCipher.encrypt(new ByteArrayInputStream(new byte[10]), dataKey, WRAPPED_KEY, KEY_IV, SEGMENT_SIZE));
+
+		assertArrayEquals(new byte[StreamingCipher.DATA_KEY_SIZE], dataKey);
+	}
+
+	@Test
+	public void truncatedStreamIsRejected() throws Exception {
+		byte[] dataKey = StreamingCipher.createDataKey();
+		byte[] encrypted = concat(StreamingCipher.encrypt(new ByteArrayInputStream(new byte[3 * SEGMENT_SIZE + 10]), dataKey.clone(), WRAPPED_KEY, KEY_IV, SEGMENT_SIZE));
+		int headerSize = encrypted.length - 3 * (SEGMENT_SIZE + 16) - (10 + 16);
+
+		// cut off at a segment boundary, the remaining segments on their own are valid
+		byte[] truncated = Arrays.copyOf(encrypted, headerSize + 2 * (SEGMENT_SIZE + 16));
+
+		TestSubscriber<ByteBuffer> subscriber = decryptFlowable(truncated, dataKey).test();
+
+		subscriber.assertError(AEADBadTagException.class);
+	}
+
+	@Test
+	public void reorderedSegmentsAreRejected() throws Exception {
+		byte[] dataKey = StreamingCipher.createDataKey();
+		byte[] encrypted = concat(StreamingCipher.encrypt(new ByteArrayInputStream(new byte[3 * SEGMENT_SIZE]), dataKey.clone(), WRAPPED_KEY, KEY_IV, SEGMENT_SIZE));
+		int encryptedSegmentSize = SEGMENT_SIZE + 16;
+		int first = encrypted.length - 3 * encryptedSegmentSize;
+		byte[] firstSegment = Arrays.copyOfRange(encrypted, first, first + encryptedSegmentSize);
+		System.arraycopy(encrypted, first + encryptedSegmentSize, encrypted, first, encryptedSegmentSize);
+		System.arraycopy(firstSegment, 0, encrypted, first + encryptedSegmentSize, encryptedSegmentSize);
+
+		decryptFlowable(encrypted, dataKey).test().assertError(AEADBadTagException.class);
+	}
+
+	@Test(expected = CryptoDataException.class)
+	public void unknownVersionIsRejected() throws Exception {
+		StreamingCipher.readHeader(new ByteArrayInputStream(new byte[]{42, 0, 0, 0, 1}));
+	}
+
+	@Test
+	public void inputIsOnlyReadAsRequested() throws Exception {
+		CountingInputStream input = new CountingInputStream(new PatternInputStream(100L * SEGMENT_SIZE));
+		TestSubscriber<ByteBuffer> subscriber = StreamingCipher.encrypt(input, StreamingCipher.createDataKey(), WRAPPED_KEY, KEY_IV, SEGMENT_SIZE).test(0);
+
+		subscriber.request(1); // header
+		assertEquals(0, input.count);
+
+		subscriber.request(2);
+		subscriber.assertValueCount(3);
+		// two segments and the byte looked ahead to detect the last segment
+		assertEquals(2 * SEGMENT_SIZE + 1, input.count);
+
+		subscriber.cancel();
+		assertTrue(input.closed);
+	}
+
+	@Test
+	public void encryptAndDecrypt100MegabytesSegmentBySegment() throws Exception {
+		long size = 100L * 1024 * 1024;
+		byte[] dataKey = StreamingCipher.createDataKey();
+		File file = File.createTempFile("stream", ".enc");
+		file.deleteOnExit();
+		// no buffer holds more than a segment and its authentication tag
+		final int maxBufferSize = StreamingCipher.DEFAULT_SEGMENT_SIZE + StreamingCipher.TAG_SIZE;
+		final long[] encryptedBuffers = new long[1];
+
+		MessageDigest plaintextDigest = MessageDigest.getInstance("SHA-256");
+		final OutputStream output = new FileOutputStream(file);
+		StreamingCipher.encrypt(new DigestInputStream(new PatternInputStream(size), plaintextDigest), dataKey.clone(), WRAPPED_KEY, KEY_IV, StreamingCipher.DEFAULT_SEGMENT_SIZE)
+				.doOnNext(new Consumer<ByteBuffer>() {
+					@Override
+					public void accept(ByteBuffer buffer) throws Exception {
+						assertTrue(buffer.capacity() <= maxBufferSize);
+						encryptedBuffers[0]++;
+						output.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+					}
+				})
+				.ignoreElements()
+				.blockingAwait();
+		output.close();
+
+		final MessageDigest decryptedDigest = MessageDigest.getInstance("SHA-256");
+		final long[] decryptedSize = new long[1];
+		InputStream input = new FileInputStream(file);
+		StreamingCipher.decrypt(input, StreamingCipher.readHeader(input), dataKey)
+				.doOnNext(new Consumer<ByteBuffer>() {
+					@Override
+					public void accept(ByteBuffer buffer) {
+						assertTrue(buffer.capacity() <= maxBufferSize);
+						decryptedSize[0] += buffer.remaining();
+						decryptedDigest.update(buffer);
+					}
+				})
+				.ignoreElements()
+				.blockingAwait();
+
+		long segments = (size + StreamingCipher.DEFAULT_SEGMENT_SIZE - 1) / StreamingCipher.DEFAULT_SEGMENT_SIZE;
+		assertEquals(1 + segments, encryptedBuffers[0]);
+		assertEquals(size, decryptedSize[0]);
+		assertArrayEquals(plaintextDigest.digest(), decryptedDigest.digest());
+		assertTrue(file.delete());
+	}
+
+	private static byte[] decrypt(byte[] encrypted, byte[] dataKey) throws Exception {
+		return concat(decryptFlowable(encrypted, dataKey));
+	}
+
+	private static Flowable<ByteBuffer> decryptFlowable(byte[] encrypted, byte[] dataKey) throws Exception {
+		InputStream input = new ByteArrayInputStream(encrypted);
+		return StreamingCipher.decrypt(input, StreamingCipher.readHeader(input), dataKey);
+	}
+
+	private static byte[] concat(Flowable<ByteBuffer> flowable) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		for (ByteBuffer buffer : flowable.blockingIterable()) {
+			output.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+		}
+		return output.toByteArray();
+	}
+
+	/**
+	 * Generates a deterministic stream without holding it in memory
+	 */
+	private static class PatternInputStream extends InputStream {
+		private final long size;
+		private long position;
+
+		PatternInputStream(long size) {
+			this.size = size;
+		}
+
+		@Override
+		public int read() {
+			if (position >= size) {
+				return -1;
+			}
+			return (int) (position++ * 31 >>> 3) & 0xff;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) {
+			if (position >= size) {
+				return -1;
+			}
+			int count = (int) Math.min(length, size - position);
+			for (int i = 0; i < count; i++) {
+				buffer[offset + i] = (byte) (position++ * 31 >>> 3);
+			}
+			return count;
+		}
+	}
+
+	private static class CountingInputStream extends FilterInputStream {
+		long count;
+		boolean closed;
+
+		CountingInputStream(InputStream input) {
+			super(input);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int read = super.read();
+			if (read >= 0) {
+				count++;
+			}
+			return read;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			int read = super.read(buffer, offset, length);
+			if (read > 0) {
+				count += read;
+			}
+			return read;
+		}
+
+		@Override
+		public void close() throws IOException {
+			closed = true;
+			super.close();
+		}
+	}
+}
@@ -0,0 +1,19 @@
+package cz.myair.rxbiometric;
+
+import java.util.Base64;
+
+/**
+ * Lossless {@link EncodingProvider} for tests that work with real ciphertext, as
+ * {@link Base64Provider} relies on the Android framework.
+ */
+public class TestBase64EncodingProvider implements EncodingProvider {
+	@Override
+	public String encode(byte[] toEncode) {
+		return Base64.getEncoder().encodeToString(toEncode);
+	}
+
+	@Override
+	public byte[] decode(String toDecode) {
+		return Base64.getDecoder().decode(toDecode);
+	}
+}
@@ -0,0 +1,407 @@
+package cz.myair.rxbiometric;
+
+import android.security.keystore.UserNotAuthenticatedException;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.KeyStoreSpi;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.security.cert.Certificate;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.CipherSpi;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.SecretKey;
+import javax.crypto.ShortBufferException;
+
+/**
+ * In-memory replacement for the "AndroidKeyStore" {@link KeyStore} type that counts the calls
+ * that would be IPC calls to the keystore daemon on a device.
+ */
+public class TestKeyStore extends KeyStoreSpi {
+
+	static final AtomicInteger loads = new AtomicInteger();
+	static final AtomicInteger aliasEnumerations = new AtomicInteger();
+	static final AtomicInteger containsAliasCalls = new AtomicInteger();
+	static final AtomicInteger keyLookups = new AtomicInteger();
+	static final AtomicInteger cipherInits = new AtomicInteger();
+	static final AtomicInteger cipherFinals = new AtomicInteger();
+
+	private static final Map<String, Key> keys = Collections.synchronizedMap(new LinkedHashMap<String, Key>());
+	private static final Map<String, Certificate> certificates = Collections.synchronizedMap(new LinkedHashMap<String, Certificate>());
+	private static final Set<Key> lockedKeys = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<Key, Boolean>()));
+
+	/**
+	 * Registers the in-memory keystore as "AndroidKeyStore" and resets all of its state.
+	 */
+	static void install() {
+		if (Security.getProvider(TestProvider.NAME) == null) {
+			Security.insertProviderAt(new TestProvider(), 1);
+		}
+		reset();
+	}
+
+	static void reset() {
+		keys.clear();
+		certificates.clear();
+		lockedKeys.clear();
+		loads.set(0);
+		aliasEnumerations.set(0);
+		containsAliasCalls.set(0);
+		keyLookups.set(0);
+		cipherInits.set(0);
+		cipherFinals.set(0);
+		KeyStoreProvider.invalidate();
+	}
+
+	static void putKey(String alias, Key key) {
+		keys.put(alias, key);
+	}
+
+	/**
+	 * Adds a key that, like a key of the Android KeyStore, does not expose its key material and
+	 * can only be used with ciphers of the given block mode.
+	 */
+	static void putKey(String alias, SecretKey key, String blockMode) {
+		keys.put(alias, new KeyStoreSecretKey(key, blockMode));
+	}
+
+	/**
+	 * Makes ciphers of the given key fail with a {@link UserNotAuthenticatedException} like a
+	 * time-bound key whose authentication expired, until it is unlocked again.
+	 */
+	static void setLocked(String alias, boolean locked) {
+		if (locked) {
+			lockedKeys.add(keys.get(alias));
+		} else {
+			lockedKeys.remove(keys.get(alias));
+		}
+	}
+
+	static void putKeyPair(String alias, KeyPair keyPair) {
+		keys.put(alias, keyPair.getPrivate());
+		certificates.put(alias, new TestCertificate(keyPair.getPublic()));
+	}
+
+	@Override
+	public Key engineGetKey(String alias, char[] password) {
+		keyLookups.incrementAndGet();
+		return keys.get(alias);
+	}
+
+	@Override
+	public Certificate[] engineGetCertificateChain(String alias) {
+		Certificate certificate = certificates.get(alias);
+		return certificate == null ? null : new Certificate[]{certificate};
+	}
+
+	@Override
+	public Certificate engineGetCertificate(String alias) {
+		keyLookups.incrementAndGet();
+		return certificates.get(alias);
+	}
+
+	@Override
+	public Date engineGetCreationDate(String alias) {
+		return null;
+	}
+
+	@Override
+	public void engineSetKeyEntry(String alias, Key key, char[] password, Certificate[] chain) {
+		keys.put(alias, key);
+		if (chain != null && chain.length > 0) {
+			certificates.put(alias, chain[0]);
+		}
+	}
+
+	@Override
+	public void engineSetKeyEntry(String alias, byte[] key, Certificate[] chain) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void engineSetCertificateEntry(String alias, Certificate cert) {
+		certificates.put(alias, cert);
+	}
+
+	@Override
+	public void engineDeleteEntry(String alias) {
+		keys.remove(alias);
+		certificates.remove(alias);
+	}
+
+	@Override
+	public Enumeration<String> engineAliases() {
+		aliasEnumerations.incrementAndGet();
+		synchronized (keys) {
+			return Collections.enumeration(new LinkedHashMap<>(keys).keySet());
+		}
+	}
+
+	@Override
+	public boolean engineContainsAlias(String alias) {
+		containsAliasCalls.incrementAndGet();
+		return keys.containsKey(alias) || certificates.containsKey(alias);
+	}
+
+	@Override
+	public int engineSize() {
+		return keys.size();
+	}
+
+	@Override
+	public boolean engineIsKeyEntry(String alias) {
+		return keys.containsKey(alias);
+	}
+
+	@Override
+	public boolean engineIsCertificateEntry(String alias) {
+		return !keys.containsKey(alias) && certificates.containsKey(alias);
+	}
+
+	@Override
+	public String engineGetCertificateAlias(Certificate cert) {
+		return null;
+	}
+
+	@Override
+	public void engineStore(OutputStream stream, char[] password) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void engineLoad(InputStream stream, char[] password) {
+		loads.incrementAndGet();
+	}
+
+	private static class TestCertificate extends Certificate {
+		private final PublicKey publicKey;
+
+		TestCertificate(PublicKey publicKey) {
+			super("X.509");
+			this.publicKey = publicKey;
+		}
+
+		@Override
+		public byte[] getEncoded() {
+			return publicKey.getEncoded();
+		}
+
+		@Override
+		public void verify(PublicKey key) {
+		}
+
+		@Override
+		public void verify(PublicKey key, String sigProvider) {
+		}
+
+		@Override
+		public String toString() {
+			return "TestCertificate";
+		}
+
+		@Override
+		public PublicKey getPublicKey() {
+			return publicKey;
+		}
+	}
+
+	public static class TestProvider extends Provider {
+		static final String NAME = "RxBiometricTestKeyStore";
+
+		public TestProvider() {
+			super(NAME, 1.0, "In-memory AndroidKeyStore for tests");
+			put("KeyStore." + CipherProvider.ANDROID_KEY_STORE, TestKeyStore.class.getName());
+			put("Cipher.AES/CBC/PKCS7Padding", AesCbcCipher.class.getName());
+			put("Cipher.AES/GCM/NoPadding", AesGcmCipher.class.getName());
+		}
+	}
+
+	/**
+	 * "AES/CBC/PKCS7Padding" as provided by AndroidKeyStore, which is the same as the
+	 * "AES/CBC/PKCS5Padding" of the JDK.
+	 */
+	public static class AesCbcCipher extends KeyStoreCipher {
+
+		public AesCbcCipher() throws GeneralSecurityException {
+			super("AES/CBC/PKCS5Padding", "CBC");
+		}
+	}
+
+	public static class AesGcmCipher extends KeyStoreCipher {
+
+		public AesGcmCipher() throws GeneralSecurityException {
+			super("AES/GCM/NoPadding", "GCM");
+		}
+	}
+
+	/**
+	 * Key added with {@link #putKey(String, SecretKey, String)}, only usable by the ciphers of
+	 * {@link TestProvider}.
+	 */
+	private static class KeyStoreSecretKey implements SecretKey {
+		final SecretKey key;
+		final String blockMode;
+
+		KeyStoreSecretKey(SecretKey key, String blockMode) {
+			this.key = key;
+			this.blockMode = blockMode;
+		}
+
+		@Override
+		public String getAlgorithm() {
+			return key.getAlgorithm();
+		}
+
+		@Override
+		public String getFormat() {
+			return null;
+		}
+
+		@Override
+		public byte[] getEncoded() {
+			return null;
+		}
+	}
+
+	/**
+	 * Cipher of the JDK that fails for locked keys, see {@link #setLocked}, and for keys of
+	 * another block mode, see {@link #putKey(String, SecretKey, String)}.
+	 */
+	private abstract static class KeyStoreCipher extends CipherSpi {
+		private final Cipher cipher;
+		private final String blockMode;
+
+		KeyStoreCipher(String transformation, String blockMode) throws GeneralSecurityException {
+			cipher = Cipher.getInstance(transformation, "SunJCE");
+			this.blockMode = blockMode;
+		}
+
+		/**
+		 * @return key to initialize the cipher of the JDK with
+		 */
+		private Key checkUsable(Key key) throws InvalidKeyException {
+			cipherInits.incrementAndGet();
+			if (lockedKeys.contains(key)) {
+				throw new UserNotAuthenticatedException();
+			}
+			if (key instanceof KeyStoreSecretKey) {
+				KeyStoreSecretKey keyStoreKey = (KeyStoreSecretKey) key;
+				if (!keyStoreKey.blockMode.equals(blockMode)) {
+					throw new InvalidKeyException("Incompatible block mode: " + blockMode);
+				}
+				return keyStoreKey.key;
+			}
+			return key;
+		}
+
+		@Override
+		protected void engineSetMode(String mode) throws NoSuchAlgorithmException {
+		}
+
+		@Override
+		protected void engineSetPadding(String padding) throws NoSuchPaddingException {
+		}
+
+		@Override
+		protected int engineGetBlockSize() {
+			return cipher.getBlockSize();
+		}
+
+		@Override
+		protected int engineGetOutputSize(int inputLen) {
+			return cipher.getOutputSize(inputLen);
+		}
+
+		@Override
+		protected byte[] engineGetIV() {
+			return cipher.getIV();
+		}
+
+		@Override
+		protected AlgorithmParameters engineGetParameters() {
+			return cipher.getParameters();
+		}
+
+		@Override
+		protected void engineInit(int opmode, Key key, SecureRandom random) throws InvalidKeyException {
+			cipher.init(opmode, checkUsable(key), random);
+		}
+
+		@Override
+		protected void engineInit(int opmode, Key key, AlgorithmParameterSpec params, SecureRandom random) throws InvalidKeyException, InvalidAlgorithmParameterException {
+			cipher.init(opmode, checkUsable(key), params, random);
+		}
+
+		@Override
+		protected void engineInit(int opmode, Key key, AlgorithmParameters params, SecureRandom random) throws InvalidKeyException, InvalidAlgorithmParameterException {
+			cipher.init(opmode, checkUsable(key), params, random);
+		}
+
+		@Override
+		protected byte[] engineUpdate(byte[] input, int inputOffset, int inputLen) {
+			return cipher.update(input, inputOffset, inputLen);
+		}
+
+		@Override
+		protected int engineUpdate(byte[] input, int inputOffset, int inputLen, byte[] output, int outputOffset) throws ShortBufferException {
+			return cipher.update(input, inputOffset, inputLen, output, outputOffset);
+		}
+
+		@Override
+		protected byte[] engineDoFinal(byte[] input, int inputOffset, int inputLen) throws IllegalBlockSizeException, BadPaddingException {
+			cipherFinals.incrementAndGet();
+			return input == null ? cipher.doFinal() : cipher.doFinal(input, inputOffset, inputLen);
+		}
+
+		@Override
+		protected int engineUpdate(ByteBuffer input, ByteBuffer output) throws ShortBufferException {
+			return cipher.update(input, output);
+		}
+
+		@Override
+		protected int engineDoFinal(byte[] input, int inputOffset, int inputLen, byte[] output, int outputOffset) throws ShortBufferException, IllegalBlockSizeException, BadPaddingException {
+			cipherFinals.incrementAndGet();
+			return cipher.doFinal(input, inputOffset, inputLen, output, outputOffset);
+		}
+
+		@Override
+		protected int engineDoFinal(ByteBuffer input, ByteBuffer output) throws ShortBufferException, IllegalBlockSizeException, BadPaddingException {
+			cipherFinals.incrementAndGet();
+			return cipher.doFinal(input, output);
+		}
+
+		@Override
+		protected void engineUpdateAAD(byte[] src, int offset, int len) {
+			cipher.updateAAD(src, offset, len);
+		}
+
+		@Override
+		protected void engineUpdateAAD(ByteBuffer src) {
+			cipher.updateAAD(src);
+		}
+	}
+}
@@ -0,0 +1,202 @@
+package cz.myair.rxbiometric;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import cz.myair.rxbiometric.VaultIndex.Location;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link VaultIndex}, with the names of the records kept in memory
+ */
+public class VaultIndexTest {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File file;
+	private Names names;
+
+	@Before
+	public void setUp() {
+		file = new File(folder.getRoot(), "vault.index");
+		names = new Names();
+	}
+
+	@Test
+	public void namesAreFound() throws Exception {
+		VaultIndex index = VaultIndex.open(file, 1, names);
+		index.put(names.add("first"), new Location(0, 5, 10));
+		index.put(names.add("second"), new Location(1, 6, 20));
+
+		assertEquals(1, index.get(names.bytes("second")).position);
+		assertEquals(20, index.get(names.bytes("second")).valueLength);
+		assertNull(index.get(names.bytes("third")));
+		assertEquals(2, index.size());
+		index.close();
+	}
+
+	@Test
+	public void replacedNameKeepsOneSlot() throws Exception {
+		VaultIndex index = VaultIndex.open(file, 1, names);
+		index.put(names.add("first"), new Location(0, 5, 10));
+		long liveBytes = index.liveBytes();
+
+		index.put(names.add("first"), new Location(1, 5, 10));
+
+		assertEquals(1, index.get(names.bytes("first")).position);
+		assertEquals(1, index.size());
+		assertEquals(liveBytes, index.liveBytes());
+		index.close();
+	}
+
+	@Test
+	public void removedNameIsGone() throws Exception {
+		VaultIndex index = VaultIndex.open(file, 1, names);
+		index.put(names.add("first"), new Location(0, 5, 10));
+		index.put(names.add("second"), new Location(1, 6, 10));
+
+		assertTrue(index.remove(names.bytes("first")));
+		assertFalse(index.remove(names.bytes("first")));
+
+		assertNull(index.get(names.bytes("first")));
+		assertEquals(1, index.get(names.bytes("second")).position);
+		assertEquals(1, index.size());
+		index.close();
+	}
+
+	@Test
+	public void growthKeepsAllNames() throws Exception {
+		VaultIndex index = VaultIndex.open(file, 1, names);
+		for (int i = 0; i < 5000; i++) {
+			names.put(index, "value" + i);
+			if (i % 2 == 1) {
+				index.remove(names.bytes("value" + (i - 1)));
+			}
+		}
+
+		assertTrue(index.capacity() > 2500);
+		for (int i = 0; i < 5000; i++) {
+			Location location = index.get(names.bytes("value" + i));
+			if (i % 2 == 0) {
+				assertNull(location);
+			} else {
+				assertEquals(i, location.position);
+			}
+		}
+		assertFalse(new File(file.getPath() + ".grow").exists());
+		index.close();
+	}
+
+	@Test
+	public void indexIsPersisted() throws Exception {
+		VaultIndex index = VaultIndex.open(file, 1, names);
+		for (int i = 0; i < 2000; i++) {
+			names.put(index, "value" + i);
+		}
+		index.setLogEnd(42);
+		index.close();
+
+		index = VaultIndex.open(file, 1, names);
+		assertEquals(42, index.getLogEnd());
+		assertEquals(2000, index.size());
+		assertEquals(1999, index.get(names.bytes("value1999")).position);
+		index.close();
+	}
+
+	@Test
+	public void indexOfOtherLogIsReplaced() throws Exception {
+		VaultIndex index = VaultIndex.open(file, 1, names);
+		index.put(names.add("first"), new Location(0, 5, 10));
+		index.setLogEnd(42);
+		index.close();
+
+		index = VaultIndex.open(file, 2, names);
+		assertEquals(0, index.getLogEnd());
+		assertNull(index.get(names.bytes("first")));
+		index.close();
+	}
+
+	@Test
+	public void lookupCostIndependentOfEntryCount() throws Exception {
+		int[] entryCounts = {1000, 10000, 100000, 1000000};
+		int lookups = 100000;
+		Random random = new Random(42);
+
+		for (int entryCount : entryCounts) {
+			names = new Names();
+			VaultIndex index = VaultIndex.create(file, 1, names);
+			for (int i = 0; i < entryCount; i++) {
+				names.put(index, "value" + i);
+			}
+			byte[][] hits = new byte[lookups][];
+			byte[][] misses = new byte[lookups][];
+			for (int i = 0; i < lookups; i++) {
+				hits[i] = names.bytes("value" + random.nextInt(entryCount));
+				misses[i] = names.bytes("missing" + i);
+			}
+
+			long probes = index.probes();
+			int reads = names.reads;
+			for (int i = 0; i < lookups; i++) {
+				index.get(hits[i]);
+				index.get(misses[i]);
+			}
+			double probesPerLookup = (index.probes() - probes) / (2.0 * lookups);
+
+			// a few adjacent slots, within one or two pages, and one record read per hit,
+			// regardless of the entry count
+			assertTrue(probesPerLookup < 3);
+			assertEquals(lookups, names.reads - reads);
+			index.close();
+		}
+	}
+
+	/**
+	 * Names of records, the position of a record is the index of its name.
+	 */
+	private static final class Names implements VaultIndex.Records {
+
+		private final List<byte[]> names = new ArrayList<>();
+		private int reads;
+
+		byte[] add(String name) {
+			byte[] bytes = bytes(name);
+			names.add(bytes);
+			return bytes;
+		}
+
+		/**
+		 * Adds the name with an empty value to the index.
+		 */
+		void put(VaultIndex index, String name) throws IOException {
+			byte[] bytes = add(name);
+			index.put(bytes, new Location(names.size() - 1, bytes.length, 0));
+		}
+
+		byte[] bytes(String name) {
+			return name.getBytes(UTF_8);
+		}
+
+		@Override
+		public byte[] readName(long position, int nameLength) {
+			reads++;
+			return names.get((int) position);
+		}
+	}
+}
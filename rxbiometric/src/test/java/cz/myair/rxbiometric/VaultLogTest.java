@@ -0,0 +1,265 @@
+package cz.myair.rxbiometric;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link VaultLog}, including the recovery from interrupted writes and compactions
+ */
+public class VaultLogTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File file;
+
+	@Before
+	public void setUp() {
+		file = new File(folder.getRoot(), "vault");
+	}
+
+	@Test
+	public void valuesArePersisted() throws Exception {
+		VaultLog log = VaultLog.open(file);
+		log.put("first", new byte[]{1});
+		log.put("second", new byte[]{2});
+		log.put("first", new byte[]{3});
+		log.remove("second");
+		log.close();
+
+		log = VaultLog.open(file);
+		assertArrayEquals(new byte[]{3}, log.get("first"));
+		assertNull(log.get("second"));
+		assertEquals(1, log.names().size());
+		log.close();
+	}
+
+	@Test
+	public void writeAppendsRecord() throws Exception {
+		VaultLog log = VaultLog.open(file);
+		for (int i = 0; i < 100; i++) {
+			log.put("value" + i, new byte[100]);
+		}
+		long length = file.length();
+
+		log.put("value0", new byte[100]);
+
+		// Only the record is appended, the rest of the file is left as it is
+		assertEquals(length + 8 + 5 + "value0".length() + 100, file.length());
+		log.close();
+	}
+
+	@Test
+	public void interruptedWriteIsDiscarded() throws Exception {
+		VaultLog log = VaultLog.open(file);
+		log.put("first", new byte[]{1, 2, 3});
+		log.close();
+		long length = file.length();
+
+		// The process died after writing the record header and part of its body
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+		randomAccessFile.seek(length);
+		randomAccessFile.writeInt(100);
+		randomAccessFile.writeInt(42);
+		randomAccessFile.write(new byte[]{1, 0, 0});
+		randomAccessFile.close();
+
+		log = VaultLog.open(file);
+		assertArrayEquals(new byte[]{1, 2, 3}, log.get("first"));
+		assertEquals(length, file.length());
+
+		log.put("second", new byte[]{4});
+		log.close();
+		log = VaultLog.open(file);
+		assertArrayEquals(new byte[]{4}, log.get("second"));
+		log.close();
+	}
+
+	@Test
+	public void corruptedRecordIsDiscarded() throws Exception {
+		VaultLog log = VaultLog.open(file);
+		log.put("first", new byte[]{1});
+		log.close();
+		long length = file.length();
+		byte[] index = readIndex();
+		log = VaultLog.open(file);
+		log.put("second", new byte[]{2});
+		log.close();
+
+		// The last byte of the value of the second record was not written before the index
+		// was updated
+		writeIndex(index);
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+		randomAccessFile.seek(file.length() - 1);
+		randomAccessFile.write(7);
+		randomAccessFile.close();
+
+		log = VaultLog.open(file);
+		assertArrayEquals(new byte[]{1}, log.get("first"));
+		assertFalse(log.contains("second"));
+		assertEquals(length, file.length());
+		log.close();
+	}
+
+	@Test
+	public void recordsMissingFromIndexAreApplied() throws Exception {
+		VaultLog log = VaultLog.open(file);
+		log.put("first", new byte[]{1});
+		log.put("second", new byte[]{2});
+		log.close();
+		byte[] index = readIndex();
+		log = VaultLog.open(file);
+		log.put("first", new byte[]{3});
+		log.remove("second");
+		log.put("third", new byte[]{4});
+		log.close();
+
+		// The process died before the index was updated
+		writeIndex(index);
+
+		log = VaultLog.open(file);
+		assertArrayEquals(new byte[]{3}, log.get("first"));
+		assertFalse(log.contains("second"));
+		assertArrayEquals(new byte[]{4}, log.get("third"));
+		assertEquals(log.length() - 13, log.liveBytes() + log.garbageBytes());
+		log.close();
+	}
+
+	@Test
+	public void missingIndexIsRebuilt() throws Exception {
+		VaultLog log = VaultLog.open(file);
+		log.put("first", new byte[]{1});
+		log.put("second", new byte[]{2});
+		log.remove("second");
+		long liveBytes = log.liveBytes();
+		log.close();
+
+		assertTrue(indexFile().delete());
+
+		log = VaultLog.open(file);
+		assertArrayEquals(new byte[]{1}, log.get("first"));
+		assertFalse(log.contains("second"));
+		assertEquals(liveBytes, log.liveBytes());
+		log.close();
+	}
+
+	@Test
+	public void indexOfOtherLogIsRebuilt() throws Exception {
+		VaultLog log = VaultLog.open(file);
+		log.put("first", new byte[]{1});
+		log.close();
+		byte[] index = readIndex();
+		assertTrue(file.delete());
+
+		// A new log next to the index of the deleted one
+		log = VaultLog.open(file);
+		log.put("second", new byte[]{2});
+		log.close();
+		writeIndex(index);
+
+		log = VaultLog.open(file);
+		assertFalse(log.contains("first"));
+		assertArrayEquals(new byte[]{2}, log.get("second"));
+		log.close();
+	}
+
+	@Test
+	public void interruptedFileCreationIsRepaired() throws Exception {
+		FileOutputStream output = new FileOutputStream(file);
+		output.write(new byte[]{0x52, 0x58});
+		output.close();
+
+		VaultLog log = VaultLog.open(file);
+		log.put("first", new byte[]{1});
+		log.close();
+
+		log = VaultLog.open(file);
+		assertArrayEquals(new byte[]{1}, log.get("first"));
+		log.close();
+	}
+
+	@Test(expected = IOException.class)
+	public void otherFileIsRejected() throws Exception {
+		FileOutputStream output = new FileOutputStream(file);
+		output.write("<?xml version='1.0'?>".getBytes("UTF-8"));
+		output.close();
+
+		VaultLog.open(file);
+	}
+
+	@Test
+	public void compactionKeepsLiveValues() throws Exception {
+		VaultLog log = VaultLog.open(file);
+		for (int i = 0; i < 10; i++) {
+			log.put("first", new byte[]{(byte) i});
+			log.put("second" + i, new byte[]{(byte) i});
+			log.remove("second" + i);
+		}
+		log.put("third", new byte[]{3});
+		assertTrue(log.garbageBytes() > 0);
+
+		log.compact();
+
+		assertEquals(0, log.garbageBytes());
+		assertEquals(log.length(), file.length());
+		assertArrayEquals(new byte[]{9}, log.get("first"));
+		assertArrayEquals(new byte[]{3}, log.get("third"));
+		log.put("fourth", new byte[]{4});
+		log.close();
+
+		log = VaultLog.open(file);
+		assertEquals(3, log.names().size());
+		assertArrayEquals(new byte[]{9}, log.get("first"));
+		assertArrayEquals(new byte[]{4}, log.get("fourth"));
+		log.close();
+	}
+
+	@Test
+	public void interruptedCompactionIsDiscarded() throws Exception {
+		VaultLog log = VaultLog.open(file);
+		log.put("first", new byte[]{1});
+		log.close();
+
+		// The process died while writing the compacted file
+		File compaction = new File(file.getPath() + ".compact");
+		FileOutputStream output = new FileOutputStream(compaction);
+		output.write(new byte[]{1, 2, 3});
+		output.close();
+
+		log = VaultLog.open(file);
+		assertArrayEquals(new byte[]{1}, log.get("first"));
+		assertFalse(compaction.exists());
+		log.close();
+	}
+
+	private File indexFile() {
+		return new File(file.getPath() + ".index");
+	}
+
+	private byte[] readIndex() throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(indexFile(), "r");
+		byte[] index = new byte[(int) randomAccessFile.length()];
+		randomAccessFile.readFully(index);
+		randomAccessFile.close();
+		return index;
+	}
+
+	private void writeIndex(byte[] index) throws IOException {
+		FileOutputStream output = new FileOutputStream(indexFile());
+		output.write(index);
+		output.close();
+	}
+}